@@ -0,0 +1,867 @@
+package BTree;
+
+import Map.Cursor;
+import Map.EmptyException;
+import Map.OrderedMap;
+import SelfBalancingBST.AvlTreeMap;
+import SelfBalancingBST.TreapMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * OrderedMap implemented as a B+tree.
+ *
+ * <p>Each node holds up to fanout keys in an array instead of one, so
+ * the tree is only log_fanout(n) levels deep and a lookup binary-searches
+ * a few contiguous arrays rather than chasing a pointer per comparison
+ * as AvlTreeMap and TreapMap do. Inner nodes only route: inner key i is
+ * a lower bound for the keys under child i + 1. All entries live in the
+ * leaves, which are linked in key order, so iteration and range scans
+ * walk the leaf arrays without going back up the tree.</p>
+ *
+ * <p>A node that overflows is split in half and the split propagates up
+ * the path; a node that drops below half full borrows an entry from a
+ * sibling, or is merged with it. Every update descends once, keeping
+ * the path in two small arrays for the way back up, so the single-probe
+ * operations like upsert() and compute() really probe once.</p>
+ *
+ * <p>bulkLoad() builds the tree from sorted input bottom-up in O(n),
+ * with full leaves, which suits data that is mostly read.</p>
+ *
+ * @param <K> Type for keys.
+ * @param <V> Type for values.
+ */
+public class BPlusTreeMap<K extends Comparable<K>, V> implements OrderedMap<K, V> {
+
+  private static final int DEFAULT_FANOUT = 64;
+
+  private final int fanout; // most entries in a leaf, most children of an inner node
+  private Node root;
+  private int height; // number of inner levels above the leaves
+  private Leaf head; // leftmost leaf, never replaced except by bulkLoad()
+  private Leaf tail; // rightmost leaf
+  private int size;
+  // path of the last descend(): the inner nodes from the root down and the child taken in each
+  private Inner[] pathNodes = new Inner[8];
+  private int[] pathSlots = new int[8];
+  private int depth;
+
+  /**
+   * Create an empty map with nodes of 64 entries.
+   */
+  public BPlusTreeMap() {
+    this(DEFAULT_FANOUT);
+  }
+
+  /**
+   * Create an empty map with nodes of the given width.
+   *
+   * @param fanout Most entries in a leaf and most children of an inner node.
+   * @throws IllegalArgumentException If fanout is less than 4.
+   */
+  public BPlusTreeMap(int fanout) throws IllegalArgumentException {
+    if (fanout < 4) {
+      throw new IllegalArgumentException("fanout must be at least 4");
+    }
+    this.fanout = fanout;
+    clearTree();
+  }
+
+  private void clearTree() {
+    Leaf leaf = new Leaf(fanout);
+    root = leaf;
+    head = leaf;
+    tail = leaf;
+    height = 0;
+    size = 0;
+  }
+
+  // Index of k among the keys of n if it is there, otherwise -(insertion point) - 1.
+  @SuppressWarnings("unchecked")
+  private static <K extends Comparable<K>> int search(Node n, K k) {
+    Object[] keys = n.keys;
+    int low = 0;
+    int high = n.size - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = ((K) keys[mid]).compareTo(k);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -low - 1;
+  }
+
+  // Child of an inner node whose range holds k.
+  private static <K extends Comparable<K>> int childFor(Inner n, K k) {
+    int i = search(n, k);
+    return i >= 0 ? i + 1 : -i - 1;
+  }
+
+  // Leaf where k is or would be.
+  private Leaf leafFor(K k) {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    Node n = root;
+    for (int level = height; level > 0; level--) {
+      Inner in = (Inner) n;
+      n = in.children[childFor(in, k)];
+    }
+    return (Leaf) n;
+  }
+
+  // Like leafFor(), but remember the path for a following insertAt() or removeAt().
+  private Leaf descend(K k) {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    if (pathNodes.length < height) {
+      pathNodes = new Inner[2 * height];
+      pathSlots = new int[2 * height];
+    }
+    depth = 0;
+    Node n = root;
+    for (int level = height; level > 0; level--) {
+      Inner in = (Inner) n;
+      int slot = childFor(in, k);
+      pathNodes[depth] = in;
+      pathSlots[depth] = slot;
+      depth++;
+      n = in.children[slot];
+    }
+    return (Leaf) n;
+  }
+
+  // Insert an entry at pos in the leaf found by the last descend(), splitting up the path as needed.
+  private void insertAt(Leaf leaf, int pos, K k, V v) {
+    System.arraycopy(leaf.keys, pos, leaf.keys, pos + 1, leaf.size - pos);
+    System.arraycopy(leaf.values, pos, leaf.values, pos + 1, leaf.size - pos);
+    leaf.keys[pos] = k;
+    leaf.values[pos] = v;
+    leaf.size++;
+    size++;
+    if (leaf.size > fanout) {
+      splitLeaf(leaf);
+    }
+  }
+
+  private void splitLeaf(Leaf leaf) {
+    Leaf right = new Leaf(fanout);
+    int half = leaf.size / 2;
+    int moved = leaf.size - half;
+    System.arraycopy(leaf.keys, half, right.keys, 0, moved);
+    System.arraycopy(leaf.values, half, right.values, 0, moved);
+    clear(leaf.keys, half, leaf.size);
+    clear(leaf.values, half, leaf.size);
+    right.size = moved;
+    leaf.size = half;
+    right.next = leaf.next;
+    if (right.next != null) {
+      right.next.prev = right;
+    } else {
+      tail = right;
+    }
+    right.prev = leaf;
+    leaf.next = right;
+    insertInParent(leaf, right.keys[0], right);
+  }
+
+  // Add a separator and a new right sibling after left, whose parent is on top of the path.
+  private void insertInParent(Node left, Object separator, Node right) {
+    if (depth == 0) { // left is the root, grow a new one above it
+      Inner newRoot = new Inner(fanout);
+      newRoot.keys[0] = separator;
+      newRoot.children[0] = left;
+      newRoot.children[1] = right;
+      newRoot.size = 1;
+      root = newRoot;
+      height++;
+      return;
+    }
+    depth--;
+    Inner parent = pathNodes[depth];
+    int slot = pathSlots[depth]; // left is parent.children[slot]
+    System.arraycopy(parent.keys, slot, parent.keys, slot + 1, parent.size - slot);
+    System.arraycopy(parent.children, slot + 1, parent.children, slot + 2, parent.size - slot);
+    parent.keys[slot] = separator;
+    parent.children[slot + 1] = right;
+    parent.size++;
+    if (parent.size == fanout) { // fanout + 1 children
+      splitInner(parent);
+    }
+  }
+
+  private void splitInner(Inner node) {
+    Inner right = new Inner(fanout);
+    int mid = node.size / 2;
+    Object separator = node.keys[mid]; // moves up rather than to either half
+    int moved = node.size - mid - 1;
+    System.arraycopy(node.keys, mid + 1, right.keys, 0, moved);
+    System.arraycopy(node.children, mid + 1, right.children, 0, moved + 1);
+    clear(node.keys, mid, node.size);
+    clear(node.children, mid + 1, node.size + 1);
+    right.size = moved;
+    node.size = mid;
+    insertInParent(node, separator, right);
+  }
+
+  // Remove the entry at pos in the leaf found by the last descend(), rebalancing up the path as needed.
+  @SuppressWarnings("unchecked")
+  private V removeAt(Leaf leaf, int pos) {
+    V v = (V) leaf.values[pos];
+    System.arraycopy(leaf.keys, pos + 1, leaf.keys, pos, leaf.size - pos - 1);
+    System.arraycopy(leaf.values, pos + 1, leaf.values, pos, leaf.size - pos - 1);
+    leaf.size--;
+    leaf.keys[leaf.size] = null;
+    leaf.values[leaf.size] = null;
+    size--;
+    if (depth > 0 && leaf.size < fanout / 2) {
+      rebalanceLeaf(leaf);
+    }
+    return v;
+  }
+
+  private void rebalanceLeaf(Leaf leaf) {
+    Inner parent = pathNodes[depth - 1];
+    int slot = pathSlots[depth - 1];
+    Leaf left = slot > 0 ? (Leaf) parent.children[slot - 1] : null;
+    Leaf right = slot < parent.size ? (Leaf) parent.children[slot + 1] : null;
+    if (left != null && left.size > fanout / 2) { // take the last entry of the left sibling
+      System.arraycopy(leaf.keys, 0, leaf.keys, 1, leaf.size);
+      System.arraycopy(leaf.values, 0, leaf.values, 1, leaf.size);
+      left.size--;
+      leaf.keys[0] = left.keys[left.size];
+      leaf.values[0] = left.values[left.size];
+      left.keys[left.size] = null;
+      left.values[left.size] = null;
+      leaf.size++;
+      parent.keys[slot - 1] = leaf.keys[0];
+    } else if (right != null && right.size > fanout / 2) { // take the first entry of the right sibling
+      leaf.keys[leaf.size] = right.keys[0];
+      leaf.values[leaf.size] = right.values[0];
+      leaf.size++;
+      right.size--;
+      System.arraycopy(right.keys, 1, right.keys, 0, right.size);
+      System.arraycopy(right.values, 1, right.values, 0, right.size);
+      right.keys[right.size] = null;
+      right.values[right.size] = null;
+      parent.keys[slot] = right.keys[0];
+    } else if (left != null) {
+      mergeLeaves(left, leaf);
+      removeFromParent(slot - 1);
+    } else {
+      mergeLeaves(leaf, right);
+      removeFromParent(slot);
+    }
+  }
+
+  // Move all entries of right to the end of left and unlink right.
+  private void mergeLeaves(Leaf left, Leaf right) {
+    System.arraycopy(right.keys, 0, left.keys, left.size, right.size);
+    System.arraycopy(right.values, 0, left.values, left.size, right.size);
+    left.size += right.size;
+    left.next = right.next;
+    if (left.next != null) {
+      left.next.prev = left;
+    } else {
+      tail = left;
+    }
+  }
+
+  // Remove key i and child i + 1 from the inner node on top of the path, then rebalance it.
+  private void removeFromParent(int i) {
+    depth--;
+    Inner node = pathNodes[depth];
+    System.arraycopy(node.keys, i + 1, node.keys, i, node.size - i - 1);
+    System.arraycopy(node.children, i + 2, node.children, i + 1, node.size - i - 1);
+    node.size--;
+    node.keys[node.size] = null;
+    node.children[node.size + 1] = null;
+    if (depth == 0) {
+      if (node.size == 0) { // the root has a single child left, which takes its place
+        root = node.children[0];
+        height--;
+      }
+      return;
+    }
+    if (node.size + 1 < (fanout + 1) / 2) {
+      rebalanceInner(node);
+    }
+  }
+
+  private void rebalanceInner(Inner node) {
+    Inner parent = pathNodes[depth - 1];
+    int slot = pathSlots[depth - 1];
+    Inner left = slot > 0 ? (Inner) parent.children[slot - 1] : null;
+    Inner right = slot < parent.size ? (Inner) parent.children[slot + 1] : null;
+    int minChildren = (fanout + 1) / 2;
+    if (left != null && left.size + 1 > minChildren) {
+      // rotate through the parent: its separator comes down, the left sibling's last key goes up
+      System.arraycopy(node.keys, 0, node.keys, 1, node.size);
+      System.arraycopy(node.children, 0, node.children, 1, node.size + 1);
+      node.keys[0] = parent.keys[slot - 1];
+      node.children[0] = left.children[left.size];
+      node.size++;
+      parent.keys[slot - 1] = left.keys[left.size - 1];
+      left.keys[left.size - 1] = null;
+      left.children[left.size] = null;
+      left.size--;
+    } else if (right != null && right.size + 1 > minChildren) {
+      node.keys[node.size] = parent.keys[slot];
+      node.children[node.size + 1] = right.children[0];
+      node.size++;
+      parent.keys[slot] = right.keys[0];
+      System.arraycopy(right.keys, 1, right.keys, 0, right.size - 1);
+      System.arraycopy(right.children, 1, right.children, 0, right.size);
+      right.size--;
+      right.keys[right.size] = null;
+      right.children[right.size + 1] = null;
+    } else if (left != null) {
+      mergeInner(left, parent.keys[slot - 1], node);
+      removeFromParent(slot - 1);
+    } else {
+      mergeInner(node, parent.keys[slot], right);
+      removeFromParent(slot);
+    }
+  }
+
+  // Append the separator and then all keys and children of right to left.
+  private void mergeInner(Inner left, Object separator, Inner right) {
+    left.keys[left.size] = separator;
+    System.arraycopy(right.keys, 0, left.keys, left.size + 1, right.size);
+    System.arraycopy(right.children, 0, left.children, left.size + 1, right.size + 1);
+    left.size += right.size + 1;
+  }
+
+  private static void clear(Object[] a, int from, int to) {
+    for (int i = from; i < to; i++) {
+      a[i] = null;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private K keyOf(Leaf leaf, int i) {
+    return (K) leaf.keys[i];
+  }
+
+  // Key at index i of a leaf, where i may run one past either end into the neighbouring leaf.
+  private K keyNear(Leaf leaf, int i) {
+    if (i < 0) {
+      return leaf.prev == null ? null : keyOf(leaf.prev, leaf.prev.size - 1);
+    }
+    if (i >= leaf.size) {
+      return leaf.next == null ? null : keyOf(leaf.next, 0);
+    }
+    return keyOf(leaf, i);
+  }
+
+  /**
+   * Fill an empty map from entries in increasing key order, in O(n).
+   *
+   * <p>Leaves are filled to the brim and the inner levels built on top
+   * of them, with no splits along the way.</p>
+   *
+   * @param sorted Cursor over the entries, e.g. of another OrderedMap.
+   * @throws IllegalStateException If the map is not empty.
+   * @throws IllegalArgumentException If a key is null or not greater than
+   *     the one before; the map is left empty.
+   */
+  public void bulkLoad(Cursor<K, V> sorted) throws IllegalStateException, IllegalArgumentException {
+    if (size != 0) {
+      throw new IllegalStateException("bulk load needs an empty map");
+    }
+    clearTree();
+    List<Node> level = new ArrayList<>();
+    List<Object> lowest = new ArrayList<>(); // smallest key under each node of the level
+    Leaf leaf = head;
+    level.add(leaf);
+    K previous = null;
+    while (sorted.advance()) {
+      K k = sorted.key();
+      if (k == null || (previous != null && previous.compareTo(k) >= 0)) {
+        clearTree();
+        throw new IllegalArgumentException(k == null ? "cannot handle null key" : "keys not in increasing order at " + k);
+      }
+      if (leaf.size == fanout) {
+        Leaf next = new Leaf(fanout);
+        leaf.next = next;
+        next.prev = leaf;
+        leaf = next;
+        level.add(leaf);
+      }
+      leaf.keys[leaf.size] = k;
+      leaf.values[leaf.size] = sorted.value();
+      leaf.size++;
+      size++;
+      previous = k;
+    }
+    tail = leaf;
+    if (leaf.prev != null && leaf.size < fanout / 2) { // share with the full leaf before it
+      Leaf before = leaf.prev;
+      int move = (before.size - leaf.size) / 2;
+      System.arraycopy(leaf.keys, 0, leaf.keys, move, leaf.size);
+      System.arraycopy(leaf.values, 0, leaf.values, move, leaf.size);
+      System.arraycopy(before.keys, before.size - move, leaf.keys, 0, move);
+      System.arraycopy(before.values, before.size - move, leaf.values, 0, move);
+      clear(before.keys, before.size - move, before.size);
+      clear(before.values, before.size - move, before.size);
+      before.size -= move;
+      leaf.size += move;
+    }
+    for (Node n : level) {
+      lowest.add(n.keys[0]);
+    }
+    while (level.size() > 1) {
+      // spread the nodes evenly over as few parents as hold them, so none is under half full
+      int parents = (level.size() + fanout - 1) / fanout;
+      List<Node> up = new ArrayList<>(parents);
+      List<Object> upLowest = new ArrayList<>(parents);
+      int from = 0;
+      for (int p = 0; p < parents; p++) {
+        int to = (int) ((long) level.size() * (p + 1) / parents);
+        Inner parent = new Inner(fanout);
+        for (int c = from; c < to; c++) {
+          if (c > from) {
+            parent.keys[c - from - 1] = lowest.get(c);
+          }
+          parent.children[c - from] = level.get(c);
+        }
+        parent.size = to - from - 1;
+        up.add(parent);
+        upLowest.add(lowest.get(from));
+        from = to;
+      }
+      level = up;
+      lowest = upLowest;
+      height++;
+    }
+    root = level.get(0);
+  }
+
+  @Override
+  public void insert(K k, V v) throws IllegalArgumentException {
+    Leaf leaf = descend(k);
+    int i = search(leaf, k);
+    if (i >= 0) {
+      throw new IllegalArgumentException("duplicate key " + k);
+    }
+    insertAt(leaf, -i - 1, k, v);
+  }
+
+  @Override
+  public V remove(K k) throws IllegalArgumentException {
+    Leaf leaf = descend(k);
+    int i = search(leaf, k);
+    if (i < 0) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    return removeAt(leaf, i);
+  }
+
+  @Override
+  public void put(K k, V v) throws IllegalArgumentException {
+    Leaf leaf = leafFor(k);
+    int i = search(leaf, k);
+    if (i < 0) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    leaf.values[i] = v;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V get(K k) throws IllegalArgumentException {
+    Leaf leaf = leafFor(k);
+    int i = search(leaf, k);
+    if (i < 0) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    return (V) leaf.values[i];
+  }
+
+  @Override
+  public boolean has(K k) {
+    if (k == null) {
+      return false;
+    }
+    return search(leafFor(k), k) >= 0;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V getOrDefault(K k, V defaultValue) {
+    if (k == null) {
+      return defaultValue;
+    }
+    Leaf leaf = leafFor(k);
+    int i = search(leaf, k);
+    return i < 0 ? defaultValue : (V) leaf.values[i];
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V putIfAbsent(K k, V v) throws IllegalArgumentException {
+    Leaf leaf = descend(k);
+    int i = search(leaf, k);
+    if (i >= 0) {
+      return (V) leaf.values[i];
+    }
+    insertAt(leaf, -i - 1, k, v);
+    return null;
+  }
+
+  @Override
+  public void upsert(K k, V v) throws IllegalArgumentException {
+    Leaf leaf = descend(k);
+    int i = search(leaf, k);
+    if (i >= 0) {
+      leaf.values[i] = v;
+    } else {
+      insertAt(leaf, -i - 1, k, v);
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V compute(K k, BiFunction<? super K, ? super V, ? extends V> remap)
+      throws IllegalArgumentException {
+    Leaf leaf = descend(k);
+    int i = search(leaf, k);
+    V newValue = remap.apply(k, i < 0 ? null : (V) leaf.values[i]);
+    if (newValue == null) {
+      if (i >= 0) {
+        removeAt(leaf, i); // the path is still the one remap could not have changed
+      }
+    } else if (i < 0) {
+      insertAt(leaf, -i - 1, k, newValue);
+    } else {
+      leaf.values[i] = newValue;
+    }
+    return newValue;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V merge(K k, V v, BiFunction<? super V, ? super V, ? extends V> remap)
+      throws IllegalArgumentException {
+    Leaf leaf = descend(k);
+    int i = search(leaf, k);
+    if (i < 0) {
+      insertAt(leaf, -i - 1, k, v);
+      return v;
+    }
+    V newValue = remap.apply((V) leaf.values[i], v);
+    if (newValue == null) {
+      removeAt(leaf, i);
+    } else {
+      leaf.values[i] = newValue;
+    }
+    return newValue;
+  }
+
+  @Override
+  public K first() throws EmptyException {
+    if (size == 0) {
+      throw new EmptyException("map is empty");
+    }
+    return keyOf(head, 0);
+  }
+
+  @Override
+  public K last() throws EmptyException {
+    if (size == 0) {
+      throw new EmptyException("map is empty");
+    }
+    return keyOf(tail, tail.size - 1);
+  }
+
+  @Override
+  public K floorKey(K k) throws IllegalArgumentException {
+    Leaf leaf = leafFor(k);
+    int i = search(leaf, k);
+    return keyNear(leaf, i >= 0 ? i : -i - 2);
+  }
+
+  @Override
+  public K ceilingKey(K k) throws IllegalArgumentException {
+    Leaf leaf = leafFor(k);
+    int i = search(leaf, k);
+    return keyNear(leaf, i >= 0 ? i : -i - 1);
+  }
+
+  @Override
+  public K lowerKey(K k) throws IllegalArgumentException {
+    Leaf leaf = leafFor(k);
+    int i = search(leaf, k);
+    return keyNear(leaf, i >= 0 ? i - 1 : -i - 2);
+  }
+
+  @Override
+  public K higherKey(K k) throws IllegalArgumentException {
+    Leaf leaf = leafFor(k);
+    int i = search(leaf, k);
+    return keyNear(leaf, i >= 0 ? i + 1 : -i - 1);
+  }
+
+  @Override
+  public Cursor<K, V> cursor() {
+    return new LeafCursor(head, 0, null);
+  }
+
+  @Override
+  public Cursor<K, V> cursor(K from, K to) {
+    if (from == null) {
+      return new LeafCursor(head, 0, to);
+    }
+    Leaf leaf = leafFor(from);
+    int i = search(leaf, from);
+    return new LeafCursor(leaf, i >= 0 ? i : -i - 1, to);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    for (Leaf leaf = head; leaf != null; leaf = leaf.next) {
+      for (int i = 0; i < leaf.size; i++) {
+        action.accept((K) leaf.keys[i], (V) leaf.values[i]);
+      }
+    }
+  }
+
+  @Override
+  public Iterator<K> iterator() {
+    return new LeafIterator();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder s = new StringBuilder();
+    s.append("{");
+    for (Cursor<K, V> c = cursor(); c.advance(); ) {
+      if (s.length() > 1) {
+        s.append(", ");
+      }
+      s.append(c.key()).append(": ").append(c.value());
+    }
+    s.append("}");
+    return s.toString();
+  }
+
+  private abstract static class Node {
+    final Object[] keys;
+    int size; // number of keys in use
+
+    Node(int capacity) {
+      keys = new Object[capacity];
+    }
+  }
+
+  // Holds up to fanout entries, one more while it is being split.
+  private static final class Leaf extends Node {
+    final Object[] values;
+    Leaf prev;
+    Leaf next;
+
+    Leaf(int fanout) {
+      super(fanout + 1);
+      values = new Object[fanout + 1];
+    }
+  }
+
+  // Holds up to fanout children and one key fewer, one more of each while it is being split.
+  private static final class Inner extends Node {
+    final Node[] children;
+
+    Inner(int fanout) {
+      super(fanout);
+      children = new Node[fanout + 1];
+    }
+  }
+
+  private class LeafIterator implements Iterator<K> {
+    private Leaf leaf = head;
+    private int index;
+
+    @Override
+    public boolean hasNext() {
+      while (leaf != null && index >= leaf.size) {
+        leaf = leaf.next;
+        index = 0;
+      }
+      return leaf != null;
+    }
+
+    @Override
+    public K next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException("No more elements in the map");
+      }
+      return keyOf(leaf, index++);
+    }
+  }
+
+  private class LeafCursor implements Cursor<K, V> {
+    private final K to; // null to run to the last key
+    private Leaf leaf;
+    private int index;
+    private boolean onEntry;
+
+    // Positioned before the entry at index of leaf.
+    LeafCursor(Leaf leaf, int index, K to) {
+      this.leaf = leaf;
+      this.index = index - 1;
+      this.to = to;
+    }
+
+    @Override
+    public boolean advance() {
+      if (leaf == null) {
+        return false;
+      }
+      index++;
+      while (index >= leaf.size) {
+        leaf = leaf.next;
+        index = 0;
+        if (leaf == null) {
+          onEntry = false;
+          return false;
+        }
+      }
+      onEntry = to == null || keyOf(leaf, index).compareTo(to) < 0;
+      if (!onEntry) {
+        leaf = null;
+      }
+      return onEntry;
+    }
+
+    private void check() {
+      if (!onEntry) {
+        throw new IllegalStateException("cursor is not on an entry");
+      }
+    }
+
+    @Override
+    public K key() {
+      check();
+      return keyOf(leaf, index);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V value() {
+      check();
+      return (V) leaf.values[index];
+    }
+
+    @Override
+    public void setValue(V v) {
+      check();
+      leaf.values[index] = v;
+    }
+  }
+
+  /**
+   * Compares lookups and range scans with AvlTreeMap and TreapMap, on
+   * keys inserted in random order, and the B+tree built by bulkLoad().
+   *
+   * @param args Number of keys, optional.
+   */
+  public static void main(String[] args) {
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+    Random rand = new Random(42);
+    Integer[] keys = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      keys[i] = 2 * i; // even keys, so odd ones miss
+    }
+    for (int i = n - 1; i > 0; i--) { // shuffle, then allocate in that order so memory order is random too
+      int j = rand.nextInt(i + 1);
+      Integer t = keys[i];
+      keys[i] = keys[j];
+      keys[j] = t;
+    }
+    for (int i = 0; i < n; i++) {
+      keys[i] = Integer.valueOf(keys[i].intValue()); // a new object, keys above 127 are not cached
+    }
+    Integer[] lookups = new Integer[1_000_000];
+    for (int i = 0; i < lookups.length; i++) {
+      lookups[i] = rand.nextInt(2 * n);
+    }
+
+    AvlTreeMap<Integer, Integer> avl = new AvlTreeMap<>();
+    TreapMap<Integer, Integer> treap = new TreapMap<>(42);
+    BPlusTreeMap<Integer, Integer> bplus = new BPlusTreeMap<>();
+    System.out.printf("insert %d keys in random order:%n", n);
+    System.out.printf("  AvlTreeMap         %6d ms%n", fill(avl, keys));
+    System.out.printf("  TreapMap           %6d ms%n", fill(treap, keys));
+    System.out.printf("  BPlusTreeMap       %6d ms%n", fill(bplus, keys));
+    long begin = System.nanoTime();
+    BPlusTreeMap<Integer, Integer> loaded = new BPlusTreeMap<>();
+    loaded.bulkLoad(bplus.cursor());
+    System.out.printf("  BPlusTreeMap bulk  %6d ms%n", (System.nanoTime() - begin) / 1_000_000);
+
+    System.out.println("random lookups, half of them misses:");
+    lookups("AvlTreeMap       ", avl, lookups);
+    lookups("TreapMap         ", treap, lookups);
+    lookups("BPlusTreeMap     ", bplus, lookups);
+    lookups("BPlusTreeMap bulk", loaded, lookups);
+
+    System.out.println("range scans of 100 keys:");
+    scans("AvlTreeMap       ", avl, lookups);
+    scans("TreapMap         ", treap, lookups);
+    scans("BPlusTreeMap     ", bplus, lookups);
+    scans("BPlusTreeMap bulk", loaded, lookups);
+  }
+
+  private static long fill(OrderedMap<Integer, Integer> map, Integer[] keys) {
+    long begin = System.nanoTime();
+    for (Integer k : keys) {
+      map.insert(k, k);
+    }
+    return (System.nanoTime() - begin) / 1_000_000;
+  }
+
+  private static void lookups(String name, OrderedMap<Integer, Integer> map, Integer[] keys) {
+    long sink = 0;
+    long nanos = 0;
+    for (int round = 0; round < 3; round++) { // the last round is the measured one
+      long begin = System.nanoTime();
+      for (Integer k : keys) {
+        sink += map.getOrDefault(k, 0);
+      }
+      nanos = System.nanoTime() - begin;
+    }
+    System.out.printf("  %s %7.1f ns/lookup (%d)%n", name, nanos / (double) keys.length, sink);
+  }
+
+  private static void scans(String name, OrderedMap<Integer, Integer> map, Integer[] starts) {
+    int count = starts.length / 10;
+    long sink = 0;
+    long nanos = 0;
+    for (int round = 0; round < 3; round++) {
+      long begin = System.nanoTime();
+      for (int i = 0; i < count; i++) {
+        int from = starts[i];
+        for (Cursor<Integer, Integer> c = map.cursor(from, from + 200); c.advance(); ) {
+          sink += c.value();
+        }
+      }
+      nanos = System.nanoTime() - begin;
+    }
+    System.out.printf("  %s %7.1f ns/scan (%d)%n", name, nanos / (double) count, sink);
+  }
+}
@@ -0,0 +1,1204 @@
+package BTree;
+
+import HashTable.Codec;
+import HashTable.IntObjectMap;
+import Map.Cursor;
+import Map.EmptyException;
+import Map.OrderedMap;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * OrderedMap stored as a B+tree of fixed-size pages in a file, for
+ * indexes larger than memory that outlive the process.
+ *
+ * <p>The tree has the shape of BPlusTreeMap: inner pages only route,
+ * leaf pages hold the entries and are linked in key order. A page holds
+ * as many entries as fit in its bytes rather than a fixed fanout, and a
+ * page that overflows is split at its byte midpoint. Page 0 is a header
+ * with the root, the height, the size and the list of free pages, so
+ * opening an existing file reads that one page; everything else is read
+ * when a lookup first reaches it.</p>
+ *
+ * <p>Pages are read and written through a FileChannel and kept in a
+ * buffer pool of a fixed number of pages. When the pool is full a
+ * clock sweep evicts a page that has not been used since the hand last
+ * passed it, writing it back if it is dirty. flush() writes all dirty
+ * pages in page order, runs of adjacent pages in one write, then the
+ * header, and forces the file to disk once; close() flushes. There is no
+ * log: the file is consistent after flush() or close(), but a crash in
+ * between can leave it torn.</p>
+ *
+ * <p>Keys and values go through a Codec each. With a fixed width the
+ * encoded form must have exactly that many bytes and is stored as is;
+ * with width VARIABLE it is stored after a two-byte length. Keys are
+ * compared decoded, so the codec need not preserve order. A leaf is
+ * freed once its last entry is removed, but pages are not merged while
+ * they still hold entries.</p>
+ *
+ * <p>I/O errors are thrown as UncheckedIOException, since the Map
+ * operations do not declare IOException.</p>
+ *
+ * @param <K> Type for keys.
+ * @param <V> Type for values.
+ */
+public class DiskBPlusTreeMap<K extends Comparable<K>, V> implements OrderedMap<K, V>, Closeable {
+
+  /**
+   * Width of keys or values stored with a length prefix.
+   */
+  public static final int VARIABLE = 0;
+
+  private static final int MAGIC = 0x42505431; // "BPT1"
+  private static final int DEFAULT_PAGE_SIZE = 4096;
+  private static final int DEFAULT_CACHE_PAGES = 1024;
+  private static final int PAGE_HEADER = 16; // type, count, next and prev leaf
+  private static final int NIL = 0; // page 0 is the file header, so no link points there
+  private static final int MAX_BATCH = 64; // most pages written by one call in flush()
+  private static final byte FREE = 0;
+  private static final byte LEAF = 1;
+  private static final byte INNER = 2;
+
+  private final Codec<K> keyCodec;
+  private final Codec<V> valueCodec;
+  private final int keyWidth;
+  private final int valueWidth;
+  private final int pageSize;
+  private final int maxRecord; // largest entry, so that a split always gives two pages that fit
+  private final int cachePages;
+  private final FileChannel channel;
+  private final ByteBuffer io; // one page, for reading pages and writing the header
+
+  // tree state, saved in the header page
+  private int root;
+  private int height; // number of inner levels above the leaves
+  private long size;
+  private int pageCount;
+  private int freeHead; // first free page, each links to the next
+  private int head; // leftmost leaf
+  private int tail; // rightmost leaf
+
+  // buffer pool: the cached pages, each in a frame the clock hand sweeps
+  private final IntObjectMap<Page> cached = new IntObjectMap<>();
+  private Page[] frames;
+  private int numFrames;
+  private int hand;
+
+  // path of the last descend(): the inner pages from the root down and the child taken in each
+  private Page[] pathPages = new Page[8];
+  private int[] pathSlots = new int[8];
+  private int depth;
+
+  /**
+   * Opens a tree with 4KB pages and a pool of 1024 pages, creating the
+   * file if it does not exist yet.
+   *
+   * @param file File backing the tree.
+   * @param keyCodec Converts keys to bytes.
+   * @param keyWidth Bytes in every encoded key, or VARIABLE.
+   * @param valueCodec Converts values to bytes.
+   * @param valueWidth Bytes in every encoded value, or VARIABLE.
+   * @throws IOException If the file cannot be opened or read.
+   * @throws IllegalArgumentException If a width is negative or too large
+   *     for a page, or the file holds a tree with different settings.
+   */
+  public DiskBPlusTreeMap(Path file, Codec<K> keyCodec, int keyWidth, Codec<V> valueCodec, int valueWidth)
+      throws IOException {
+    this(file, keyCodec, keyWidth, valueCodec, valueWidth, DEFAULT_PAGE_SIZE, DEFAULT_CACHE_PAGES);
+  }
+
+  /**
+   * Opens a tree, creating the file if it does not exist yet.
+   *
+   * @param file File backing the tree.
+   * @param keyCodec Converts keys to bytes.
+   * @param keyWidth Bytes in every encoded key, or VARIABLE.
+   * @param valueCodec Converts values to bytes.
+   * @param valueWidth Bytes in every encoded value, or VARIABLE.
+   * @param pageSize Bytes in a page, from 256 to 65536.
+   * @param cachePages Most pages kept in memory between operations.
+   * @throws IOException If the file cannot be opened or read.
+   * @throws IllegalArgumentException If a setting is out of range, or the
+   *     file holds a tree with a different page size or widths.
+   */
+  public DiskBPlusTreeMap(Path file, Codec<K> keyCodec, int keyWidth, Codec<V> valueCodec, int valueWidth,
+                          int pageSize, int cachePages) throws IOException {
+    if (pageSize < 256 || pageSize > 65536) {
+      throw new IllegalArgumentException("page size must be from 256 to 65536");
+    }
+    if (cachePages < 8) {
+      throw new IllegalArgumentException("cache must hold at least 8 pages");
+    }
+    if (keyWidth < 0 || valueWidth < 0) {
+      throw new IllegalArgumentException("key and value widths must not be negative");
+    }
+    this.keyCodec = keyCodec;
+    this.valueCodec = valueCodec;
+    this.keyWidth = keyWidth;
+    this.valueWidth = valueWidth;
+    this.pageSize = pageSize;
+    this.cachePages = cachePages;
+    maxRecord = (pageSize - PAGE_HEADER - 4) / 4;
+    int keySize = keyWidth == VARIABLE ? 2 : keyWidth; // smallest entry with these widths
+    int valueSize = valueWidth == VARIABLE ? 2 : valueWidth;
+    if (keySize + valueSize > maxRecord || keySize + 4 > maxRecord) {
+      throw new IllegalArgumentException("key and value widths too large for the page size");
+    }
+    frames = new Page[cachePages + 16];
+    io = ByteBuffer.allocate(pageSize);
+    boolean exists = Files.exists(file) && Files.size(file) >= pageSize;
+    channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    if (!exists) {
+      channel.truncate(0);
+      pageCount = 1;
+      Page leaf = newPage(LEAF);
+      root = leaf.id;
+      head = leaf.id;
+      tail = leaf.id;
+      return;
+    }
+    io.clear();
+    readFully(io, 0);
+    if (io.getInt(0) != MAGIC || io.getInt(4) != pageSize || io.getInt(8) != keyWidth
+        || io.getInt(12) != valueWidth) {
+      channel.close();
+      throw new IllegalArgumentException("file does not hold a tree with this page size and these key/value widths");
+    }
+    root = io.getInt(16);
+    height = io.getInt(20);
+    size = io.getLong(24);
+    pageCount = io.getInt(32);
+    freeHead = io.getInt(36);
+    head = io.getInt(40);
+    tail = io.getInt(44);
+  }
+
+  // Bytes a field takes in a page.
+  private static int fieldSize(byte[] bytes, int width) {
+    return width == VARIABLE ? 2 + bytes.length : width;
+  }
+
+  private static byte[] checkField(byte[] bytes, int width, String what) {
+    if (width != VARIABLE ? bytes.length != width : bytes.length > 0xFFFF) {
+      throw new IllegalArgumentException(what + " encodes to " + bytes.length + " bytes, "
+          + (width != VARIABLE ? "not " + width : "more than a length prefix holds"));
+    }
+    return bytes;
+  }
+
+  private byte[] encodeKey(K k) {
+    return checkField(keyCodec.encode(k), keyWidth, "key");
+  }
+
+  // Encoded value, checked to fit in a page next to a key of the given size.
+  private byte[] encodeValue(V v, byte[] keyBytes) {
+    byte[] bytes = checkField(valueCodec.encode(v), valueWidth, "value");
+    int keySize = fieldSize(keyBytes, keyWidth);
+    if (keySize + fieldSize(bytes, valueWidth) > maxRecord || keySize + 4 > maxRecord) {
+      throw new IllegalArgumentException("entry too large for a page of " + pageSize + " bytes");
+    }
+    return bytes;
+  }
+
+  // Bytes entry i takes in a page: key and value in a leaf, key and child in an inner page.
+  private int recordSize(Page p, int i) {
+    return fieldSize(p.keyBytes[i], keyWidth) + (p.type == LEAF ? fieldSize(p.values[i], valueWidth) : 4);
+  }
+
+  // Bytes p takes encoded.
+  private int measure(Page p) {
+    int bytes = PAGE_HEADER + (p.type == INNER ? 4 : 0);
+    for (int i = 0; i < p.count; i++) {
+      bytes += recordSize(p, i);
+    }
+    return bytes;
+  }
+
+  // ---- buffer pool ----
+
+  // Page id, read from the file unless it is cached.
+  private Page fetch(int id) {
+    Page p;
+    if (cached.has(id)) {
+      p = cached.get(id);
+    } else {
+      p = read(id);
+      addFrame(p);
+    }
+    p.referenced = true;
+    return p;
+  }
+
+  private void addFrame(Page p) {
+    if (numFrames == frames.length) {
+      frames = Arrays.copyOf(frames, 2 * frames.length);
+    }
+    p.frame = numFrames;
+    frames[numFrames++] = p;
+    cached.insert(p.id, p);
+  }
+
+  // Evict pages until the pool is back to its size. Only called between
+  // operations, so no page an operation is working on goes away under it.
+  private void trimCache() {
+    while (numFrames > cachePages) {
+      if (hand >= numFrames) {
+        hand = 0;
+      }
+      Page p = frames[hand];
+      if (p.referenced) { // second chance
+        p.referenced = false;
+        hand++;
+      } else {
+        if (p.dirty) {
+          write(p);
+        }
+        cached.remove(p.id);
+        Page last = frames[--numFrames]; // the last frame takes the freed one, the hand looks at it next
+        frames[hand] = last;
+        last.frame = hand;
+        frames[numFrames] = null;
+      }
+    }
+  }
+
+  // A new empty page of the given type, reusing a free page if there is one.
+  private Page newPage(byte type) {
+    Page p;
+    if (freeHead != NIL) {
+      p = fetch(freeHead);
+      freeHead = p.next;
+    } else {
+      p = new Page(pageCount++);
+      addFrame(p);
+      p.referenced = true;
+    }
+    p.type = type;
+    p.count = 0;
+    p.raw = null;
+    p.next = NIL;
+    p.prev = NIL;
+    p.bytes = PAGE_HEADER + (type == INNER ? 4 : 0);
+    p.dirty = true;
+    return p;
+  }
+
+  private void free(Page p) {
+    Arrays.fill(p.keys, 0, p.count, null);
+    Arrays.fill(p.keyBytes, 0, p.count, null);
+    Arrays.fill(p.values, 0, p.count, null);
+    p.type = FREE;
+    p.count = 0;
+    p.raw = null;
+    p.next = freeHead;
+    p.prev = NIL;
+    p.dirty = true;
+    freeHead = p.id;
+  }
+
+  private void readFully(ByteBuffer b, long position) throws IOException {
+    while (b.hasRemaining()) {
+      int n = channel.read(b, position + b.position());
+      if (n < 0) {
+        throw new IOException("page at " + position + " is past the end of the file");
+      }
+    }
+  }
+
+  private void writeFully(ByteBuffer b, long position) throws IOException {
+    while (b.hasRemaining()) {
+      channel.write(b, position + b.position());
+    }
+  }
+
+  private Page read(int id) {
+    byte[] raw = new byte[pageSize];
+    ByteBuffer b = ByteBuffer.wrap(raw);
+    try {
+      readFully(b, (long) id * pageSize);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    Page p = new Page(id);
+    p.type = b.get(0);
+    int n = b.getInt(4);
+    p.next = b.getInt(8);
+    p.prev = b.getInt(12);
+    p.room(n);
+    int at = PAGE_HEADER;
+    if (p.type == INNER) {
+      p.children[0] = b.getInt(at);
+      at += 4;
+    }
+    for (int i = 0; i < n; i++) { // only find where the entries are
+      p.offsets[i] = at;
+      at = fieldEnd(raw, at, keyWidth);
+      if (p.type == LEAF) {
+        at = fieldEnd(raw, at, valueWidth);
+      } else {
+        p.children[i + 1] = b.getInt(at);
+        at += 4;
+      }
+    }
+    p.count = n;
+    p.bytes = at;
+    p.raw = n > 0 ? raw : null;
+    return p;
+  }
+
+  // Offset just past the field that starts at offset at.
+  private static int fieldEnd(byte[] raw, int at, int width) {
+    return width == VARIABLE ? at + 2 + ((raw[at] & 0xFF) << 8 | raw[at + 1] & 0xFF) : at + width;
+  }
+
+  private static byte[] field(byte[] raw, int at, int width) {
+    int start = width == VARIABLE ? at + 2 : at;
+    return Arrays.copyOfRange(raw, start, fieldEnd(raw, at, width));
+  }
+
+  // Encoded key i of p, cut from the page image the first time.
+  private byte[] keyBytes(Page p, int i) {
+    byte[] bytes = p.keyBytes[i];
+    if (bytes == null) {
+      bytes = field(p.raw, p.offsets[i], keyWidth);
+      p.keyBytes[i] = bytes;
+    }
+    return bytes;
+  }
+
+  // Encoded value i of a leaf, cut from the page image the first time.
+  private byte[] valueBytes(Page leaf, int i) {
+    byte[] bytes = leaf.values[i];
+    if (bytes == null) {
+      bytes = field(leaf.raw, fieldEnd(leaf.raw, leaf.offsets[i], keyWidth), valueWidth);
+      leaf.values[i] = bytes;
+    }
+    return bytes;
+  }
+
+  // Key i of p, decoded the first time.
+  @SuppressWarnings("unchecked")
+  private K keyOf(Page p, int i) {
+    Object k = p.keys[i];
+    if (k == null) {
+      k = keyCodec.decode(keyBytes(p, i));
+      p.keys[i] = k;
+    }
+    return (K) k;
+  }
+
+  // Cut every field out of the page image, before entries are moved around.
+  private void materialize(Page p) {
+    if (p.raw == null) {
+      return;
+    }
+    for (int i = 0; i < p.count; i++) {
+      keyBytes(p, i);
+      if (p.type == LEAF) {
+        valueBytes(p, i);
+      }
+    }
+    p.raw = null;
+  }
+
+  private static void writeField(ByteBuffer b, byte[] bytes, int width) {
+    if (width == VARIABLE) {
+      b.putShort((short) bytes.length);
+    }
+    b.put(bytes);
+  }
+
+  // Encode p at the position of b, taking exactly one page.
+  private void encode(Page p, ByteBuffer b) {
+    int end = b.position() + pageSize;
+    b.put(p.type).put((byte) 0).putShort((short) 0);
+    b.putInt(p.count).putInt(p.next).putInt(p.prev);
+    if (p.raw != null) { // only the links changed, the entries are as read
+      b.put(p.raw, PAGE_HEADER, p.bytes - PAGE_HEADER);
+      Arrays.fill(b.array(), b.position(), end, (byte) 0);
+      b.position(end);
+      return;
+    }
+    if (p.type == INNER) {
+      b.putInt(p.children[0]);
+    }
+    for (int i = 0; i < p.count; i++) {
+      writeField(b, p.keyBytes[i], keyWidth);
+      if (p.type == LEAF) {
+        writeField(b, p.values[i], valueWidth);
+      } else {
+        b.putInt(p.children[i + 1]);
+      }
+    }
+    Arrays.fill(b.array(), b.position(), end, (byte) 0);
+    b.position(end);
+  }
+
+  private void write(Page p) {
+    io.clear();
+    encode(p, io);
+    io.flip();
+    try {
+      writeFully(io, (long) p.id * pageSize);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    p.dirty = false;
+  }
+
+  /**
+   * Write every changed page and the header, and force them to disk.
+   *
+   * <p>Dirty pages are written in page order, adjacent pages together
+   * in writes of up to 64 pages, followed by a single fsync.</p>
+   *
+   * @throws UncheckedIOException If writing fails.
+   */
+  public void flush() {
+    Page[] dirty = new Page[numFrames];
+    int n = 0;
+    for (int i = 0; i < numFrames; i++) {
+      if (frames[i].dirty) {
+        dirty[n++] = frames[i];
+      }
+    }
+    Arrays.sort(dirty, 0, n, Comparator.comparingInt((Page p) -> p.id));
+    try {
+      ByteBuffer batch = ByteBuffer.allocate(Math.min(n, MAX_BATCH) * pageSize);
+      for (int i = 0; i < n; ) {
+        int j = i;
+        batch.clear();
+        do {
+          encode(dirty[j], batch);
+          dirty[j].dirty = false;
+          j++;
+        } while (j < n && j - i < MAX_BATCH && dirty[j].id == dirty[j - 1].id + 1);
+        batch.flip();
+        writeFully(batch, (long) dirty[i].id * pageSize);
+        i = j;
+      }
+      io.clear();
+      io.putInt(MAGIC).putInt(pageSize).putInt(keyWidth).putInt(valueWidth);
+      io.putInt(root).putInt(height).putLong(size);
+      io.putInt(pageCount).putInt(freeHead).putInt(head).putInt(tail);
+      Arrays.fill(io.array(), io.position(), pageSize, (byte) 0);
+      io.clear();
+      writeFully(io, 0);
+      channel.force(true);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Flush and close the file. The map cannot be used afterwards.
+   *
+   * @throws IOException If writing or closing the file fails.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+    } catch (UncheckedIOException e) {
+      channel.close();
+      throw e.getCause();
+    }
+    channel.close();
+  }
+
+  // ---- tree ----
+
+  // Index of k among the keys of p if it is there, otherwise -(insertion point) - 1.
+  private int search(Page p, K k) {
+    int low = 0;
+    int high = p.count - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = keyOf(p, mid).compareTo(k);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -low - 1;
+  }
+
+  // Child of an inner page whose range holds k.
+  private int childFor(Page p, K k) {
+    int i = search(p, k);
+    return i >= 0 ? i + 1 : -i - 1;
+  }
+
+  // Leaf where k is or would be.
+  private Page leafFor(K k) {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    Page p = fetch(root);
+    for (int level = height; level > 0; level--) {
+      p = fetch(p.children[childFor(p, k)]);
+    }
+    return p;
+  }
+
+  // Like leafFor(), but remember the path for a following insertAt(), replaceAt() or removeAt().
+  private Page descend(K k) {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    if (pathPages.length < height) {
+      pathPages = new Page[2 * height];
+      pathSlots = new int[2 * height];
+    }
+    depth = 0;
+    Page p = fetch(root);
+    for (int level = height; level > 0; level--) {
+      int slot = childFor(p, k);
+      pathPages[depth] = p;
+      pathSlots[depth] = slot;
+      depth++;
+      p = fetch(p.children[slot]);
+    }
+    return p;
+  }
+
+  // Insert an entry at pos in the leaf found by the last descend(), splitting up the path as needed.
+  private void insertAt(Page leaf, int pos, K k, byte[] kb, byte[] vb) {
+    materialize(leaf);
+    leaf.room(leaf.count + 1);
+    int moved = leaf.count - pos;
+    System.arraycopy(leaf.keys, pos, leaf.keys, pos + 1, moved);
+    System.arraycopy(leaf.keyBytes, pos, leaf.keyBytes, pos + 1, moved);
+    System.arraycopy(leaf.values, pos, leaf.values, pos + 1, moved);
+    leaf.keys[pos] = k;
+    leaf.keyBytes[pos] = kb;
+    leaf.values[pos] = vb;
+    leaf.count++;
+    leaf.bytes += recordSize(leaf, pos);
+    leaf.dirty = true;
+    size++;
+    if (leaf.bytes > pageSize) {
+      splitLeaf(leaf);
+    }
+  }
+
+  // Replace value i of the leaf found by the last descend(); a longer value may split it.
+  private void replaceAt(Page leaf, int i, byte[] vb) {
+    materialize(leaf);
+    leaf.bytes += fieldSize(vb, valueWidth) - fieldSize(leaf.values[i], valueWidth);
+    leaf.values[i] = vb;
+    leaf.dirty = true;
+    if (leaf.bytes > pageSize) {
+      splitLeaf(leaf);
+    }
+  }
+
+  // Index where the upper part of an overflowing page starts, so both parts hold about half the bytes.
+  private int splitPoint(Page p, int low, int high) {
+    int total = p.bytes - PAGE_HEADER;
+    int bytes = 0;
+    int i = 0;
+    while (i < p.count && 2 * bytes < total) {
+      bytes += recordSize(p, i);
+      i++;
+    }
+    return Math.max(low, Math.min(high, i));
+  }
+
+  private void splitLeaf(Page leaf) {
+    Page right = newPage(LEAF);
+    int half = splitPoint(leaf, 1, leaf.count - 1);
+    int moved = leaf.count - half;
+    right.room(moved);
+    System.arraycopy(leaf.keys, half, right.keys, 0, moved);
+    System.arraycopy(leaf.keyBytes, half, right.keyBytes, 0, moved);
+    System.arraycopy(leaf.values, half, right.values, 0, moved);
+    right.count = moved;
+    truncate(leaf, half);
+    right.bytes = measure(right);
+    right.next = leaf.next;
+    right.prev = leaf.id;
+    if (leaf.next != NIL) {
+      Page next = fetch(leaf.next);
+      next.prev = right.id;
+      next.dirty = true;
+    } else {
+      tail = right.id;
+    }
+    leaf.next = right.id;
+    insertInParent(leaf, right.keys[0], right.keyBytes[0], right);
+  }
+
+  // Drop the entries of p from index count on.
+  private void truncate(Page p, int count) {
+    Arrays.fill(p.keys, count, p.count, null);
+    Arrays.fill(p.keyBytes, count, p.count, null);
+    Arrays.fill(p.values, count, p.count, null);
+    p.count = count;
+    p.bytes = measure(p);
+    p.dirty = true;
+  }
+
+  // Add separator and right next to left in the parent from the path, splitting up as needed.
+  private void insertInParent(Page left, Object separator, byte[] separatorBytes, Page right) {
+    if (depth == 0) { // left was the root
+      Page r = newPage(INNER);
+      r.children[0] = left.id;
+      r.children[1] = right.id;
+      r.keys[0] = separator;
+      r.keyBytes[0] = separatorBytes;
+      r.count = 1;
+      r.bytes += recordSize(r, 0);
+      root = r.id;
+      height++;
+      return;
+    }
+    depth--;
+    Page parent = pathPages[depth];
+    int slot = pathSlots[depth]; // where left hangs, so right goes at slot + 1
+    materialize(parent);
+    parent.room(parent.count + 1);
+    System.arraycopy(parent.keys, slot, parent.keys, slot + 1, parent.count - slot);
+    System.arraycopy(parent.keyBytes, slot, parent.keyBytes, slot + 1, parent.count - slot);
+    System.arraycopy(parent.children, slot + 1, parent.children, slot + 2, parent.count - slot);
+    parent.keys[slot] = separator;
+    parent.keyBytes[slot] = separatorBytes;
+    parent.children[slot + 1] = right.id;
+    parent.count++;
+    parent.bytes += recordSize(parent, slot);
+    parent.dirty = true;
+    if (parent.bytes > pageSize) {
+      splitInner(parent);
+    }
+  }
+
+  private void splitInner(Page node) {
+    Page right = newPage(INNER);
+    int mid = splitPoint(node, 1, node.count - 2); // key that moves up
+    int moved = node.count - mid - 1;
+    right.room(moved);
+    System.arraycopy(node.keys, mid + 1, right.keys, 0, moved);
+    System.arraycopy(node.keyBytes, mid + 1, right.keyBytes, 0, moved);
+    System.arraycopy(node.children, mid + 1, right.children, 0, moved + 1);
+    right.count = moved;
+    right.bytes = measure(right);
+    Object separator = node.keys[mid];
+    byte[] separatorBytes = node.keyBytes[mid];
+    truncate(node, mid);
+    insertInParent(node, separator, separatorBytes, right);
+  }
+
+  // Remove entry pos of the leaf found by the last descend(), freeing the leaf if it empties.
+  private byte[] removeAt(Page leaf, int pos) {
+    materialize(leaf);
+    byte[] vb = leaf.values[pos];
+    leaf.bytes -= recordSize(leaf, pos);
+    int moved = leaf.count - pos - 1;
+    System.arraycopy(leaf.keys, pos + 1, leaf.keys, pos, moved);
+    System.arraycopy(leaf.keyBytes, pos + 1, leaf.keyBytes, pos, moved);
+    System.arraycopy(leaf.values, pos + 1, leaf.values, pos, moved);
+    leaf.count--;
+    leaf.keys[leaf.count] = null;
+    leaf.keyBytes[leaf.count] = null;
+    leaf.values[leaf.count] = null;
+    leaf.dirty = true;
+    size--;
+    if (leaf.count == 0 && depth > 0) { // the root leaf stays, even when empty
+      unlink(leaf);
+      free(leaf);
+      removeFromParent();
+    }
+    return vb;
+  }
+
+  private void unlink(Page leaf) {
+    if (leaf.prev != NIL) {
+      Page prev = fetch(leaf.prev);
+      prev.next = leaf.next;
+      prev.dirty = true;
+    } else {
+      head = leaf.next;
+    }
+    if (leaf.next != NIL) {
+      Page next = fetch(leaf.next);
+      next.prev = leaf.prev;
+      next.dirty = true;
+    } else {
+      tail = leaf.prev;
+    }
+  }
+
+  // Remove the child taken at the last level of the path, which has been freed.
+  private void removeFromParent() {
+    depth--;
+    Page parent = pathPages[depth];
+    int slot = pathSlots[depth];
+    if (parent.count == 0) { // it was the only child; only a page below the root can get here
+      free(parent);
+      removeFromParent();
+      return;
+    }
+    materialize(parent);
+    int key = slot > 0 ? slot - 1 : 0; // drop the separator on the side of the removed child
+    parent.bytes -= recordSize(parent, key);
+    System.arraycopy(parent.keys, key + 1, parent.keys, key, parent.count - key - 1);
+    System.arraycopy(parent.keyBytes, key + 1, parent.keyBytes, key, parent.count - key - 1);
+    System.arraycopy(parent.children, slot + 1, parent.children, slot, parent.count - slot);
+    parent.count--;
+    parent.keys[parent.count] = null;
+    parent.keyBytes[parent.count] = null;
+    parent.dirty = true;
+    Page r = fetch(root);
+    while (height > 0 && r.count == 0) { // a root with one child hands over to it
+      root = r.children[0];
+      height--;
+      free(r);
+      r = fetch(root);
+    }
+  }
+
+  // Key at index i of a leaf, where i may run one past either end into the neighbouring leaf.
+  private K keyNear(Page leaf, int i) {
+    if (i < 0) {
+      if (leaf.prev == NIL) {
+        return null;
+      }
+      Page prev = fetch(leaf.prev);
+      return keyOf(prev, prev.count - 1);
+    }
+    if (i >= leaf.count) {
+      return leaf.next == NIL ? null : keyOf(fetch(leaf.next), 0);
+    }
+    return keyOf(leaf, i);
+  }
+
+  private V valueOf(Page leaf, int i) {
+    return valueCodec.decode(valueBytes(leaf, i));
+  }
+
+  @Override
+  public void insert(K k, V v) throws IllegalArgumentException {
+    trimCache();
+    Page leaf = descend(k);
+    int i = search(leaf, k);
+    if (i >= 0) {
+      throw new IllegalArgumentException("duplicate key " + k);
+    }
+    byte[] kb = encodeKey(k);
+    insertAt(leaf, -i - 1, k, kb, encodeValue(v, kb));
+  }
+
+  @Override
+  public V remove(K k) throws IllegalArgumentException {
+    trimCache();
+    Page leaf = descend(k);
+    int i = search(leaf, k);
+    if (i < 0) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    return valueCodec.decode(removeAt(leaf, i));
+  }
+
+  @Override
+  public void put(K k, V v) throws IllegalArgumentException {
+    trimCache();
+    Page leaf = descend(k);
+    int i = search(leaf, k);
+    if (i < 0) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    replaceAt(leaf, i, encodeValue(v, keyBytes(leaf, i)));
+  }
+
+  @Override
+  public V get(K k) throws IllegalArgumentException {
+    trimCache();
+    Page leaf = leafFor(k);
+    int i = search(leaf, k);
+    if (i < 0) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    return valueOf(leaf, i);
+  }
+
+  @Override
+  public boolean has(K k) {
+    if (k == null) {
+      return false;
+    }
+    trimCache();
+    return search(leafFor(k), k) >= 0;
+  }
+
+  /**
+   * Number of entries, or Integer.MAX_VALUE if there are more.
+   *
+   * @return The number of entries.
+   */
+  @Override
+  public int size() {
+    return (int) Math.min(size, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public V getOrDefault(K k, V defaultValue) {
+    if (k == null) {
+      return defaultValue;
+    }
+    trimCache();
+    Page leaf = leafFor(k);
+    int i = search(leaf, k);
+    return i < 0 ? defaultValue : valueOf(leaf, i);
+  }
+
+  @Override
+  public V putIfAbsent(K k, V v) throws IllegalArgumentException {
+    trimCache();
+    Page leaf = descend(k);
+    int i = search(leaf, k);
+    if (i >= 0) {
+      return valueOf(leaf, i);
+    }
+    byte[] kb = encodeKey(k);
+    insertAt(leaf, -i - 1, k, kb, encodeValue(v, kb));
+    return null;
+  }
+
+  @Override
+  public void upsert(K k, V v) throws IllegalArgumentException {
+    trimCache();
+    Page leaf = descend(k);
+    int i = search(leaf, k);
+    if (i >= 0) {
+      replaceAt(leaf, i, encodeValue(v, keyBytes(leaf, i)));
+    } else {
+      byte[] kb = encodeKey(k);
+      insertAt(leaf, -i - 1, k, kb, encodeValue(v, kb));
+    }
+  }
+
+  @Override
+  public V compute(K k, BiFunction<? super K, ? super V, ? extends V> remap)
+      throws IllegalArgumentException {
+    trimCache();
+    Page leaf = descend(k);
+    int i = search(leaf, k);
+    V newValue = remap.apply(k, i < 0 ? null : valueOf(leaf, i));
+    if (newValue == null) {
+      if (i >= 0) {
+        removeAt(leaf, i);
+      }
+    } else if (i < 0) {
+      byte[] kb = encodeKey(k);
+      insertAt(leaf, -i - 1, k, kb, encodeValue(newValue, kb));
+    } else {
+      replaceAt(leaf, i, encodeValue(newValue, keyBytes(leaf, i)));
+    }
+    return newValue;
+  }
+
+  @Override
+  public V merge(K k, V v, BiFunction<? super V, ? super V, ? extends V> remap)
+      throws IllegalArgumentException {
+    trimCache();
+    Page leaf = descend(k);
+    int i = search(leaf, k);
+    if (i < 0) {
+      byte[] kb = encodeKey(k);
+      insertAt(leaf, -i - 1, k, kb, encodeValue(v, kb));
+      return v;
+    }
+    V newValue = remap.apply(valueOf(leaf, i), v);
+    if (newValue == null) {
+      removeAt(leaf, i);
+    } else {
+      replaceAt(leaf, i, encodeValue(newValue, keyBytes(leaf, i)));
+    }
+    return newValue;
+  }
+
+  @Override
+  public K first() throws EmptyException {
+    if (size == 0) {
+      throw new EmptyException("map is empty");
+    }
+    trimCache();
+    return keyOf(fetch(head), 0);
+  }
+
+  @Override
+  public K last() throws EmptyException {
+    if (size == 0) {
+      throw new EmptyException("map is empty");
+    }
+    trimCache();
+    Page leaf = fetch(tail);
+    return keyOf(leaf, leaf.count - 1);
+  }
+
+  @Override
+  public K floorKey(K k) throws IllegalArgumentException {
+    trimCache();
+    Page leaf = leafFor(k);
+    int i = search(leaf, k);
+    return keyNear(leaf, i >= 0 ? i : -i - 2);
+  }
+
+  @Override
+  public K ceilingKey(K k) throws IllegalArgumentException {
+    trimCache();
+    Page leaf = leafFor(k);
+    int i = search(leaf, k);
+    return keyNear(leaf, i >= 0 ? i : -i - 1);
+  }
+
+  @Override
+  public K lowerKey(K k) throws IllegalArgumentException {
+    trimCache();
+    Page leaf = leafFor(k);
+    int i = search(leaf, k);
+    return keyNear(leaf, i >= 0 ? i - 1 : -i - 2);
+  }
+
+  @Override
+  public K higherKey(K k) throws IllegalArgumentException {
+    trimCache();
+    Page leaf = leafFor(k);
+    int i = search(leaf, k);
+    return keyNear(leaf, i >= 0 ? i + 1 : -i - 1);
+  }
+
+  @Override
+  public Cursor<K, V> cursor() {
+    trimCache();
+    return new PageCursor(fetch(head), 0, null);
+  }
+
+  @Override
+  public Cursor<K, V> cursor(K from, K to) {
+    trimCache();
+    if (from == null) {
+      return new PageCursor(fetch(head), 0, to);
+    }
+    Page leaf = leafFor(from);
+    int i = search(leaf, from);
+    return new PageCursor(leaf, i >= 0 ? i : -i - 1, to);
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    for (Cursor<K, V> c = cursor(); c.advance(); ) {
+      action.accept(c.key(), c.value());
+    }
+  }
+
+  @Override
+  public Iterator<K> iterator() {
+    return range(null, null);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder s = new StringBuilder();
+    s.append("{");
+    for (Cursor<K, V> c = cursor(); c.advance(); ) {
+      if (s.length() > 1) {
+        s.append(", ");
+      }
+      s.append(c.key()).append(": ").append(c.value());
+    }
+    s.append("}");
+    return s.toString();
+  }
+
+  // A page as kept in the pool. Fields are cut from the page image and
+  // keys decoded when first needed, so a lookup only decodes the keys its
+  // binary search compares and the value it returns. Once entries move,
+  // the page holds every key and value encoded, and writing it back needs
+  // no codec.
+  private static final class Page {
+    final int id;
+    byte type;
+    int count; // entries of a leaf, keys of an inner page
+    Object[] keys = new Object[16];
+    byte[][] keyBytes = new byte[16][];
+    byte[][] values = new byte[16][]; // leaf only
+    int[] children = new int[17]; // inner only, count + 1 in use
+    byte[] raw; // the page as read, until its entries are first moved
+    int[] offsets = new int[16]; // where each entry starts in raw
+    int next; // leaf links, or the next free page
+    int prev;
+    int bytes; // size encoded, above pageSize only while it is being split
+    boolean dirty;
+    boolean referenced; // used since the clock hand last passed
+    int frame;
+
+    Page(int id) {
+      this.id = id;
+    }
+
+    // Make room for n keys and n + 1 children.
+    void room(int n) {
+      if (n < keys.length) {
+        return;
+      }
+      int capacity = Math.max(2 * keys.length, n + 1);
+      keys = Arrays.copyOf(keys, capacity);
+      keyBytes = Arrays.copyOf(keyBytes, capacity);
+      values = Arrays.copyOf(values, capacity);
+      children = Arrays.copyOf(children, capacity + 1);
+      offsets = Arrays.copyOf(offsets, capacity);
+    }
+  }
+
+  private class PageCursor implements Cursor<K, V> {
+    private final K to; // null to run to the last key
+    private Page leaf;
+    private int index;
+    private boolean onEntry;
+
+    // Positioned before the entry at index of leaf.
+    PageCursor(Page leaf, int index, K to) {
+      this.leaf = leaf;
+      this.index = index - 1;
+      this.to = to;
+    }
+
+    @Override
+    public boolean advance() {
+      if (leaf == null) {
+        return false;
+      }
+      index++;
+      while (index >= leaf.count) {
+        if (leaf.next == NIL) {
+          leaf = null;
+          onEntry = false;
+          return false;
+        }
+        trimCache();
+        leaf = fetch(leaf.next);
+        index = 0;
+      }
+      onEntry = to == null || keyOf(leaf, index).compareTo(to) < 0;
+      if (!onEntry) {
+        leaf = null;
+      }
+      return onEntry;
+    }
+
+    private void check() {
+      if (!onEntry) {
+        throw new IllegalStateException("cursor is not on an entry");
+      }
+    }
+
+    @Override
+    public K key() {
+      check();
+      return keyOf(leaf, index);
+    }
+
+    @Override
+    public V value() {
+      check();
+      return valueOf(leaf, index);
+    }
+
+    // Goes through the tree, since the page may have been evicted or the
+    // new value may not fit; then finds its place again.
+    @Override
+    public void setValue(V v) {
+      K k = key();
+      put(k, v);
+      leaf = leafFor(k);
+      index = search(leaf, k);
+    }
+  }
+
+  /**
+   * Populates a tree with more keys than the pool holds pages for, then
+   * times reopening it, lookups on the cold and the warm pool, and range
+   * scans.
+   *
+   * @param args Number of keys, optional.
+   * @throws IOException If the temporary file cannot be used.
+   */
+  public static void main(String[] args) throws IOException {
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+    Path path = Files.createTempFile("bplustree", ".db");
+    Files.delete(path);
+    Random rand = new Random(42);
+    int[] keys = new int[n];
+    for (int i = 0; i < n; i++) {
+      keys[i] = 2 * i; // even keys, so odd ones miss
+    }
+    for (int i = n - 1; i > 0; i--) {
+      int j = rand.nextInt(i + 1);
+      int t = keys[i];
+      keys[i] = keys[j];
+      keys[j] = t;
+    }
+
+    long begin = System.nanoTime();
+    try (DiskBPlusTreeMap<Integer, String> map = new DiskBPlusTreeMap<>(path, Codec.int32(), 4,
+        Codec.utf8(), VARIABLE)) {
+      for (int k : keys) {
+        map.insert(k, "value " + k);
+      }
+      System.out.printf("insert %d keys in random order: %8.1f ms%n", n, (System.nanoTime() - begin) / 1e6);
+      begin = System.nanoTime();
+    }
+    System.out.printf("close (flush and fsync):          %8.1f ms, file %d MB%n",
+        (System.nanoTime() - begin) / 1e6, Files.size(path) >> 20);
+
+    begin = System.nanoTime();
+    try (DiskBPlusTreeMap<Integer, String> map = new DiskBPlusTreeMap<>(path, Codec.int32(), 4,
+        Codec.utf8(), VARIABLE)) {
+      System.out.printf("reopen:                           %8.3f ms (%d entries)%n",
+          (System.nanoTime() - begin) / 1e6, map.size());
+      int[] lookups = new int[200_000];
+      for (int i = 0; i < lookups.length; i++) {
+        lookups[i] = rand.nextInt(2 * n);
+      }
+      for (int round = 0; round < 3; round++) {
+        begin = System.nanoTime();
+        long found = 0;
+        for (int k : lookups) {
+          if (map.getOrDefault(k, null) != null) {
+            found++;
+          }
+        }
+        System.out.printf("random lookups, %s pool:  %8.1f ns/lookup (%d found)%n",
+            round == 0 ? "cold" : "warm", (System.nanoTime() - begin) / (double) lookups.length, found);
+      }
+      begin = System.nanoTime();
+      long sink = 0;
+      int scans = 10_000;
+      for (int i = 0; i < scans; i++) {
+        int from = lookups[i];
+        for (Cursor<Integer, String> c = map.cursor(from, from + 200); c.advance(); ) {
+          sink += c.value().length();
+        }
+      }
+      System.out.printf("range scans of 100 keys:         %8.1f us/scan (%d)%n",
+          (System.nanoTime() - begin) / 1e3 / scans, sink);
+    }
+    Files.deleteIfExists(path);
+  }
+}
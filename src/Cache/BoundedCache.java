@@ -0,0 +1,444 @@
+package Cache;
+
+import DoublyLinkedList.LinkedList;
+import DoublyLinkedList.Position;
+import HashTable.ChainingHashMap;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Cache that holds entries up to a total weight and evicts others to
+ * stay under it.
+ *
+ * <p>A ChainingHashMap maps each key to its entry, and each entry sits
+ * in one of three LinkedLists ordered from least to most recently used;
+ * the entry keeps its Position, so it can be unlinked and moved to the
+ * back of a list in O(1). Which list an entry goes to and which entry
+ * is evicted depends on the policy:</p>
+ *
+ * <ul>
+ *   <li>LRU keeps everything in one list and evicts its front.</li>
+ *   <li>SLRU puts new entries in a probation segment and promotes them to
+ *   a protected segment (80% of the bound) on their second hit. Entries
+ *   pushed out of the protected segment go back to probation, and only
+ *   probation entries are evicted while there are any, so one pass over
+ *   many cold keys cannot flush the entries that were hit repeatedly.</li>
+ *   <li>W_TINY_LFU puts new entries in a small LRU window (1% of the
+ *   bound) in front of an SLRU main area. An entry leaving the window is
+ *   only admitted to the main area if a count-min sketch of recent
+ *   accesses says it is used more often than the entry it would evict,
+ *   otherwise it is evicted itself. Scans never get past the window and
+ *   frequently used keys stay cached even if they were not used lately.</li>
+ * </ul>
+ *
+ * <p>has() and size() do not count as uses of an entry. Null keys and
+ * values are not allowed, so getIfPresent() can return null for a miss.</p>
+ *
+ * @param <K> Type for keys.
+ * @param <V> Type for values.
+ */
+public class BoundedCache<K, V> {
+
+  /**
+   * Eviction policy.
+   */
+  public enum Policy { LRU, SLRU, W_TINY_LFU }
+
+  private static final int WINDOW_PERCENT = 1;
+  private static final int PROTECTED_PERCENT = 80;
+  private static final int MAX_SKETCH_KEYS = 1 << 20;
+
+  private final Policy policy;
+  private final long maxWeight;
+  private final Weigher<? super K, ? super V> weigher;
+  private final ChainingHashMap<K, Entry<K, V>> index;
+  private final LinkedList<Entry<K, V>> window;
+  private final LinkedList<Entry<K, V>> probation;
+  private final LinkedList<Entry<K, V>> protectedList;
+  private final long windowMax;
+  private final long mainMax;
+  private final long protectedMax;
+  private final FrequencySketch sketch; // null unless the policy is W_TINY_LFU
+  private long windowWeight;
+  private long probationWeight;
+  private long protectedWeight;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  /**
+   * Creates a cache that holds up to maxSize entries.
+   *
+   * @param policy The eviction policy.
+   * @param maxSize Most entries the cache holds.
+   * @throws IllegalArgumentException If maxSize is negative.
+   */
+  public BoundedCache(Policy policy, long maxSize) throws IllegalArgumentException {
+    this(policy, maxSize, Weigher.singleton());
+  }
+
+  /**
+   * Creates a cache whose entries weigh up to maxWeight in total.
+   *
+   * @param policy The eviction policy.
+   * @param maxWeight Most total weight the cache holds.
+   * @param weigher Weight of each entry, computed when it is put.
+   * @throws IllegalArgumentException If maxWeight is negative.
+   */
+  public BoundedCache(Policy policy, long maxWeight, Weigher<? super K, ? super V> weigher)
+      throws IllegalArgumentException {
+    if (maxWeight < 0) {
+      throw new IllegalArgumentException("maxWeight must not be negative");
+    }
+    this.policy = policy;
+    this.maxWeight = maxWeight;
+    this.weigher = weigher;
+    index = new ChainingHashMap<>();
+    window = new LinkedList<>();
+    probation = new LinkedList<>();
+    protectedList = new LinkedList<>();
+    windowMax = policy == Policy.W_TINY_LFU ? maxWeight * WINDOW_PERCENT / 100 : 0;
+    mainMax = maxWeight - windowMax;
+    protectedMax = policy == Policy.LRU ? 0 : mainMax * PROTECTED_PERCENT / 100;
+    // with weights the number of entries is unknown, so the weight stands in for it
+    sketch = policy == Policy.W_TINY_LFU
+        ? new FrequencySketch((int) Math.min(maxWeight, MAX_SKETCH_KEYS)) : null;
+  }
+
+  /**
+   * Get the value cached for a key, counting a hit or a miss.
+   *
+   * @param k The key.
+   * @return The value cached for k, or null if it is not cached.
+   * @throws IllegalArgumentException If k is null.
+   */
+  public V getIfPresent(K k) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    if (sketch != null) {
+      sketch.increment(k);
+    }
+    Entry<K, V> e = index.getOrNull(k);
+    if (e == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    touch(e);
+    return e.value;
+  }
+
+  /**
+   * Get the value cached for a key, loading and caching it on a miss.
+   *
+   * @param k The key.
+   * @param loader Function that computes the value for k.
+   * @return The value cached for k, or the one just loaded.
+   * @throws IllegalArgumentException If k is null or the loader returns null.
+   */
+  public V get(K k, Function<? super K, ? extends V> loader) throws IllegalArgumentException {
+    V v = getIfPresent(k);
+    if (v == null) {
+      v = loader.apply(k);
+      put(k, v);
+    }
+    return v;
+  }
+
+  /**
+   * Cache a value for a key, replacing any value already cached for it,
+   * and evict entries if the cache is now over its bound. The new entry
+   * itself may be evicted right away, and is if it weighs more than
+   * maxWeight().
+   *
+   * @param k The key.
+   * @param v The value.
+   * @throws IllegalArgumentException If k or v is null, or v weighs less than 0.
+   */
+  public void put(K k, V v) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    if (v == null) {
+      throw new IllegalArgumentException("cannot handle null value");
+    }
+    int weight = weigher.weigh(k, v);
+    if (weight < 0) {
+      throw new IllegalArgumentException("weight must not be negative");
+    }
+    Entry<K, V> e = index.getOrNull(k);
+    if (e != null) {
+      addWeight(e.list, weight - e.weight);
+      e.value = v;
+      e.weight = weight;
+      touch(e);
+    } else {
+      e = new Entry<>(k, v, weight);
+      index.insert(k, e);
+      link(e, policy == Policy.W_TINY_LFU ? window : probation);
+    }
+    if (weight > maxWeight) {
+      discard(e); // would never fit, don't flush the cache trying
+      return;
+    }
+    evict();
+  }
+
+  /**
+   * Remove the entry for a key, if it is cached. Not counted as an eviction.
+   *
+   * @param k The key.
+   * @return The value that was cached for k, or null if it was not cached.
+   */
+  public V remove(K k) {
+    Entry<K, V> e = index.removeOrNull(k);
+    if (e == null) {
+      return null;
+    }
+    unlink(e);
+    return e.value;
+  }
+
+  /**
+   * Check whether a key is cached, without counting a use of it.
+   *
+   * @param k The key.
+   * @return True if a value is cached for k, false otherwise (even for null!).
+   */
+  public boolean has(K k) {
+    return index.has(k);
+  }
+
+  /**
+   * Number of cached entries.
+   *
+   * @return Number of key/value pairs in the cache.
+   */
+  public int size() {
+    return index.size();
+  }
+
+  /**
+   * Total weight of the cached entries.
+   *
+   * @return The weight, at most maxWeight().
+   */
+  public long weight() {
+    return windowWeight + probationWeight + protectedWeight;
+  }
+
+  /**
+   * The bound on the total weight.
+   *
+   * @return The most weight the cache holds.
+   */
+  public long maxWeight() {
+    return maxWeight;
+  }
+
+  /**
+   * Number of getIfPresent() calls that found their key.
+   *
+   * @return Hits since the cache was created.
+   */
+  public long hits() {
+    return hits;
+  }
+
+  /**
+   * Number of getIfPresent() calls that did not find their key.
+   *
+   * @return Misses since the cache was created.
+   */
+  public long misses() {
+    return misses;
+  }
+
+  /**
+   * Number of entries evicted to stay under the bound.
+   *
+   * @return Evictions since the cache was created.
+   */
+  public long evictions() {
+    return evictions;
+  }
+
+  /**
+   * Fraction of lookups that were hits.
+   *
+   * @return Hits divided by hits plus misses, 0 if there were no lookups.
+   */
+  public double hitRate() {
+    long lookups = hits + misses;
+    return lookups == 0 ? 0 : hits / (double) lookups;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s size=%d weight=%d/%d hits=%d misses=%d evictions=%d hitRate=%.3f",
+        policy, size(), weight(), maxWeight, hits, misses, evictions, hitRate());
+  }
+
+  // Record a use of a cached entry.
+  private void touch(Entry<K, V> e) {
+    if (e.list == probation && protectedMax > 0) {
+      unlink(e);
+      link(e, protectedList);
+      // demote the least recently used protected entries that no longer fit
+      while (protectedWeight > protectedMax && protectedList.length() > 1) {
+        Entry<K, V> demoted = protectedList.front().get();
+        unlink(demoted);
+        link(demoted, probation);
+      }
+    } else {
+      LinkedList<Entry<K, V>> list = e.list;
+      unlink(e);
+      link(e, list);
+    }
+  }
+
+  private void evict() {
+    while (windowWeight > windowMax) {
+      Entry<K, V> candidate = window.front().get();
+      unlink(candidate);
+      admit(candidate);
+    }
+    while (weight() > maxWeight) {
+      LinkedList<Entry<K, V>> list = !probation.empty() ? probation
+          : !protectedList.empty() ? protectedList : window;
+      discard(list.front().get());
+    }
+  }
+
+  // Move an entry that left the window into probation, if it is used
+  // more often than the main area entries it has to push out.
+  private void admit(Entry<K, V> candidate) {
+    if (candidate.weight > mainMax) {
+      discard(candidate);
+      return;
+    }
+    int frequency = sketch.frequency(candidate.key);
+    while (probationWeight + protectedWeight + candidate.weight > mainMax) {
+      Entry<K, V> victim = !probation.empty() ? probation.front().get() : protectedList.front().get();
+      if (frequency <= sketch.frequency(victim.key)) {
+        discard(candidate);
+        return;
+      }
+      discard(victim);
+    }
+    link(candidate, probation);
+  }
+
+  // Evict an entry, whether or not it is linked into a list.
+  private void discard(Entry<K, V> e) {
+    if (e.list != null) {
+      unlink(e);
+    }
+    index.remove(e.key);
+    evictions++;
+  }
+
+  private void link(Entry<K, V> e, LinkedList<Entry<K, V>> list) {
+    e.position = list.insertBack(e);
+    e.list = list;
+    addWeight(list, e.weight);
+  }
+
+  private void unlink(Entry<K, V> e) {
+    e.list.remove(e.position);
+    addWeight(e.list, -e.weight);
+    e.list = null;
+    e.position = null;
+  }
+
+  private void addWeight(LinkedList<Entry<K, V>> list, long delta) {
+    if (list == window) {
+      windowWeight += delta;
+    } else if (list == probation) {
+      probationWeight += delta;
+    } else {
+      protectedWeight += delta;
+    }
+  }
+
+  private static class Entry<K, V> {
+    final K key;
+    V value;
+    int weight;
+    LinkedList<Entry<K, V>> list; // the list the entry is in, null while it is in none
+    Position<Entry<K, V>> position;
+
+    Entry(K key, V value, int weight) {
+      this.key = key;
+      this.value = value;
+      this.weight = weight;
+    }
+  }
+
+  /**
+   * Compares the hit rates of the policies on a Zipf trace, the same
+   * trace with scans of one-off keys mixed in, and a loop over slightly
+   * more keys than fit in the cache.
+   *
+   * @param args Cache size and trace length, optional.
+   */
+  public static void main(String[] args) {
+    int cacheSize = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+    int length = args.length > 1 ? Integer.parseInt(args[1]) : 2_000_000;
+    int[] zipf = zipfTrace(length, 100 * cacheSize, 0.9, new Random(42));
+    // every 10 * cacheSize accesses, a scan of 2 * cacheSize keys that are never used again
+    int[] scan = zipf.clone();
+    int next = Integer.MAX_VALUE;
+    for (int i = 0; i + 2 * cacheSize <= length; i += 10 * cacheSize) {
+      for (int j = 0; j < 2 * cacheSize; j++) {
+        scan[i + j] = next--;
+      }
+    }
+    int[] loop = new int[length];
+    for (int i = 0; i < length; i++) {
+      loop[i] = i % (cacheSize + cacheSize / 2);
+    }
+
+    System.out.printf("%-10s %8s %8s %8s%n", "policy", "zipf", "scan", "loop");
+    for (Policy policy : Policy.values()) {
+      System.out.printf("%-10s %8.3f %8.3f %8.3f%n", policy,
+          hitRate(policy, cacheSize, zipf), hitRate(policy, cacheSize, scan), hitRate(policy, cacheSize, loop));
+    }
+  }
+
+  private static double hitRate(Policy policy, int cacheSize, int[] trace) {
+    BoundedCache<Integer, Integer> cache = new BoundedCache<>(policy, cacheSize);
+    for (int key : trace) {
+      cache.get(key, k -> k);
+    }
+    return cache.hitRate();
+  }
+
+  // Keys 0 to n - 1, key i drawn with probability proportional to 1 / (i + 1)^skew.
+  private static int[] zipfTrace(int length, int n, double skew, Random rand) {
+    double[] cdf = new double[n];
+    double sum = 0;
+    for (int i = 0; i < n; i++) {
+      sum += 1 / Math.pow(i + 1, skew);
+      cdf[i] = sum;
+    }
+    int[] trace = new int[length];
+    for (int i = 0; i < length; i++) {
+      double u = rand.nextDouble() * sum;
+      int lo = 0;
+      int hi = n - 1;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if (cdf[mid] < u) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        }
+      }
+      // scatter the popular keys so they do not all hash near each other
+      trace[i] = lo * 0x9E3779B9;
+    }
+    return trace;
+  }
+}
@@ -0,0 +1,501 @@
+package Cache;
+
+import HashTable.ChainingHashMap;
+import Map.Cursor;
+import Map.Map;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * Map whose entries expire a while after they were inserted.
+ *
+ * <p>Every entry gets a time to live when it is inserted, the map's
+ * default or its own, and renew() gives it a new one. Entries are kept in
+ * a ChainingHashMap and their deadlines in a hierarchical TimingWheel.
+ * Each operation first advances the wheel to the current time and
+ * removes whatever expired, so the work of expiring is spread over the
+ * operations and is proportional to the number of expired entries, not
+ * to the size of the map. cleanUp() does the same and can be called from
+ * a timer (while holding whatever lock guards the map, which is not
+ * thread-safe) if the map sits idle.</p>
+ *
+ * <p>Deadlines are kept to about a millisecond. An entry is never
+ * returned once its deadline has passed, but size() may still count one
+ * that expired in the last millisecond. Each operation reads the clock
+ * once, so an entry cannot expire halfway through, say, a merge().</p>
+ *
+ * <p>iterator(), cursor() and forEach() expire entries once when they
+ * start and then skip the ones whose deadline passes during the walk.
+ * Since every other operation may remove expired entries, none may be
+ * called on the map while an iterator or cursor is in use.</p>
+ *
+ * @param <K> Type for keys.
+ * @param <V> Type for values.
+ */
+public class ExpiringMap<K, V> implements Map<K, V> {
+
+  private final ChainingHashMap<K, TimingWheel.Timer<K, V>> index;
+  private final TimingWheel<K, V> wheel;
+  private final LongSupplier ticker;
+  private final long defaultTtl;
+  private long expirations;
+
+  /**
+   * Creates a map whose entries live for the given time unless told otherwise.
+   *
+   * @param defaultTtl Time to live of entries inserted with insert(k, v).
+   * @param unit Unit of defaultTtl.
+   * @throws IllegalArgumentException If defaultTtl is negative.
+   */
+  public ExpiringMap(long defaultTtl, TimeUnit unit) throws IllegalArgumentException {
+    this(defaultTtl, unit, System::nanoTime);
+  }
+
+  /**
+   * Creates a map that reads the time from the given source.
+   *
+   * @param defaultTtl Time to live of entries inserted with insert(k, v).
+   * @param unit Unit of defaultTtl.
+   * @param ticker Source of the current time in nanoseconds, like System.nanoTime().
+   * @throws IllegalArgumentException If defaultTtl is negative.
+   */
+  public ExpiringMap(long defaultTtl, TimeUnit unit, LongSupplier ticker) throws IllegalArgumentException {
+    if (defaultTtl < 0) {
+      throw new IllegalArgumentException("time to live must not be negative");
+    }
+    this.defaultTtl = unit.toNanos(defaultTtl);
+    this.ticker = ticker;
+    index = new ChainingHashMap<>();
+    wheel = new TimingWheel<>(ticker.getAsLong());
+  }
+
+  // Advance the wheel and drop the entries that expired; returns the current time.
+  private long expire() {
+    long now = ticker.getAsLong();
+    wheel.advance(now, timer -> {
+      index.remove(timer.key);
+      expirations++;
+    });
+    return now;
+  }
+
+  // The live entry for k, or null if k is not mapped or its entry expired.
+  private TimingWheel.Timer<K, V> find(K k) {
+    return find(k, expire());
+  }
+
+  // The live entry for k at time now, which expire() just returned.
+  private TimingWheel.Timer<K, V> find(K k, long now) {
+    TimingWheel.Timer<K, V> timer = index.getOrNull(k);
+    if (timer != null && timer.deadline - now <= 0) {
+      // expired since the last tick, drop it now
+      drop(timer);
+      expirations++;
+      return null;
+    }
+    return timer;
+  }
+
+  private void add(K k, V v, long deadline) {
+    TimingWheel.Timer<K, V> timer = new TimingWheel.Timer<>(k, v, deadline);
+    index.insert(k, timer);
+    wheel.schedule(timer);
+  }
+
+  private void drop(TimingWheel.Timer<K, V> timer) {
+    wheel.cancel(timer);
+    index.remove(timer.key);
+  }
+
+  @Override
+  public void insert(K k, V v) throws IllegalArgumentException {
+    insert(k, v, defaultTtl, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Insert a new key/value pair with its own time to live.
+   *
+   * @param k The key.
+   * @param v The value to be associated with k.
+   * @param ttl How long the pair lives.
+   * @param unit Unit of ttl.
+   * @throws IllegalArgumentException If k is null or already mapped, or ttl is negative.
+   */
+  public void insert(K k, V v, long ttl, TimeUnit unit) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    if (ttl < 0) {
+      throw new IllegalArgumentException("time to live must not be negative");
+    }
+    long now = expire();
+    if (find(k, now) != null) {
+      throw new IllegalArgumentException("duplicate key " + k);
+    }
+    add(k, v, now + unit.toNanos(ttl));
+  }
+
+  @Override
+  public V remove(K k) throws IllegalArgumentException {
+    TimingWheel.Timer<K, V> timer = find(k);
+    if (timer == null) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    drop(timer);
+    return timer.value;
+  }
+
+  /**
+   * Update the value associated with a key, keeping its deadline.
+   *
+   * @param k The key.
+   * @param v The value to be associated with k.
+   * @throws IllegalArgumentException If k is null or not mapped.
+   */
+  @Override
+  public void put(K k, V v) throws IllegalArgumentException {
+    TimingWheel.Timer<K, V> timer = find(k);
+    if (timer == null) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    timer.value = v;
+  }
+
+  /**
+   * Give a mapped key a new time to live, counted from now.
+   *
+   * @param k The key.
+   * @param ttl How long the pair lives from now on.
+   * @param unit Unit of ttl.
+   * @throws IllegalArgumentException If k is null or not mapped, or ttl is negative.
+   */
+  public void renew(K k, long ttl, TimeUnit unit) throws IllegalArgumentException {
+    if (ttl < 0) {
+      throw new IllegalArgumentException("time to live must not be negative");
+    }
+    long now = expire();
+    TimingWheel.Timer<K, V> timer = find(k, now);
+    if (timer == null) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    wheel.cancel(timer);
+    timer.deadline = now + unit.toNanos(ttl);
+    wheel.schedule(timer);
+  }
+
+  /**
+   * Time left before a key expires.
+   *
+   * @param k The key.
+   * @param unit Unit of the result.
+   * @return Time to live left for k, rounded down.
+   * @throws IllegalArgumentException If k is null or not mapped.
+   */
+  public long ttl(K k, TimeUnit unit) throws IllegalArgumentException {
+    long now = expire();
+    TimingWheel.Timer<K, V> timer = find(k, now);
+    if (timer == null) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    return unit.convert(timer.deadline - now, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public V get(K k) throws IllegalArgumentException {
+    TimingWheel.Timer<K, V> timer = find(k);
+    if (timer == null) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    return timer.value;
+  }
+
+  @Override
+  public boolean has(K k) {
+    if (k == null) {
+      return false;
+    }
+    return find(k) != null;
+  }
+
+  @Override
+  public V getOrDefault(K k, V defaultValue) {
+    if (k == null) {
+      return defaultValue;
+    }
+    TimingWheel.Timer<K, V> timer = find(k);
+    return timer == null ? defaultValue : timer.value;
+  }
+
+  @Override
+  public V putIfAbsent(K k, V v) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    long now = expire();
+    TimingWheel.Timer<K, V> timer = find(k, now);
+    if (timer != null) {
+      return timer.value;
+    }
+    add(k, v, now + defaultTtl);
+    return null;
+  }
+
+  /**
+   * Associate a value with a key. A mapped key keeps its deadline, an
+   * unmapped one gets the default time to live.
+   *
+   * @param k The key.
+   * @param v The value to be associated with k.
+   * @throws IllegalArgumentException If k is null.
+   */
+  @Override
+  public void upsert(K k, V v) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    long now = expire();
+    TimingWheel.Timer<K, V> timer = find(k, now);
+    if (timer != null) {
+      timer.value = v;
+    } else {
+      add(k, v, now + defaultTtl);
+    }
+  }
+
+  @Override
+  public V compute(K k, BiFunction<? super K, ? super V, ? extends V> remap)
+      throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    long now = expire();
+    TimingWheel.Timer<K, V> timer = find(k, now);
+    V newValue = remap.apply(k, timer == null ? null : timer.value);
+    if (newValue == null) {
+      if (timer != null) {
+        drop(timer);
+      }
+    } else if (timer != null) {
+      timer.value = newValue;
+    } else {
+      add(k, newValue, now + defaultTtl);
+    }
+    return newValue;
+  }
+
+  @Override
+  public V merge(K k, V v, BiFunction<? super V, ? super V, ? extends V> remap)
+      throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    long now = expire();
+    TimingWheel.Timer<K, V> timer = find(k, now);
+    if (timer == null) {
+      add(k, v, now + defaultTtl);
+      return v;
+    }
+    V newValue = remap.apply(timer.value, v);
+    if (newValue == null) {
+      drop(timer);
+    } else {
+      timer.value = newValue;
+    }
+    return newValue;
+  }
+
+  @Override
+  public int size() {
+    expire();
+    return index.size();
+  }
+
+  /**
+   * Remove the entries that expired, without doing anything else.
+   */
+  public void cleanUp() {
+    expire();
+  }
+
+  /**
+   * Number of entries that expired.
+   *
+   * @return Entries removed because their time to live ran out, since the map was created.
+   */
+  public long expirations() {
+    return expirations;
+  }
+
+  @Override
+  public Iterator<K> iterator() {
+    return new ExpiringMapIterator(expire());
+  }
+
+  @Override
+  public Cursor<K, V> cursor() {
+    return new ExpiringMapCursor(expire());
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    long now = expire();
+    index.forEach((k, timer) -> {
+      if (timer.deadline - now > 0) {
+        action.accept(k, timer.value);
+      }
+    });
+  }
+
+  // Move the cursor to the next entry that is live at time now; returns its timer, or null at the end.
+  private static <K, V> TimingWheel.Timer<K, V> nextLive(Cursor<K, TimingWheel.Timer<K, V>> entries, long now) {
+    while (entries.advance()) {
+      TimingWheel.Timer<K, V> timer = entries.value();
+      if (timer.deadline - now > 0) {
+        return timer;
+      }
+    }
+    return null;
+  }
+
+  private class ExpiringMapIterator implements Iterator<K> {
+    private final Cursor<K, TimingWheel.Timer<K, V>> entries;
+    private final long now;
+    private TimingWheel.Timer<K, V> next;
+
+    ExpiringMapIterator(long now) {
+      this.now = now;
+      entries = index.cursor();
+      next = nextLive(entries, now);
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public K next() {
+      if (next == null) {
+        throw new NoSuchElementException("No more elements in the map");
+      }
+      K key = next.key;
+      next = nextLive(entries, now);
+      return key;
+    }
+  }
+
+  private class ExpiringMapCursor implements Cursor<K, V> {
+    private final Cursor<K, TimingWheel.Timer<K, V>> entries;
+    private final long now;
+    private TimingWheel.Timer<K, V> current;
+
+    ExpiringMapCursor(long now) {
+      this.now = now;
+      entries = index.cursor();
+    }
+
+    @Override
+    public boolean advance() {
+      current = nextLive(entries, now);
+      return current != null;
+    }
+
+    private TimingWheel.Timer<K, V> current() {
+      if (current == null) {
+        throw new IllegalStateException("cursor is not on an entry");
+      }
+      return current;
+    }
+
+    @Override
+    public K key() {
+      return current().key;
+    }
+
+    @Override
+    public V value() {
+      return current().value;
+    }
+
+    @Override
+    public void setValue(V v) {
+      current().value = v;
+    }
+  }
+
+  /**
+   * Compares expiring sessions through the wheel with scanning a
+   * ChainingHashMap of deadlines once a minute, in simulated time. New
+   * sessions arrive every second and live between one and sixty minutes;
+   * after two hours about n are live at any time.
+   *
+   * @param args Number of live sessions, optional.
+   */
+  public static void main(String[] args) {
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    long second = TimeUnit.SECONDS.toNanos(1);
+    long minute = TimeUnit.MINUTES.toNanos(1);
+    int perSecond = n / 1800; // the mean time to live is half an hour
+    long[] clock = {0};
+    Random rand = new Random(42);
+    ExpiringMap<Integer, Integer> sessions = new ExpiringMap<>(0, TimeUnit.NANOSECONDS, () -> clock[0]);
+    ChainingHashMap<Integer, Long> deadlines = new ChainingHashMap<>();
+    int[] dead = new int[16];
+    int next = 0;
+    long wheelNanos = 0;
+    long wheelWorst = 0;
+    long wheelExpired = 0;
+    long scanNanos = 0;
+    long scanWorst = 0;
+    long scanExpired = 0;
+    for (int s = 0; s < 3 * 3600; s++) {
+      clock[0] = s * second;
+      long expiredBefore = sessions.expirations();
+      long begin = System.nanoTime();
+      sessions.cleanUp(); // before the inserts, which would otherwise do the expiring
+      long took = System.nanoTime() - begin;
+      if (s >= 3600) { // measure the second and third hour, once both are in a steady state
+        wheelExpired += sessions.expirations() - expiredBefore;
+        wheelNanos += took;
+        wheelWorst = Math.max(wheelWorst, took);
+      }
+      if (s % 60 == 0) {
+        begin = System.nanoTime();
+        if (dead.length < deadlines.size()) {
+          dead = new int[deadlines.size()];
+        }
+        int count = 0;
+        for (Integer k : deadlines) {
+          if (deadlines.get(k) <= clock[0]) {
+            dead[count++] = k;
+          }
+        }
+        for (int i = 0; i < count; i++) {
+          deadlines.remove(dead[i]);
+        }
+        took = System.nanoTime() - begin;
+        if (s >= 3600) {
+          scanNanos += took;
+          scanWorst = Math.max(scanWorst, took);
+          scanExpired += count;
+        }
+      }
+      for (int i = 0; i < perSecond; i++) {
+        long ttl = minute + (long) (rand.nextDouble() * 59 * minute);
+        sessions.insert(next, next, ttl, TimeUnit.NANOSECONDS);
+        deadlines.insert(next, clock[0] + ttl);
+        next++;
+      }
+    }
+    System.out.printf("%d live sessions, two hours%n", sessions.size());
+    System.out.printf("timing wheel, every second: %7.1f ms in total, longest %6.2f ms, %d expired%n",
+        wheelNanos / 1e6, wheelWorst / 1e6, wheelExpired);
+    System.out.printf("full scan, every minute:    %7.1f ms in total, longest %6.2f ms, %d expired%n",
+        scanNanos / 1e6, scanWorst / 1e6, scanExpired);
+  }
+}
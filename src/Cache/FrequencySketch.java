@@ -0,0 +1,97 @@
+package Cache;
+
+/**
+ * Count-min sketch of how often keys were seen recently, with 4-bit
+ * counters.
+ *
+ * <p>Each long of the table holds sixteen counters, four for each of the
+ * four rows. A key picks one long and one counter per row in it from
+ * four independent hashes, and its estimated frequency is the smallest of
+ * those four counters. Counters saturate at 15. Once SAMPLE_FACTOR times
+ * as many increments as the table has longs were made, every counter is
+ * halved, so the sketch forgets keys that stopped being popular.</p>
+ */
+class FrequencySketch {
+
+  private static final int ROWS = 4;
+  private static final int SAMPLE_FACTOR = 10;
+  private static final long RESET_MASK = 0x7777777777777777L; // clears the bit shifted in from the next counter
+  private static final long[] SEEDS = {
+      0x97CB3127EB0D9A4FL, 0xC4CEB9FE1A85EC53L, 0x9E3779B97F4A7C15L, 0xD6E8FEB86659FD93L};
+
+  private final long[] table;
+  private final int mask;
+  private final int sampleSize;
+  private int additions;
+
+  /**
+   * Creates a sketch for about the given number of distinct keys.
+   *
+   * @param expectedKeys Number of keys the cache holds; the table gets a long per key, rounded up
+   *     to a power of two.
+   */
+  FrequencySketch(int expectedKeys) {
+    int width = Integer.highestOneBit(Math.max(16, expectedKeys - 1)) << 1;
+    table = new long[width];
+    mask = width - 1;
+    sampleSize = SAMPLE_FACTOR * width;
+  }
+
+  // Murmur3's 64-bit finalizer.
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  /**
+   * Records one occurrence of a key.
+   *
+   * @param key The key.
+   */
+  void increment(Object key) {
+    long h = mix(key.hashCode());
+    boolean added = false;
+    for (int i = 0; i < ROWS; i++) {
+      long hi = mix(h + SEEDS[i]);
+      int index = (int) (hi >>> 32) & mask;
+      int shift = ((i << 2) + ((int) hi & 3)) << 2;
+      if (((table[index] >>> shift) & 0xF) != 0xF) {
+        table[index] += 1L << shift;
+        added = true;
+      }
+    }
+    if (added && ++additions >= sampleSize) {
+      reset();
+    }
+  }
+
+  /**
+   * Estimated number of recent occurrences of a key.
+   *
+   * @param key The key.
+   * @return The estimate, between 0 and 15; never less than the true count unless it was halved.
+   */
+  int frequency(Object key) {
+    long h = mix(key.hashCode());
+    int min = 0xF;
+    for (int i = 0; i < ROWS; i++) {
+      long hi = mix(h + SEEDS[i]);
+      int index = (int) (hi >>> 32) & mask;
+      int shift = ((i << 2) + ((int) hi & 3)) << 2;
+      min = Math.min(min, (int) (table[index] >>> shift) & 0xF);
+    }
+    return min;
+  }
+
+  // Halve every counter.
+  private void reset() {
+    for (int i = 0; i < table.length; i++) {
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    additions /= 2;
+  }
+}
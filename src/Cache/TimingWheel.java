@@ -0,0 +1,151 @@
+package Cache;
+
+import DoublyLinkedList.LinkedList;
+import DoublyLinkedList.Position;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel: timers sorted into buckets by when they are
+ * due, so schedule and cancel are O(1) and advancing the clock only
+ * touches the timers that are due.
+ *
+ * <p>Time is counted in ticks of TICK_NANOS. Level 0 has a bucket per
+ * tick for the next BUCKETS ticks, level 1 a bucket per BUCKETS ticks,
+ * level 2 per BUCKETS^2 ticks and so on. A timer goes into the finest
+ * level whose range reaches its deadline. When the clock advances, each
+ * level visits the buckets it passed (at most all BUCKETS of them, and
+ * only the levels whose bucket changed); a timer in one of them is
+ * either due, and handed to the caller, or is put back at a finer level.
+ * A timer moves down at most LEVELS times, so the cost of advancing is
+ * the number of due timers plus a bounded number of bucket visits.
+ * Deadlines beyond the last level are parked at its far end and
+ * rescheduled when it comes around.</p>
+ *
+ * <p>Buckets are LinkedLists, and each timer keeps its Position to be
+ * unlinked in O(1) when it is cancelled.</p>
+ *
+ * @param <K> Type for keys.
+ * @param <V> Type for values.
+ */
+class TimingWheel<K, V> {
+
+  static final long TICK_NANOS = 1L << 20; // about a millisecond
+  private static final int BITS = 6;
+  private static final int BUCKETS = 1 << BITS;
+  private static final int LEVELS = 6; // 2^36 ticks, over two years
+
+  private final LinkedList<Timer<K, V>>[][] wheel;
+  private final long origin;
+  private long currentTick;
+
+  /**
+   * Creates a wheel whose clock starts at the given time.
+   *
+   * @param now The time in nanoseconds, from the same source as later deadlines.
+   */
+  @SuppressWarnings("unchecked")
+  TimingWheel(long now) {
+    wheel = (LinkedList<Timer<K, V>>[][]) new LinkedList<?>[LEVELS][BUCKETS];
+    for (int level = 0; level < LEVELS; level++) {
+      for (int b = 0; b < BUCKETS; b++) {
+        wheel[level][b] = new LinkedList<>();
+      }
+    }
+    origin = now;
+  }
+
+  // First tick at or after the given time.
+  private long tickOf(long nanos) {
+    long relative = nanos - origin;
+    return relative <= 0 ? 0 : (relative + TICK_NANOS - 1) / TICK_NANOS;
+  }
+
+  /**
+   * Put a timer in the bucket for its deadline.
+   *
+   * @param timer A timer that is not scheduled.
+   */
+  void schedule(Timer<K, V> timer) {
+    long due = Math.max(tickOf(timer.deadline), currentTick + 1);
+    long delta = due - currentTick;
+    int level = 0;
+    while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1))) {
+      level++;
+    }
+    if (level == LEVELS - 1 && delta >= 1L << (BITS * LEVELS)) {
+      due = currentTick + (1L << (BITS * LEVELS)) - 1; // park at the far end, rescheduled on the way
+    }
+    LinkedList<Timer<K, V>> bucket = wheel[level][(int) (due >>> (BITS * level)) & (BUCKETS - 1)];
+    timer.bucket = bucket;
+    timer.position = bucket.insertBack(timer);
+  }
+
+  /**
+   * Take a timer out of its bucket.
+   *
+   * @param timer A scheduled timer.
+   */
+  void cancel(Timer<K, V> timer) {
+    timer.bucket.remove(timer.position);
+    timer.bucket = null;
+    timer.position = null;
+  }
+
+  /**
+   * Move the clock forward, passing every timer whose deadline is at or
+   * before now to onExpired. The timers passed are no longer scheduled.
+   *
+   * @param now The time in nanoseconds; earlier times than before are ignored.
+   * @param onExpired Called with each expired timer.
+   */
+  void advance(long now, Consumer<Timer<K, V>> onExpired) {
+    long previous = currentTick;
+    long target = Math.max(previous, (now - origin) / TICK_NANOS);
+    if (target == previous) {
+      return;
+    }
+    currentTick = target;
+    for (int level = 0; level < LEVELS; level++) {
+      long from = previous >>> (BITS * level);
+      long to = target >>> (BITS * level);
+      if (from == to) {
+        break; // coarser levels did not move either
+      }
+      long count = Math.min(to - from, BUCKETS - 1);
+      for (long i = to - count; i <= to; i++) {
+        LinkedList<Timer<K, V>> bucket = wheel[level][(int) i & (BUCKETS - 1)];
+        // detach the bucket before rescheduling, a timer may come back to it
+        int n = bucket.length();
+        for (int j = 0; j < n; j++) {
+          Timer<K, V> timer = bucket.front().get();
+          cancel(timer);
+          if (timer.deadline - now <= 0) {
+            onExpired.accept(timer);
+          } else {
+            schedule(timer);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Entry with a deadline, as kept by an ExpiringMap.
+   *
+   * @param <K> Type for keys.
+   * @param <V> Type for values.
+   */
+  static class Timer<K, V> {
+    final K key;
+    V value;
+    long deadline; // System.nanoTime()-style time at which the entry expires
+    LinkedList<Timer<K, V>> bucket; // null while the timer is not scheduled
+    Position<Timer<K, V>> position;
+
+    Timer(K key, V value, long deadline) {
+      this.key = key;
+      this.value = value;
+      this.deadline = deadline;
+    }
+  }
+}
@@ -0,0 +1,31 @@
+package Cache;
+
+/**
+ * Weight of a cache entry, counted against the bound of a BoundedCache.
+ *
+ * @param <K> Type for keys.
+ * @param <V> Type for values.
+ */
+@FunctionalInterface
+public interface Weigher<K, V> {
+
+  /**
+   * Weight of an entry.
+   *
+   * @param k The key.
+   * @param v The value.
+   * @return The weight, at least 0.
+   */
+  int weigh(K k, V v);
+
+  /**
+   * Weigher that gives every entry weight 1, so the bound is a number of entries.
+   *
+   * @param <K> Type for keys.
+   * @param <V> Type for values.
+   * @return The weigher.
+   */
+  static <K, V> Weigher<K, V> singleton() {
+    return (k, v) -> 1;
+  }
+}
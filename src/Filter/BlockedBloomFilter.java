@@ -0,0 +1,243 @@
+package Filter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Bloom filter whose bits for one value all lie in the same 512-bit
+ * block, a single 64-byte cache line.
+ *
+ * <p>A plain Bloom filter sets and tests k bits spread over the whole
+ * table, which costs up to k cache misses per lookup. Here a value's hash
+ * picks a block, and further rounds of mixing pick the k bits within it,
+ * nine bits of hash per bit position, so a lookup costs one miss.
+ * Blocks do not fill up evenly, which raises the false positive rate a
+ * little for the same number of bits; the constructor adds bits until
+ * the expected rate of the blocked layout meets the requested one.</p>
+ *
+ * <p>Values cannot be removed. writeTo() and readFrom() save and
+ * restore a filter, which is only meaningful in another process if the
+ * hash codes of the values are the same there, as they are for String
+ * and the boxed primitives. For other values, add and test a hash of
+ * their serialized form with addHash() and mightContainHash().</p>
+ *
+ * @param <T> Element type.
+ */
+public class BlockedBloomFilter<T> implements Filter<T> {
+
+  private static final int BLOCK_BITS = 512;
+  private static final int BLOCK_LONGS = BLOCK_BITS / 64;
+  private static final int BITS_PER_MIX = 7; // 9-bit positions taken from each 64-bit hash
+
+  private final long[] bits;
+  private final int numBlocks;
+  private final int numHashes;
+  private final int capacity;
+  private final double falsePositiveRate;
+  private int numElements;
+
+  /**
+   * Creates a filter for the given number of values.
+   *
+   * @param capacity Number of values the filter is sized for.
+   * @param falsePositiveRate Requested false positive rate at capacity.
+   * @throws IllegalArgumentException If capacity is negative or the rate is not strictly between 0 and 1.
+   */
+  public BlockedBloomFilter(int capacity, double falsePositiveRate) throws IllegalArgumentException {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("capacity must not be negative");
+    }
+    if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+      throw new IllegalArgumentException("false positive rate must be between 0 and 1");
+    }
+    double ln2 = Math.log(2);
+    double bitsPerKey = -Math.log(falsePositiveRate) / (ln2 * ln2);
+    int k = hashesFor(bitsPerKey);
+    while (bitsPerKey < BLOCK_BITS && blockedRate(bitsPerKey, k) > falsePositiveRate) {
+      bitsPerKey += 0.25;
+      k = hashesFor(bitsPerKey);
+    }
+    this.capacity = capacity;
+    numHashes = k;
+    numBlocks = (int) Math.max(1, Math.ceil(capacity * bitsPerKey / BLOCK_BITS));
+    bits = new long[numBlocks * BLOCK_LONGS];
+    this.falsePositiveRate = blockedRate(BLOCK_BITS * (double) numBlocks / Math.max(1, capacity), k);
+  }
+
+  private BlockedBloomFilter(int capacity, double falsePositiveRate, int numHashes, int numElements,
+                             long[] bits) {
+    this.capacity = capacity;
+    this.falsePositiveRate = falsePositiveRate;
+    this.numHashes = numHashes;
+    this.numElements = numElements;
+    this.bits = bits;
+    numBlocks = bits.length / BLOCK_LONGS;
+  }
+
+  /**
+   * Reads a filter written by writeTo().
+   *
+   * @param in Where to read it from.
+   * @param <T> Element type.
+   * @return The filter.
+   * @throws IOException If reading fails or the data is not a filter.
+   */
+  public static <T> BlockedBloomFilter<T> readFrom(DataInput in) throws IOException {
+    int capacity = in.readInt();
+    double falsePositiveRate = in.readDouble();
+    int numHashes = in.readInt();
+    int numElements = in.readInt();
+    int numBlocks = in.readInt();
+    if (capacity < 0 || numHashes < 1 || numBlocks < 1) {
+      throw new IOException("not a BlockedBloomFilter");
+    }
+    long[] bits = new long[numBlocks * BLOCK_LONGS];
+    for (int i = 0; i < bits.length; i++) {
+      bits[i] = in.readLong();
+    }
+    return new BlockedBloomFilter<>(capacity, falsePositiveRate, numHashes, numElements, bits);
+  }
+
+  /**
+   * Write the filter so that readFrom() can restore it.
+   *
+   * @param out Where to write it.
+   * @throws IOException If writing fails.
+   */
+  public void writeTo(DataOutput out) throws IOException {
+    out.writeInt(capacity);
+    out.writeDouble(falsePositiveRate);
+    out.writeInt(numHashes);
+    out.writeInt(numElements);
+    out.writeInt(numBlocks);
+    for (long b : bits) {
+      out.writeLong(b);
+    }
+  }
+
+  private static int hashesFor(double bitsPerKey) {
+    return (int) Math.max(1, Math.min(16, Math.round(bitsPerKey * Math.log(2))));
+  }
+
+  // Expected false positive rate when the number of values per block is
+  // Poisson distributed with mean BLOCK_BITS / bitsPerKey.
+  private static double blockedRate(double bitsPerKey, int k) {
+    double mean = BLOCK_BITS / bitsPerKey;
+    int limit = (int) (mean + 12 * Math.sqrt(mean) + 10);
+    double rate = 0;
+    double logP = -mean; // log of the Poisson probability of i values in a block
+    for (int i = 0; i <= limit; i++) {
+      if (i > 0) {
+        logP += Math.log(mean / i);
+      }
+      double setBit = 1 - Math.pow(1 - 1.0 / BLOCK_BITS, (double) k * i);
+      rate += Math.exp(logP) * Math.pow(setBit, k);
+    }
+    return rate;
+  }
+
+  // Murmur3's 64-bit finalizer.
+  static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  private static long hash(Object t) {
+    if (t == null) {
+      throw new IllegalArgumentException("cannot handle null value");
+    }
+    return t.hashCode();
+  }
+
+  // First long of the block for hash h.
+  private int block(long h) {
+    return (int) (((h >>> 32) * numBlocks) >>> 32) * BLOCK_LONGS;
+  }
+
+  @Override
+  public boolean add(T t) throws IllegalArgumentException {
+    return addHash(hash(t));
+  }
+
+  /**
+   * Add a value given by a hash of it instead of by its hashCode().
+   *
+   * @param hash The value's hash; it is mixed further, so it need not be uniform.
+   * @return True, as add() does.
+   */
+  public boolean addHash(long hash) {
+    long h = mix(hash);
+    int base = block(h);
+    long g = h;
+    for (int i = 0; i < numHashes; i++) {
+      if (i % BITS_PER_MIX == 0) {
+        g = mix(g + i);
+      }
+      int bit = (int) g & (BLOCK_BITS - 1);
+      g >>>= 9;
+      bits[base + (bit >>> 6)] |= 1L << bit;
+    }
+    numElements++;
+    return true;
+  }
+
+  @Override
+  public boolean mightContain(T t) throws IllegalArgumentException {
+    return mightContainHash(hash(t));
+  }
+
+  /**
+   * Check a value given by a hash of it, as passed to addHash().
+   *
+   * @param hash The value's hash.
+   * @return False if no value with this hash was added, true if one may have been.
+   */
+  public boolean mightContainHash(long hash) {
+    long h = mix(hash);
+    int base = block(h);
+    long g = h;
+    for (int i = 0; i < numHashes; i++) {
+      if (i % BITS_PER_MIX == 0) {
+        g = mix(g + i);
+      }
+      int bit = (int) g & (BLOCK_BITS - 1);
+      g >>>= 9;
+      if ((bits[base + (bit >>> 6)] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int capacity() {
+    return capacity;
+  }
+
+  @Override
+  public int size() {
+    return numElements;
+  }
+
+  @Override
+  public double falsePositiveRate() {
+    return falsePositiveRate;
+  }
+
+  @Override
+  public long memoryBytes() {
+    return 8L * bits.length;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("BlockedBloomFilter size=%d/%d k=%d bitsPerKey=%.1f fpr=%.2g memory=%dKB",
+        numElements, capacity, numHashes, 8.0 * memoryBytes() / Math.max(1, capacity),
+        falsePositiveRate, memoryBytes() >> 10);
+  }
+}
@@ -0,0 +1,231 @@
+package Filter;
+
+/**
+ * Cuckoo filter: a table of small fingerprints that supports removal.
+ *
+ * <p>Each bucket holds BUCKET_SIZE fingerprints of f bits. A value's
+ * fingerprint may sit in one of two buckets, i1 from its hash and
+ * i2 = i1 ^ hash(fingerprint), so either bucket can be found from the
+ * other and the fingerprint alone. Adding to two full buckets kicks a
+ * random fingerprint out to its other bucket, and so on, like cuckoo
+ * hashing; if that goes on for MAX_KICKS moves the last fingerprint
+ * kicked out is kept aside and the filter reports itself full. A lookup
+ * reads two buckets, and a removal clears one matching fingerprint.</p>
+ *
+ * <p>The false positive rate is about 2 * BUCKET_SIZE / 2^f, so f is 8
+ * bits when that meets the requested rate and 16 bits otherwise.
+ * A value that is added twice takes two slots and has to be removed twice;
+ * adding the same value more than 2 * BUCKET_SIZE times fills its buckets.</p>
+ *
+ * @param <T> Element type.
+ */
+public class CuckooFilter<T> implements Filter<T> {
+
+  private static final int BUCKET_SIZE = 4;
+  private static final int MAX_KICKS = 500;
+  private static final double MAX_LOAD = 0.95; // fraction of slots that can be filled before adds start to fail
+
+  private final long[] table;
+  private final int mask; // number of buckets minus one
+  private final int fingerprintBits;
+  private final int slotBits; // 8 or 16
+  private final int capacity;
+  private final double falsePositiveRate;
+  private int numElements;
+  private int stashFingerprint; // 0 unless a kicked out fingerprint did not fit back
+  private int stashBucket;
+  private long random = 0x2545F4914F6CDD1DL;
+
+  /**
+   * Creates a filter for the given number of values.
+   *
+   * @param capacity Number of values the filter is sized for.
+   * @param falsePositiveRate Requested false positive rate at capacity; below
+   *     2 * BUCKET_SIZE / 2^16 the rate of 16-bit fingerprints is used.
+   * @throws IllegalArgumentException If capacity is negative or the rate is not strictly between 0 and 1.
+   */
+  public CuckooFilter(int capacity, double falsePositiveRate) throws IllegalArgumentException {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("capacity must not be negative");
+    }
+    if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+      throw new IllegalArgumentException("false positive rate must be between 0 and 1");
+    }
+    double f = Math.ceil(Math.log(2.0 * BUCKET_SIZE / falsePositiveRate) / Math.log(2));
+    slotBits = f <= 8 ? 8 : 16;
+    fingerprintBits = slotBits; // the slot is taken anyway, use all of it
+    int buckets = (int) Math.ceil(capacity / (BUCKET_SIZE * MAX_LOAD));
+    int numBuckets = Integer.highestOneBit(Math.max(2, buckets - 1)) << 1;
+    mask = numBuckets - 1;
+    table = new long[(int) ((long) numBuckets * BUCKET_SIZE * slotBits / 64)];
+    this.capacity = capacity;
+    double load = capacity / (double) (numBuckets * BUCKET_SIZE);
+    this.falsePositiveRate = 1 - Math.pow(1 - 1.0 / ((1 << fingerprintBits) - 1), 2 * BUCKET_SIZE * load);
+  }
+
+  private int slot(int bucket, int i) {
+    int pos = ((bucket << 2) + i) * slotBits;
+    return (int) (table[pos >>> 6] >>> (pos & 63)) & ((1 << slotBits) - 1);
+  }
+
+  private void setSlot(int bucket, int i, int fingerprint) {
+    int pos = ((bucket << 2) + i) * slotBits;
+    long slotMask = ((1L << slotBits) - 1) << (pos & 63);
+    table[pos >>> 6] = (table[pos >>> 6] & ~slotMask) | ((long) fingerprint << (pos & 63));
+  }
+
+  private static long hash(Object t) {
+    if (t == null) {
+      throw new IllegalArgumentException("cannot handle null value");
+    }
+    return BlockedBloomFilter.mix(t.hashCode());
+  }
+
+  // Fingerprint of a hash, never 0 since 0 marks an empty slot.
+  private int fingerprint(long h) {
+    int fp = (int) (h >>> 32) & ((1 << fingerprintBits) - 1);
+    return fp == 0 ? 1 : fp;
+  }
+
+  private int altBucket(int bucket, int fingerprint) {
+    return (bucket ^ (int) BlockedBloomFilter.mix(fingerprint)) & mask;
+  }
+
+  // Put a fingerprint in a free slot of a bucket, if there is one.
+  private boolean tryPut(int bucket, int fingerprint) {
+    for (int i = 0; i < BUCKET_SIZE; i++) {
+      if (slot(bucket, i) == 0) {
+        setSlot(bucket, i, fingerprint);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean bucketHas(int bucket, int fingerprint) {
+    for (int i = 0; i < BUCKET_SIZE; i++) {
+      if (slot(bucket, i) == fingerprint) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean bucketRemove(int bucket, int fingerprint) {
+    for (int i = 0; i < BUCKET_SIZE; i++) {
+      if (slot(bucket, i) == fingerprint) {
+        setSlot(bucket, i, 0);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // xorshift64, picks which fingerprint to kick out
+  private int nextRandom() {
+    random ^= random << 13;
+    random ^= random >>> 7;
+    random ^= random << 17;
+    return (int) random;
+  }
+
+  @Override
+  public boolean add(T t) throws IllegalArgumentException {
+    long h = hash(t);
+    if (stashFingerprint != 0) {
+      return false;
+    }
+    int fp = fingerprint(h);
+    int i1 = (int) h & mask;
+    int i2 = altBucket(i1, fp);
+    if (tryPut(i1, fp) || tryPut(i2, fp)) {
+      numElements++;
+      return true;
+    }
+    int bucket = (nextRandom() & 1) == 0 ? i1 : i2;
+    for (int kick = 0; kick < MAX_KICKS; kick++) {
+      int i = nextRandom() & (BUCKET_SIZE - 1);
+      int victim = slot(bucket, i);
+      setSlot(bucket, i, fp);
+      fp = victim;
+      bucket = altBucket(bucket, fp);
+      if (tryPut(bucket, fp)) {
+        numElements++;
+        return true;
+      }
+    }
+    // t is in the table now, but some other fingerprint is left over
+    stashFingerprint = fp;
+    stashBucket = bucket;
+    numElements++;
+    return true;
+  }
+
+  @Override
+  public boolean mightContain(T t) throws IllegalArgumentException {
+    long h = hash(t);
+    int fp = fingerprint(h);
+    int i1 = (int) h & mask;
+    int i2 = altBucket(i1, fp);
+    return bucketHas(i1, fp) || bucketHas(i2, fp) || stashHas(i1, i2, fp);
+  }
+
+  private boolean stashHas(int i1, int i2, int fp) {
+    return stashFingerprint == fp && (stashBucket == i1 || stashBucket == i2);
+  }
+
+  @Override
+  public boolean remove(T t) {
+    long h = hash(t);
+    int fp = fingerprint(h);
+    int i1 = (int) h & mask;
+    int i2 = altBucket(i1, fp);
+    if (bucketRemove(i1, fp) || bucketRemove(i2, fp)) {
+      numElements--;
+      // the slot just freed may take the left over fingerprint
+      if (stashFingerprint != 0 && tryPut(stashBucket, stashFingerprint)) {
+        stashFingerprint = 0;
+      } else if (stashFingerprint != 0 && tryPut(altBucket(stashBucket, stashFingerprint), stashFingerprint)) {
+        stashFingerprint = 0;
+      }
+      return true;
+    }
+    if (stashHas(i1, i2, fp)) {
+      stashFingerprint = 0;
+      numElements--;
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public boolean supportsRemoval() {
+    return true;
+  }
+
+  @Override
+  public int capacity() {
+    return capacity;
+  }
+
+  @Override
+  public int size() {
+    return numElements;
+  }
+
+  @Override
+  public double falsePositiveRate() {
+    return falsePositiveRate;
+  }
+
+  @Override
+  public long memoryBytes() {
+    return 8L * table.length;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("CuckooFilter size=%d/%d fingerprintBits=%d fpr=%.2g memory=%dKB",
+        numElements, capacity, fingerprintBits, falsePositiveRate, memoryBytes() >> 10);
+  }
+}
@@ -0,0 +1,82 @@
+package Filter;
+
+/**
+ * Approximate membership filter.
+ *
+ * <p>A filter remembers which values were added in much less memory than
+ * the values themselves. mightContain() never returns false for a value
+ * that was added (and not removed), but it returns true for a small
+ * fraction of values that were not, the false positive rate. Values are
+ * told apart by their hashCode() only.</p>
+ *
+ * @param <T> Element type.
+ */
+public interface Filter<T> {
+
+  /**
+   * Add a value.
+   *
+   * @param t The value.
+   * @return True if t was added, false if the filter is too full to add it.
+   * @throws IllegalArgumentException If t is null.
+   */
+  boolean add(T t) throws IllegalArgumentException;
+
+  /**
+   * Test membership of a value.
+   *
+   * @param t The value.
+   * @return False if t was definitely not added, true if it probably was.
+   * @throws IllegalArgumentException If t is null.
+   */
+  boolean mightContain(T t) throws IllegalArgumentException;
+
+  /**
+   * Remove a value that was added. Removing a value that was not added
+   * may remove another one, which then produces false negatives.
+   *
+   * @param t The value.
+   * @return True if a matching entry was found and removed.
+   * @throws UnsupportedOperationException If the filter does not support removal.
+   */
+  default boolean remove(T t) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException(getClass().getSimpleName() + " does not support removal");
+  }
+
+  /**
+   * Whether remove() is supported.
+   *
+   * @return True if values can be removed.
+   */
+  default boolean supportsRemoval() {
+    return false;
+  }
+
+  /**
+   * Number of values the filter was sized for.
+   *
+   * @return The capacity; the false positive rate is only met up to it.
+   */
+  int capacity();
+
+  /**
+   * Number of values in the filter.
+   *
+   * @return Adds minus removes.
+   */
+  int size();
+
+  /**
+   * Expected false positive rate once the filter holds capacity() values.
+   *
+   * @return The rate, between 0 and 1.
+   */
+  double falsePositiveRate();
+
+  /**
+   * Memory taken up by the filter's table.
+   *
+   * @return The size of the table in bytes.
+   */
+  long memoryBytes();
+}
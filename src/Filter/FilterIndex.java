@@ -0,0 +1,107 @@
+package Filter;
+
+import java.util.function.IntSupplier;
+
+/**
+ * The filter in front of a FilteredMap or FilteredSet, kept in step with
+ * the keys of the wrapped collection.
+ *
+ * <p>The filter is sized for twice the number of keys and rebuilt from
+ * the collection when it fills up. A Bloom filter cannot forget removed
+ * keys, which only cost false positives; it is rebuilt once there are
+ * more of them than a quarter of the live keys. The collection's size
+ * is only asked for when rebuilding, since for some collections, like an
+ * LsmTreeMap, counting the keys means reading all of them.</p>
+ *
+ * @param <T> Key type.
+ */
+class FilterIndex<T> {
+
+  private static final int MIN_CAPACITY = 64;
+
+  private final double falsePositiveRate;
+  private final boolean removable;
+  private final Iterable<T> keys;
+  private final IntSupplier size;
+  private Filter<T> filter;
+  private int stale; // keys removed from the collection but not from the filter
+  private long negatives;
+  private long falsePositives;
+
+  FilterIndex(double falsePositiveRate, boolean removable, Iterable<T> keys, IntSupplier size) {
+    this.falsePositiveRate = falsePositiveRate;
+    this.removable = removable;
+    this.keys = keys;
+    this.size = size;
+    rebuild();
+  }
+
+  private void rebuild() {
+    int capacity = Math.max(MIN_CAPACITY, 2 * size.getAsInt());
+    while (true) {
+      filter = removable ? new CuckooFilter<>(capacity, falsePositiveRate)
+          : new BlockedBloomFilter<>(capacity, falsePositiveRate);
+      boolean full = false;
+      for (T k : keys) {
+        if (!filter.add(k)) {
+          full = true;
+          break;
+        }
+      }
+      if (!full) {
+        break;
+      }
+      capacity *= 2;
+    }
+    stale = 0;
+  }
+
+  void added(T k) {
+    if (filter.size() >= filter.capacity() || !filter.add(k)) {
+      rebuild();
+    }
+  }
+
+  void removed(T k) {
+    if (removable) {
+      filter.remove(k);
+    } else if (++stale > Math.max((filter.size() - stale) / 4, MIN_CAPACITY)) {
+      rebuild(); // the Bloom filter still counts the stale keys, the rest are live
+    }
+  }
+
+  // False if k is definitely not a key, without counting it as a negative.
+  boolean covers(T k) {
+    return filter.mightContain(k);
+  }
+
+  // False if k is definitely not a key, counting it as a negative.
+  boolean mightContain(T k) {
+    if (filter.mightContain(k)) {
+      return true;
+    }
+    negatives++;
+    return false;
+  }
+
+  void falsePositive() {
+    falsePositives++;
+  }
+
+  Filter<T> filter() {
+    return filter;
+  }
+
+  long negatives() {
+    return negatives;
+  }
+
+  long falsePositives() {
+    return falsePositives;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s negatives=%d falsePositives=%d", filter, negatives, falsePositives);
+  }
+}
@@ -0,0 +1,200 @@
+package Filter;
+
+import Map.Cursor;
+import Map.Map;
+import SelfBalancingBST.AvlTreeMap;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.function.BiConsumer;
+
+/**
+ * Map decorator that answers lookups of keys that are definitely not
+ * mapped from a filter, without asking the wrapped map.
+ *
+ * <p>Worth it when most lookups miss and a miss is expensive, like the
+ * root-to-leaf walk of a tree map or a read from disk. The filter is a
+ * BlockedBloomFilter, or a CuckooFilter if removals are frequent enough
+ * that the Bloom filter would have to be rebuilt often. Keys must be
+ * inserted and removed through the decorator, or the filter misses them.</p>
+ *
+ * @param <K> Type for keys.
+ * @param <V> Type for values.
+ */
+public class FilteredMap<K, V> implements Map<K, V> {
+
+  private final Map<K, V> map;
+  private final FilterIndex<K> index;
+
+  /**
+   * Wraps a map, building a filter from its keys.
+   *
+   * @param map The map.
+   * @param falsePositiveRate Fraction of lookups of unmapped keys that may still reach the map.
+   * @param removable True for a cuckoo filter, which forgets removed keys; false for a
+   *     blocked Bloom filter, which is faster and is rebuilt after many removals.
+   * @throws IllegalArgumentException If the rate is not strictly between 0 and 1.
+   */
+  public FilteredMap(Map<K, V> map, double falsePositiveRate, boolean removable)
+      throws IllegalArgumentException {
+    this.map = map;
+    index = new FilterIndex<>(falsePositiveRate, removable, map, map::size);
+  }
+
+  @Override
+  public void insert(K k, V v) throws IllegalArgumentException {
+    map.insert(k, v);
+    index.added(k);
+  }
+
+  @Override
+  public V remove(K k) throws IllegalArgumentException {
+    V v = map.remove(k);
+    index.removed(k);
+    return v;
+  }
+
+  @Override
+  public void put(K k, V v) throws IllegalArgumentException {
+    map.put(k, v);
+  }
+
+  @Override
+  public V get(K k) throws IllegalArgumentException {
+    if (k != null && !index.mightContain(k)) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    try {
+      return map.get(k);
+    } catch (IllegalArgumentException e) {
+      if (k != null) {
+        index.falsePositive();
+      }
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean has(K k) {
+    if (k == null || !index.mightContain(k)) {
+      return false;
+    }
+    if (map.has(k)) {
+      return true;
+    }
+    index.falsePositive();
+    return false;
+  }
+
+  @Override
+  public V getOrDefault(K k, V defaultValue) {
+    if (k == null || !index.mightContain(k)) {
+      return defaultValue;
+    }
+    return map.getOrDefault(k, defaultValue);
+  }
+
+  @Override
+  public int size() {
+    return map.size();
+  }
+
+  @Override
+  public Cursor<K, V> cursor() {
+    return map.cursor();
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    map.forEach(action);
+  }
+
+  @Override
+  public Iterator<K> iterator() {
+    return map.iterator();
+  }
+
+  /**
+   * The filter currently in front of the map; it is replaced when it fills up.
+   *
+   * @return The filter.
+   */
+  public Filter<K> filter() {
+    return index.filter();
+  }
+
+  /**
+   * Memory taken up by the filter.
+   *
+   * @return The size of the filter's table in bytes.
+   */
+  public long memoryBytes() {
+    return index.filter().memoryBytes();
+  }
+
+  /**
+   * Number of lookups answered by the filter alone.
+   *
+   * @return Lookups of keys the filter ruled out.
+   */
+  public long negatives() {
+    return index.negatives();
+  }
+
+  /**
+   * Number of lookups the filter let through for keys that were not mapped.
+   *
+   * @return False positives seen by has() and get().
+   */
+  public long falsePositives() {
+    return index.falsePositives();
+  }
+
+  @Override
+  public String toString() {
+    return index.toString();
+  }
+
+  /**
+   * Times has() on an AvlTreeMap on its own and behind each filter,
+   * for lookups of which most miss.
+   *
+   * @param args Number of keys and fraction of lookups that hit, optional.
+   */
+  public static void main(String[] args) {
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    double hitFraction = args.length > 1 ? Double.parseDouble(args[1]) : 0.1;
+    Random rand = new Random(42);
+    AvlTreeMap<Integer, Integer> tree = new AvlTreeMap<>();
+    for (int i = 0; i < n; i++) {
+      tree.insert(2 * i, i); // even keys are mapped, odd ones are not
+    }
+    int[] queries = new int[n];
+    for (int i = 0; i < n; i++) {
+      int k = 2 * rand.nextInt(n);
+      queries[i] = rand.nextDouble() < hitFraction ? k : k + 1;
+    }
+    bench("AvlTreeMap          ", tree, queries);
+    FilteredMap<Integer, Integer> bloom = new FilteredMap<>(tree, 0.01, false);
+    bench("+ BlockedBloomFilter", bloom, queries);
+    System.out.println("  " + bloom);
+    FilteredMap<Integer, Integer> cuckoo = new FilteredMap<>(tree, 0.01, true);
+    bench("+ CuckooFilter      ", cuckoo, queries);
+    System.out.println("  " + cuckoo);
+  }
+
+  private static void bench(String name, Map<Integer, Integer> map, int[] queries) {
+    long found = 0;
+    long nanos = 0;
+    for (int round = 0; round < 3; round++) { // the last round is the measured one
+      found = 0;
+      long begin = System.nanoTime();
+      for (int k : queries) {
+        if (map.has(k)) {
+          found++;
+        }
+      }
+      nanos = System.nanoTime() - begin;
+    }
+    System.out.printf("%s %6.1f ns/has  found=%d%n", name, nanos / (double) queries.length, found);
+  }
+}
@@ -0,0 +1,138 @@
+package Filter;
+
+import Set.Set;
+import java.util.Iterator;
+
+/**
+ * Set decorator that answers has() for values that are definitely not in
+ * the set from a filter, without asking the wrapped set.
+ *
+ * <p>See FilteredMap; the same goes for sets. union(), intersect() and
+ * subtract() return sets built by the wrapped set, without a filter.</p>
+ *
+ * @param <T> Element type.
+ */
+public class FilteredSet<T> implements Set<T> {
+
+  private final Set<T> set;
+  private final FilterIndex<T> index;
+
+  /**
+   * Wraps a set, building a filter from its values.
+   *
+   * @param set The set.
+   * @param falsePositiveRate Fraction of lookups of absent values that may still reach the set.
+   * @param removable True for a cuckoo filter, which forgets removed values; false for a
+   *     blocked Bloom filter, which is faster and is rebuilt after many removals.
+   * @throws IllegalArgumentException If the rate is not strictly between 0 and 1.
+   */
+  public FilteredSet(Set<T> set, double falsePositiveRate, boolean removable)
+      throws IllegalArgumentException {
+    this.set = set;
+    index = new FilterIndex<>(falsePositiveRate, removable, set, set::size);
+  }
+
+  @Override
+  public void insert(T t) {
+    if (t == null) {
+      set.insert(t); // whatever the set does with null
+      return;
+    }
+    // only ask the set whether t is new if the filter cannot tell
+    boolean present = index.covers(t) && set.has(t);
+    set.insert(t);
+    if (!present) {
+      index.added(t);
+    }
+  }
+
+  @Override
+  public void remove(T t) {
+    if (t == null) {
+      set.remove(t);
+      return;
+    }
+    if (index.covers(t) && set.has(t)) { // otherwise there is nothing to remove
+      set.remove(t);
+      index.removed(t);
+    }
+  }
+
+  @Override
+  public boolean has(T t) {
+    if (t == null || !index.mightContain(t)) {
+      return false;
+    }
+    if (set.has(t)) {
+      return true;
+    }
+    index.falsePositive();
+    return false;
+  }
+
+  @Override
+  public int size() {
+    return set.size();
+  }
+
+  @Override
+  public Set<T> union(Set<T> other) {
+    return set.union(other);
+  }
+
+  @Override
+  public Set<T> intersect(Set<T> other) {
+    return set.intersect(other);
+  }
+
+  @Override
+  public Set<T> subtract(Set<T> other) {
+    return set.subtract(other);
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    return set.iterator();
+  }
+
+  /**
+   * The filter currently in front of the set; it is replaced when it fills up.
+   *
+   * @return The filter.
+   */
+  public Filter<T> filter() {
+    return index.filter();
+  }
+
+  /**
+   * Memory taken up by the filter.
+   *
+   * @return The size of the filter's table in bytes.
+   */
+  public long memoryBytes() {
+    return index.filter().memoryBytes();
+  }
+
+  /**
+   * Number of has() calls answered by the filter alone.
+   *
+   * @return Lookups of values the filter ruled out.
+   */
+  public long negatives() {
+    return index.negatives();
+  }
+
+  /**
+   * Number of has() calls the filter let through for values that were not in the set.
+   *
+   * @return False positives.
+   */
+  public long falsePositives() {
+    return index.falsePositives();
+  }
+
+  @Override
+  public String toString() {
+    return index.toString();
+  }
+}
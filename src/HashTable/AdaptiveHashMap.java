@@ -0,0 +1,241 @@
+package HashTable;
+
+import Map.ArrayMap;
+import Map.Cursor;
+import Map.Map;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Map that starts out as an ArrayMap and turns into an
+ * OpenAddressingHashMap once it grows past a threshold.
+ *
+ * <p>Most maps never hold more than a few entries, and for those a
+ * linear search through packed arrays is both smaller and faster than
+ * a hash table with its node per entry. The map holds either the
+ * array form or the hash table, never both; the first insert that would
+ * take it past the threshold moves every entry into a new hash table,
+ * and from then on it stays a hash table even if it shrinks again, so a
+ * map that hovers around the threshold does not convert back and forth.
+ * Iteration follows whichever form the map is in, so the order may
+ * change when it is promoted.</p>
+ *
+ * @param <K> Type for keys.
+ * @param <V> Type for values.
+ */
+public class AdaptiveHashMap<K, V> implements Map<K, V> {
+
+  private static final int DEFAULT_THRESHOLD = 16;
+
+  private final int threshold;
+  private ArrayMap<K, V> small; // null once promoted
+  private OpenAddressingHashMap<K, V> large; // null until promoted
+
+  /**
+   * Create an empty map that is promoted past 16 entries.
+   */
+  public AdaptiveHashMap() {
+    this(DEFAULT_THRESHOLD);
+  }
+
+  /**
+   * Create an empty map that is promoted past the given number of entries.
+   *
+   * @param threshold Most entries the map holds as an array.
+   * @throws IllegalArgumentException If threshold is negative.
+   */
+  public AdaptiveHashMap(int threshold) throws IllegalArgumentException {
+    if (threshold < 0) {
+      throw new IllegalArgumentException("threshold must not be negative");
+    }
+    this.threshold = threshold;
+    small = new ArrayMap<>(Math.min(threshold, 4));
+  }
+
+  // Promote before an operation that may add a key to a full array.
+  private void makeRoom() {
+    if (small != null && small.size() >= threshold) {
+      large = new OpenAddressingHashMap<>();
+      small.forEach(large::insert);
+      small = null;
+    }
+  }
+
+  /**
+   * Whether the map has turned into a hash table.
+   *
+   * @return True once the map has grown past its threshold.
+   */
+  public boolean promoted() {
+    return small == null;
+  }
+
+  @Override
+  public void insert(K k, V v) throws IllegalArgumentException {
+    makeRoom();
+    if (small != null) {
+      small.insert(k, v);
+    } else {
+      large.insert(k, v);
+    }
+  }
+
+  @Override
+  public V remove(K k) throws IllegalArgumentException {
+    return small != null ? small.remove(k) : large.remove(k);
+  }
+
+  @Override
+  public void put(K k, V v) throws IllegalArgumentException {
+    if (small != null) {
+      small.put(k, v);
+    } else {
+      large.put(k, v);
+    }
+  }
+
+  @Override
+  public V get(K k) throws IllegalArgumentException {
+    return small != null ? small.get(k) : large.get(k);
+  }
+
+  @Override
+  public boolean has(K k) {
+    return small != null ? small.has(k) : large.has(k);
+  }
+
+  @Override
+  public int size() {
+    return small != null ? small.size() : large.size();
+  }
+
+  @Override
+  public V getOrDefault(K k, V defaultValue) {
+    return small != null ? small.getOrDefault(k, defaultValue) : large.getOrDefault(k, defaultValue);
+  }
+
+  @Override
+  public V putIfAbsent(K k, V v) throws IllegalArgumentException {
+    makeRoom();
+    return small != null ? small.putIfAbsent(k, v) : large.putIfAbsent(k, v);
+  }
+
+  @Override
+  public void upsert(K k, V v) throws IllegalArgumentException {
+    makeRoom();
+    if (small != null) {
+      small.upsert(k, v);
+    } else {
+      large.upsert(k, v);
+    }
+  }
+
+  @Override
+  public V compute(K k, BiFunction<? super K, ? super V, ? extends V> remap)
+      throws IllegalArgumentException {
+    makeRoom();
+    return small != null ? small.compute(k, remap) : large.compute(k, remap);
+  }
+
+  @Override
+  public V merge(K k, V v, BiFunction<? super V, ? super V, ? extends V> remap)
+      throws IllegalArgumentException {
+    makeRoom();
+    return small != null ? small.merge(k, v, remap) : large.merge(k, v, remap);
+  }
+
+  @Override
+  public Cursor<K, V> cursor() {
+    return small != null ? small.cursor() : large.cursor();
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    if (small != null) {
+      small.forEach(action);
+    } else {
+      large.forEach(action);
+    }
+  }
+
+  @Override
+  public Iterator<K> iterator() {
+    return small != null ? small.iterator() : large.iterator();
+  }
+
+  @Override
+  public String toString() {
+    return small != null ? small.toString() : large.toString();
+  }
+
+  /**
+   * Builds many small maps of a few entries each, as a per-request map
+   * would be, and compares the footprint and the time to fill and read
+   * them with the hash maps.
+   *
+   * @param args Number of maps and entries per map, optional.
+   */
+  public static void main(String[] args) {
+    int maps = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+    int entries = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+    String[] keys = new String[64];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = "header-" + i;
+    }
+    Random rand = new Random(42);
+    int[][] picks = new int[maps][entries];
+    for (int[] p : picks) {
+      for (int i = 0; i < entries; i++) {
+        p[i] = rand.nextInt(keys.length); // a key may come twice, upsert keeps the last one
+      }
+    }
+    String[] names = {"ChainingHashMap      ", "OpenAddressingHashMap", "AdaptiveHashMap      "};
+    List<Supplier<Map<String, Integer>>> factories = List.of(
+        ChainingHashMap::new, OpenAddressingHashMap::new, AdaptiveHashMap::new);
+    for (int round = 0; round < 5; round++) { // take turns so all pay the same for warming up
+      for (int f = 0; f < factories.size(); f++) {
+        bench(round == 4 ? names[f] : null, picks, keys, factories.get(f));
+      }
+    }
+  }
+
+  // Fill a map for each row of picks, then look up neighbouring keys; prints unless name is null.
+  private static void bench(String name, int[][] picks, String[] keys, Supplier<Map<String, Integer>> factory) {
+    List<Map<String, Integer>> all = new ArrayList<>(picks.length);
+    long base = usedMemory();
+    long sink = 0;
+    long begin = System.nanoTime();
+    for (int m = 0; m < picks.length; m++) {
+      Map<String, Integer> map = factory.get();
+      for (int i : picks[m]) {
+        map.upsert(keys[i], i);
+      }
+      for (int i : picks[m]) {
+        sink += map.getOrDefault(keys[i ^ 1], -1); // about half of these miss
+      }
+      all.add(map);
+    }
+    long nanos = System.nanoTime() - begin;
+    long bytes = usedMemory() - base;
+    for (Map<String, Integer> map : all) {
+      sink += map.size(); // keeps the maps reachable until they are measured
+    }
+    if (name != null) {
+      System.out.printf("%s %6.1f bytes per map, %6.1f ns per map (%d)%n",
+          name, bytes / (double) picks.length, nanos / (double) picks.length, sink);
+    }
+  }
+
+  private static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
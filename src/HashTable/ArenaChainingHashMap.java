@@ -0,0 +1,417 @@
+package HashTable;
+
+import Map.Cursor;
+import Map.Map;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.function.BiConsumer;
+
+/**
+ * Map implemented as a hash table with separate chaining, with the
+ * entries in flat arrays instead of Node objects.
+ *
+ * <p>Entry i of the arena is its key and value in entries[2i] and
+ * entries[2i + 1], and its hash and the index of the next entry of its
+ * chain in links[2i] and links[2i + 1]. A bucket is the index of the
+ * first entry of its chain, -1 if it is empty. That saves the object
+ * header and the three references of a Node per entry, a chain walk
+ * reads hash and link from the same cache line, and the chains of a
+ * small table stay within a few cache lines. The cached hash is compared
+ * before equals() is called and spares calling hashCode() again on a
+ * resize.</p>
+ *
+ * <p>A removed entry goes on a free list threaded through the links and is
+ * reused by the next insert. The arena grows by half when it is full,
+ * separately from the table, so it wastes less room than one sized to
+ * the table would. Resizing the table only rebuilds the chains from the
+ * cached hashes; entries stay where they are, until a shrink packs the
+ * live ones to the front of the arena. Capacities are primes, and the
+ * table grows and shrinks like ChainingHashMap's.</p>
+ *
+ * @param <K> Type for keys.
+ * @param <V> Type for values.
+ */
+public class ArenaChainingHashMap<K, V> implements Map<K, V> {
+
+  private static final int NIL = -1;
+  private static final int INITIAL_ARENA_SIZE = 4;
+
+  private int numElements;
+  private int capacity;
+  private int[] heads;
+  private Object[] entries; // key, value; the key is null for a free entry
+  private int[] links; // hash, index of the next entry
+  private int arenaSize; // number of entries the arena has room for
+  private int top; // entries at or above top have never been used
+  private int free; // first entry of the free list, NIL if it is empty
+  private final int[] primes = {2, 5, 11, 23, 47, 97, 197, 397, 797, 1597,
+      3203, 6421, 12853, 25717, 51437, 102877, 205759, 411527, 823117, 1646237, 3292489, 6584983, 13169977};
+  private int primeIdx;
+  private final double loadFactor = 0.75;
+
+  /**
+   * Constructs an ArenaChainingHashMap with default initial capacity.
+   */
+  public ArenaChainingHashMap() {
+    numElements = 0;
+    arenaSize = INITIAL_ARENA_SIZE;
+    entries = new Object[2 * arenaSize];
+    links = new int[2 * arenaSize];
+    free = NIL;
+    resize(1);
+  }
+
+  private int getIndex(int hash) {
+    return Math.abs(hash % capacity);
+  }
+
+  // Index of the entry with key k, or NIL if k is not mapped.
+  private int find(K k) {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    int hash = k.hashCode();
+    for (int i = heads[getIndex(hash)]; i != NIL; i = links[2 * i + 1]) {
+      if (links[2 * i] == hash && entries[2 * i].equals(k)) {
+        return i;
+      }
+    }
+    return NIL;
+  }
+
+  // Capacity of the table at the given step of growth.
+  private int capacityFor(int idx) {
+    if (idx < primes.length) {
+      return primes[idx];
+    }
+    int c = primes[primes.length - 1];
+    for (int i = primes.length - 1; i < idx; i++) {
+      c = c * 2 + 1;
+    }
+    return c;
+  }
+
+  // Smallest step of growth whose table holds the given number of elements within the load factor.
+  private int primeIdxFor(int elements) {
+    int idx = 1;
+    while (loadFactor * capacityFor(idx) < elements) {
+      idx++;
+    }
+    return idx;
+  }
+
+  // Rebuild the chains for a table of another capacity; entries stay where they are.
+  private void resize(int newPrimeIdx) {
+    primeIdx = newPrimeIdx;
+    capacity = capacityFor(primeIdx);
+    heads = new int[capacity];
+    Arrays.fill(heads, NIL);
+    for (int i = 0; i < top; i++) {
+      if (entries[2 * i] != null) {
+        link(i);
+      }
+    }
+  }
+
+  // Resize the arena to the given number of entries, packing the live ones to its front.
+  private void compact(int newArenaSize) {
+    int j = 0;
+    for (int i = 0; i < top; i++) {
+      if (entries[2 * i] != null) {
+        entries[2 * j] = entries[2 * i];
+        entries[2 * j + 1] = entries[2 * i + 1];
+        links[2 * j] = links[2 * i];
+        j++;
+      }
+    }
+    Arrays.fill(entries, 2 * j, 2 * top, null);
+    top = j;
+    free = NIL;
+    arenaSize = Math.max(INITIAL_ARENA_SIZE, newArenaSize);
+    entries = Arrays.copyOf(entries, 2 * arenaSize);
+    links = Arrays.copyOf(links, 2 * arenaSize);
+    resize(primeIdx); // the entries moved, so the chains have to be rebuilt
+  }
+
+  // Put entry i at the head of its bucket's chain.
+  private void link(int i) {
+    int index = getIndex(links[2 * i]);
+    links[2 * i + 1] = heads[index];
+    heads[index] = i;
+  }
+
+  @Override
+  public void insert(K k, V v) throws IllegalArgumentException {
+    if (find(k) != NIL) {
+      throw new IllegalArgumentException("cannot have duplicate keys " + k);
+    }
+    insertAbsent(k, v);
+  }
+
+  // Add an entry for a key that is known not to be mapped and return its index.
+  private int insertAbsent(K k, V v) {
+    int i;
+    if (free != NIL) {
+      i = free;
+      free = links[2 * i + 1];
+    } else {
+      if (top == arenaSize) {
+        arenaSize += arenaSize >> 1;
+        entries = Arrays.copyOf(entries, 2 * arenaSize);
+        links = Arrays.copyOf(links, 2 * arenaSize);
+      }
+      i = top++;
+    }
+    entries[2 * i] = k;
+    entries[2 * i + 1] = v;
+    links[2 * i] = k.hashCode();
+    link(i);
+    numElements++;
+    if (loadFactor * capacity < numElements) {
+      resize(primeIdx + 1);
+    }
+    return i;
+  }
+
+  @Override
+  public V remove(K k) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    int hash = k.hashCode();
+    int index = getIndex(hash);
+    int prev = NIL;
+    int i = heads[index];
+    while (i != NIL && !(links[2 * i] == hash && entries[2 * i].equals(k))) {
+      prev = i;
+      i = links[2 * i + 1];
+    }
+    if (i == NIL) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    if (prev == NIL) {
+      heads[index] = links[2 * i + 1];
+    } else {
+      links[2 * prev + 1] = links[2 * i + 1];
+    }
+    V value = (V) entries[2 * i + 1];
+    entries[2 * i] = null;
+    entries[2 * i + 1] = null;
+    links[2 * i + 1] = free;
+    free = i;
+    numElements--;
+    // shrink once the table is a quarter of the way to full, to half way, as ChainingHashMap does
+    if (primeIdx > 1 && numElements < loadFactor * capacity / 4) {
+      int idx = primeIdxFor(numElements * 2);
+      if (idx < primeIdx) {
+        primeIdx = idx;
+        compact(numElements * 2); // rebuilds the chains for the new capacity too
+      }
+    }
+    return value;
+  }
+
+  @Override
+  public void put(K k, V v) throws IllegalArgumentException {
+    int i = find(k);
+    if (i == NIL) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    entries[2 * i + 1] = v;
+  }
+
+  @Override
+  public V get(K k) throws IllegalArgumentException {
+    int i = find(k);
+    if (i == NIL) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    return (V) entries[2 * i + 1];
+  }
+
+  @Override
+  public boolean has(K k) {
+    if (k == null) {
+      return false;
+    }
+    return find(k) != NIL;
+  }
+
+  @Override
+  public int size() {
+    return numElements;
+  }
+
+  /**
+   * Shrink the table and the arena to the smallest capacity that holds
+   * the current entries within the load factor.
+   */
+  public void trimToSize() {
+    primeIdx = Math.min(primeIdx, primeIdxFor(numElements));
+    compact(numElements);
+  }
+
+  // Return the index of the entry for key k, inserting one with a null
+  // value if the key is not in the table yet; a single chain walk either way.
+  private int findOrInsert(K k) {
+    int i = find(k);
+    return i != NIL ? i : insertAbsent(k, null);
+  }
+
+  @Override
+  public V getOrDefault(K k, V defaultValue) {
+    if (k == null) {
+      return defaultValue;
+    }
+    int i = find(k);
+    return i == NIL ? defaultValue : (V) entries[2 * i + 1];
+  }
+
+  @Override
+  public V putIfAbsent(K k, V v) throws IllegalArgumentException {
+    int before = numElements;
+    int i = findOrInsert(k);
+    if (numElements == before) {
+      return (V) entries[2 * i + 1];
+    }
+    entries[2 * i + 1] = v;
+    return null;
+  }
+
+  @Override
+  public void upsert(K k, V v) throws IllegalArgumentException {
+    int i = findOrInsert(k); // may resize, so before reading the entries field
+    entries[2 * i + 1] = v;
+  }
+
+  @Override
+  public Cursor<K, V> cursor() {
+    return new Cursor<K, V>() {
+      private int i = -1;
+
+      @Override
+      public boolean advance() {
+        do {
+          i++;
+        } while (i < top && entries[2 * i] == null);
+        return i < top;
+      }
+
+      private int current() {
+        if (i < 0 || i >= top || entries[2 * i] == null) {
+          throw new IllegalStateException("cursor is not on an entry");
+        }
+        return i;
+      }
+
+      @Override
+      public K key() {
+        return (K) entries[2 * current()];
+      }
+
+      @Override
+      public V value() {
+        return (V) entries[2 * current() + 1];
+      }
+
+      @Override
+      public void setValue(V v) {
+        entries[2 * current() + 1] = v;
+      }
+    };
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    for (int i = 0; i < top; i++) {
+      if (entries[2 * i] != null) {
+        action.accept((K) entries[2 * i], (V) entries[2 * i + 1]);
+      }
+    }
+  }
+
+  @Override
+  public Iterator<K> iterator() {
+    return new Iterator<K>() {
+      private int i = 0; // next entry to look at
+      private int count = 0; // number of keys returned so far
+
+      @Override
+      public boolean hasNext() {
+        return count < numElements;
+      }
+
+      @Override
+      public K next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException("No more elements in the table");
+        }
+        while (entries[2 * i] == null) {
+          i++;
+        }
+        count++;
+        return (K) entries[2 * i++];
+      }
+    };
+  }
+
+  /**
+   * Compares footprint and lookup time with ChainingHashMap. Keys and
+   * values are shared by both maps, so only the maps themselves count.
+   *
+   * @param args Number of keys, optional.
+   */
+  public static void main(String[] args) {
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    Integer[] keys = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      keys[i] = i * 7919; // Integer.valueOf caches only small values, so each key is its own object
+    }
+    long base = usedMemory();
+    ChainingHashMap<Integer, Integer> chaining = new ChainingHashMap<>();
+    for (Integer k : keys) {
+      chaining.insert(k, k);
+    }
+    long chainingBytes = usedMemory() - base;
+    base = usedMemory();
+    ArenaChainingHashMap<Integer, Integer> arena = new ArenaChainingHashMap<>();
+    for (Integer k : keys) {
+      arena.insert(k, k);
+    }
+    long arenaBytes = usedMemory() - base;
+    System.out.printf("ChainingHashMap      %6.1f bytes per entry%n", chainingBytes / (double) n);
+    System.out.printf("ArenaChainingHashMap %6.1f bytes per entry%n", arenaBytes / (double) n);
+
+    // look the keys up in another order than they were inserted, or the nodes are in allocation order
+    Random rand = new Random(42);
+    Integer[] lookups = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      lookups[i] = rand.nextInt(4) == 0 ? -1 - i : keys[rand.nextInt(n)]; // a quarter miss
+    }
+    bench("ChainingHashMap     ", chaining, lookups);
+    bench("ArenaChainingHashMap", arena, lookups);
+  }
+
+  private static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  private static void bench(String name, Map<Integer, Integer> map, Integer[] keys) {
+    long sink = 0;
+    long nanos = 0;
+    for (int round = 0; round < 5; round++) { // the last round is the measured one
+      long begin = System.nanoTime();
+      for (Integer k : keys) {
+        sink += map.getOrDefault(k, 0);
+      }
+      nanos = System.nanoTime() - begin;
+    }
+    System.out.printf("%s %6.1f ns/lookup (%d)%n", name, nanos / (double) keys.length, sink);
+  }
+}
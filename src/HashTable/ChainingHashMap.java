@@ -1,70 +1,300 @@
 package HashTable;
 
-import Map.Map;
+import Map.Cursor;
+import Map.SingleProbeMap;
+import SelfBalancingBST.AvlTreeMap;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
 
-public class ChainingHashMap<K, V> implements Map<K, V> {
+/**
+ * Map implemented as a hash table with separate chaining.
+ *
+ * <p>In incremental mode a resize does not move every entry at once.
+ * The old table is kept next to the new one and each insert or remove
+ * migrates a few of its buckets, so the cost of growing is spread over
+ * many operations. Lookups check the new table first and then whatever
+ * is left of the old one.</p>
+ *
+ * <p>A chain that grows past TREEIFY_THRESHOLD nodes is turned into a
+ * tree bin (an AvlTreeMap from key to chain node) as long as all of its
+ * keys are Comparable instances of the same class, so even a flood of
+ * colliding keys costs O(lg n) per lookup. The tree only orders the
+ * keys; whether two keys are the same is still up to equals(), so keys
+ * that compare equal without being equal stay apart. The bin turns back
+ * into a plain chain once it shrinks to UNTREEIFY_THRESHOLD nodes.</p>
+ *
+ * <p>The table shrinks to half full once removals leave it a quarter of
+ * the way to its load factor; trimToSize() shrinks it as far as possible.</p>
+ *
+ * <p>Keys are hashed by a HashStrategy, their own hashCode() unless
+ * another one is given. Use HashStrategy.seeded() for keys that may be
+ * chosen by an attacker. Capacities are primes by default; in
+ * power-of-two mode the index is taken from the high bits of the hash
+ * times a Fibonacci constant, which is cheaper than a modulo.</p>
+ *
+ * @param <K> Type for keys.
+ * @param <V> Type for values.
+ */
+public class ChainingHashMap<K, V> extends SingleProbeMap<K, V> {
+
+  // old buckets moved per insert/remove while an incremental resize is in progress
+  private static final int MIGRATE_STEP = 4;
+  private static final int TREEIFY_THRESHOLD = 8;
+  private static final int UNTREEIFY_THRESHOLD = 6;
 
   private int numElements;
   private int capacity;
   private Node<K, V>[] hashTable;
+  private Node<K, V>[] oldTable; // non-null only while an incremental resize is in progress
+  private int migrateIdx; // buckets of oldTable below this index are already migrated
+  private final boolean incremental;
   private final int[] primes = {2, 5, 11, 23, 47, 97, 197, 397, 797, 1597,
       3203, 6421, 12853, 25717, 51437, 102877, 205759, 411527, 823117, 1646237, 3292489, 6584983, 13169977};
   private int primeIdx;
   private final double loadFactor = 0.75;
+  private final HashStrategy<? super K> hashing;
+  private final boolean powerOfTwo;
+  private HashTableStats stats; // null unless stats are enabled
 
 
   /**
    * Constructs a Chaining Hash Map with default initial capacity and settings.
    */
   public ChainingHashMap() {
+    this(false);
+  }
+
+  /**
+   * Constructs a Chaining Hash Map with the given resize mode.
+   *
+   * @param incremental true to migrate buckets a few at a time after a resize,
+   *                    false to rehash the whole table at once.
+   */
+  public ChainingHashMap(boolean incremental) {
+    this(incremental, HashStrategy.identity(), false);
+  }
+
+  /**
+   * Constructs a Chaining Hash Map with the given resize mode and hashing.
+   *
+   * @param incremental true to migrate buckets a few at a time after a resize,
+   *                    false to rehash the whole table at once.
+   * @param hashing strategy that hashes the keys, e.g. HashStrategy.seeded().
+   * @param powerOfTwo true for power-of-two capacities indexed by multiply-shift,
+   *                   false for prime capacities indexed by modulo.
+   */
+  public ChainingHashMap(boolean incremental, HashStrategy<? super K> hashing, boolean powerOfTwo) {
+    this.incremental = incremental;
+    this.hashing = hashing;
+    this.powerOfTwo = powerOfTwo;
     numElements = 0;
     primeIdx = 1;
-    capacity = primes[primeIdx];
+    capacity = capacityFor(primeIdx);
     hashTable = new Node[capacity];
   }
 
   private int getIndex(K key) {
-    return Math.abs(key.hashCode() % capacity); // return the hashCode for a given key
+    return getIndex(key, capacity);
+  }
+
+  private int getIndex(K key, int length) {
+    return indexFor(hashing.hash(key), length);
+  }
+
+  private int indexFor(int hash, int length) {
+    if (powerOfTwo) { // multiply-shift keeps the high bits of the product, where all bits of hash mix
+      return (hash * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(length));
+    }
+    return Math.abs(hash % length);
   }
 
   private Node<K, V> find(K k) {
     if (k == null) {
       throw new IllegalArgumentException("cannot handle null key");
     }
-    int index = getIndex(k);
-    if (hashTable[index] != null) { // this position is taken
-      Node<K, V> temp = hashTable[index];
-      while (temp != null) { // traverse the auxiliary data structure
-        if (temp.key.equals(k)) {
-          return temp; // means duplicate keys exist in the auxiliary data structure
-        }
-        temp = temp.next;
+    Node<K, V> node = findInBucket(hashTable[getIndex(k)], k);
+    if (node == null && oldTable != null) { // not migrated yet?
+      node = findInBucket(oldTable[getIndex(k, oldTable.length)], k);
+    }
+    recordProbe(k, node);
+    return node;
+  }
+
+  // Number of nodes a find() for k examined; only used when stats are enabled.
+  private int probeLength(K k, Node<K, V> found) {
+    int length = bucketProbes(hashTable[getIndex(k)], found);
+    if (length < 0 && oldTable != null) { // find() went on to the old table
+      return -length + Math.abs(bucketProbes(oldTable[getIndex(k, oldTable.length)], found));
+    }
+    return Math.abs(length);
+  }
+
+  // Nodes examined in the given bucket, negated if found is not in it.
+  private int bucketProbes(Node<K, V> curr, Node<K, V> found) {
+    if (curr instanceof TreeBin) {
+      TreeBin<K, V, ?> bin = (TreeBin<K, V, ?>) curr;
+      int depth = 32 - Integer.numberOfLeadingZeros(bin.tree.size()); // about that of a balanced tree
+      boolean inBin = found != null && bin.find(found.key) == found;
+      return inBin ? depth : -depth;
+    }
+    int length = 0;
+    while (curr != null) {
+      length++;
+      if (curr == found) {
+        return length;
       }
+      curr = curr.next;
+    }
+    return -length;
+  }
+
+  private Node<K, V> findInBucket(Node<K, V> temp, K k) {
+    if (temp instanceof TreeBin) {
+      return ((TreeBin<K, V, ?>) temp).find(k);
+    }
+    while (temp != null) { // traverse the auxiliary data structure
+      if (temp.key.equals(k)) {
+        return temp;
+      }
+      temp = temp.next;
     }
-    // hashTable[index] == null means there is no such node with key k
     return null;
   }
 
+  // Capacity of the table at the given step of growth.
+  private int capacityFor(int idx) {
+    if (powerOfTwo) {
+      return 1 << (idx + 2);
+    }
+    if (idx < primes.length) {
+      return primes[idx]; // choose the capacity to be the prime number in the array
+    }
+    int c = primes[primes.length - 1];
+    for (int i = primes.length - 1; i < idx; i++) {
+      c = c * 2 + 1; // if the table is larger than the max held by the primes array
+    }
+    return c;
+  }
+
+  // Smallest step of growth whose table holds the given number of elements within the load factor.
+  private int primeIdxFor(int elements) {
+    int idx = 1;
+    while (loadFactor * capacityFor(idx) < elements) {
+      idx++;
+    }
+    return idx;
+  }
+
   private void rehash() {
-    primeIdx++;
-    if (primeIdx < primes.length) {
-      capacity = primes[primeIdx]; // choose the capacity to be the next prime number in the array
-    } else {
-      capacity = capacity * 2 + 1; // if the table is larger than the max held by the primes array
+    resize(primeIdx + 1);
+  }
+
+  private void resize(int newPrimeIdx) {
+    if (oldTable != null) { // still busy with the previous resize, finish it first
+      migrate(oldTable.length);
     }
-    // reinitialize the hashTable
-    numElements = 0;
+    long start = stats == null ? 0 : System.nanoTime();
     Node<K, V>[] temp = hashTable;
+    primeIdx = newPrimeIdx;
+    capacity = capacityFor(primeIdx);
     hashTable = new Node[capacity];
-    for (Node<K, V> n : temp) { // copy the auxiliary data structure to the new hashTable
-      Node<K, V> curr = n;
+    if (incremental) {
+      oldTable = temp;
+      migrateIdx = 0;
+    } else {
+      // keys are known to be distinct, so relink the existing nodes without another find()
+      for (Node<K, V> n : temp) {
+        relinkChain(n);
+      }
+    }
+    if (stats != null) {
+      stats.recordRehash(System.nanoTime() - start);
+    }
+  }
+
+  // Move up to the given number of buckets from oldTable into hashTable.
+  private void migrate(int buckets) {
+    long start = stats == null ? 0 : System.nanoTime();
+    while (buckets > 0 && migrateIdx < oldTable.length) {
+      relinkChain(oldTable[migrateIdx]);
+      oldTable[migrateIdx] = null;
+      migrateIdx++;
+      buckets--;
+    }
+    if (migrateIdx == oldTable.length) {
+      oldTable = null;
+    }
+    if (stats != null) {
+      stats.recordRehashWork(System.nanoTime() - start);
+    }
+  }
+
+  private void relinkChain(Node<K, V> curr) {
+    if (curr instanceof TreeBin) {
+      curr = untreeify((TreeBin<K, V, ?>) curr);
+    }
+    while (curr != null) {
+      Node<K, V> next = curr.next;
+      addToBucket(hashTable, getIndex(curr.key), curr);
+      curr = next;
+    }
+  }
+
+  // Add a node whose key is known to be absent to the given bucket.
+  private void addToBucket(Node<K, V>[] table, int index, Node<K, V> node) {
+    node.next = null; // a node relinked by a resize still points into its old chain
+    if (table[index] instanceof TreeBin) {
+      TreeBin<K, V, ?> bin = (TreeBin<K, V, ?>) table[index];
+      if (node.key.getClass() == bin.keyClass) {
+        bin.findOrAdd(node);
+        return;
+      }
+      table[index] = untreeify(bin); // a key of another class cannot be ordered with the rest
+    }
+    Node<K, V> tail = table[index];
+    if (tail == null) {
+      table[index] = node;
+      return;
+    }
+    int length = 1;
+    boolean sameClass = tail.key.getClass() == node.key.getClass();
+    while (tail.next != null) {
+      tail = tail.next;
+      length++;
+      sameClass &= tail.key.getClass() == node.key.getClass();
+    }
+    appendToChain(table, index, tail, node, length, sameClass);
+  }
+
+  // Append a node after the tail of the chain in the given bucket, which holds length
+  // nodes, and turn the chain into a tree bin if it is now long and sameClass says
+  // all its keys are of the new node's class.
+  private void appendToChain(Node<K, V>[] table, int index, Node<K, V> tail, Node<K, V> node,
+      int length, boolean sameClass) {
+    tail.next = node;
+    if (length + 1 >= TREEIFY_THRESHOLD && sameClass && node.key instanceof Comparable) {
+      TreeBin<K, V, ?> bin = new TreeBin<>(node.key.getClass());
+      Node<K, V> curr = table[index];
       while (curr != null) {
-        insert(curr.key, curr.value);
-        curr = curr.next;
+        Node<K, V> next = curr.next;
+        curr.next = null;
+        bin.findOrAdd(curr);
+        curr = next;
       }
+      table[index] = bin;
+    }
+  }
+
+  // Turn a tree bin back into a plain chain and return its head.
+  private Node<K, V> untreeify(TreeBin<K, V, ?> bin) {
+    Node<K, V> head = null;
+    for (Iterator<Node<K, V>> nodes = bin.nodes(); nodes.hasNext(); ) {
+      Node<K, V> node = nodes.next();
+      node.next = head;
+      head = node;
     }
+    return head;
   }
 
   @Override
@@ -72,19 +302,12 @@ public class ChainingHashMap<K, V> implements Map<K, V> {
     if (k == null) {
       throw new IllegalArgumentException("cannot handle null key");
     }
-    if (find(k) != null) {
+    int before = numElements;
+    Node<K, V> node = findOrInsert(k);
+    if (numElements == before) {
       throw new IllegalArgumentException("cannot have duplicate keys " + k);
     }
-    int index = getIndex(k);
-    Node<K, V> newNode = new Node<>(k, v);
-    // prepend it to the current hashTable[index]
-    newNode.next = hashTable[index];
-    hashTable[index] = newNode;
-    numElements++;
-    if (loadFactor * capacity < numElements) { // if numElements/capacity > loadFactor, need rehash
-      rehash();
-    }
-
+    node.value = v;
   }
 
   @Override
@@ -92,40 +315,77 @@ public class ChainingHashMap<K, V> implements Map<K, V> {
     if (k == null) {
       throw new IllegalArgumentException("cannot handle null key");
     }
-    Node<K, V> node = find(k);
+    Node<K, V> node = removeNode(k);
     if (node == null) {
       throw new IllegalArgumentException("cannot find key " + k);
     }
-    int index = getIndex(k);
-    V value = node.value;
-    Node<K, V> prevNode = findPrevNode(k);
-    if (prevNode == null) {
-      hashTable[index] = hashTable[index].next; // make the hashTable[index] to null, we are removing the head
-    } else {
-      prevNode.next = node.next;
-    }
-    numElements--;
-    return value;
+    return node.value;
   }
 
-  private Node<K, V> findPrevNode(K k) {
+  /**
+   * Remove the key/value pair for a key if it is mapped, finding and
+   * unlinking it in one walk instead of has() followed by remove().
+   *
+   * @param k The key.
+   * @return The value that was associated with k, or null if k is null or not mapped.
+   */
+  public V removeOrNull(K k) {
     if (k == null) {
-      throw new IllegalArgumentException("cannot handle null key");
+      return null;
     }
-    int index = getIndex(k);
-    if (hashTable[index] != null) {
-      Node<K, V> temp = hashTable[index];
-      if (temp.key.equals(k)) {
-        return null; // head of a linkedList has no prev node
+    Node<K, V> node = removeNode(k);
+    return node == null ? null : node.value;
+  }
+
+  // Unlink and return the node with key k, or null if it is not mapped, in one walk.
+  private Node<K, V> removeNode(K k) {
+    Node<K, V> node = unlink(hashTable, getIndex(k), k);
+    if (node == null && oldTable != null) {
+      node = unlink(oldTable, getIndex(k, oldTable.length), k);
+    }
+    if (node == null) {
+      return null;
+    }
+    numElements--;
+    if (oldTable != null) {
+      migrate(MIGRATE_STEP);
+    }
+    // shrink once the table is a quarter of the way to full, to half way, so that
+    // alternating inserts and removes around one size never resize back and forth
+    if (primeIdx > 1 && numElements < loadFactor * capacity / 4) {
+      int idx = primeIdxFor(numElements * 2);
+      if (idx < primeIdx) {
+        resize(idx);
       }
-      while (temp.next != null) {
-        if (temp.next.key.equals(k)) {
-          return temp;
+    }
+    return node;
+  }
+
+  // Unlink and return the node with key k from the given bucket, or null if it is not there.
+  private Node<K, V> unlink(Node<K, V>[] table, int index, K k) {
+    if (table[index] instanceof TreeBin) {
+      TreeBin<K, V, ?> bin = (TreeBin<K, V, ?>) table[index];
+      Node<K, V> node = bin.remove(k);
+      if (node != null && bin.count <= UNTREEIFY_THRESHOLD) {
+        table[index] = untreeify(bin);
+      }
+      return node;
+    }
+    Node<K, V> prev = null;
+    Node<K, V> curr = table[index];
+    while (curr != null) {
+      if (curr.key.equals(k)) {
+        if (prev == null) {
+          table[index] = curr.next; // we are removing the head
+        } else {
+          prev.next = curr.next;
         }
-        temp = temp.next;
+        return curr;
       }
+      prev = curr;
+      curr = curr.next;
     }
-    throw new IllegalArgumentException("cannot find key " + k);
+    return null;
   }
 
   @Override
@@ -165,20 +425,192 @@ public class ChainingHashMap<K, V> implements Map<K, V> {
     return numElements;
   }
 
+  /**
+   * Shrink the table to the smallest capacity that holds the current
+   * entries within the load factor, and finish any incremental resize
+   * in progress so the memory of the old table is released.
+   */
+  public void trimToSize() {
+    int idx = primeIdxFor(numElements);
+    if (idx < primeIdx) {
+      resize(idx);
+    }
+    if (oldTable != null) {
+      migrate(oldTable.length);
+    }
+  }
+
+  /**
+   * Start collecting probe lengths and rehash figures. While stats are
+   * disabled (the default) lookups pay for nothing but a null check.
+   */
+  public void enableStats() {
+    stats = new HashTableStats();
+  }
+
+  /**
+   * Stop collecting stats and drop what was collected so far.
+   */
+  public void disableStats() {
+    stats = null;
+  }
+
+  /**
+   * Stats collected since enableStats(), with the chain-length
+   * distribution of the table as it is now. Buckets of an unfinished
+   * incremental resize are counted along with the new table.
+   *
+   * @return The stats of this table.
+   * @throws IllegalStateException if stats are not enabled.
+   */
+  public HashTableStats stats() throws IllegalStateException {
+    if (stats == null) {
+      throw new IllegalStateException("stats are not enabled");
+    }
+    long[] chains = new long[HashTableStats.MAX_TRACKED + 1];
+    countChains(hashTable, 0, chains);
+    if (oldTable != null) {
+      countChains(oldTable, migrateIdx, chains);
+    }
+    stats.snapshot(chains, 0, capacity);
+    return stats;
+  }
+
+  private void countChains(Node<K, V>[] table, int from, long[] chains) {
+    for (int i = from; i < table.length; i++) {
+      int length = 0;
+      if (table[i] instanceof TreeBin) {
+        length = ((TreeBin<K, V, ?>) table[i]).count;
+      } else {
+        for (Node<K, V> curr = table[i]; curr != null; curr = curr.next) {
+          length++;
+        }
+      }
+      chains[Math.min(length, HashTableStats.MAX_TRACKED)]++;
+    }
+  }
+
+  // Return node for given key, inserting a node with a null value if
+  // the key is not in the table yet. The key is hashed once and its bucket
+  // walked once; a new node goes after the tail that walk ended on.
+  @Override
+  protected Node<K, V> findOrInsert(K k) {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    int hash = hashing.hash(k);
+    if (oldTable != null) { // not migrated yet?
+      Node<K, V> node = findInBucket(oldTable[indexFor(hash, oldTable.length)], k);
+      if (node != null) {
+        recordProbe(k, node);
+        return node;
+      }
+      migrate(MIGRATE_STEP);
+    }
+    int index = indexFor(hash, capacity);
+    Node<K, V> head = hashTable[index];
+    Node<K, V> created;
+    if (head instanceof TreeBin) {
+      Node<K, V> node = ((TreeBin<K, V, ?>) head).find(k);
+      if (node != null) {
+        recordProbe(k, node);
+        return node;
+      }
+      recordProbe(k, null);
+      created = new Node<>(k, null);
+      addToBucket(hashTable, index, created);
+    } else if (head == null) {
+      recordProbe(k, null);
+      created = new Node<>(k, null);
+      hashTable[index] = created;
+    } else {
+      Node<K, V> tail = head;
+      int length = 1;
+      boolean sameClass = true;
+      while (true) {
+        if (tail.key.equals(k)) {
+          recordProbe(k, tail);
+          return tail;
+        }
+        sameClass &= tail.key.getClass() == k.getClass();
+        if (tail.next == null) {
+          break;
+        }
+        tail = tail.next;
+        length++;
+      }
+      recordProbe(k, null);
+      created = new Node<>(k, null);
+      appendToChain(hashTable, index, tail, created, length, sameClass);
+    }
+    numElements++;
+    if (loadFactor * capacity < numElements) { // if numElements/capacity > loadFactor, need rehash
+      rehash();
+    }
+    return created;
+  }
+
+  // Record the probe length of a lookup that found the given node, or null, if stats are enabled.
+  private void recordProbe(K k, Node<K, V> found) {
+    if (stats != null) {
+      stats.recordProbe(probeLength(k, found));
+    }
+  }
+
+  @Override
+  public V getOrDefault(K k, V defaultValue) {
+    if (k == null) {
+      return defaultValue;
+    }
+    Node<K, V> n = find(k);
+    return n == null ? defaultValue : n.value;
+  }
+
+  @Override
+  public Cursor<K, V> cursor() {
+    return new ChainingHashMapCursor();
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    forEachIn(hashTable, action);
+    if (oldTable != null) {
+      forEachIn(oldTable, action);
+    }
+  }
+
+  private void forEachIn(Node<K, V>[] table, BiConsumer<? super K, ? super V> action) {
+    for (Node<K, V> curr : table) {
+      if (curr instanceof TreeBin) { // rare enough that an iterator per bin does not matter
+        for (Iterator<Node<K, V>> nodes = ((TreeBin<K, V, ?>) curr).nodes(); nodes.hasNext(); ) {
+          Node<K, V> node = nodes.next();
+          action.accept(node.key, node.value);
+        }
+        continue;
+      }
+      for (; curr != null; curr = curr.next) {
+        action.accept(curr.key, curr.value);
+      }
+    }
+  }
+
   @Override
   public Iterator<K> iterator() {
     return new ChainingHashMapIterator();
   }
 
   private class ChainingHashMapIterator implements Iterator<K> {
+    private Node<K, V>[] table; // hashTable first, then oldTable if a resize is in progress
     private Node<K, V> curr;
+    private Iterator<Node<K, V>> treeIterator; // nodes of the tree bin we are in, if any
     private int count; // counts the number of elements we have been iterated
     private int index;
 
     ChainingHashMapIterator() {
       count = 0;
       index = 0;
-      curr = hashTable[index];
+      table = hashTable;
+      curr = table[index];
     }
 
     @Override
@@ -191,19 +623,96 @@ public class ChainingHashMap<K, V> implements Map<K, V> {
       if (!hasNext()) {
         throw new NoSuchElementException("No more elements in the table");
       }
-      // if curr is null, either we are at the end of the auxiliary data structure, or the index is not taken
-      while (curr == null) {
-        index++; // move the index forward
-        curr = hashTable[index];
+      while (true) {
+        if (treeIterator != null && treeIterator.hasNext()) {
+          count++;
+          return treeIterator.next().key;
+        }
+        treeIterator = null;
+        if (curr instanceof TreeBin) {
+          treeIterator = ((TreeBin<K, V, ?>) curr).nodes();
+          curr = null;
+        } else if (curr != null) {
+          K key = curr.getKey();
+          count++;
+          curr = curr.next; // move the curr to the next
+          return key;
+        } else { // either we are at the end of the auxiliary data structure, or the index is not taken
+          index++; // move the index forward
+          if (index == table.length) { // the rest of the elements are still in the old table
+            table = oldTable;
+            index = 0;
+          }
+          curr = table[index];
+        }
       }
-      K key = curr.getKey();
-      count++;
-      curr = curr.next; // move the curr to the next
-      return key;
     }
   }
 
-  private static class Node<K, V> {
+  private class ChainingHashMapCursor implements Cursor<K, V> {
+    private Node<K, V>[] table; // hashTable first, then oldTable if a resize is in progress
+    private int index;
+    private Node<K, V> next; // next node of the current bucket
+    private Iterator<Node<K, V>> treeNodes; // of the tree bin we are in, if any
+    private Node<K, V> current;
+
+    ChainingHashMapCursor() {
+      table = hashTable;
+      index = -1;
+    }
+
+    @Override
+    public boolean advance() {
+      while (table != null) {
+        if (treeNodes != null) {
+          if (treeNodes.hasNext()) {
+            current = treeNodes.next();
+            return true;
+          }
+          treeNodes = null;
+        }
+        if (next instanceof TreeBin) {
+          treeNodes = ((TreeBin<K, V, ?>) next).nodes();
+          next = null;
+        } else if (next != null) {
+          current = next;
+          next = next.next;
+          return true;
+        } else if (++index < table.length) {
+          next = table[index];
+        } else {
+          table = table == hashTable ? oldTable : null; // oldTable is null unless a resize is in progress
+          index = -1;
+        }
+      }
+      current = null;
+      return false;
+    }
+
+    private Node<K, V> current() {
+      if (current == null) {
+        throw new IllegalStateException("cursor is not on an entry");
+      }
+      return current;
+    }
+
+    @Override
+    public K key() {
+      return current().key;
+    }
+
+    @Override
+    public V value() {
+      return current().value;
+    }
+
+    @Override
+    public void setValue(V v) {
+      current().value = v;
+    }
+  }
+
+  private static class Node<K, V> implements Slot<V> {
     K key;
     V value;
     Node<K, V> next;
@@ -232,5 +741,104 @@ public class ChainingHashMap<K, V> implements Map<K, V> {
       this.value = value;
     }
   }
-}
 
+  // Bucket head standing in for a chain that has been turned into a tree. The
+  // tree maps each key to its node, except that keys comparing equal without
+  // being equal (BigDecimal 1.0 and 1.00, say) share one entry, whose nodes
+  // are chained through next; a node matches a key only if the keys are equal.
+  private static class TreeBin<K, V, C extends Comparable<C>> extends Node<K, V> {
+    final AvlTreeMap<C, Node<K, V>> tree;
+    final Class<?> keyClass; // every key in the tree is of exactly this class
+    int count; // nodes in the bin
+
+    TreeBin(Class<?> keyClass) {
+      tree = new AvlTreeMap<>();
+      this.keyClass = keyClass;
+    }
+
+    // A key as the tree orders it. Only keys of keyClass get here, and that
+    // class was checked to be Comparable when the bin was made.
+    @SuppressWarnings("unchecked")
+    private C order(Object k) {
+      return (C) k;
+    }
+
+    Node<K, V> find(K k) {
+      if (k.getClass() != keyClass) {
+        return null;
+      }
+      for (Node<K, V> n = tree.getOrNull(order(k)); n != null; n = n.next) {
+        if (n.key.equals(k)) {
+          return n;
+        }
+      }
+      return null;
+    }
+
+    // Add a node of keyClass unless the bin has its key; return the node
+    // that has it, or null if the node was added.
+    Node<K, V> findOrAdd(Node<K, V> node) {
+      Node<K, V> run = tree.putIfAbsent(order(node.key), node);
+      if (run != null) {
+        for (Node<K, V> n = run; n != null; n = n.next) {
+          if (n.key.equals(node.key)) {
+            return n;
+          }
+        }
+        node.next = run.next;
+        run.next = node;
+      }
+      count++;
+      return null;
+    }
+
+    // Unlink and return the node with key k, or null if it is not there.
+    Node<K, V> remove(K k) {
+      if (k.getClass() != keyClass) {
+        return null;
+      }
+      C key = order(k);
+      Node<K, V> prev = null;
+      for (Node<K, V> n = tree.getOrNull(key); n != null; prev = n, n = n.next) {
+        if (n.key.equals(k)) {
+          if (prev != null) {
+            prev.next = n.next;
+          } else {
+            tree.remove(key); // the entry holds n's key, give it to the next node of the run
+            if (n.next != null) {
+              tree.insert(order(n.next.key), n.next);
+            }
+          }
+          n.next = null;
+          count--;
+          return n;
+        }
+      }
+      return null;
+    }
+
+    // Every node of the bin. Each is passed over before it is returned, so
+    // the caller may relink it.
+    Iterator<Node<K, V>> nodes() {
+      Cursor<C, Node<K, V>> entries = tree.cursor();
+      return new Iterator<Node<K, V>>() {
+        private Node<K, V> next = entries.advance() ? entries.value() : null;
+
+        @Override
+        public boolean hasNext() {
+          return next != null;
+        }
+
+        @Override
+        public Node<K, V> next() {
+          if (next == null) {
+            throw new NoSuchElementException("No more nodes in the bin");
+          }
+          Node<K, V> node = next;
+          next = node.next != null ? node.next : entries.advance() ? entries.value() : null;
+          return node;
+        }
+      };
+    }
+  }
+}
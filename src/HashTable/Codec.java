@@ -0,0 +1,69 @@
+package HashTable;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Conversion of keys or values to and from bytes, for maps that store
+ * them outside the Java heap.
+ *
+ * <p>encode() must give equal byte arrays for equal objects, and
+ * decode() must undo encode().</p>
+ *
+ * @param <T> Type of the objects converted.
+ */
+public interface Codec<T> {
+  /**
+   * Bytes of an object.
+   *
+   * @param t The object.
+   * @return Its encoded form.
+   */
+  byte[] encode(T t);
+
+  /**
+   * Object from its bytes.
+   *
+   * @param bytes The encoded form, as returned by encode().
+   * @return The object.
+   */
+  T decode(byte[] bytes);
+
+  /**
+   * Strings as UTF-8.
+   *
+   * @return A codec for Strings.
+   */
+  static Codec<String> utf8() {
+    return new Codec<String>() {
+      @Override
+      public byte[] encode(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+      }
+
+      @Override
+      public String decode(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+      }
+    };
+  }
+
+  /**
+   * Integers as 4 big-endian bytes.
+   *
+   * @return A codec for Integers.
+   */
+  static Codec<Integer> int32() {
+    return new Codec<Integer>() {
+      @Override
+      public byte[] encode(Integer i) {
+        return ByteBuffer.allocate(4).putInt(i).array();
+      }
+
+      @Override
+      public Integer decode(byte[] bytes) {
+        return ByteBuffer.wrap(bytes).getInt();
+      }
+    };
+  }
+}
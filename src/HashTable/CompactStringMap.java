@@ -0,0 +1,693 @@
+package HashTable;
+
+import Map.Cursor;
+import Map.Map;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.function.BiConsumer;
+
+/**
+ * Map from strings to values that keeps the keys as UTF-8 bytes in one
+ * shared byte array instead of as String objects.
+ *
+ * <p>Each entry is an offset and a length into the key arena, the hash
+ * of the key bytes, and a value, in flat arrays. An open addressing table
+ * with linear probing holds the hash and the entry number of each key in
+ * one long, so probing compares hashes without touching the entries. A
+ * key costs its UTF-8 bytes plus about 24 bytes, instead of a String with
+ * its byte array, two object headers and a Node.</p>
+ *
+ * <p>Besides Strings, keys can be looked up as any CharSequence, or as a
+ * slice of a byte array holding UTF-8, e.g. a line read from a file;
+ * neither makes a String. A String with an unpaired surrogate has no
+ * UTF-8 encoding, so it cannot be inserted and is never found. Iteration
+ * and key() decode a new String for every key.</p>
+ *
+ * <p>The hash is seeded per map but is not SipHash; for keys chosen by an
+ * attacker use ChainingHashMap with HashStrategy.seeded(). Removing a key
+ * leaves its bytes in the arena until they make up half of it, and then
+ * the arena is compacted.</p>
+ *
+ * @param <V> Type for values.
+ */
+public class CompactStringMap<V> implements Map<String, V> {
+
+  private static final SecureRandom SEEDS = new SecureRandom();
+  private static final int MIN_CAPACITY = 8;
+  private static final long M = 0x9E3779B97F4A7C15L;
+  private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+  private final long seed;
+  private final double loadFactor = 0.75;
+  private long[] table; // hash in the high half, entry + 1 in the low half, 0 if free
+  private int mask;
+  private int numElements;
+  private int[] meta; // offset, length and hash of each entry
+  private Object[] values;
+  private byte[] arena;
+  private int arenaTop;
+  private int garbage; // bytes of removed keys still in the arena
+
+  /**
+   * Constructs a CompactStringMap with default initial capacity.
+   */
+  public CompactStringMap() {
+    seed = SEEDS.nextLong();
+    table = new long[MIN_CAPACITY];
+    mask = MIN_CAPACITY - 1;
+    meta = new int[3 * MIN_CAPACITY];
+    values = new Object[MIN_CAPACITY];
+    arena = new byte[16 * MIN_CAPACITY];
+  }
+
+  // One 8-byte little-endian word into the hash.
+  private static long step(long h, long word) {
+    return Long.rotateLeft(h ^ (word * M), 31) * 0xC2B2AE3D27D4EB4FL;
+  }
+
+  // The last, partial word and the length, then a final mix.
+  private static int finish(long h, long tail, int length) {
+    return (int) SeededHashStrategy.fmix64(step(h, tail) ^ length);
+  }
+
+  private int hash(byte[] b, int off, int len) {
+    long h = seed;
+    int end = off + len;
+    int i = off;
+    for (; i + 8 <= end; i += 8) {
+      h = step(h, (long) LONGS.get(b, i));
+    }
+    long tail = 0;
+    for (int j = end - 1; j >= i; j--) {
+      tail = (tail << 8) | (b[j] & 0xFFL);
+    }
+    return finish(h, tail, len);
+  }
+
+  // Same as hash() of the UTF-8 encoding of s, without encoding it into an array.
+  private int hash(CharSequence s) {
+    long h = seed;
+    int n = s.length();
+    int i = 0;
+    // whole words of ASCII, the common case, until the first other char
+    while (i + 8 <= n) {
+      long word = 0;
+      int bits = 0;
+      for (int j = 7; j >= 0; j--) {
+        char c = s.charAt(i + j);
+        bits |= c;
+        word = (word << 8) | c;
+      }
+      if (bits >= 0x80) {
+        break;
+      }
+      h = step(h, word);
+      i += 8;
+    }
+    long word = 0;
+    int filled = 0; // bytes in word
+    int length = i;
+    while (i < n) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        word |= (long) c << (8 * filled);
+        i++;
+        length++;
+        if (++filled == 8) {
+          h = step(h, word);
+          word = 0;
+          filled = 0;
+        }
+        continue;
+      }
+      long encoded = utf8(s, i);
+      i += (int) (encoded >>> 40);
+      int count = (int) (encoded >>> 32) & 0xFF;
+      for (int j = 0; j < count; j++) {
+        word |= ((encoded >>> (8 * j)) & 0xFFL) << (8 * filled);
+        if (++filled == 8) {
+          h = step(h, word);
+          word = 0;
+          filled = 0;
+        }
+      }
+      length += count;
+    }
+    return finish(h, word, length);
+  }
+
+  // UTF-8 bytes of the code point at s[i], in the low bytes; their
+  // count in bits 32-39 and the number of chars used in bits 40 and up.
+  // An unpaired surrogate has no encoding and comes back as zero bytes.
+  private static long utf8(CharSequence s, int i) {
+    char c = s.charAt(i);
+    if (c < 0x80) {
+      return c | (1L << 32) | (1L << 40);
+    }
+    if (c < 0x800) {
+      return (0xC0 | (c >> 6)) | ((0x80L | (c & 0x3F)) << 8) | (2L << 32) | (1L << 40);
+    }
+    if (Character.isSurrogate(c)) {
+      if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+        int cp = Character.toCodePoint(c, s.charAt(i + 1));
+        return (0xF0 | (cp >> 18)) | ((0x80L | ((cp >> 12) & 0x3F)) << 8)
+            | ((0x80L | ((cp >> 6) & 0x3F)) << 16) | ((0x80L | (cp & 0x3F)) << 24) | (4L << 32) | (2L << 40);
+      }
+      return 1L << 40;
+    }
+    return (0xE0 | (c >> 12)) | ((0x80L | ((c >> 6) & 0x3F)) << 8) | ((0x80L | (c & 0x3F)) << 16)
+        | (3L << 32) | (1L << 40);
+  }
+
+  // Whether the key of entry e is the UTF-8 encoding of s.
+  private boolean keyEquals(int e, CharSequence s) {
+    int pos = meta[3 * e];
+    int end = pos + meta[3 * e + 1];
+    int n = s.length();
+    for (int i = 0; i < n; ) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        if (pos == end || arena[pos++] != (byte) c) {
+          return false;
+        }
+        i++;
+        continue;
+      }
+      long encoded = utf8(s, i);
+      i += (int) (encoded >>> 40);
+      int count = (int) (encoded >>> 32) & 0xFF;
+      if (count == 0) { // an unpaired surrogate, which no key holds
+        return false;
+      }
+      for (int j = 0; j < count; j++) {
+        if (pos == end || arena[pos++] != (byte) (encoded >>> (8 * j))) {
+          return false;
+        }
+      }
+    }
+    return pos == end;
+  }
+
+  private boolean keyEquals(int e, byte[] b, int off, int len) {
+    int pos = meta[3 * e];
+    return meta[3 * e + 1] == len && Arrays.equals(arena, pos, pos + len, b, off, off + len);
+  }
+
+  // Table slot of the key s with the given hash, or -1 if it is not mapped.
+  private int findSlot(CharSequence s, int hash) {
+    for (int slot = hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+      if ((int) (table[slot] >>> 32) == hash && keyEquals((int) table[slot] - 1, s)) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  private int findSlot(byte[] b, int off, int len, int hash) {
+    for (int slot = hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+      if ((int) (table[slot] >>> 32) == hash && keyEquals((int) table[slot] - 1, b, off, len)) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  // Table slot that points to entry e.
+  private int slotOf(int e) {
+    int slot = meta[3 * e + 2] & mask;
+    while ((int) table[slot] - 1 != e) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private static void checkSlice(byte[] b, int off, int len) {
+    if (b == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    if (off < 0 || len < 0 || off + len > b.length || off + len < 0) {
+      throw new IndexOutOfBoundsException("slice " + off + "+" + len + " of " + b.length + " bytes");
+    }
+  }
+
+  private void resize(int newCapacity) {
+    table = new long[newCapacity];
+    mask = newCapacity - 1;
+    for (int e = 0; e < numElements; e++) {
+      place(e);
+    }
+  }
+
+  // Put entry e into the table, at the first free slot of its probe sequence.
+  private void place(int e) {
+    int hash = meta[3 * e + 2];
+    int slot = hash & mask;
+    while (table[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    table[slot] = ((long) hash << 32) | (e + 1);
+  }
+
+  private void add(byte[] b, int off, int len, int hash, V v) {
+    if (arenaTop + len > arena.length) {
+      arena = Arrays.copyOf(arena, Math.max(arenaTop + len, 2 * arena.length));
+    }
+    System.arraycopy(b, off, arena, arenaTop, len);
+    if (numElements == values.length) {
+      values = Arrays.copyOf(values, 2 * numElements);
+      meta = Arrays.copyOf(meta, 6 * numElements);
+    }
+    int e = numElements++;
+    meta[3 * e] = arenaTop;
+    meta[3 * e + 1] = len;
+    meta[3 * e + 2] = hash;
+    values[e] = v;
+    arenaTop += len;
+    place(e);
+    if (numElements > loadFactor * table.length) {
+      resize(2 * table.length);
+    }
+  }
+
+  // Remove the entry in the given table slot and return its value.
+  private V removeSlot(int slot) {
+    int e = (int) table[slot] - 1;
+    V value = (V) values[e];
+    garbage += meta[3 * e + 1];
+    // backward-shift deletion: pull later entries of the cluster into the gap
+    int gap = slot;
+    for (int i = (slot + 1) & mask; table[i] != 0; i = (i + 1) & mask) {
+      int home = (int) (table[i] >>> 32) & mask;
+      if (((i - home) & mask) >= ((i - gap) & mask)) { // the entry at i may move back to gap
+        table[gap] = table[i];
+        gap = i;
+      }
+    }
+    table[gap] = 0;
+    // keep the entries dense: the last one takes the place of e
+    int last = --numElements;
+    if (e != last) {
+      table[slotOf(last)] = ((long) meta[3 * last + 2] << 32) | (e + 1);
+      System.arraycopy(meta, 3 * last, meta, 3 * e, 3);
+      values[e] = values[last];
+    }
+    values[last] = null;
+    if (garbage > 4096 && garbage > arenaTop / 2) {
+      compactArena();
+    }
+    if (table.length > MIN_CAPACITY && numElements < loadFactor * table.length / 4) {
+      resize(table.length / 2);
+    }
+    return value;
+  }
+
+  // Copy the live keys to a new arena, dropping the bytes of removed ones.
+  private void compactArena() {
+    byte[] packed = new byte[Math.max(16, 2 * (arenaTop - garbage))];
+    int top = 0;
+    for (int e = 0; e < numElements; e++) {
+      int len = meta[3 * e + 1];
+      System.arraycopy(arena, meta[3 * e], packed, top, len);
+      meta[3 * e] = top;
+      top += len;
+    }
+    arena = packed;
+    arenaTop = top;
+    garbage = 0;
+  }
+
+  private String keyAt(int e) {
+    return new String(arena, meta[3 * e], meta[3 * e + 1], StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public void insert(String k, V v) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    for (int i = 0; i < k.length(); ) {
+      int cp = k.codePointAt(i);
+      if (cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE) { // a pair reads as one code point
+        throw new IllegalArgumentException("cannot handle unpaired surrogate in key " + k);
+      }
+      i += Character.charCount(cp);
+    }
+    byte[] b = k.getBytes(StandardCharsets.UTF_8);
+    insert(b, 0, b.length, v);
+  }
+
+  /**
+   * Insert a new key/value pair, the key given as UTF-8 bytes.
+   *
+   * @param b Array holding the key.
+   * @param off Index of the first byte of the key in b.
+   * @param len Length of the key in bytes.
+   * @param v The value to be associated with the key.
+   * @throws IllegalArgumentException If b is null or the key is already mapped.
+   * @throws IndexOutOfBoundsException If the slice is not within b.
+   */
+  public void insert(byte[] b, int off, int len, V v) throws IllegalArgumentException {
+    checkSlice(b, off, len);
+    int hash = hash(b, off, len);
+    if (findSlot(b, off, len, hash) != -1) {
+      throw new IllegalArgumentException("cannot have duplicate keys "
+          + new String(b, off, len, StandardCharsets.UTF_8));
+    }
+    add(b, off, len, hash, v);
+  }
+
+  @Override
+  public V remove(String k) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    int slot = findSlot(k, hash(k));
+    if (slot == -1) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    return removeSlot(slot);
+  }
+
+  /**
+   * Remove an existing key/value pair, the key given as UTF-8 bytes.
+   *
+   * @param b Array holding the key.
+   * @param off Index of the first byte of the key in b.
+   * @param len Length of the key in bytes.
+   * @return The value that was associated with the key.
+   * @throws IllegalArgumentException If b is null or the key is not mapped.
+   * @throws IndexOutOfBoundsException If the slice is not within b.
+   */
+  public V remove(byte[] b, int off, int len) throws IllegalArgumentException {
+    checkSlice(b, off, len);
+    int slot = findSlot(b, off, len, hash(b, off, len));
+    if (slot == -1) {
+      throw new IllegalArgumentException("cannot find key " + new String(b, off, len, StandardCharsets.UTF_8));
+    }
+    return removeSlot(slot);
+  }
+
+  @Override
+  public void put(String k, V v) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    int slot = findSlot(k, hash(k));
+    if (slot == -1) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    values[(int) table[slot] - 1] = v;
+  }
+
+  @Override
+  public V get(String k) throws IllegalArgumentException {
+    return get((CharSequence) k);
+  }
+
+  /**
+   * Get the value associated with a key given as any CharSequence.
+   *
+   * @param k The key.
+   * @return The value associated with k.
+   * @throws IllegalArgumentException If k is null or not mapped.
+   */
+  public V get(CharSequence k) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    int slot = findSlot(k, hash(k));
+    if (slot == -1) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    return (V) values[(int) table[slot] - 1];
+  }
+
+  /**
+   * Get the value associated with a key given as UTF-8 bytes.
+   *
+   * @param b Array holding the key.
+   * @param off Index of the first byte of the key in b.
+   * @param len Length of the key in bytes.
+   * @return The value associated with the key.
+   * @throws IllegalArgumentException If b is null or the key is not mapped.
+   * @throws IndexOutOfBoundsException If the slice is not within b.
+   */
+  public V get(byte[] b, int off, int len) throws IllegalArgumentException {
+    checkSlice(b, off, len);
+    int slot = findSlot(b, off, len, hash(b, off, len));
+    if (slot == -1) {
+      throw new IllegalArgumentException("cannot find key " + new String(b, off, len, StandardCharsets.UTF_8));
+    }
+    return (V) values[(int) table[slot] - 1];
+  }
+
+  @Override
+  public boolean has(String k) {
+    return has((CharSequence) k);
+  }
+
+  /**
+   * Check existence of a key given as any CharSequence.
+   *
+   * @param k The key.
+   * @return True if k is mapped, false otherwise (even for null!).
+   */
+  public boolean has(CharSequence k) {
+    if (k == null) {
+      return false;
+    }
+    return findSlot(k, hash(k)) != -1;
+  }
+
+  /**
+   * Check existence of a key given as UTF-8 bytes.
+   *
+   * @param b Array holding the key.
+   * @param off Index of the first byte of the key in b.
+   * @param len Length of the key in bytes.
+   * @return True if the key is mapped, false otherwise (even for a null array!).
+   * @throws IndexOutOfBoundsException If the slice is not within b.
+   */
+  public boolean has(byte[] b, int off, int len) {
+    if (b == null) {
+      return false;
+    }
+    checkSlice(b, off, len);
+    return findSlot(b, off, len, hash(b, off, len)) != -1;
+  }
+
+  @Override
+  public V getOrDefault(String k, V defaultValue) {
+    return getOrDefault((CharSequence) k, defaultValue);
+  }
+
+  /**
+   * Get the value associated with a key given as any CharSequence, or a
+   * default if it is not mapped.
+   *
+   * @param k The key.
+   * @param defaultValue The value to return if k is not mapped.
+   * @return The value associated with k, or defaultValue if k is null or not mapped.
+   */
+  public V getOrDefault(CharSequence k, V defaultValue) {
+    if (k == null) {
+      return defaultValue;
+    }
+    int slot = findSlot(k, hash(k));
+    return slot == -1 ? defaultValue : (V) values[(int) table[slot] - 1];
+  }
+
+  /**
+   * Get the value associated with a key given as UTF-8 bytes, or a default
+   * if it is not mapped.
+   *
+   * @param b Array holding the key.
+   * @param off Index of the first byte of the key in b.
+   * @param len Length of the key in bytes.
+   * @param defaultValue The value to return if the key is not mapped.
+   * @return The value associated with the key, or defaultValue if b is null or the key is not mapped.
+   * @throws IndexOutOfBoundsException If the slice is not within b.
+   */
+  public V getOrDefault(byte[] b, int off, int len, V defaultValue) {
+    if (b == null) {
+      return defaultValue;
+    }
+    checkSlice(b, off, len);
+    int slot = findSlot(b, off, len, hash(b, off, len));
+    return slot == -1 ? defaultValue : (V) values[(int) table[slot] - 1];
+  }
+
+  @Override
+  public int size() {
+    return numElements;
+  }
+
+  /**
+   * Memory taken up by the map's arrays, not counting the values.
+   *
+   * @return Bytes of the table, the entries and the key arena.
+   */
+  public long memoryBytes() {
+    return 8L * table.length + 4L * meta.length + 4L * values.length + arena.length;
+  }
+
+  @Override
+  public Cursor<String, V> cursor() {
+    return new Cursor<String, V>() {
+      private int e = -1;
+
+      @Override
+      public boolean advance() {
+        if (e < numElements) {
+          e++;
+        }
+        return e < numElements;
+      }
+
+      private int current() {
+        if (e < 0 || e >= numElements) {
+          throw new IllegalStateException("cursor is not on an entry");
+        }
+        return e;
+      }
+
+      @Override
+      public String key() {
+        return keyAt(current());
+      }
+
+      @Override
+      public V value() {
+        return (V) values[current()];
+      }
+
+      @Override
+      public void setValue(V v) {
+        values[current()] = v;
+      }
+    };
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super String, ? super V> action) {
+    for (int e = 0; e < numElements; e++) {
+      action.accept(keyAt(e), (V) values[e]);
+    }
+  }
+
+  @Override
+  public Iterator<String> iterator() {
+    return new Iterator<String>() {
+      private int e = 0;
+
+      @Override
+      public boolean hasNext() {
+        return e < numElements;
+      }
+
+      @Override
+      public String next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException("No more elements in the table");
+        }
+        return keyAt(e++);
+      }
+    };
+  }
+
+  /**
+   * Compares heap footprint and lookup time with ChainingHashMap and
+   * java.util.HashMap, on coordinate strings like the vertex names of
+   * StreetSearcher. Lookups go by String for all three, and by a slice
+   * of a buffer of UTF-8 text for this map.
+   *
+   * @param args Number of keys, optional.
+   */
+  public static void main(String[] args) {
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+    Integer one = 1;
+    long base = usedMemory();
+    java.util.HashMap<String, Integer> jdk = new java.util.HashMap<>();
+    for (int i = 0; i < n; i++) {
+      jdk.put(coordinates(i), one);
+    }
+    long jdkBytes = usedMemory() - base;
+    base = usedMemory();
+    ChainingHashMap<String, Integer> chaining = new ChainingHashMap<>();
+    for (int i = 0; i < n; i++) {
+      chaining.insert(coordinates(i), one);
+    }
+    long chainingBytes = usedMemory() - base;
+    base = usedMemory();
+    CompactStringMap<Integer> compact = new CompactStringMap<>();
+    for (int i = 0; i < n; i++) {
+      compact.insert(coordinates(i), one);
+    }
+    long compactBytes = usedMemory() - base;
+    System.out.printf("java.util.HashMap %6.1f bytes per key%n", jdkBytes / (double) n);
+    System.out.printf("ChainingHashMap   %6.1f bytes per key%n", chainingBytes / (double) n);
+    System.out.printf("CompactStringMap  %6.1f bytes per key%n", compactBytes / (double) n);
+
+    Random rand = new Random(42);
+    String[] queries = new String[n];
+    StringBuilder text = new StringBuilder();
+    int[] offsets = new int[n + 1];
+    for (int i = 0; i < n; i++) {
+      queries[i] = coordinates(rand.nextInt(n));
+      text.append(queries[i]);
+    }
+    byte[] buffer = text.toString().getBytes(StandardCharsets.UTF_8); // all ASCII, so offsets match the chars
+    for (int i = 0; i < n; i++) {
+      offsets[i + 1] = offsets[i] + queries[i].length();
+    }
+    for (int round = 0; round < 3; round++) { // the last round is the measured one
+      long sink = 0;
+      long begin = System.nanoTime();
+      for (String q : queries) {
+        sink += jdk.get(q);
+      }
+      long jdkNanos = System.nanoTime() - begin;
+      begin = System.nanoTime();
+      for (String q : queries) {
+        sink += chaining.get(q);
+      }
+      long chainingNanos = System.nanoTime() - begin;
+      begin = System.nanoTime();
+      for (String q : queries) {
+        sink += compact.get(q);
+      }
+      long compactNanos = System.nanoTime() - begin;
+      begin = System.nanoTime();
+      for (int i = 0; i < n; i++) {
+        sink += compact.get(buffer, offsets[i], offsets[i + 1] - offsets[i]);
+      }
+      long sliceNanos = System.nanoTime() - begin;
+      if (round == 2) {
+        System.out.printf("java.util.HashMap          %6.1f ns/get%n", jdkNanos / (double) n);
+        System.out.printf("ChainingHashMap            %6.1f ns/get%n", chainingNanos / (double) n);
+        System.out.printf("CompactStringMap (String)  %6.1f ns/get%n", compactNanos / (double) n);
+        System.out.printf("CompactStringMap (bytes)   %6.1f ns/get (%d)%n", sliceNanos / (double) n, sink);
+      }
+    }
+  }
+
+  // A made-up "longitude,latitude" vertex name.
+  private static String coordinates(int i) {
+    return String.format("-76.%06d,39.%06d", i * 7919 % 1_000_000, i / 1000);
+  }
+
+  private static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,643 @@
+package HashTable;
+
+import Map.Cursor;
+import Map.Map;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * Thread-safe hash table with separate chaining and lock striping.
+ *
+ * <p>Buckets are guarded by a fixed set of locks, bucket i by lock
+ * i % stripes, so writers to different stripes never wait for each other.
+ * Reads take no lock at all: bucket heads live in an AtomicReferenceArray,
+ * node links and values are volatile, and a node's key never changes, so
+ * a reader always sees a consistent (if possibly slightly stale) chain.</p>
+ *
+ * <p>Each stripe counts its own entries and the writer that pushes its
+ * stripe over the load factor grows the table, cooperatively: it only
+ * allocates a table twice the size, and every thread that then writes to
+ * the map claims a batch of RESIZE_BATCH old buckets and moves them
+ * before doing its own work. Capacities and the number of stripes are
+ * powers of two, so old bucket i splits into new buckets i and i +
+ * capacity, all three under the same lock; moving a bucket only takes
+ * that one lock. A moved bucket is copied rather than relinked, so
+ * readers still walking it are never disturbed, and is then replaced by
+ * a forwarding node that sends readers and writers on to the new table.
+ * The thread that moves the last bucket publishes the new table.</p>
+ *
+ * <p>putIfAbsent, upsert, compute and merge run entirely under the key's
+ * stripe lock, so they are atomic with respect to other writers.</p>
+ *
+ * <p>Iteration, cursors and forEach are weakly consistent: they never
+ * throw because of concurrent updates and may or may not reflect them.</p>
+ *
+ * @param <K> Type for keys.
+ * @param <V> Type for values.
+ */
+public class ConcurrentChainingHashMap<K, V> implements Map<K, V> {
+
+  private static final int DEFAULT_STRIPES = 64;
+  private static final int PAD = 16; // ints between stripe counters, so each sits on its own cache line
+  private static final int MAX_STRIPES = 1 << 16;
+  private static final int MIN_CAPACITY = 16;
+  private static final int MAX_CAPACITY = 1 << 30;
+  private static final int RESIZE_BATCH = 64; // old buckets a thread claims at a time while helping a resize
+
+  private volatile AtomicReferenceArray<Node<K, V>> hashTable;
+  private final ReentrantLock[] locks; // a power of two of them
+  private final AtomicIntegerArray counts; // entries per stripe, written only under that stripe's lock
+  private volatile Resize<K, V> resizing; // the resize in progress, if any
+  private final ReentrantLock resizeLock = new ReentrantLock(); // guards starting and finishing a resize
+  private final double loadFactor = 0.75;
+
+  /**
+   * Constructs a Concurrent Chaining Hash Map with default initial capacity and settings.
+   */
+  public ConcurrentChainingHashMap() {
+    this(DEFAULT_STRIPES);
+  }
+
+  /**
+   * Constructs a Concurrent Chaining Hash Map with the given number of locks.
+   *
+   * @param stripes Number of locks to spread the buckets over, rounded up to a power of two.
+   * @throws IllegalArgumentException If stripes is not positive.
+   */
+  public ConcurrentChainingHashMap(int stripes) {
+    if (stripes <= 0) {
+      throw new IllegalArgumentException("need at least one lock stripe");
+    }
+    int n = 1;
+    while (n < stripes && n < MAX_STRIPES) {
+      n <<= 1; // a power of two, so a key keeps its stripe as the table grows
+    }
+    locks = new ReentrantLock[n];
+    for (int i = 0; i < n; i++) {
+      locks[i] = new ReentrantLock();
+    }
+    counts = new AtomicIntegerArray(n * PAD);
+    hashTable = new AtomicReferenceArray<>(Math.max(MIN_CAPACITY, n)); // at least one bucket per stripe
+  }
+
+  // The key's hashCode() with its high bits folded into the low ones, which pick the bucket.
+  private static int hash(Object key) {
+    int h = key.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  // Lock guarding every bucket a key with the given hash can be in, whatever the capacity.
+  private ReentrantLock lockOf(int hash) {
+    return locks[hash & (locks.length - 1)];
+  }
+
+  // Head of the bucket for hash in the newest table that has it, following forwarding nodes.
+  private Node<K, V> head(int hash) {
+    AtomicReferenceArray<Node<K, V>> table = hashTable;
+    Node<K, V> head = table.get(hash & (table.length() - 1));
+    while (head instanceof ForwardingNode) {
+      table = ((ForwardingNode<K, V>) head).table;
+      head = table.get(hash & (table.length() - 1));
+    }
+    return head;
+  }
+
+  // Table holding the live bucket for hash. The caller holds lockOf(hash), so no
+  // resize can move that bucket until it lets go.
+  private AtomicReferenceArray<Node<K, V>> tableFor(int hash) {
+    AtomicReferenceArray<Node<K, V>> table = hashTable;
+    Node<K, V> head;
+    while ((head = table.get(hash & (table.length() - 1))) instanceof ForwardingNode) {
+      table = ((ForwardingNode<K, V>) head).table;
+    }
+    return table;
+  }
+
+  private Node<K, V> find(K k) {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    for (Node<K, V> temp = head(hash(k)); temp != null; temp = temp.next) {
+      if (temp.key.equals(k)) {
+        return temp;
+      }
+    }
+    return null;
+  }
+
+  // Lock k's stripe, after moving a batch of buckets if a resize is in progress.
+  private ReentrantLock lockFor(K k) {
+    Resize<K, V> r = resizing;
+    if (r != null) {
+      help(r, 1); // must not hold a stripe lock here, moving buckets takes them
+    }
+    ReentrantLock lock = lockOf(hash(k));
+    lock.lock();
+    return lock;
+  }
+
+  // Start doubling the given table unless that has been done already, then move
+  // buckets until there are none left to claim.
+  private void resize(AtomicReferenceArray<Node<K, V>> seen) {
+    resizeLock.lock();
+    try {
+      if (seen == hashTable && resizing == null && seen.length() < MAX_CAPACITY) {
+        resizing = new Resize<>(seen, new AtomicReferenceArray<>(seen.length() * 2));
+      }
+    } finally {
+      resizeLock.unlock();
+    }
+    Resize<K, V> r = resizing;
+    if (r != null) {
+      help(r, Integer.MAX_VALUE);
+    }
+  }
+
+  // Move up to the given number of batches of old buckets; whoever moves the
+  // last bucket publishes the new table.
+  private void help(Resize<K, V> r, int batches) {
+    int n = r.from.length();
+    for (; batches > 0; batches--) {
+      int start = r.claimed.getAndAdd(RESIZE_BATCH);
+      if (start >= n) {
+        return; // every bucket has been claimed, the rest is up to the threads that did
+      }
+      int end = Math.min(start + RESIZE_BATCH, n);
+      for (int i = start; i < end; i++) {
+        moveBucket(r, i);
+      }
+      if (r.moved.addAndGet(end - start) == n) {
+        resizeLock.lock();
+        try {
+          hashTable = r.to;
+          resizing = null;
+        } finally {
+          resizeLock.unlock();
+        }
+        return;
+      }
+    }
+  }
+
+  // Split old bucket i into new buckets i and i + n and forward it to the new table.
+  private void moveBucket(Resize<K, V> r, int i) {
+    int n = r.from.length();
+    ReentrantLock lock = locks[i & (locks.length - 1)];
+    lock.lock();
+    try {
+      Node<K, V> low = null;
+      Node<K, V> high = null;
+      // copy rather than relink, readers may still be walking the old chain
+      for (Node<K, V> node = r.from.get(i); node != null; node = node.next) {
+        if ((hash(node.key) & n) == 0) {
+          low = new Node<>(node.key, node.value, low);
+        } else {
+          high = new Node<>(node.key, node.value, high);
+        }
+      }
+      r.to.set(i, low);
+      r.to.set(i + n, high);
+      r.from.set(i, r.forward); // volatile write publishes the new buckets first
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void insert(K k, V v) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    ReentrantLock lock = lockFor(k);
+    AtomicReferenceArray<Node<K, V>> table;
+    boolean full;
+    try {
+      int hash = hash(k);
+      table = tableFor(hash);
+      int index = hash & (table.length() - 1);
+      for (Node<K, V> n = table.get(index); n != null; n = n.next) {
+        if (n.key.equals(k)) {
+          throw new IllegalArgumentException("cannot have duplicate keys " + k);
+        }
+      }
+      full = addLocked(table, index, k, v);
+    } finally {
+      lock.unlock();
+    }
+    if (full) { // must not hold a stripe lock here, resize takes all of them
+      resize(table);
+    }
+  }
+
+  // Prepend a node to a bucket whose stripe lock we hold; return true if the table should grow.
+  private boolean addLocked(AtomicReferenceArray<Node<K, V>> table, int index, K k, V v) {
+    table.set(index, new Node<>(k, v, table.get(index))); // volatile write publishes the fully built node
+    int stripe = index & (locks.length - 1);
+    int count = counts.get(stripe * PAD) + 1;
+    counts.set(stripe * PAD, count);
+    return loadFactor * table.length() < (double) count * locks.length;
+  }
+
+  // Unlink and return the node for k from a bucket whose stripe lock we hold, or null if absent.
+  private Node<K, V> unlinkLocked(AtomicReferenceArray<Node<K, V>> table, int index, K k) {
+    Node<K, V> prev = null;
+    for (Node<K, V> curr = table.get(index); curr != null; curr = curr.next) {
+      if (curr.key.equals(k)) {
+        if (prev == null) {
+          table.set(index, curr.next); // we are removing the head
+        } else {
+          prev.next = curr.next;
+        }
+        int stripe = index & (locks.length - 1);
+        counts.set(stripe * PAD, counts.get(stripe * PAD) - 1);
+        return curr;
+      }
+      prev = curr;
+    }
+    return null;
+  }
+
+  @Override
+  public V remove(K k) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    ReentrantLock lock = lockFor(k);
+    try {
+      int hash = hash(k);
+      AtomicReferenceArray<Node<K, V>> table = tableFor(hash);
+      Node<K, V> node = unlinkLocked(table, hash & (table.length() - 1), k);
+      if (node == null) {
+        throw new IllegalArgumentException("cannot find key " + k);
+      }
+      return node.value;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void put(K k, V v) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    ReentrantLock lock = lockFor(k);
+    try {
+      Node<K, V> node = find(k);
+      if (node == null) {
+        throw new IllegalArgumentException("cannot find key " + k);
+      }
+      node.value = v;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public V get(K k) throws IllegalArgumentException {
+    Node<K, V> node = find(k);
+    if (node == null) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    return node.value;
+  }
+
+  @Override
+  public boolean has(K k) {
+    if (k == null) {
+      return false;
+    }
+    return find(k) != null;
+  }
+
+  @Override
+  public int size() {
+    int total = 0;
+    for (int i = 0; i < locks.length; i++) {
+      total += counts.get(i * PAD);
+    }
+    return total;
+  }
+
+  @Override
+  public V getOrDefault(K k, V defaultValue) {
+    if (k == null) {
+      return defaultValue;
+    }
+    Node<K, V> node = find(k);
+    return node == null ? defaultValue : node.value;
+  }
+
+  @Override
+  public V putIfAbsent(K k, V v) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    ReentrantLock lock = lockFor(k);
+    int hash = hash(k);
+    AtomicReferenceArray<Node<K, V>> table = tableFor(hash);
+    int index = hash & (table.length() - 1);
+    boolean full;
+    try {
+      Node<K, V> node = find(k);
+      if (node != null) {
+        return node.value;
+      }
+      full = addLocked(table, index, k, v);
+    } finally {
+      lock.unlock();
+    }
+    if (full) {
+      resize(table);
+    }
+    return null;
+  }
+
+  @Override
+  public void upsert(K k, V v) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    ReentrantLock lock = lockFor(k);
+    int hash = hash(k);
+    AtomicReferenceArray<Node<K, V>> table = tableFor(hash);
+    int index = hash & (table.length() - 1);
+    boolean full = false;
+    try {
+      Node<K, V> node = find(k);
+      if (node != null) {
+        node.value = v;
+      } else {
+        full = addLocked(table, index, k, v);
+      }
+    } finally {
+      lock.unlock();
+    }
+    if (full) {
+      resize(table);
+    }
+  }
+
+  @Override
+  public V compute(K k, BiFunction<? super K, ? super V, ? extends V> remap)
+      throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    ReentrantLock lock = lockFor(k);
+    int hash = hash(k);
+    AtomicReferenceArray<Node<K, V>> table = tableFor(hash);
+    int index = hash & (table.length() - 1);
+    boolean full = false;
+    V newValue;
+    try {
+      Node<K, V> node = find(k);
+      newValue = remap.apply(k, node == null ? null : node.value);
+      if (newValue == null) {
+        if (node != null) {
+          unlinkLocked(table, index, k);
+        }
+      } else if (node != null) {
+        node.value = newValue;
+      } else {
+        full = addLocked(table, index, k, newValue);
+      }
+    } finally {
+      lock.unlock();
+    }
+    if (full) {
+      resize(table);
+    }
+    return newValue;
+  }
+
+  @Override
+  public V merge(K k, V v, BiFunction<? super V, ? super V, ? extends V> remap)
+      throws IllegalArgumentException {
+    // a key mapped to null counts as absent here, like in compute
+    return compute(k, (key, old) -> old == null ? v : remap.apply(old, v));
+  }
+
+  @Override
+  public Cursor<K, V> cursor() {
+    return new ConcurrentChainingHashMapCursor();
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    Traverser<K, V> nodes = new Traverser<>(hashTable);
+    for (Node<K, V> curr = nodes.advance(); curr != null; curr = nodes.advance()) {
+      action.accept(curr.key, curr.value);
+    }
+  }
+
+  @Override
+  public Iterator<K> iterator() {
+    return new ConcurrentChainingHashMapIterator();
+  }
+
+  // Walks the nodes of the table as it was when the walk started. A bucket
+  // that a resize has moved since is walked in the two buckets it was split
+  // into instead, which may in turn have been moved by a later resize.
+  private static final class Traverser<K, V> {
+    private final AtomicReferenceArray<Node<K, V>> table;
+    private int index;
+    private final ArrayDeque<Object[]> split; // {table, index} of buckets still to walk for a moved one
+    private Node<K, V> current;
+
+    Traverser(AtomicReferenceArray<Node<K, V>> table) {
+      this.table = table;
+      index = -1;
+      split = new ArrayDeque<>();
+    }
+
+    // Next node, or null once every bucket has been walked.
+    @SuppressWarnings("unchecked")
+    Node<K, V> advance() {
+      if (current != null) {
+        current = current.next;
+      }
+      while (current == null) {
+        AtomicReferenceArray<Node<K, V>> from;
+        int i;
+        if (!split.isEmpty()) {
+          Object[] bucket = split.pop();
+          from = (AtomicReferenceArray<Node<K, V>>) bucket[0];
+          i = (Integer) bucket[1];
+        } else if (++index < table.length()) {
+          from = table;
+          i = index;
+        } else {
+          return null;
+        }
+        current = from.get(i);
+        if (current instanceof ForwardingNode) {
+          AtomicReferenceArray<Node<K, V>> to = ((ForwardingNode<K, V>) current).table;
+          split.push(new Object[] {to, i + from.length()});
+          split.push(new Object[] {to, i});
+          current = null;
+        }
+      }
+      return current;
+    }
+  }
+
+  private class ConcurrentChainingHashMapIterator implements Iterator<K> {
+    private final Traverser<K, V> nodes;
+    private Node<K, V> curr;
+
+    ConcurrentChainingHashMapIterator() {
+      nodes = new Traverser<>(hashTable); // iterate over the table as it was when we started
+      curr = nodes.advance();
+    }
+
+    @Override
+    public boolean hasNext() {
+      return curr != null;
+    }
+
+    @Override
+    public K next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException("No more elements in the table");
+      }
+      K key = curr.key;
+      curr = nodes.advance();
+      return key;
+    }
+  }
+
+  private class ConcurrentChainingHashMapCursor implements Cursor<K, V> {
+    private final Traverser<K, V> nodes;
+    private Node<K, V> current;
+
+    ConcurrentChainingHashMapCursor() {
+      nodes = new Traverser<>(hashTable); // walk the table as it was when we started
+    }
+
+    @Override
+    public boolean advance() {
+      current = nodes.advance();
+      return current != null;
+    }
+
+    private Node<K, V> current() {
+      if (current == null) {
+        throw new IllegalStateException("cursor is not on an entry");
+      }
+      return current;
+    }
+
+    @Override
+    public K key() {
+      return current().key;
+    }
+
+    @Override
+    public V value() {
+      return current().value;
+    }
+
+    @Override
+    public void setValue(V v) {
+      // the node may have been copied by a resize since, so go through the locked path
+      put(current().key, v);
+    }
+  }
+
+  private static class Node<K, V> {
+    final K key;
+    volatile V value;
+    volatile Node<K, V> next;
+
+    Node(K key, V value, Node<K, V> next) {
+      this.key = key;
+      this.value = value;
+      this.next = next;
+    }
+  }
+
+  // Head of an old bucket that a resize has moved to the given table.
+  private static final class ForwardingNode<K, V> extends Node<K, V> {
+    final AtomicReferenceArray<Node<K, V>> table;
+
+    ForwardingNode(AtomicReferenceArray<Node<K, V>> table) {
+      super(null, null, null);
+      this.table = table;
+    }
+  }
+
+  // A resize in progress. Threads claim batches of old buckets through
+  // claimed and count them in moved once they are forwarded.
+  private static final class Resize<K, V> {
+    final AtomicReferenceArray<Node<K, V>> from;
+    final AtomicReferenceArray<Node<K, V>> to;
+    final ForwardingNode<K, V> forward;
+    final AtomicInteger claimed = new AtomicInteger();
+    final AtomicInteger moved = new AtomicInteger();
+
+    Resize(AtomicReferenceArray<Node<K, V>> from, AtomicReferenceArray<Node<K, V>> to) {
+      this.from = from;
+      this.to = to;
+      forward = new ForwardingNode<>(to);
+    }
+  }
+
+  // Throughput of a 90% get / 10% insert-or-remove mix from 1 up to N threads.
+  public static void main(String[] args) throws InterruptedException {
+    int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+    int opsPerThread = 2_000_000;
+    int keyRange = 1 << 20;
+    for (int threads = 1; threads <= maxThreads; threads *= 2) {
+      ConcurrentChainingHashMap<Integer, Integer> map = new ConcurrentChainingHashMap<>();
+      for (int i = 0; i < keyRange; i += 2) {
+        map.insert(i, i);
+      }
+      CountDownLatch start = new CountDownLatch(1);
+      Thread[] workers = new Thread[threads];
+      for (int t = 0; t < threads; t++) {
+        workers[t] = new Thread(() -> {
+          ThreadLocalRandom rand = ThreadLocalRandom.current();
+          try {
+            start.await();
+          } catch (InterruptedException e) {
+            return;
+          }
+          for (int i = 0; i < opsPerThread; i++) {
+            Integer key = rand.nextInt(keyRange);
+            if (rand.nextInt(10) != 0) {
+              map.has(key);
+            } else {
+              try {
+                if (map.has(key)) {
+                  map.remove(key);
+                } else {
+                  map.insert(key, i);
+                }
+              } catch (IllegalArgumentException e) {
+                // another thread got there first
+              }
+            }
+          }
+        });
+        workers[t].start();
+      }
+      long begin = System.nanoTime();
+      start.countDown();
+      for (Thread w : workers) {
+        w.join();
+      }
+      double seconds = (System.nanoTime() - begin) / 1e9;
+      System.out.printf("%2d threads: %6.1f Mops/s%n", threads, threads * (double) opsPerThread / seconds / 1e6);
+    }
+  }
+}
@@ -0,0 +1,567 @@
+package HashTable;
+
+import Map.Cursor;
+import Map.Map;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.function.BiConsumer;
+
+/**
+ * Map implemented as a bucketized cuckoo hash table with a stash.
+ *
+ * <p>Every key has two candidate buckets of SLOTS slots each and always
+ * lives in one of them, or in the small stash. The first bucket comes
+ * from the key's hashCode(), the second from a SeededHashStrategy, which
+ * hashes Strings, byte arrays and Longs by their contents, so keys whose
+ * hashCode() collides still scatter over different second buckets. A
+ * lookup checks at most 2 * SLOTS slots plus the stash, no matter how
+ * full the table is. Each slot caches both hashes of its key, so equals()
+ * only runs on slots whose hash matches.</p>
+ *
+ * <p>Insertion uses a free slot in either bucket if there is one.
+ * Otherwise it evicts a random occupant, which moves to its other bucket
+ * and may in turn evict someone there. After MAX_KICKS evictions the key
+ * that is still homeless goes to the stash. When the stash is full the
+ * table grows, at most MAX_REHASHES times per insert. Keys that still
+ * find no place, because they collide in both hashes (equal hashCode()
+ * for other key classes), go to an overflow ChainingHashMap, and the
+ * table does not grow for them again while the overflow is in use.</p>
+ *
+ * @param <K> Type for keys.
+ * @param <V> Type for values.
+ */
+public class CuckooHashMap<K, V> implements Map<K, V> {
+
+  private static final int SLOTS = 4; // slots per bucket, 4 references fit in one cache line
+  private static final int STASH_SIZE = 8;
+  private static final int MAX_KICKS = 128;
+  private static final int MAX_REHASHES = 2; // growths a single insert may cause before its key overflows
+
+  private int numElements;
+  private int numBuckets; // always a power of two
+  private K[] keys; // bucket b occupies indices b * SLOTS .. b * SLOTS + SLOTS - 1
+  private V[] values;
+  private int[] hashes; // hashCode() of the key in the same slot
+  private int[] altHashes; // secondary hash of the key in the same slot
+  private final SeededHashStrategy<K> secondary = new SeededHashStrategy<>();
+  private final K[] stashKeys;
+  private final V[] stashValues;
+  private int stashSize;
+  private ChainingHashMap<K, V> overflow; // keys neither bucket nor the stash could take, null if none
+  private final double loadFactor;
+  private int randomState = 0x2545F491; // xorshift state for picking eviction victims
+
+  /**
+   * Constructs a Cuckoo Hash Map with default initial capacity and settings.
+   */
+  public CuckooHashMap() {
+    this(0.9);
+  }
+
+  /**
+   * Constructs a Cuckoo Hash Map that grows past the given load factor.
+   *
+   * @param loadFactor fraction of table slots that may be filled, in (0, 1).
+   * @throws IllegalArgumentException If loadFactor is not in (0, 1).
+   */
+  public CuckooHashMap(double loadFactor) {
+    if (!(loadFactor > 0 && loadFactor < 1)) {
+      throw new IllegalArgumentException("load factor must be in (0, 1)");
+    }
+    this.loadFactor = loadFactor;
+    stashKeys = (K[]) new Object[STASH_SIZE];
+    stashValues = (V[]) new Object[STASH_SIZE];
+    allocate(4);
+  }
+
+  private void allocate(int buckets) {
+    numBuckets = buckets;
+    keys = (K[]) new Object[numBuckets * SLOTS];
+    values = (V[]) new Object[numBuckets * SLOTS];
+    hashes = new int[numBuckets * SLOTS];
+    altHashes = new int[numBuckets * SLOTS];
+  }
+
+  private static int spread(int h) {
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  private int bucket1(int hash) {
+    return spread(hash) & (numBuckets - 1);
+  }
+
+  private int bucket2(int altHash) {
+    return altHash & (numBuckets - 1); // the seeded hash is well mixed already
+  }
+
+  // Return the slot index of k in the table, or -1 if it is not in either bucket.
+  private int findSlot(K k) {
+    int hash = k.hashCode();
+    int base = bucket1(hash) * SLOTS;
+    for (int i = base; i < base + SLOTS; i++) {
+      if (hashes[i] == hash && keys[i] != null && keys[i].equals(k)) {
+        return i;
+      }
+    }
+    base = bucket2(secondary.hash(k)) * SLOTS;
+    for (int i = base; i < base + SLOTS; i++) {
+      if (hashes[i] == hash && keys[i] != null && keys[i].equals(k)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private int findInStash(K k) {
+    for (int i = 0; i < stashSize; i++) {
+      if (stashKeys[i].equals(k)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private int freeSlot(int bucket) {
+    int base = bucket * SLOTS;
+    for (int i = base; i < base + SLOTS; i++) {
+      if (keys[i] == null) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private void setSlot(int slot, K k, V v, int hash, int altHash) {
+    keys[slot] = k;
+    values[slot] = v;
+    hashes[slot] = hash;
+    altHashes[slot] = altHash;
+  }
+
+  private int nextRandom() {
+    randomState ^= randomState << 13;
+    randomState ^= randomState >>> 17;
+    randomState ^= randomState << 5;
+    return randomState;
+  }
+
+  // Try to place a key known to be absent into the table proper; on failure
+  // return false and leave the pair that ended up homeless in homeless[0..1].
+  private boolean place(K k, V v, Object[] homeless) {
+    int hash = k.hashCode();
+    int altHash = secondary.hash(k);
+    int slot = freeSlot(bucket1(hash));
+    if (slot == -1) {
+      slot = freeSlot(bucket2(altHash));
+    }
+    if (slot != -1) {
+      setSlot(slot, k, v, hash, altHash);
+      return true;
+    }
+    int bucket = (nextRandom() & 1) == 0 ? bucket1(hash) : bucket2(altHash);
+    for (int kick = 0; kick < MAX_KICKS; kick++) {
+      int victim = bucket * SLOTS + ((nextRandom() >>> 1) % SLOTS);
+      K evictedKey = keys[victim];
+      V evictedValue = values[victim];
+      int evictedHash = hashes[victim];
+      int evictedAltHash = altHashes[victim];
+      setSlot(victim, k, v, hash, altHash);
+      k = evictedKey;
+      v = evictedValue;
+      hash = evictedHash;
+      altHash = evictedAltHash;
+      int b1 = bucket1(hash);
+      bucket = b1 == bucket ? bucket2(altHash) : b1; // the evicted key moves to its other bucket
+      slot = freeSlot(bucket);
+      if (slot != -1) {
+        setSlot(slot, k, v, hash, altHash);
+        return true;
+      }
+    }
+    homeless[0] = k;
+    homeless[1] = v;
+    return false;
+  }
+
+  // Place a key known to be absent into the table or the stash; on failure
+  // return false and leave the pair that ended up homeless in homeless[0..1].
+  private boolean placeOrStash(K k, V v, Object[] homeless) {
+    if (place(k, v, homeless)) {
+      return true;
+    }
+    if (stashSize < STASH_SIZE) {
+      stashKeys[stashSize] = (K) homeless[0];
+      stashValues[stashSize] = (V) homeless[1];
+      stashSize++;
+      return true;
+    }
+    return false;
+  }
+
+  // Place a key known to be absent without growing the table, in the overflow map if need be.
+  private void placeAnywhere(K k, V v) {
+    Object[] homeless = new Object[2];
+    if (!placeOrStash(k, v, homeless)) {
+      overflow((K) homeless[0], (V) homeless[1]);
+    }
+  }
+
+  private void overflow(K k, V v) {
+    if (overflow == null) {
+      overflow = new ChainingHashMap<>();
+    }
+    overflow.insert(k, v);
+  }
+
+  private void rehash() {
+    K[] oldKeys = keys;
+    V[] oldValues = values;
+    allocate(numBuckets * 2);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != null) {
+        placeAnywhere(oldKeys[i], oldValues[i]);
+      }
+    }
+    // and the overflowed keys too, some of which may fit now
+    if (overflow != null) {
+      ChainingHashMap<K, V> overflowed = overflow;
+      overflow = null;
+      overflowed.forEach(this::placeAnywhere);
+    }
+    // give stashed keys another chance in the bigger table
+    int stashed = stashSize;
+    stashSize = 0;
+    for (int i = 0; i < stashed; i++) {
+      K k = stashKeys[i];
+      V v = stashValues[i];
+      stashKeys[i] = null;
+      stashValues[i] = null;
+      placeAnywhere(k, v);
+    }
+  }
+
+  // Move stashed keys back into the table once their buckets have room.
+  private void drainStash() {
+    for (int i = stashSize - 1; i >= 0; i--) {
+      int hash = stashKeys[i].hashCode();
+      int altHash = secondary.hash(stashKeys[i]);
+      int slot = freeSlot(bucket1(hash));
+      if (slot == -1) {
+        slot = freeSlot(bucket2(altHash));
+      }
+      if (slot != -1) {
+        setSlot(slot, stashKeys[i], stashValues[i], hash, altHash);
+        stashSize--;
+        stashKeys[i] = stashKeys[stashSize];
+        stashValues[i] = stashValues[stashSize];
+        stashKeys[stashSize] = null;
+        stashValues[stashSize] = null;
+      }
+    }
+  }
+
+  @Override
+  public void insert(K k, V v) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    if (has(k)) {
+      throw new IllegalArgumentException("duplicate key " + k);
+    }
+    if (loadFactor * keys.length < numElements + 1) {
+      rehash();
+    }
+    Object[] homeless = new Object[2];
+    int rehashes = 0;
+    while (!placeOrStash(k, v, homeless)) {
+      k = (K) homeless[0];
+      v = (V) homeless[1];
+      if (rehashes == MAX_REHASHES || overflow != null) { // growing has not helped
+        overflow(k, v);
+        break;
+      }
+      rehash();
+      rehashes++;
+    }
+    numElements++;
+  }
+
+  @Override
+  public V remove(K k) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    V value;
+    int slot = findSlot(k);
+    if (slot != -1) {
+      value = values[slot];
+      keys[slot] = null;
+      values[slot] = null;
+      if (stashSize > 0) {
+        drainStash();
+      }
+    } else {
+      int i = findInStash(k);
+      if (i != -1) {
+        value = stashValues[i];
+        stashSize--;
+        stashKeys[i] = stashKeys[stashSize];
+        stashValues[i] = stashValues[stashSize];
+        stashKeys[stashSize] = null;
+        stashValues[stashSize] = null;
+      } else {
+        value = removeFromOverflow(k);
+      }
+    }
+    numElements--;
+    return value;
+  }
+
+  private V removeFromOverflow(K k) {
+    if (overflow == null) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    V value = overflow.remove(k);
+    if (overflow.size() == 0) {
+      overflow = null;
+    }
+    return value;
+  }
+
+  @Override
+  public void put(K k, V v) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    int slot = findSlot(k);
+    if (slot != -1) {
+      values[slot] = v;
+      return;
+    }
+    int i = findInStash(k);
+    if (i != -1) {
+      stashValues[i] = v;
+    } else if (overflow != null) {
+      overflow.put(k, v);
+    } else {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+  }
+
+  @Override
+  public V get(K k) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    int slot = findSlot(k);
+    if (slot != -1) {
+      return values[slot];
+    }
+    int i = findInStash(k);
+    if (i != -1) {
+      return stashValues[i];
+    } else if (overflow != null) {
+      return overflow.get(k);
+    }
+    throw new IllegalArgumentException("cannot find key " + k);
+  }
+
+  @Override
+  public boolean has(K k) {
+    if (k == null) {
+      return false;
+    }
+    return findSlot(k) != -1 || findInStash(k) != -1 || (overflow != null && overflow.has(k));
+  }
+
+  @Override
+  public int size() {
+    return numElements;
+  }
+
+  @Override
+  public Cursor<K, V> cursor() {
+    return new CuckooHashMapCursor();
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != null) {
+        action.accept(keys[i], values[i]);
+      }
+    }
+    for (int i = 0; i < stashSize; i++) {
+      action.accept(stashKeys[i], stashValues[i]);
+    }
+    if (overflow != null) {
+      overflow.forEach(action);
+    }
+  }
+
+  @Override
+  public Iterator<K> iterator() {
+    return new CuckooHashMapIterator();
+  }
+
+  private class CuckooHashMapIterator implements Iterator<K> {
+    private int currentIndex; // indices past keys.length walk the stash
+    private final Iterator<K> overflowKeys; // walked after the stash, null if there is no overflow
+
+    CuckooHashMapIterator() {
+      currentIndex = 0;
+      overflowKeys = overflow == null ? null : overflow.iterator();
+      skipEmpty();
+    }
+
+    private void skipEmpty() {
+      while (currentIndex < keys.length && keys[currentIndex] == null) {
+        currentIndex++;
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return currentIndex < keys.length + stashSize || (overflowKeys != null && overflowKeys.hasNext());
+    }
+
+    @Override
+    public K next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException("No more elements in the table");
+      }
+      if (currentIndex >= keys.length + stashSize) {
+        return overflowKeys.next();
+      }
+      K key = currentIndex < keys.length ? keys[currentIndex] : stashKeys[currentIndex - keys.length];
+      currentIndex++;
+      skipEmpty();
+      return key;
+    }
+  }
+
+  private class CuckooHashMapCursor implements Cursor<K, V> {
+    private int currentIndex; // indices past keys.length walk the stash
+    private Cursor<K, V> overflowCursor; // set once the table and stash are done, if there is an overflow
+
+    CuckooHashMapCursor() {
+      currentIndex = -1;
+    }
+
+    @Override
+    public boolean advance() {
+      if (overflowCursor != null) {
+        return overflowCursor.advance();
+      }
+      do {
+        currentIndex++;
+      } while (currentIndex < keys.length && keys[currentIndex] == null);
+      if (currentIndex < keys.length + stashSize) {
+        return true;
+      }
+      if (overflow != null) {
+        overflowCursor = overflow.cursor();
+        return overflowCursor.advance();
+      }
+      return false;
+    }
+
+    private int current() {
+      if (currentIndex < 0 || currentIndex >= keys.length + stashSize) {
+        throw new IllegalStateException("cursor is not on an entry");
+      }
+      return currentIndex;
+    }
+
+    @Override
+    public K key() {
+      if (overflowCursor != null) {
+        return overflowCursor.key();
+      }
+      int i = current();
+      return i < keys.length ? keys[i] : stashKeys[i - keys.length];
+    }
+
+    @Override
+    public V value() {
+      if (overflowCursor != null) {
+        return overflowCursor.value();
+      }
+      int i = current();
+      return i < keys.length ? values[i] : stashValues[i - keys.length];
+    }
+
+    @Override
+    public void setValue(V v) {
+      if (overflowCursor != null) {
+        overflowCursor.setValue(v);
+        return;
+      }
+      int i = current();
+      if (i < keys.length) {
+        values[i] = v;
+      } else {
+        stashValues[i - keys.length] = v;
+      }
+    }
+  }
+
+  // Hit and miss lookup cost at several load factors, against the other hash maps.
+  public static void main(String[] args) {
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    // boxed up front and shuffled, so neither allocation nor sequential locality skews the timings
+    Integer[] hits = new Integer[n];
+    Integer[] misses = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      hits[i] = i * 7;
+      misses[i] = i * 7 + 3;
+    }
+    Random rand = new Random(42);
+    for (int i = n - 1; i > 0; i--) {
+      int j = rand.nextInt(i + 1);
+      Integer t = hits[i];
+      hits[i] = hits[j];
+      hits[j] = t;
+      t = misses[i];
+      misses[i] = misses[j];
+      misses[j] = t;
+    }
+    double[] loadFactors = {0.5, 0.75, 0.9, 0.95};
+    for (double lf : loadFactors) {
+      System.out.printf("load factor %.2f%n", lf);
+      bench("  CuckooHashMap           ", new CuckooHashMap<>(lf), hits, misses);
+      bench("  OpenAddressing (linear) ", new OpenAddressingHashMap<>(false, lf), hits, misses);
+      bench("  OpenAddressing (robin)  ", new OpenAddressingHashMap<>(true, lf), hits, misses);
+      bench("  ChainingHashMap (0.75)  ", new ChainingHashMap<>(), hits, misses);
+    }
+  }
+
+  private static void bench(String name, Map<Integer, Integer> map, Integer[] hits, Integer[] misses) {
+    int n = hits.length;
+    for (int i = 0; i < n; i++) {
+      map.insert(hits[i], i);
+    }
+    long sink = 0;
+    for (int round = 0; round < 3; round++) { // the last round is the measured one
+      long begin = System.nanoTime();
+      for (Integer k : hits) {
+        sink += map.has(k) ? 1 : 0;
+      }
+      long hitTime = System.nanoTime() - begin;
+      begin = System.nanoTime();
+      for (Integer k : misses) {
+        sink += map.has(k) ? 1 : 0;
+      }
+      long missTime = System.nanoTime() - begin;
+      if (round == 2) {
+        System.out.printf("%s hit %5.1f ns  miss %5.1f ns  (%d)%n", name, hitTime / (double) n, missTime / (double) n, sink);
+      }
+    }
+  }
+}
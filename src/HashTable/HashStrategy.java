@@ -0,0 +1,41 @@
+package HashTable;
+
+/**
+ * Strategy for turning a key into the hash a hash table indexes by.
+ *
+ * <p>Whatever it returns must be equal for keys that are equals(). The
+ * table reduces the hash to an index itself, either modulo a prime or
+ * by multiply-shift into a power of two.</p>
+ *
+ * @param <K> Type for keys.
+ */
+@FunctionalInterface
+public interface HashStrategy<K> {
+  /**
+   * Hash of a key.
+   *
+   * @param key The key, never null.
+   * @return The hash of key.
+   */
+  int hash(K key);
+
+  /**
+   * The key's own hashCode(), unmixed.
+   *
+   * @param <K> Type for keys.
+   * @return A strategy returning key.hashCode().
+   */
+  static <K> HashStrategy<K> identity() {
+    return Object::hashCode;
+  }
+
+  /**
+   * Mixing keyed by a fresh random seed, see SeededHashStrategy.
+   *
+   * @param <K> Type for keys.
+   * @return A new seeded strategy.
+   */
+  static <K> HashStrategy<K> seeded() {
+    return new SeededHashStrategy<>();
+  }
+}
@@ -0,0 +1,131 @@
+package HashTable;
+
+import java.util.Arrays;
+
+/**
+ * Statistics collected by a hash table that has stats enabled.
+ *
+ * <p>Probe lengths and rehash figures are recorded as the table is used.
+ * The chain-length distribution and the tombstone count describe the
+ * table at the moment stats() was last called on it. For separate
+ * chaining a "chain" is a bucket; for open addressing it is a run of
+ * consecutive non-empty cells (a cluster).</p>
+ */
+public class HashTableStats {
+
+  /**
+   * Longest probe or chain length with its own histogram entry; longer
+   * ones are all counted in the last entry.
+   */
+  public static final int MAX_TRACKED = 32;
+
+  private final long[] probeLengths = new long[MAX_TRACKED + 1];
+  private long lookups;
+  private long totalProbes;
+  private long rehashCount;
+  private long rehashNanos;
+  private long[] chainLengths = new long[MAX_TRACKED + 1];
+  private int tombstones;
+  private int capacity;
+
+  void recordProbe(int length) {
+    probeLengths[Math.min(length, MAX_TRACKED)]++;
+    lookups++;
+    totalProbes += length;
+  }
+
+  void recordRehash(long nanos) {
+    rehashCount++;
+    rehashNanos += nanos;
+  }
+
+  void recordRehashWork(long nanos) {
+    rehashNanos += nanos;
+  }
+
+  void snapshot(long[] chains, int tombstones, int capacity) {
+    this.chainLengths = chains;
+    this.tombstones = tombstones;
+    this.capacity = capacity;
+  }
+
+  /**
+   * Probe length histogram.
+   *
+   * @return Entry i counts lookups that examined i slots or nodes.
+   */
+  public long[] probeLengthHistogram() {
+    return Arrays.copyOf(probeLengths, probeLengths.length);
+  }
+
+  /**
+   * Number of lookups recorded.
+   *
+   * @return Lookups since stats were enabled.
+   */
+  public long lookups() {
+    return lookups;
+  }
+
+  /**
+   * Average number of slots or nodes examined per lookup.
+   *
+   * @return Mean probe length, 0 if there were no lookups.
+   */
+  public double meanProbeLength() {
+    return lookups == 0 ? 0 : totalProbes / (double) lookups;
+  }
+
+  /**
+   * Chain (or cluster) length histogram.
+   *
+   * @return Entry i counts chains of length i, entry 0 counts empty buckets.
+   */
+  public long[] chainLengthHistogram() {
+    return Arrays.copyOf(chainLengths, chainLengths.length);
+  }
+
+  /**
+   * Fraction of the table taken up by tombstones.
+   *
+   * @return Tombstones divided by capacity.
+   */
+  public double tombstoneRatio() {
+    return capacity == 0 ? 0 : tombstones / (double) capacity;
+  }
+
+  /**
+   * Number of times the table was rehashed.
+   *
+   * @return Rehash count since stats were enabled.
+   */
+  public long rehashCount() {
+    return rehashCount;
+  }
+
+  /**
+   * Time spent rehashing, including incremental migration work.
+   *
+   * @return Cumulative nanoseconds spent in rehash since stats were enabled.
+   */
+  public long rehashNanos() {
+    return rehashNanos;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("lookups=%d meanProbe=%.2f rehashes=%d rehashMs=%.1f tombstoneRatio=%.3f%n"
+            + "probeLengths=%s%nchainLengths=%s",
+        lookups, meanProbeLength(), rehashCount, rehashNanos / 1e6, tombstoneRatio(),
+        trim(probeLengths), trim(chainLengths));
+  }
+
+  // Histogram as a string, without the trailing zero entries.
+  private static String trim(long[] histogram) {
+    int end = histogram.length;
+    while (end > 1 && histogram[end - 1] == 0) {
+      end--;
+    }
+    return Arrays.toString(Arrays.copyOf(histogram, end));
+  }
+}
@@ -1,8 +1,10 @@
 package HashTable;
 
 
+import Map.Cursor;
 import Map.Map;
 import java.util.Iterator;
+import java.util.function.BiConsumer;
 
 /**
  * A wrapper class around Java's HashMap that conforms to the Map interface.
@@ -64,6 +66,48 @@ public class JdkHashMap<K, V> implements Map<K, V> {
     return map.size();
   }
 
+  @Override
+  public Cursor<K, V> cursor() {
+    // HashMap's entries are its own nodes, so walking them allocates nothing per entry
+    Iterator<java.util.Map.Entry<K, V>> entries = map.entrySet().iterator();
+    return new Cursor<K, V>() {
+      private java.util.Map.Entry<K, V> current;
+
+      @Override
+      public boolean advance() {
+        current = entries.hasNext() ? entries.next() : null;
+        return current != null;
+      }
+
+      private java.util.Map.Entry<K, V> current() {
+        if (current == null) {
+          throw new IllegalStateException("cursor is not on an entry");
+        }
+        return current;
+      }
+
+      @Override
+      public K key() {
+        return current().getKey();
+      }
+
+      @Override
+      public V value() {
+        return current().getValue();
+      }
+
+      @Override
+      public void setValue(V v) {
+        current().setValue(v);
+      }
+    };
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    map.forEach(action);
+  }
+
   @Override
   public Iterator<K> iterator() {
     return map.keySet().iterator();
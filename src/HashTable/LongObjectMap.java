@@ -0,0 +1,233 @@
+package HashTable;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * Open addressing hash map with primitive long keys.
+ *
+ * <p>Primitive twin of the Map ADT: same operations and the same
+ * exceptions, but keys are never boxed and there is no Node object per
+ * entry. Keys and values live in parallel arrays next to a boolean array
+ * that marks the used slots. Removal uses backward-shift deletion, so
+ * there are no tombstones to clean up.</p>
+ *
+ * @param <V> Type for values.
+ */
+public class LongObjectMap<V> {
+
+  private int numElements;
+  private int capacity;
+  private long[] keys;
+  private V[] values;
+  private boolean[] used;
+  private final int[] primes = {2, 5, 11, 23, 47, 97, 197, 397, 797, 1597,
+      3203, 6421, 12853, 25717, 51437, 102877, 205759, 411527, 823117, 1646237, 3292489, 6584983, 13169977};
+  private int primeIdx;
+  private final double loadFactor = 0.75;
+
+  /**
+   * Constructs an LongObjectMap with default initial capacity and settings.
+   */
+  public LongObjectMap() {
+    numElements = 0;
+    primeIdx = 1;
+    capacity = primes[primeIdx];
+    allocate();
+  }
+
+  private void allocate() {
+    keys = new long[capacity];
+    values = (V[]) new Object[capacity];
+    used = new boolean[capacity];
+  }
+
+  private int getIndex(long key) {
+    return Math.abs(Long.hashCode(key) % capacity);
+  }
+
+  private void rehash() {
+    primeIdx++;
+    if (primeIdx < primes.length) {
+      capacity = primes[primeIdx];
+    } else {
+      capacity = capacity * 2 + 1;
+    }
+    long[] oldKeys = keys;
+    V[] oldValues = values;
+    boolean[] oldUsed = used;
+    allocate();
+    for (int i = 0; i < oldKeys.length; i++) { // keys are known to be distinct, so skip the duplicate check
+      if (oldUsed[i]) {
+        int index = getIndex(oldKeys[i]);
+        while (used[index]) {
+          index = (index + 1) % capacity;
+        }
+        keys[index] = oldKeys[i];
+        values[index] = oldValues[i];
+        used[index] = true;
+      }
+    }
+  }
+
+  // Return the slot holding key k, or -1 if k is not mapped.
+  private int find(long k) {
+    int index = getIndex(k);
+    while (used[index]) {
+      if (keys[index] == k) {
+        return index;
+      }
+      index = (index + 1) % capacity;
+    }
+    return -1;
+  }
+
+  /**
+   * Insert a new key/value pair.
+   *
+   * @param k The key.
+   * @param v The value to be associated with k.
+   * @throws IllegalArgumentException If k is already mapped.
+   */
+  public void insert(long k, V v) throws IllegalArgumentException {
+    int index = getIndex(k);
+    while (used[index]) {
+      if (keys[index] == k) {
+        throw new IllegalArgumentException("duplicate key " + k);
+      }
+      index = (index + 1) % capacity;
+    }
+    keys[index] = k;
+    values[index] = v;
+    used[index] = true;
+    numElements++;
+    if (loadFactor * capacity < numElements) {
+      rehash();
+    }
+  }
+
+  /**
+   * Remove an existing key/value pair.
+   *
+   * @param k The key.
+   * @return The value that was associated with k.
+   * @throws IllegalArgumentException If k is not mapped.
+   */
+  public V remove(long k) throws IllegalArgumentException {
+    int index = find(k);
+    if (index == -1) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    V value = values[index];
+    // backward-shift: pull later members of the cluster into the hole
+    // whenever the hole lies between their home slot and where they sit
+    int hole = index;
+    int j = index;
+    while (true) {
+      j = (j + 1) % capacity;
+      if (!used[j]) {
+        break;
+      }
+      int home = getIndex(keys[j]);
+      boolean movable = hole <= j ? (home <= hole || home > j) : (home <= hole && home > j);
+      if (movable) {
+        keys[hole] = keys[j];
+        values[hole] = values[j];
+        hole = j;
+      }
+    }
+    used[hole] = false;
+    values[hole] = null;
+    numElements--;
+    return value;
+  }
+
+  /**
+   * Update the value associated with a key.
+   *
+   * @param k The key.
+   * @param v The value to be associated with k.
+   * @throws IllegalArgumentException If k is not mapped.
+   */
+  public void put(long k, V v) throws IllegalArgumentException {
+    int index = find(k);
+    if (index == -1) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    values[index] = v;
+  }
+
+  /**
+   * Get the value associated with a key.
+   *
+   * @param k The key.
+   * @return The value associated with k.
+   * @throws IllegalArgumentException If k is not mapped.
+   */
+  public V get(long k) throws IllegalArgumentException {
+    int index = find(k);
+    if (index == -1) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    return values[index];
+  }
+
+  /**
+   * Check existence of a key.
+   *
+   * @param k The key.
+   * @return True if k is mapped, false otherwise.
+   */
+  public boolean has(long k) {
+    return find(k) != -1;
+  }
+
+  /**
+   * Number of mappings.
+   *
+   * @return Number of key/value pairs in the map.
+   */
+  public int size() {
+    return numElements;
+  }
+
+  /**
+   * Iterate over the keys without boxing them.
+   *
+   * @return Iterator over all mapped keys, in table order.
+   */
+  public PrimitiveIterator.OfLong keyIterator() {
+    return new KeyIterator();
+  }
+
+  private class KeyIterator implements PrimitiveIterator.OfLong {
+    private int currentIndex;
+
+    KeyIterator() {
+      currentIndex = 0;
+      skipUnused();
+    }
+
+    private void skipUnused() {
+      while (currentIndex < capacity && !used[currentIndex]) {
+        currentIndex++;
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return currentIndex < capacity;
+    }
+
+    @Override
+    public long nextLong() {
+      if (!hasNext()) {
+        throw new NoSuchElementException("No more elements in the table");
+      }
+      long key = keys[currentIndex];
+      currentIndex++;
+      skipUnused();
+      return key;
+    }
+  }
+}
@@ -0,0 +1,217 @@
+package HashTable;
+
+import Map.Cursor;
+import Map.Map;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Read-only map over a file written by PerfectHashMap.writeTo(), memory
+ * mapped rather than loaded.
+ *
+ * <p>The file holds a 32-byte header (magic, size, number of buckets and
+ * hash seed), the pilots of the minimal perfect hash function, the
+ * offset of every entry, and the entries themselves: key length, key
+ * bytes and value bytes, in slot order. Opening it only maps the file and
+ * reads the header. A lookup encodes the key, hashes the bytes, and reads
+ * one pilot, two offsets and the entry; the value is decoded on a hit.</p>
+ *
+ * <p>insert, remove and put (and the default methods built on them)
+ * throw UnsupportedOperationException.</p>
+ *
+ * @param <K> Type for keys.
+ * @param <V> Type for values.
+ */
+public class MappedPerfectHashMap<K, V> implements Map<K, V> {
+
+  static final int MAGIC = 0x50484D31; // "PHM1"
+  static final int HEADER = 32;
+
+  private final ByteBuffer buf;
+  private final int n;
+  private final int offsetsStart;
+  private final int dataStart;
+  private final SeededHashStrategy<byte[]> hashing;
+  private final MinimalPerfectHash mph;
+  private final Codec<K> keyCodec;
+  private final Codec<V> valueCodec;
+
+  private MappedPerfectHashMap(ByteBuffer buf, Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+    if (buf.capacity() < HEADER || buf.getInt(0) != MAGIC) {
+      throw new IOException("not a PerfectHashMap file");
+    }
+    this.buf = buf;
+    this.keyCodec = keyCodec;
+    this.valueCodec = valueCodec;
+    n = buf.getInt(4);
+    int numBuckets = buf.getInt(8);
+    hashing = new SeededHashStrategy<>(buf.getLong(16));
+    offsetsStart = HEADER + 4 * numBuckets;
+    dataStart = offsetsStart + 4 * (n + 1);
+    IntBuffer pilots = buf.duplicate().position(HEADER).limit(offsetsStart).slice().asIntBuffer();
+    mph = new MinimalPerfectHash(n, pilots);
+  }
+
+  /**
+   * Maps a file written by PerfectHashMap.writeTo().
+   *
+   * @param file The file.
+   * @param keyCodec Converts keys to bytes, as when the file was written.
+   * @param valueCodec Converts values to bytes, as when the file was written.
+   * @param <K> Type for keys.
+   * @param <V> Type for values.
+   * @return The map.
+   * @throws IOException If the file cannot be mapped or was not written by PerfectHashMap.
+   */
+  public static <K, V> MappedPerfectHashMap<K, V> open(Path file, Codec<K> keyCodec, Codec<V> valueCodec)
+      throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new MappedPerfectHashMap<>(mapped, keyCodec, valueCodec);
+    }
+  }
+
+  // Absolute position of the entry in the given slot.
+  private int entry(int slot) {
+    return dataStart + buf.getInt(offsetsStart + 4 * slot);
+  }
+
+  // Return the slot of key k, or -1 if it is not in the map.
+  private int find(K k) {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    if (n == 0) {
+      return -1;
+    }
+    byte[] key = keyCodec.encode(k);
+    int slot = mph.slot(hashing.hash64(key));
+    int pos = entry(slot);
+    if (buf.getInt(pos) != key.length) {
+      return -1;
+    }
+    for (int i = 0; i < key.length; i++) {
+      if (buf.get(pos + 4 + i) != key[i]) {
+        return -1;
+      }
+    }
+    return slot;
+  }
+
+  private byte[] bytes(int from, int to) {
+    byte[] b = new byte[to - from];
+    buf.get(from, b); // absolute bulk get, leaves the position alone
+    return b;
+  }
+
+  private K keyAt(int slot) {
+    int pos = entry(slot);
+    return keyCodec.decode(bytes(pos + 4, pos + 4 + buf.getInt(pos)));
+  }
+
+  private V valueAt(int slot) {
+    int pos = entry(slot);
+    return valueCodec.decode(bytes(pos + 4 + buf.getInt(pos), entry(slot + 1)));
+  }
+
+  @Override
+  public void insert(K k, V v) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException("MappedPerfectHashMap is read-only");
+  }
+
+  @Override
+  public V remove(K k) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException("MappedPerfectHashMap is read-only");
+  }
+
+  @Override
+  public void put(K k, V v) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException("MappedPerfectHashMap is read-only");
+  }
+
+  @Override
+  public V get(K k) throws IllegalArgumentException {
+    int slot = find(k);
+    if (slot == -1) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    return valueAt(slot);
+  }
+
+  @Override
+  public boolean has(K k) {
+    if (k == null) {
+      return false;
+    }
+    return find(k) != -1;
+  }
+
+  @Override
+  public int size() {
+    return n;
+  }
+
+  @Override
+  public Cursor<K, V> cursor() {
+    return new Cursor<K, V>() {
+      private int slot = -1;
+
+      @Override
+      public boolean advance() {
+        if (slot < n) {
+          slot++;
+        }
+        return slot < n;
+      }
+
+      private int current() {
+        if (slot < 0 || slot >= n) {
+          throw new IllegalStateException("cursor is not on an entry");
+        }
+        return slot;
+      }
+
+      @Override
+      public K key() {
+        return keyAt(current());
+      }
+
+      @Override
+      public V value() {
+        return valueAt(current());
+      }
+
+      @Override
+      public void setValue(V v) {
+        throw new UnsupportedOperationException("MappedPerfectHashMap is read-only");
+      }
+    };
+  }
+
+  @Override
+  public Iterator<K> iterator() {
+    return new Iterator<K>() {
+      private int slot = 0;
+
+      @Override
+      public boolean hasNext() {
+        return slot < n;
+      }
+
+      @Override
+      public K next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException("No more elements in the map");
+        }
+        return keyAt(slot++);
+      }
+    };
+  }
+}
@@ -0,0 +1,158 @@
+package HashTable;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Minimal perfect hash function over a fixed set of 64-bit hashes, built
+ * by hash-and-displace in the style of CHD and PTHash.
+ *
+ * <p>The n hashes are split into about n / BUCKET_SIZE buckets. Largest
+ * buckets first, each bucket gets the smallest "pilot" number for which
+ * all of its hashes, mixed with the pilot, land on distinct slots that no
+ * earlier bucket took. A lookup reads the pilot of its bucket and mixes it
+ * into the hash, so every one of the n hashes has its own slot in
+ * [0, n). A hash outside the set also gets some slot in that range, so
+ * the caller has to check the key stored there.</p>
+ *
+ * <p>The pilots are kept in an IntBuffer, either on the heap or a view
+ * of a memory-mapped file.</p>
+ */
+class MinimalPerfectHash {
+
+  static final int BUCKET_SIZE = 4; // average keys per bucket, about 8 bits of pilots per key
+
+  private final int n;
+  private final IntBuffer pilots;
+
+  MinimalPerfectHash(int n, IntBuffer pilots) {
+    this.n = n;
+    this.pilots = pilots;
+  }
+
+  /**
+   * Builds the function for the given hashes.
+   *
+   * @param hashes Distinct 64-bit hashes, one per key.
+   * @return The function.
+   * @throws IllegalArgumentException If two hashes are equal.
+   */
+  static MinimalPerfectHash build(long[] hashes) throws IllegalArgumentException {
+    int n = hashes.length;
+    long[] sorted = Arrays.copyOf(hashes, n);
+    Arrays.sort(sorted);
+    for (int i = 1; i < n; i++) {
+      if (sorted[i] == sorted[i - 1]) {
+        throw new IllegalArgumentException("two keys have the same hash " + sorted[i]);
+      }
+    }
+    int numBuckets = numBuckets(n);
+    // group the hashes by bucket with a counting sort
+    int[] start = new int[numBuckets + 1];
+    for (long h : hashes) {
+      start[bucket(h, numBuckets) + 1]++;
+    }
+    int maxSize = 0;
+    for (int b = 0; b < numBuckets; b++) {
+      maxSize = Math.max(maxSize, start[b + 1]);
+      start[b + 1] += start[b];
+    }
+    long[] grouped = new long[n];
+    int[] fill = Arrays.copyOf(start, numBuckets);
+    for (long h : hashes) {
+      grouped[fill[bucket(h, numBuckets)]++] = h;
+    }
+    // order the buckets from largest to smallest, again by counting sort
+    int[] bySize = new int[maxSize + 2];
+    for (int b = 0; b < numBuckets; b++) {
+      bySize[maxSize - (start[b + 1] - start[b]) + 1]++;
+    }
+    for (int i = 1; i < bySize.length; i++) {
+      bySize[i] += bySize[i - 1];
+    }
+    int[] order = new int[numBuckets];
+    for (int b = 0; b < numBuckets; b++) {
+      order[bySize[maxSize - (start[b + 1] - start[b])]++] = b;
+    }
+
+    int[] pilots = new int[numBuckets];
+    boolean[] taken = new boolean[n];
+    int[] slots = new int[maxSize];
+    for (int b : order) {
+      int from = start[b];
+      int size = start[b + 1] - from;
+      for (int pilot = 0; ; pilot++) {
+        int placed = 0;
+        while (placed < size) {
+          int s = slot(grouped[from + placed], pilot, n);
+          if (taken[s] || contains(slots, placed, s)) {
+            break;
+          }
+          slots[placed++] = s;
+        }
+        if (placed == size) {
+          for (int i = 0; i < size; i++) {
+            taken[slots[i]] = true;
+          }
+          pilots[b] = pilot;
+          break;
+        }
+      }
+    }
+    return new MinimalPerfectHash(n, IntBuffer.wrap(pilots));
+  }
+
+  static int numBuckets(int n) {
+    return Math.max(1, (n + BUCKET_SIZE - 1) / BUCKET_SIZE);
+  }
+
+  private static boolean contains(int[] slots, int count, int s) {
+    for (int i = 0; i < count; i++) {
+      if (slots[i] == s) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Map 32 well-mixed bits to [0, range) with a multiply instead of a modulo.
+  private static int reduce(long bits, int range) {
+    return (int) (((bits & 0xFFFFFFFFL) * range) >>> 32);
+  }
+
+  private static int bucket(long hash, int numBuckets) {
+    return reduce(hash >>> 32, numBuckets);
+  }
+
+  private static int slot(long hash, int pilot, int n) {
+    return reduce(SeededHashStrategy.fmix64(hash ^ (pilot * 0x9E3779B97F4A7C15L)) >>> 32, n);
+  }
+
+  /**
+   * Slot of a hash: distinct for each hash the function was built from.
+   *
+   * @param hash The hash.
+   * @return A slot in [0, size()).
+   */
+  int slot(long hash) {
+    return slot(hash, pilots.get(bucket(hash, pilots.limit())), n);
+  }
+
+  /**
+   * Number of slots.
+   *
+   * @return The number of hashes the function was built from.
+   */
+  int size() {
+    return n;
+  }
+
+  /**
+   * Pilot of every bucket, in bucket order.
+   *
+   * @return The pilots.
+   */
+  IntBuffer pilots() {
+    return pilots.duplicate();
+  }
+}
@@ -0,0 +1,503 @@
+package HashTable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Open addressing hash map for fixed-width byte keys and values stored
+ * outside the Java heap.
+ *
+ * <p>Every slot is one state byte followed by keyWidth key bytes and
+ * valueWidth value bytes, laid out back to back in direct ByteBuffers.
+ * Collisions are resolved by linear probing and removal uses
+ * backward-shift deletion, so there are no tombstones. Since a single
+ * ByteBuffer is limited to 2GB, the slots are spread over chunks of at
+ * most CHUNK_BYTES bytes each.</p>
+ *
+ * <p>When opened on a file the buffers are memory mapped. The file starts
+ * with a small header (widths, capacity and size) followed by the slots,
+ * so reopening an existing file only maps it again: no entry is read or
+ * re-inserted. Call flush() to force changes to disk. Growing a
+ * file-backed table writes the new table to a sibling file and atomically
+ * renames it over the old one.</p>
+ *
+ * <p>Keys and values are passed as byte arrays of exactly keyWidth and
+ * valueWidth bytes; values are returned as fresh copies.</p>
+ */
+public class OffHeapHashMap implements Closeable {
+
+  private static final int MAGIC = 0x4F48484D; // "OHHM"
+  private static final int HEADER = 64; // bytes reserved at the start of a file
+  private static final int CHUNK_BYTES = 1 << 30;
+  private static final byte EMPTY = 0;
+  private static final byte FULL = 1;
+
+  private final int keyWidth;
+  private final int valueWidth;
+  private final int slotWidth;
+  private final int slotsPerChunk;
+  private final Path file; // null for a purely in-memory table
+  private FileChannel channel;
+  private ByteBuffer header;
+  private ByteBuffer[] chunks;
+  private long capacity;
+  private long numElements;
+  private final byte[] scratch; // one slot, reused when shifting slots around
+  private final int[] primes = {2, 5, 11, 23, 47, 97, 197, 397, 797, 1597,
+      3203, 6421, 12853, 25717, 51437, 102877, 205759, 411527, 823117, 1646237, 3292489, 6584983, 13169977};
+  private final double loadFactor = 0.75;
+
+  /**
+   * Constructs an in-memory off-heap map.
+   *
+   * @param keyWidth Number of bytes in every key.
+   * @param valueWidth Number of bytes in every value.
+   * @throws IllegalArgumentException If a width is not positive.
+   */
+  public OffHeapHashMap(int keyWidth, int valueWidth) {
+    this.keyWidth = keyWidth;
+    this.valueWidth = valueWidth;
+    slotWidth = checkWidths(keyWidth, valueWidth);
+    slotsPerChunk = CHUNK_BYTES / slotWidth;
+    scratch = new byte[slotWidth];
+    file = null;
+    try {
+      allocate(primes[1]);
+    } catch (IOException e) {
+      throw new IllegalStateException(e); // direct buffers do not do I/O
+    }
+  }
+
+  /**
+   * Opens a memory-mapped map, creating the file if it does not exist yet.
+   *
+   * @param file File backing the table.
+   * @param keyWidth Number of bytes in every key.
+   * @param valueWidth Number of bytes in every value.
+   * @throws IOException If the file cannot be opened or mapped.
+   * @throws IllegalArgumentException If a width is not positive, or the
+   *     file holds a table with different widths.
+   */
+  public OffHeapHashMap(Path file, int keyWidth, int valueWidth) throws IOException {
+    this.keyWidth = keyWidth;
+    this.valueWidth = valueWidth;
+    slotWidth = checkWidths(keyWidth, valueWidth);
+    slotsPerChunk = CHUNK_BYTES / slotWidth;
+    scratch = new byte[slotWidth];
+    this.file = file;
+    boolean exists = Files.exists(file) && Files.size(file) >= HEADER;
+    channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    if (!exists) {
+      allocate(primes[9]);
+      return;
+    }
+    header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER);
+    if (header.getInt(0) != MAGIC || header.getInt(4) != keyWidth || header.getInt(8) != valueWidth) {
+      channel.close();
+      throw new IllegalArgumentException("file does not hold a table with these key/value widths");
+    }
+    capacity = header.getLong(16);
+    numElements = header.getLong(24);
+    chunks = mapChunks(channel, capacity);
+  }
+
+  private static int checkWidths(int keyWidth, int valueWidth) {
+    if (keyWidth <= 0 || valueWidth <= 0) {
+      throw new IllegalArgumentException("key and value widths must be positive");
+    }
+    return 1 + keyWidth + valueWidth;
+  }
+
+  // Set up an empty table with the given capacity on the current channel (if any).
+  private void allocate(long newCapacity) throws IOException {
+    capacity = newCapacity;
+    numElements = 0;
+    if (channel != null) {
+      channel.truncate(0); // mapped regions of a fresh file read as zeros, i.e. EMPTY
+      header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER);
+      chunks = mapChunks(channel, capacity);
+    } else {
+      header = ByteBuffer.allocateDirect(HEADER);
+      chunks = new ByteBuffer[chunkCount(capacity)];
+      for (int c = 0; c < chunks.length; c++) {
+        chunks[c] = ByteBuffer.allocateDirect(chunkSlots(c, capacity) * slotWidth);
+      }
+    }
+    header.putInt(0, MAGIC);
+    header.putInt(4, keyWidth);
+    header.putInt(8, valueWidth);
+    header.putLong(16, capacity);
+    header.putLong(24, numElements);
+  }
+
+  private MappedByteBuffer[] mapChunks(FileChannel ch, long cap) throws IOException {
+    MappedByteBuffer[] mapped = new MappedByteBuffer[chunkCount(cap)];
+    for (int c = 0; c < mapped.length; c++) {
+      long position = HEADER + (long) c * slotsPerChunk * slotWidth;
+      mapped[c] = ch.map(FileChannel.MapMode.READ_WRITE, position, (long) chunkSlots(c, cap) * slotWidth);
+    }
+    return mapped;
+  }
+
+  private int chunkCount(long cap) {
+    return (int) ((cap + slotsPerChunk - 1) / slotsPerChunk);
+  }
+
+  private int chunkSlots(int c, long cap) {
+    return (int) Math.min(slotsPerChunk, cap - (long) c * slotsPerChunk);
+  }
+
+  private ByteBuffer chunk(long slot) {
+    return chunks[(int) (slot / slotsPerChunk)];
+  }
+
+  private int offset(long slot) {
+    return (int) (slot % slotsPerChunk) * slotWidth;
+  }
+
+  private boolean isFull(long slot) {
+    return chunk(slot).get(offset(slot)) == FULL;
+  }
+
+  // FNV-1a over the key bytes; fixed-width keys such as small integers
+  // differ in only a few bytes, so the result gets a final avalanche step.
+  private static int fnv(int h, byte b) {
+    return (h ^ (b & 0xFF)) * 0x01000193;
+  }
+
+  private static int finish(int h) {
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    return h;
+  }
+
+  private long getIndex(byte[] key) {
+    int h = 0x811c9dc5;
+    for (byte b : key) {
+      h = fnv(h, b);
+    }
+    return Math.abs(finish(h) % capacity);
+  }
+
+  // Same hash as getIndex, but for the key stored in a slot.
+  private long getIndex(long slot) {
+    ByteBuffer buf = chunk(slot);
+    int base = offset(slot) + 1;
+    int h = 0x811c9dc5;
+    for (int i = 0; i < keyWidth; i++) {
+      h = fnv(h, buf.get(base + i));
+    }
+    return Math.abs(finish(h) % capacity);
+  }
+
+  private boolean keyEquals(long slot, byte[] key) {
+    ByteBuffer buf = chunk(slot);
+    int base = offset(slot) + 1;
+    for (int i = 0; i < keyWidth; i++) {
+      if (buf.get(base + i) != key[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void checkKey(byte[] k) {
+    if (k == null || k.length != keyWidth) {
+      throw new IllegalArgumentException("key must be exactly " + keyWidth + " bytes");
+    }
+  }
+
+  private void checkValue(byte[] v) {
+    if (v == null || v.length != valueWidth) {
+      throw new IllegalArgumentException("value must be exactly " + valueWidth + " bytes");
+    }
+  }
+
+  // Return the slot holding key k, or -1 if k is not mapped.
+  private long find(byte[] k) {
+    long index = getIndex(k);
+    while (isFull(index)) {
+      if (keyEquals(index, k)) {
+        return index;
+      }
+      index = (index + 1) % capacity;
+    }
+    return -1;
+  }
+
+  private void writeSlot(long slot, byte[] k, byte[] v) {
+    ByteBuffer buf = chunk(slot);
+    int base = offset(slot);
+    buf.put(base, FULL);
+    buf.put(base + 1, k);
+    buf.put(base + 1 + keyWidth, v);
+  }
+
+  private void setSize(long n) {
+    numElements = n;
+    header.putLong(24, n);
+  }
+
+  private void rehash() throws IOException {
+    long newCapacity = capacity * 2 + 1;
+    for (int p : primes) {
+      if (p > capacity) {
+        newCapacity = p;
+        break;
+      }
+    }
+    FileChannel oldChannel = channel;
+    ByteBuffer[] oldChunks = chunks;
+    long oldCapacity = capacity;
+    Path tmp = null;
+    if (file != null) { // build the bigger table next to the old file, then swap it in
+      tmp = file.resolveSibling(file.getFileName() + ".rehash");
+      channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+    allocate(newCapacity);
+    byte[] k = new byte[keyWidth];
+    byte[] v = new byte[valueWidth];
+    for (long slot = 0; slot < oldCapacity; slot++) {
+      ByteBuffer buf = oldChunks[(int) (slot / slotsPerChunk)];
+      int base = (int) (slot % slotsPerChunk) * slotWidth;
+      if (buf.get(base) == FULL) { // keys are known to be distinct, so skip the duplicate check
+        buf.get(base + 1, k);
+        buf.get(base + 1 + keyWidth, v);
+        long index = getIndex(k);
+        while (isFull(index)) {
+          index = (index + 1) % capacity;
+        }
+        writeSlot(index, k, v);
+        numElements++;
+      }
+    }
+    setSize(numElements);
+    if (file != null) {
+      flush();
+      oldChannel.close();
+      Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+  }
+
+  /**
+   * Insert a new key/value pair.
+   *
+   * @param k The key.
+   * @param v The value to be associated with k.
+   * @throws IllegalArgumentException If k or v has the wrong width, or k is already mapped.
+   * @throws IOException If growing a file-backed table fails.
+   */
+  public void insert(byte[] k, byte[] v) throws IllegalArgumentException, IOException {
+    checkKey(k);
+    checkValue(v);
+    long index = getIndex(k);
+    while (isFull(index)) {
+      if (keyEquals(index, k)) {
+        throw new IllegalArgumentException("duplicate key");
+      }
+      index = (index + 1) % capacity;
+    }
+    writeSlot(index, k, v);
+    setSize(numElements + 1);
+    if (loadFactor * capacity < numElements) {
+      rehash();
+    }
+  }
+
+  /**
+   * Remove an existing key/value pair.
+   *
+   * @param k The key.
+   * @return A copy of the value that was associated with k.
+   * @throws IllegalArgumentException If k has the wrong width or is not mapped.
+   */
+  public byte[] remove(byte[] k) throws IllegalArgumentException {
+    checkKey(k);
+    long hole = find(k);
+    if (hole == -1) {
+      throw new IllegalArgumentException("cannot find key");
+    }
+    byte[] value = new byte[valueWidth];
+    chunk(hole).get(offset(hole) + 1 + keyWidth, value);
+    // backward-shift: pull later members of the cluster into the hole
+    long j = hole;
+    while (true) {
+      j = (j + 1) % capacity;
+      if (!isFull(j)) {
+        break;
+      }
+      long home = getIndex(j);
+      boolean movable = hole <= j ? (home <= hole || home > j) : (home <= hole && home > j);
+      if (movable) {
+        chunk(j).get(offset(j), scratch);
+        chunk(hole).put(offset(hole), scratch);
+        hole = j;
+      }
+    }
+    chunk(hole).put(offset(hole), EMPTY);
+    setSize(numElements - 1);
+    return value;
+  }
+
+  /**
+   * Update the value associated with a key.
+   *
+   * @param k The key.
+   * @param v The value to be associated with k.
+   * @throws IllegalArgumentException If k or v has the wrong width, or k is not mapped.
+   */
+  public void put(byte[] k, byte[] v) throws IllegalArgumentException {
+    checkKey(k);
+    checkValue(v);
+    long index = find(k);
+    if (index == -1) {
+      throw new IllegalArgumentException("cannot find key");
+    }
+    chunk(index).put(offset(index) + 1 + keyWidth, v);
+  }
+
+  /**
+   * Get the value associated with a key.
+   *
+   * @param k The key.
+   * @return A copy of the value associated with k.
+   * @throws IllegalArgumentException If k has the wrong width or is not mapped.
+   */
+  public byte[] get(byte[] k) throws IllegalArgumentException {
+    checkKey(k);
+    long index = find(k);
+    if (index == -1) {
+      throw new IllegalArgumentException("cannot find key");
+    }
+    byte[] value = new byte[valueWidth];
+    chunk(index).get(offset(index) + 1 + keyWidth, value);
+    return value;
+  }
+
+  /**
+   * Check existence of a key.
+   *
+   * @param k The key.
+   * @return True if k is mapped, false otherwise (even for null or a key of the wrong width).
+   */
+  public boolean has(byte[] k) {
+    if (k == null || k.length != keyWidth) {
+      return false;
+    }
+    return find(k) != -1;
+  }
+
+  /**
+   * Number of mappings.
+   *
+   * @return Number of key/value pairs in the map.
+   */
+  public long size() {
+    return numElements;
+  }
+
+  /**
+   * Force all changes of a file-backed table to disk (no-op in memory).
+   */
+  public void flush() {
+    if (channel == null) {
+      return;
+    }
+    ((MappedByteBuffer) header).force();
+    for (ByteBuffer c : chunks) {
+      ((MappedByteBuffer) c).force();
+    }
+  }
+
+  /**
+   * Flush and release the backing file. The mappings themselves are
+   * released once the buffers are garbage collected.
+   *
+   * @throws IOException If closing the file fails.
+   */
+  @Override
+  public void close() throws IOException {
+    flush();
+    if (channel != null) {
+      channel.close();
+    }
+  }
+
+  /**
+   * Iterate over copies of the keys, in table order.
+   *
+   * @return Iterator over all mapped keys.
+   */
+  public Iterator<byte[]> keyIterator() {
+    return new KeyIterator();
+  }
+
+  private class KeyIterator implements Iterator<byte[]> {
+    private long currentIndex;
+
+    KeyIterator() {
+      currentIndex = 0;
+      skipEmpty();
+    }
+
+    private void skipEmpty() {
+      while (currentIndex < capacity && !isFull(currentIndex)) {
+        currentIndex++;
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return currentIndex < capacity;
+    }
+
+    @Override
+    public byte[] next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException("No more elements in the table");
+      }
+      byte[] key = new byte[keyWidth];
+      chunk(currentIndex).get(offset(currentIndex) + 1, key);
+      currentIndex++;
+      skipEmpty();
+      return key;
+    }
+  }
+
+  // Populate a file-backed table, then time how long reopening it takes.
+  public static void main(String[] args) throws IOException {
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    Path path = Files.createTempFile("offheap", ".map");
+    Files.delete(path);
+    ByteBuffer key = ByteBuffer.allocate(8);
+    ByteBuffer value = ByteBuffer.allocate(8);
+
+    long begin = System.nanoTime();
+    try (OffHeapHashMap map = new OffHeapHashMap(path, 8, 8)) {
+      for (long i = 0; i < n; i++) {
+        map.insert(key.putLong(0, i).array(), value.putLong(0, i * i).array());
+      }
+    }
+    System.out.printf("populate %d entries: %8.1f ms%n", n, (System.nanoTime() - begin) / 1e6);
+
+    begin = System.nanoTime();
+    try (OffHeapHashMap map = new OffHeapHashMap(path, 8, 8)) {
+      System.out.printf("reopen:              %8.1f ms (%d entries)%n", (System.nanoTime() - begin) / 1e6, map.size());
+      long probe = n / 2;
+      byte[] found = map.get(key.putLong(0, probe).array());
+      System.out.println("value of " + probe + ": " + ByteBuffer.wrap(found).getLong());
+    }
+    Files.deleteIfExists(path);
+  }
+}
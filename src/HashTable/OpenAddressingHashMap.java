@@ -1,10 +1,36 @@
 package HashTable;
 
-import Map.Map;
+import Map.Cursor;
+import Map.SingleProbeMap;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
-
-public class OpenAddressingHashMap<K, V> implements Map<K, V> {
+import java.util.function.BiConsumer;
+
+/**
+ * Map implemented as a hash table with open addressing (linear probing).
+ *
+ * <p>By default a removed entry is replaced by a shared tombstone. In
+ * Robin Hood mode every node records its probe distance from its home
+ * slot instead: insertion lets a "poorer" key (further from home) take
+ * the slot of a "richer" one, lookups stop as soon as they pass a node
+ * closer to home than the key would be, and removal shifts the rest of
+ * the cluster back by one so no tombstones are ever created.</p>
+ *
+ * <p>Tombstones are purged in place, without a second table, once they
+ * take up a quarter of the cells. The table shrinks to half full once
+ * removals leave it a quarter of the way to its load factor;
+ * trimToSize() shrinks it as far as possible.</p>
+ *
+ * <p>Keys are hashed by a HashStrategy, their own hashCode() unless
+ * another one is given. Use HashStrategy.seeded() for keys that may be
+ * chosen by an attacker. Capacities are primes by default; in
+ * power-of-two mode the index is taken from the high bits of the hash
+ * times a Fibonacci constant, which is cheaper than a modulo.</p>
+ *
+ * @param <K> Type for keys.
+ * @param <V> Type for values.
+ */
+public class OpenAddressingHashMap<K, V> extends SingleProbeMap<K, V> {
 
   private int numElements;
   private int numFilledCells;
@@ -13,76 +39,301 @@ public class OpenAddressingHashMap<K, V> implements Map<K, V> {
   private final int[] primes = {2, 5, 11, 23, 47, 97, 197, 397, 797, 1597,
       3203, 6421, 12853, 25717, 51437,102877, 205759, 411527, 823117, 1646237,3292489, 6584983, 13169977};
   private int primeIdx;
-  private final double loadFactor = 0.75;
+  private final double loadFactor;
+  private final boolean robinHood;
+  private final HashStrategy<? super K> hashing;
+  private final boolean powerOfTwo;
   private final Node<K,V> tombstone = new Node<>();
+  private HashTableStats stats; // null unless stats are enabled
 
   /**
    * Constructs an Open Addressing Hash Map with default initial capacity and settings.
    */
   public OpenAddressingHashMap() {
+    this(false, 0.75);
+  }
+
+  /**
+   * Constructs an Open Addressing Hash Map with the given probing mode.
+   *
+   * @param robinHood true for Robin Hood probing with backward-shift deletion,
+   *                  false for plain linear probing with tombstones.
+   * @param loadFactor fraction of filled cells that triggers a rehash, in (0, 1).
+   * @throws IllegalArgumentException If loadFactor is not in (0, 1).
+   */
+  public OpenAddressingHashMap(boolean robinHood, double loadFactor) {
+    this(robinHood, loadFactor, HashStrategy.identity(), false);
+  }
+
+  /**
+   * Constructs an Open Addressing Hash Map with the given probing mode and hashing.
+   *
+   * @param robinHood true for Robin Hood probing with backward-shift deletion,
+   *                  false for plain linear probing with tombstones.
+   * @param loadFactor fraction of filled cells that triggers a rehash, in (0, 1).
+   * @param hashing strategy that hashes the keys, e.g. HashStrategy.seeded().
+   * @param powerOfTwo true for power-of-two capacities indexed by multiply-shift,
+   *                   false for prime capacities indexed by modulo.
+   * @throws IllegalArgumentException If loadFactor is not in (0, 1).
+   */
+  public OpenAddressingHashMap(boolean robinHood, double loadFactor,
+                               HashStrategy<? super K> hashing, boolean powerOfTwo) {
+    if (!(loadFactor > 0 && loadFactor < 1)) {
+      throw new IllegalArgumentException("load factor must be in (0, 1)");
+    }
+    this.robinHood = robinHood;
+    this.loadFactor = loadFactor;
+    this.hashing = hashing;
+    this.powerOfTwo = powerOfTwo;
     numElements = 0;
     primeIdx = 1;
-    capacity = primes[primeIdx];
+    capacity = capacityFor(primeIdx);
     hashTable = new Node[capacity];
   }
 
   private int getIndex(K key) {
-    return Math.abs(key.hashCode() % capacity); // return the hashCode for a given key
+    int hash = hashing.hash(key);
+    if (powerOfTwo) { // multiply-shift keeps the high bits of the product, where all bits of hash mix
+      return (hash * 0x9E3779B9) >>> (32 - Integer.numberOfTrailingZeros(capacity));
+    }
+    return Math.abs(hash % capacity);
   }
 
-  private void rehash() {
-    primeIdx++;
-    if (primeIdx < primes.length) {
-      capacity = primes[primeIdx]; // choose the capacity to be the next prime number in the array
-    } else {
-      capacity = capacity * 2 + 1; // if the table is larger than the max held by the primes array
+  // Capacity of the table at the given step of growth.
+  private int capacityFor(int idx) {
+    if (powerOfTwo) {
+      return 1 << (idx + 2);
     }
-    // reinitialize the hashTable
-    numElements = 0;
-    numFilledCells = 0;
+    if (idx < primes.length) {
+      return primes[idx]; // choose the capacity to be the prime number in the array
+    }
+    int c = primes[primes.length - 1];
+    for (int i = primes.length - 1; i < idx; i++) {
+      c = c * 2 + 1; // if the table is larger than the max held by the primes array
+    }
+    return c;
+  }
+
+  // Smallest step of growth whose table holds the given number of elements within the load factor.
+  private int primeIdxFor(int elements) {
+    int idx = 1;
+    while (loadFactor * capacityFor(idx) < elements) {
+      idx++;
+    }
+    return idx;
+  }
+
+  private void rehash() {
+    resize(primeIdx + 1);
+  }
+
+  private void resize(int newPrimeIdx) {
+    long start = stats == null ? 0 : System.nanoTime();
+    primeIdx = newPrimeIdx;
+    capacity = capacityFor(primeIdx);
+    // reinitialize the hashTable, tombstones are dropped along the way
+    numFilledCells = numElements;
     Node<K, V>[] temp = hashTable;
     hashTable = new Node[capacity];
-    for (Node<K, V> n : temp) { // copy the oldTable to the new one
+    for (Node<K, V> n : temp) { // move the nodes to the new table, keys are known to be distinct
       if (n != null && n != tombstone) {
-        insert(n.getKey(), n.getValue());
+        int index = getIndex(n.getKey());
+        if (robinHood) {
+          shiftIn(index, n, 0);
+        } else {
+          while (hashTable[index] != null) {
+            index = (index + 1) % capacity;
+          }
+          hashTable[index] = n;
+        }
+      }
+    }
+    if (stats != null) {
+      stats.recordRehash(System.nanoTime() - start);
+    }
+  }
+
+  // Drop all tombstones without allocating a second table. Every node
+  // moves back to the first empty cell of its probe sequence. Going round
+  // from a cell that was empty to begin with, which no probe sequence
+  // crosses, all cells a node could move to have been settled already.
+  private void purgeTombstones() {
+    long begin = stats == null ? 0 : System.nanoTime();
+    int start = 0;
+    while (hashTable[start] != null) { // the load factor guarantees an empty cell
+      start++;
+    }
+    for (int i = 0; i < capacity; i++) {
+      if (hashTable[i] == tombstone) {
+        hashTable[i] = null;
       }
     }
+    for (int step = 1; step < capacity; step++) {
+      int i = (start + step) % capacity;
+      if (hashTable[i] != null) {
+        int slot = getIndex(hashTable[i].getKey());
+        while (slot != i && hashTable[slot] != null) {
+          slot = (slot + 1) % capacity;
+        }
+        if (slot != i) {
+          hashTable[slot] = hashTable[i];
+          hashTable[i] = null;
+        }
+      }
+    }
+    numFilledCells = numElements;
+    if (stats != null) {
+      stats.recordRehash(System.nanoTime() - begin);
+    }
+  }
+
+  // Record a probe for key that stopped at the given index; only used when stats are enabled.
+  private void recordProbe(K key, int stop) {
+    stats.recordProbe((stop - getIndex(key) + capacity) % capacity + 1);
   }
 
   private int find(K key) {
+    if (robinHood) {
+      return findRobinHood(key);
+    }
     int index = getIndex(key);
     while (hashTable[index] != null || hashTable[index] == tombstone) { // if the given pos is taken
       if (!(hashTable[index] == tombstone) && hashTable[index].getKey().equals(key)) {
+        if (stats != null) {
+          recordProbe(key, index);
+        }
         return index; // ensure the returned index corresponds to a non-tombstone node
       }
       index++;
       index = index % capacity;
     }
+    if (stats != null) {
+      recordProbe(key, index);
+    }
     return -1;
   }
 
+  private int findRobinHood(K key) {
+    int index = getIndex(key);
+    int dist = 0;
+    while (hashTable[index] != null) {
+      if (hashTable[index].dist < dist) {
+        break; // key would have displaced this richer node, so it is not in the table
+      }
+      if (hashTable[index].getKey().equals(key)) {
+        if (stats != null) {
+          stats.recordProbe(dist + 1);
+        }
+        return index;
+      }
+      index = (index + 1) % capacity;
+      dist++;
+    }
+    if (stats != null) {
+      stats.recordProbe(dist + 1);
+    }
+    return -1;
+  }
 
-  @Override
-  public void insert(K k, V v) throws IllegalArgumentException {
-    if (k == null) {
-      throw new IllegalArgumentException("cannot handle null key");
+  // Return the index of key, or -(i + 1) where i is the slot an insert of key should use.
+  private int probe(K key) {
+    int index = getIndex(key);
+    if (robinHood) {
+      int dist = 0;
+      while (hashTable[index] != null && hashTable[index].dist >= dist) {
+        if (hashTable[index].getKey().equals(key)) {
+          if (stats != null) {
+            stats.recordProbe(dist + 1);
+          }
+          return index;
+        }
+        index = (index + 1) % capacity;
+        dist++;
+      }
+      if (stats != null) {
+        stats.recordProbe(dist + 1);
+      }
+      return -(index + 1); // key belongs here, displacing the richer node (if any)
     }
-    int index = getIndex(k);
-    while (hashTable[index] != null) { // if the given pos is taken
-      if (!(hashTable[index] == tombstone) && hashTable[index].getKey().equals(k)) {
-        throw new IllegalArgumentException("duplicate key " + k);
+    int firstTombstone = -1;
+    while (hashTable[index] != null) {
+      if (hashTable[index] == tombstone) {
+        if (firstTombstone == -1) {
+          firstTombstone = index;
+        }
+      } else if (hashTable[index].getKey().equals(key)) {
+        if (stats != null) {
+          recordProbe(key, index);
+        }
+        return index;
       }
-      index++;
-      index = index % capacity;
+      index = (index + 1) % capacity;
     }
+    if (stats != null) {
+      recordProbe(key, index);
+    }
+    return -((firstTombstone != -1 ? firstTombstone : index) + 1);
+  }
 
-    hashTable[index] = new Node<>(k, v);
+  // Put a node whose key is known to be absent into the slot found by probe().
+  private void place(int slot, Node<K, V> node) {
+    if (robinHood) {
+      shiftIn(slot, node, (slot - getIndex(node.getKey()) + capacity) % capacity);
+      numFilledCells++;
+    } else {
+      if (hashTable[slot] == null) {
+        numFilledCells++; // reusing a tombstone does not fill another cell
+      }
+      hashTable[slot] = node;
+    }
     numElements++;
-    numFilledCells++;
-
     if (loadFactor * capacity < numFilledCells) { // if numFilledCells/capacity > loadFactor, need rehash
-      rehash();
+      if (numElements * 2 <= loadFactor * capacity) {
+        purgeTombstones(); // mostly tombstones, the table is big enough without them
+      } else {
+        rehash();
+      }
+    }
+  }
+
+  // Place a node dist slots from its home at index by Robin Hood rules:
+  // whoever is further from home keeps the slot, the other one moves on.
+  private void shiftIn(int index, Node<K, V> curr, int dist) {
+    curr.dist = dist;
+    while (hashTable[index] != null) {
+      Node<K, V> occupant = hashTable[index];
+      if (occupant.dist < curr.dist) {
+        hashTable[index] = curr;
+        curr = occupant;
+      }
+      index = (index + 1) % capacity;
+      curr.dist++;
     }
+    hashTable[index] = curr;
+  }
+
+  // Remove the node at index and shift the rest of its cluster back by one.
+  private void removeRobinHood(int index) {
+    int next = (index + 1) % capacity;
+    while (hashTable[next] != null && hashTable[next].dist > 0) {
+      hashTable[index] = hashTable[next];
+      hashTable[index].dist--;
+      index = next;
+      next = (next + 1) % capacity;
+    }
+    hashTable[index] = null;
+  }
+
+  @Override
+  public void insert(K k, V v) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    int slot = probe(k);
+    if (slot >= 0) {
+      throw new IllegalArgumentException("duplicate key " + k);
+    }
+    place(-slot - 1, new Node<>(k, v));
   }
 
   @Override
@@ -95,8 +346,25 @@ public class OpenAddressingHashMap<K, V> implements Map<K, V> {
       throw new IllegalArgumentException("cannot find key " + k);
     }
     V value = hashTable[index].getValue();
-    hashTable[index] = tombstone; // put a tombstone to the removed pos
+    if (robinHood) {
+      removeRobinHood(index);
+      numFilledCells--; // the cell is really freed, unlike with a tombstone
+    } else {
+      hashTable[index] = tombstone; // put a tombstone to the removed pos
+    }
     numElements--;
+    // shrink once the table is a quarter of the way to full, to half way, so that
+    // alternating inserts and removes around one size never resize back and forth
+    if (primeIdx > 1 && numElements < loadFactor * capacity / 4) {
+      int idx = primeIdxFor(numElements * 2);
+      if (idx < primeIdx) {
+        resize(idx);
+        return value;
+      }
+    }
+    if (numFilledCells - numElements > capacity / 4) { // misses would walk over too many tombstones
+      purgeTombstones();
+    }
     return value;
   }
 
@@ -137,6 +405,107 @@ public class OpenAddressingHashMap<K, V> implements Map<K, V> {
     return numElements;
   }
 
+  /**
+   * Shrink the table to the smallest capacity that holds the current
+   * entries within the load factor, dropping all tombstones.
+   */
+  public void trimToSize() {
+    int idx = primeIdxFor(numElements);
+    if (idx < primeIdx) {
+      resize(idx);
+    } else if (numFilledCells > numElements) {
+      purgeTombstones();
+    }
+  }
+
+  /**
+   * Start collecting probe lengths and rehash figures. While stats are
+   * disabled (the default) lookups pay for nothing but a null check.
+   */
+  public void enableStats() {
+    stats = new HashTableStats();
+  }
+
+  /**
+   * Stop collecting stats and drop what was collected so far.
+   */
+  public void disableStats() {
+    stats = null;
+  }
+
+  /**
+   * Stats collected since enableStats(), with the cluster-length
+   * distribution and tombstone ratio of the table as it is now. A
+   * cluster is a run of consecutive non-empty cells, tombstones included.
+   *
+   * @return The stats of this table.
+   * @throws IllegalStateException if stats are not enabled.
+   */
+  public HashTableStats stats() throws IllegalStateException {
+    if (stats == null) {
+      throw new IllegalStateException("stats are not enabled");
+    }
+    long[] clusters = new long[HashTableStats.MAX_TRACKED + 1];
+    // start right after an empty cell so no cluster is split by the wrap-around
+    int start = 0;
+    while (start < capacity && hashTable[start] != null) {
+      start++;
+    }
+    int length = 0;
+    for (int i = 1; i <= capacity; i++) {
+      if (hashTable[(start + i) % capacity] != null) {
+        length++;
+      } else {
+        if (length > 0) {
+          clusters[Math.min(length, HashTableStats.MAX_TRACKED)]++;
+        }
+        length = 0;
+      }
+    }
+    clusters[0] = capacity - numFilledCells;
+    stats.snapshot(clusters, numFilledCells - numElements, capacity);
+    return stats;
+  }
+
+  // Return node for given key, inserting a node with a null value if
+  // the key is not in the table yet; a single probe either way.
+  @Override
+  protected Node<K, V> findOrInsert(K k) {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    int slot = probe(k);
+    if (slot >= 0) {
+      return hashTable[slot];
+    }
+    Node<K, V> node = new Node<>(k, null);
+    place(-slot - 1, node);
+    return node;
+  }
+
+  @Override
+  public V getOrDefault(K k, V defaultValue) {
+    if (k == null) {
+      return defaultValue;
+    }
+    int index = find(k);
+    return index == -1 ? defaultValue : hashTable[index].getValue();
+  }
+
+  @Override
+  public Cursor<K, V> cursor() {
+    return new OpenAddressingHashMapCursor();
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    for (Node<K, V> n : hashTable) {
+      if (n != null && n != tombstone) {
+        action.accept(n.key, n.value);
+      }
+    }
+  }
+
   @Override
   public Iterator<K> iterator() {
     return new OpenAddressingHashMapIterator();
@@ -177,9 +546,48 @@ public class OpenAddressingHashMap<K, V> implements Map<K, V> {
     }
   }
 
-  private static class Node<K, V> {
+  private class OpenAddressingHashMapCursor implements Cursor<K, V> {
+    private int currentIndex;
+
+    OpenAddressingHashMapCursor() {
+      currentIndex = -1;
+    }
+
+    @Override
+    public boolean advance() {
+      do {
+        currentIndex++;
+      } while (currentIndex < capacity && (hashTable[currentIndex] == null || hashTable[currentIndex] == tombstone));
+      return currentIndex < capacity;
+    }
+
+    private Node<K, V> current() {
+      if (currentIndex < 0 || currentIndex >= capacity) {
+        throw new IllegalStateException("cursor is not on an entry");
+      }
+      return hashTable[currentIndex];
+    }
+
+    @Override
+    public K key() {
+      return current().key;
+    }
+
+    @Override
+    public V value() {
+      return current().value;
+    }
+
+    @Override
+    public void setValue(V v) {
+      current().value = v;
+    }
+  }
+
+  private static class Node<K, V> implements Slot<V> {
     K key;
     V value;
+    int dist; // probe distance from the home slot, only maintained in Robin Hood mode
 
     Node() {
       key = null;
@@ -0,0 +1,376 @@
+package HashTable;
+
+import Map.Cursor;
+import Map.Map;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable map indexed by a minimal perfect hash function.
+ *
+ * <p>Built once from any other Map, it has exactly one slot per key and
+ * no empty slots. A lookup hashes the key, reads the pilot of its bucket,
+ * and compares the one key stored in the resulting slot, so it touches
+ * a constant number of memory locations, hit or miss.</p>
+ *
+ * <p>The hash is the key's (usually cached) hashCode() run through a
+ * seeded 64-bit finalizer. The few keys whose hashCode() equals that of
+ * an earlier key go to a second-level PerfectHashMap that hashes them by
+ * content with SeededHashStrategy, so Strings, byte arrays and Longs may
+ * be any keys at all. Other keys need distinct hashCode()s. Since the
+ * key set never changes, chosen keys cannot flood the table.</p>
+ *
+ * <p>writeTo() saves the map in a compact form that MappedPerfectHashMap
+ * reads by memory mapping the file, without rebuilding anything.</p>
+ *
+ * <p>insert, remove and put (and the default methods built on them)
+ * throw UnsupportedOperationException.</p>
+ *
+ * @param <K> Type for keys.
+ * @param <V> Type for values.
+ */
+public class PerfectHashMap<K, V> implements Map<K, V> {
+
+  private final SeededHashStrategy<K> hashing;
+  private final boolean byContent; // hash with SeededHashStrategy rather than from hashCode()
+  private final MinimalPerfectHash mph;
+  private final Object[] table; // key of slot i at 2i and its value at 2i + 1, so a hit reads one cache line
+  private final PerfectHashMap<K, V> spill; // keys sharing a hashCode() with another key, or null
+
+  private PerfectHashMap(K[] keys, V[] values, int n, boolean byContent) throws IllegalArgumentException {
+    this.byContent = byContent;
+    hashing = new SeededHashStrategy<>();
+    long[] hashes = new long[n];
+    for (int i = 0; i < n; i++) {
+      hashes[i] = hash(keys[i]);
+    }
+    // keep the first key of every hash here and pass any others on to the spill level
+    long[] sorted = Arrays.copyOf(hashes, n);
+    Arrays.sort(sorted);
+    int numDuplicates = 0;
+    for (int i = 1; i < n; i++) {
+      if (sorted[i] == sorted[i - 1] && (numDuplicates == 0 || sorted[numDuplicates - 1] != sorted[i])) {
+        sorted[numDuplicates++] = sorted[i]; // reuse the front of sorted for the distinct duplicated hashes
+      }
+    }
+    if (numDuplicates > 0 && byContent) {
+      throw new IllegalArgumentException("keys with equal contents or hashCode() " + numDuplicates);
+    }
+    long[] duplicated = Arrays.copyOf(sorted, numDuplicates);
+    boolean[] kept = new boolean[numDuplicates];
+    K[] spillKeys = (K[]) new Object[n];
+    V[] spillValues = (V[]) new Object[n];
+    int numSpilled = 0;
+    int numKept = 0;
+    for (int i = 0; i < n; i++) {
+      int d = numDuplicates == 0 ? -1 : Arrays.binarySearch(duplicated, hashes[i]);
+      if (d >= 0 && kept[d]) {
+        spillKeys[numSpilled] = keys[i];
+        spillValues[numSpilled++] = values[i];
+      } else {
+        if (d >= 0) {
+          kept[d] = true;
+        }
+        keys[numKept] = keys[i];
+        values[numKept] = values[i];
+        hashes[numKept++] = hashes[i];
+      }
+    }
+    hashes = Arrays.copyOf(hashes, numKept);
+    mph = MinimalPerfectHash.build(hashes);
+    table = new Object[2 * numKept];
+    for (int i = 0; i < numKept; i++) {
+      int slot = mph.slot(hashes[i]);
+      table[2 * slot] = keys[i];
+      table[2 * slot + 1] = values[i];
+    }
+    spill = numSpilled == 0 ? null : new PerfectHashMap<>(spillKeys, spillValues, numSpilled, true);
+  }
+
+  /**
+   * Builds a PerfectHashMap with the same mappings as another map.
+   *
+   * @param source The map to copy.
+   * @param <K> Type for keys.
+   * @param <V> Type for values.
+   * @return The new map.
+   * @throws IllegalArgumentException If keys other than Strings, byte
+   *                                  arrays and Longs share a hashCode().
+   */
+  public static <K, V> PerfectHashMap<K, V> of(Map<K, V> source) throws IllegalArgumentException {
+    int n = source.size();
+    K[] keys = (K[]) new Object[n];
+    V[] values = (V[]) new Object[n];
+    int i = 0;
+    for (Cursor<K, V> c = source.cursor(); c.advance(); i++) {
+      keys[i] = c.key();
+      values[i] = c.value();
+    }
+    return new PerfectHashMap<>(keys, values, n, false);
+  }
+
+  private long hash(K k) {
+    return byContent ? hashing.hash64(k) : SeededHashStrategy.fmix64(k.hashCode() ^ hashing.seed());
+  }
+
+  // Return the slot of key k on this level, or -1 if it is not there.
+  private int find(K k) {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    if (table.length == 0) {
+      return -1;
+    }
+    int slot = mph.slot(hash(k));
+    return table[2 * slot].equals(k) ? slot : -1;
+  }
+
+  // Key of the i-th entry, counting the entries of this level first and then those of spill.
+  private K keyAt(int i) {
+    return 2 * i < table.length ? (K) table[2 * i] : spill.keyAt(i - table.length / 2);
+  }
+
+  private V valueAt(int i) {
+    return 2 * i < table.length ? (V) table[2 * i + 1] : spill.valueAt(i - table.length / 2);
+  }
+
+  @Override
+  public void insert(K k, V v) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException("PerfectHashMap is immutable");
+  }
+
+  @Override
+  public V remove(K k) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException("PerfectHashMap is immutable");
+  }
+
+  @Override
+  public void put(K k, V v) throws UnsupportedOperationException {
+    throw new UnsupportedOperationException("PerfectHashMap is immutable");
+  }
+
+  @Override
+  public V get(K k) throws IllegalArgumentException {
+    int index = find(k);
+    if (index != -1) {
+      return valueAt(index);
+    }
+    if (spill != null) {
+      return spill.get(k);
+    }
+    throw new IllegalArgumentException("cannot find key " + k);
+  }
+
+  @Override
+  public V getOrDefault(K k, V defaultValue) {
+    if (k == null) {
+      return defaultValue;
+    }
+    int index = find(k);
+    if (index != -1) {
+      return valueAt(index);
+    }
+    return spill == null ? defaultValue : spill.getOrDefault(k, defaultValue);
+  }
+
+  @Override
+  public boolean has(K k) {
+    if (k == null) {
+      return false;
+    }
+    return find(k) != -1 || (spill != null && spill.has(k));
+  }
+
+  @Override
+  public int size() {
+    return table.length / 2 + (spill == null ? 0 : spill.size());
+  }
+
+  /**
+   * Write this map to a file that MappedPerfectHashMap can map. The file
+   * gets its own perfect hash function, over the encoded keys.
+   *
+   * @param file The file, replaced atomically if it exists.
+   * @param keyCodec Converts keys to bytes.
+   * @param valueCodec Converts values to bytes.
+   * @throws IOException If the file cannot be written.
+   * @throws IllegalArgumentException If two keys encode to the same bytes
+   *                                  or the file would reach 2GB.
+   */
+  public void writeTo(Path file, Codec<? super K> keyCodec, Codec<? super V> valueCodec)
+      throws IOException, IllegalArgumentException {
+    int n = size();
+    SeededHashStrategy<byte[]> bytesHashing = new SeededHashStrategy<>(hashing.seed());
+    byte[][] encodedKeys = new byte[n][];
+    long[] hashes = new long[n];
+    for (int i = 0; i < n; i++) {
+      encodedKeys[i] = keyCodec.encode(keyAt(i));
+      hashes[i] = bytesHashing.hash64(encodedKeys[i]);
+    }
+    MinimalPerfectHash fileHash = MinimalPerfectHash.build(hashes);
+    int[] entryAt = new int[n]; // index into keys of the entry in each slot of the file
+    for (int i = 0; i < n; i++) {
+      entryAt[fileHash.slot(hashes[i])] = i;
+    }
+    byte[][] encodedValues = new byte[n][];
+    int numBuckets = MinimalPerfectHash.numBuckets(n);
+    long dataStart = MappedPerfectHashMap.HEADER + 4L * numBuckets + 4L * (n + 1);
+    long total = dataStart;
+    for (int i = 0; i < n; i++) {
+      encodedValues[i] = valueCodec.encode(valueAt(i));
+      total += 4 + encodedKeys[i].length + encodedValues[i].length;
+    }
+    if (total > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("map is too large to write as a single mapped file");
+    }
+    ByteBuffer buf = ByteBuffer.allocate((int) total);
+    buf.putInt(MappedPerfectHashMap.MAGIC).putInt(n).putInt(numBuckets).putInt(0).putLong(hashing.seed());
+    buf.position(MappedPerfectHashMap.HEADER); // the rest of the header is reserved
+    IntBuffer pilots = fileHash.pilots();
+    while (pilots.hasRemaining()) {
+      buf.putInt(pilots.get());
+    }
+    int offset = 0;
+    for (int slot = 0; slot < n; slot++) { // offsets of the entries, relative to dataStart
+      buf.putInt(offset);
+      offset += 4 + encodedKeys[entryAt[slot]].length + encodedValues[entryAt[slot]].length;
+    }
+    buf.putInt(offset);
+    for (int slot = 0; slot < n; slot++) {
+      byte[] key = encodedKeys[entryAt[slot]];
+      buf.putInt(key.length).put(key).put(encodedValues[entryAt[slot]]);
+    }
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    Files.write(tmp, buf.array());
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  @Override
+  public Cursor<K, V> cursor() {
+    return new Cursor<K, V>() {
+      private int currentIndex = -1;
+
+      @Override
+      public boolean advance() {
+        if (currentIndex < size()) {
+          currentIndex++;
+        }
+        return currentIndex < size();
+      }
+
+      private int current() {
+        if (currentIndex < 0 || currentIndex >= size()) {
+          throw new IllegalStateException("cursor is not on an entry");
+        }
+        return currentIndex;
+      }
+
+      @Override
+      public K key() {
+        return keyAt(current());
+      }
+
+      @Override
+      public V value() {
+        return valueAt(current());
+      }
+
+      @Override
+      public void setValue(V v) {
+        throw new UnsupportedOperationException("PerfectHashMap is immutable");
+      }
+    };
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    for (int i = 0; i < table.length; i += 2) {
+      action.accept((K) table[i], (V) table[i + 1]);
+    }
+    if (spill != null) {
+      spill.forEach(action);
+    }
+  }
+
+  @Override
+  public Iterator<K> iterator() {
+    return new Iterator<K>() {
+      private int currentIndex = 0;
+
+      @Override
+      public boolean hasNext() {
+        return currentIndex < size();
+      }
+
+      @Override
+      public K next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException("No more elements in the map");
+        }
+        return keyAt(currentIndex++);
+      }
+    };
+  }
+
+  // Lookup cost against the mutable hash maps, and how quickly a saved map is mapped back in.
+  public static void main(String[] args) throws IOException {
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    String[] keys = new String[n];
+    ChainingHashMap<String, Integer> chaining = new ChainingHashMap<>();
+    OpenAddressingHashMap<String, Integer> open = new OpenAddressingHashMap<>();
+    for (int i = 0; i < n; i++) {
+      keys[i] = "key-" + (i * 7919L % n);
+      chaining.insert(keys[i], i);
+      open.insert(keys[i], i);
+    }
+    long begin = System.nanoTime();
+    PerfectHashMap<String, Integer> frozen = PerfectHashMap.of(chaining);
+    System.out.printf("build %.0f ms, %.1f bits of pilots per key%n", (System.nanoTime() - begin) / 1e6,
+        32.0 * MinimalPerfectHash.numBuckets(n) / n);
+
+    // look the keys up in another order than they were inserted, or chaining gets its nodes in allocation order
+    Random rand = new Random(42);
+    for (int i = n - 1; i > 0; i--) {
+      int j = rand.nextInt(i + 1);
+      String t = keys[i];
+      keys[i] = keys[j];
+      keys[j] = t;
+    }
+    bench("ChainingHashMap       ", chaining, keys);
+    bench("OpenAddressingHashMap ", open, keys);
+    bench("PerfectHashMap        ", frozen, keys);
+    Path file = Files.createTempFile("perfect", ".phm");
+    try {
+      frozen.writeTo(file, Codec.utf8(), Codec.int32());
+      begin = System.nanoTime();
+      MappedPerfectHashMap<String, Integer> mapped = MappedPerfectHashMap.open(file, Codec.utf8(), Codec.int32());
+      System.out.printf("open %d MB file in %.2f ms%n", Files.size(file) >> 20, (System.nanoTime() - begin) / 1e6);
+      bench("MappedPerfectHashMap  ", mapped, keys);
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  private static void bench(String name, Map<String, Integer> map, String[] keys) {
+    long sink = 0;
+    for (int round = 0; round < 3; round++) { // the last round is the measured one
+      long begin = System.nanoTime();
+      for (String k : keys) {
+        sink += map.get(k);
+      }
+      long time = System.nanoTime() - begin;
+      if (round == 2) {
+        System.out.printf("%s get %5.1f ns  (%d)%n", name, time / (double) keys.length, sink);
+      }
+    }
+  }
+}
@@ -0,0 +1,197 @@
+package HashTable;
+
+import Map.Map;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hash strategy keyed by a secret seed.
+ *
+ * <p>Strings and byte arrays are hashed from their contents with
+ * SipHash-1-3, so without the seed nobody can pick a set of keys that
+ * collide, and the hash tables can't be flooded. Any other key goes
+ * through a seeded 64-bit finalizer: a Long as a whole, anything else by
+ * its hashCode(). That spreads clustered hash codes, like those of
+ * sequential Integers, over the whole table, but keys whose hashCode()
+ * is equal (other than Longs) still collide.</p>
+ *
+ * @param <K> Type for keys.
+ */
+public class SeededHashStrategy<K> implements HashStrategy<K> {
+
+  private static final SecureRandom SEEDS = new SecureRandom();
+
+  private final long k0;
+  private final long k1;
+
+  /**
+   * Constructs a strategy with a random seed.
+   */
+  public SeededHashStrategy() {
+    this(SEEDS.nextLong());
+  }
+
+  /**
+   * Constructs a strategy with the given seed, e.g. to reproduce a run.
+   *
+   * @param seed The seed.
+   */
+  public SeededHashStrategy(long seed) {
+    k0 = seed;
+    k1 = fmix64(seed ^ 0x9E3779B97F4A7C15L); // SipHash takes a 128-bit key
+  }
+
+  // The seed, from which the strategy can be recreated.
+  long seed() {
+    return k0;
+  }
+
+  @Override
+  public int hash(K key) {
+    long h = hash64(key);
+    return (int) (h ^ (h >>> 32));
+  }
+
+  // Full 64-bit hash; Longs are mixed whole rather than through their 32-bit hashCode().
+  long hash64(K key) {
+    if (key instanceof String) {
+      return sipHash(key, ((String) key).length() * 2);
+    } else if (key instanceof byte[]) {
+      return sipHash(key, ((byte[]) key).length);
+    } else if (key instanceof Long) {
+      return fmix64((Long) key ^ k0);
+    }
+    return fmix64(key.hashCode() ^ k0);
+  }
+
+  // Murmur3's 64-bit finalizer, a bijection in which every input bit affects every output bit.
+  static long fmix64(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  // SipHash-1-3 of the given number of bytes of a String (its chars, little-endian) or byte array.
+  private long sipHash(Object data, int length) {
+    long v0 = k0 ^ 0x736f6d6570736575L;
+    long v1 = k1 ^ 0x646f72616e646f6dL;
+    long v2 = k0 ^ 0x6c7967656e657261L;
+    long v3 = k1 ^ 0x7465646279746573L;
+    int words = length / 8;
+    for (int w = 0; w <= words; w++) { // the last round takes the tail and the length
+      long m = w < words ? word(data, w * 8, 8) : word(data, w * 8, length % 8) | ((long) length << 56);
+      v3 ^= m;
+      v0 += v1;
+      v1 = Long.rotateLeft(v1, 13) ^ v0;
+      v0 = Long.rotateLeft(v0, 32);
+      v2 += v3;
+      v3 = Long.rotateLeft(v3, 16) ^ v2;
+      v0 += v3;
+      v3 = Long.rotateLeft(v3, 21) ^ v0;
+      v2 += v1;
+      v1 = Long.rotateLeft(v1, 17) ^ v2;
+      v2 = Long.rotateLeft(v2, 32);
+      v0 ^= m;
+    }
+    v2 ^= 0xff;
+    for (int r = 0; r < 3; r++) {
+      v0 += v1;
+      v1 = Long.rotateLeft(v1, 13) ^ v0;
+      v0 = Long.rotateLeft(v0, 32);
+      v2 += v3;
+      v3 = Long.rotateLeft(v3, 16) ^ v2;
+      v0 += v3;
+      v3 = Long.rotateLeft(v3, 21) ^ v0;
+      v2 += v1;
+      v1 = Long.rotateLeft(v1, 17) ^ v2;
+      v2 = Long.rotateLeft(v2, 32);
+    }
+    return v0 ^ v1 ^ v2 ^ v3;
+  }
+
+  // Little-endian word made of count bytes (count even for a String) starting at byte offset.
+  private static long word(Object data, int offset, int count) {
+    long m = 0;
+    if (data instanceof String) {
+      String s = (String) data;
+      for (int i = 0; i < count; i += 2) {
+        m |= (long) s.charAt((offset + i) / 2) << (i * 8);
+      }
+    } else {
+      byte[] b = (byte[]) data;
+      for (int i = 0; i < count; i++) {
+        m |= (b[offset + i] & 0xFFL) << (i * 8);
+      }
+    }
+    return m;
+  }
+
+  // Probe lengths of each hashing setup on keys with badly clustered or colliding hash codes.
+  public static void main(String[] args) {
+    List<Integer> sequential = new ArrayList<>();
+    List<Integer> strided = new ArrayList<>();
+    for (int i = 0; i < 200_000; i++) {
+      sequential.add(i);
+      strided.add(i * 1024);
+    }
+    List<String> coordinates = new ArrayList<>();
+    for (int x = 0; x < 450; x++) {
+      for (int y = 0; y < 450; y++) {
+        coordinates.add(x + "," + y);
+      }
+    }
+    List<String> colliding = new ArrayList<>(); // "Aa" and "BB" have the same hashCode(), so do all these
+    colliding.add("");
+    for (int round = 0; round < 13; round++) {
+      List<String> longer = new ArrayList<>();
+      for (String s : colliding) {
+        longer.add(s + "Aa");
+        longer.add(s + "BB");
+      }
+      colliding = longer;
+    }
+    compare("sequential Integers", sequential);
+    compare("Integers * 1024", strided);
+    compare("\"x,y\" Strings", coordinates);
+    compare("colliding Strings", colliding);
+  }
+
+  private static <K> void compare(String name, List<K> keys) {
+    System.out.printf("%s (%d keys)%n", name, keys.size());
+    for (boolean seeded : new boolean[] {false, true}) {
+      for (boolean powerOfTwo : new boolean[] {false, true}) {
+        String setup = String.format("%-8s %-6s", seeded ? "seeded" : "identity", powerOfTwo ? "pow2" : "prime");
+        OpenAddressingHashMap<K, Integer> open = new OpenAddressingHashMap<>(false, 0.75,
+            seeded ? new SeededHashStrategy<>() : HashStrategy.identity(), powerOfTwo);
+        ChainingHashMap<K, Integer> chaining = new ChainingHashMap<>(false,
+            seeded ? new SeededHashStrategy<>() : HashStrategy.identity(), powerOfTwo);
+        report("  open     " + setup, open, open::enableStats, open::stats, keys);
+        report("  chaining " + setup, chaining, chaining::enableStats, chaining::stats, keys);
+      }
+    }
+  }
+
+  private static <K> void report(String name, Map<K, Integer> map, Runnable enable,
+                                 java.util.function.Supplier<HashTableStats> stats, List<K> keys) {
+    for (K k : keys) {
+      map.insert(k, 0);
+    }
+    enable.run();
+    for (K k : keys) {
+      map.get(k);
+    }
+    HashTableStats s = stats.get();
+    long[] histogram = s.probeLengthHistogram();
+    long seen = 0;
+    int p99 = 0;
+    while (seen < s.lookups() * 0.99) {
+      seen += histogram[p99++];
+    }
+    System.out.printf("%s mean probe %7.2f  p99 %2d%s%n", name, s.meanProbeLength(),
+        p99 - 1, p99 - 1 == HashTableStats.MAX_TRACKED ? "+" : "");
+  }
+}
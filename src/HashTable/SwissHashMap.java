@@ -0,0 +1,322 @@
+package HashTable;
+
+import Map.Cursor;
+import Map.Map;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
+/**
+ * Open addressing hash map in the style of SwissTable.
+ *
+ * <p>Slots are grouped by 8. Next to the key and value arrays there is one
+ * control byte per slot, packed 8 to a long so a whole group is read in
+ * a single load. A control byte is EMPTY, DELETED, or (for a full slot)
+ * the low 7 bits of the key's hash. A lookup compares its 7-bit
+ * fingerprint against all 8 control bytes at once with SWAR bit tricks
+ * and only calls equals() on the slots that match, so most misses never
+ * touch a key at all.</p>
+ *
+ * @param <K> Type for keys.
+ * @param <V> Type for values.
+ */
+public class SwissHashMap<K, V> implements Map<K, V> {
+
+  private static final int GROUP_WIDTH = 8;
+  private static final byte EMPTY = (byte) 0x80;
+  private static final byte DELETED = (byte) 0xFE;
+  private static final long LSBS = 0x0101010101010101L;
+  private static final long MSBS = 0x8080808080808080L;
+
+  private int numElements;
+  private int capacity; // always a power of two and a multiple of GROUP_WIDTH
+  private int groupMask;
+  private int growthLeft; // EMPTY slots we may still fill before rehashing
+  private long[] ctrl; // one long per group, control byte j of a group at bits 8j..8j+7
+  private K[] keys;
+  private V[] values;
+
+  /**
+   * Constructs a SwissHashMap with default initial capacity.
+   */
+  public SwissHashMap() {
+    allocate(2 * GROUP_WIDTH);
+  }
+
+  private void allocate(int newCapacity) {
+    capacity = newCapacity;
+    groupMask = capacity / GROUP_WIDTH - 1;
+    ctrl = new long[capacity / GROUP_WIDTH];
+    Arrays.fill(ctrl, LSBS * (EMPTY & 0xFF));
+    keys = (K[]) new Object[capacity];
+    values = (V[]) new Object[capacity];
+    numElements = 0;
+    growthLeft = capacity - capacity / 8; // max load factor 7/8
+  }
+
+  // Spread the bits of hashCode() so both the group index and the fingerprint are well mixed.
+  private static int hash(Object key) {
+    int h = key.hashCode();
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+
+  private static int h1(int hash) {
+    return hash >>> 7;
+  }
+
+  private static byte h2(int hash) {
+    return (byte) (hash & 0x7F);
+  }
+
+  // Bit 7 of byte j is set iff control byte j equals b (may rarely report a
+  // false positive next to a true match, which the equals() check filters out).
+  private static long match(long group, byte b) {
+    long x = group ^ (LSBS * (b & 0xFF));
+    return (x - LSBS) & ~x & MSBS;
+  }
+
+  // Bit 7 of byte j is set iff control byte j is EMPTY.
+  private static long matchEmpty(long group) {
+    return group & ~(group << 6) & MSBS;
+  }
+
+  // Bit 7 of byte j is set iff control byte j is EMPTY or DELETED.
+  private static long matchEmptyOrDeleted(long group) {
+    return group & MSBS;
+  }
+
+  private static int lowestByte(long matches) {
+    return Long.numberOfTrailingZeros(matches) >>> 3;
+  }
+
+  private byte getCtrl(int index) {
+    return (byte) (ctrl[index / GROUP_WIDTH] >>> ((index % GROUP_WIDTH) * 8));
+  }
+
+  private void setCtrl(int index, byte b) {
+    int shift = (index % GROUP_WIDTH) * 8;
+    int g = index / GROUP_WIDTH;
+    ctrl[g] = (ctrl[g] & ~(0xFFL << shift)) | ((b & 0xFFL) << shift);
+  }
+
+  private int find(K k) {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    int hash = hash(k);
+    byte fingerprint = h2(hash);
+    int g = h1(hash) & groupMask;
+    for (int step = 1; ; step++) {
+      long group = ctrl[g];
+      for (long m = match(group, fingerprint); m != 0; m &= m - 1) {
+        int index = g * GROUP_WIDTH + lowestByte(m);
+        if (keys[index].equals(k)) {
+          return index;
+        }
+      }
+      if (matchEmpty(group) != 0) { // the key would have been placed here, so it is not in the table
+        return -1;
+      }
+      g = (g + step) & groupMask; // triangular probing visits every group of a power-of-two table
+    }
+  }
+
+  // Return the first EMPTY or DELETED slot on the probe sequence of hash.
+  private int findInsertSlot(int hash) {
+    int g = h1(hash) & groupMask;
+    for (int step = 1; ; step++) {
+      long m = matchEmptyOrDeleted(ctrl[g]);
+      if (m != 0) {
+        return g * GROUP_WIDTH + lowestByte(m);
+      }
+      g = (g + step) & groupMask;
+    }
+  }
+
+  private void rehash() {
+    // grow when the table is genuinely full, otherwise just clear out the DELETED slots
+    int newCapacity = numElements * 2 >= capacity - capacity / 8 ? capacity * 2 : capacity;
+    K[] oldKeys = keys;
+    V[] oldValues = values;
+    long[] oldCtrl = ctrl;
+    allocate(newCapacity);
+    for (int i = 0; i < oldKeys.length; i++) {
+      if ((byte) (oldCtrl[i / GROUP_WIDTH] >>> ((i % GROUP_WIDTH) * 8)) >= 0) { // full slots have bit 7 clear
+        int hash = hash(oldKeys[i]);
+        int index = findInsertSlot(hash);
+        setCtrl(index, h2(hash));
+        keys[index] = oldKeys[i];
+        values[index] = oldValues[i];
+        numElements++;
+        growthLeft--;
+      }
+    }
+  }
+
+  @Override
+  public void insert(K k, V v) throws IllegalArgumentException {
+    if (find(k) != -1) {
+      throw new IllegalArgumentException("duplicate key " + k);
+    }
+    int hash = hash(k);
+    int index = findInsertSlot(hash);
+    if (growthLeft == 0 && getCtrl(index) == EMPTY) {
+      rehash();
+      index = findInsertSlot(hash);
+    }
+    if (getCtrl(index) == EMPTY) {
+      growthLeft--; // reusing a DELETED slot does not lengthen any probe sequence
+    }
+    setCtrl(index, h2(hash));
+    keys[index] = k;
+    values[index] = v;
+    numElements++;
+  }
+
+  @Override
+  public V remove(K k) throws IllegalArgumentException {
+    int index = find(k);
+    if (index == -1) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    V value = values[index];
+    // probes never pass a group that still has an EMPTY slot, so the slot can go straight back to EMPTY
+    if (matchEmpty(ctrl[index / GROUP_WIDTH]) != 0) {
+      setCtrl(index, EMPTY);
+      growthLeft++;
+    } else {
+      setCtrl(index, DELETED);
+    }
+    keys[index] = null;
+    values[index] = null;
+    numElements--;
+    return value;
+  }
+
+  @Override
+  public void put(K k, V v) throws IllegalArgumentException {
+    int index = find(k);
+    if (index == -1) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    values[index] = v;
+  }
+
+  @Override
+  public V get(K k) throws IllegalArgumentException {
+    int index = find(k);
+    if (index == -1) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    return values[index];
+  }
+
+  @Override
+  public boolean has(K k) {
+    if (k == null) {
+      return false;
+    }
+    return find(k) != -1;
+  }
+
+  @Override
+  public int size() {
+    return numElements;
+  }
+
+  @Override
+  public Cursor<K, V> cursor() {
+    return new SwissHashMapCursor();
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    for (int g = 0; g < ctrl.length; g++) {
+      // full slots have bit 7 of their control byte clear
+      for (long m = ~ctrl[g] & MSBS; m != 0; m &= m - 1) {
+        int index = g * GROUP_WIDTH + lowestByte(m);
+        action.accept(keys[index], values[index]);
+      }
+    }
+  }
+
+  @Override
+  public Iterator<K> iterator() {
+    return new SwissHashMapIterator();
+  }
+
+  private class SwissHashMapIterator implements Iterator<K> {
+    private int currentIndex;
+
+    SwissHashMapIterator() {
+      currentIndex = 0;
+      skipNonFull();
+    }
+
+    private void skipNonFull() {
+      while (currentIndex < capacity && getCtrl(currentIndex) < 0) {
+        currentIndex++;
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return currentIndex < capacity;
+    }
+
+    @Override
+    public K next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException("No more elements in the table");
+      }
+      K key = keys[currentIndex];
+      currentIndex++;
+      skipNonFull();
+      return key;
+    }
+  }
+
+  private class SwissHashMapCursor implements Cursor<K, V> {
+    private int currentIndex;
+
+    SwissHashMapCursor() {
+      currentIndex = -1;
+    }
+
+    @Override
+    public boolean advance() {
+      do {
+        currentIndex++;
+      } while (currentIndex < capacity && getCtrl(currentIndex) < 0);
+      return currentIndex < capacity;
+    }
+
+    private int current() {
+      if (currentIndex < 0 || currentIndex >= capacity) {
+        throw new IllegalStateException("cursor is not on an entry");
+      }
+      return currentIndex;
+    }
+
+    @Override
+    public K key() {
+      return keys[current()];
+    }
+
+    @Override
+    public V value() {
+      return values[current()];
+    }
+
+    @Override
+    public void setValue(V v) {
+      values[current()] = v;
+    }
+  }
+}
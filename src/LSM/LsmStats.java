@@ -0,0 +1,173 @@
+package LSM;
+
+import java.util.Arrays;
+
+/**
+ * Snapshot of the counters of an LsmTreeMap, as returned by stats().
+ *
+ * <p>Read amplification is the number of run blocks read per lookup:
+ * the memtables cost no I/O, and a run whose key range or Bloom filter
+ * rules the key out costs none either. Write amplification is the bytes
+ * written to run files, by flushes and compactions, per byte of keys and
+ * values written by the caller.</p>
+ */
+public class LsmStats {
+
+  private final long lookups;
+  private final long runsChecked;
+  private final long filterNegatives;
+  private final long blockReads;
+  private final long userBytes;
+  private final long flushedBytes;
+  private final long compactedBytes;
+  private final long flushes;
+  private final long compactions;
+  private final int[] runsPerLevel;
+  private final long[] bytesPerLevel;
+
+  LsmStats(long lookups, long runsChecked, long filterNegatives, long blockReads, long userBytes,
+           long flushedBytes, long compactedBytes, long flushes, long compactions,
+           int[] runsPerLevel, long[] bytesPerLevel) {
+    this.lookups = lookups;
+    this.runsChecked = runsChecked;
+    this.filterNegatives = filterNegatives;
+    this.blockReads = blockReads;
+    this.userBytes = userBytes;
+    this.flushedBytes = flushedBytes;
+    this.compactedBytes = compactedBytes;
+    this.flushes = flushes;
+    this.compactions = compactions;
+    this.runsPerLevel = runsPerLevel;
+    this.bytesPerLevel = bytesPerLevel;
+  }
+
+  /**
+   * Number of point lookups: get(), has() and the like, including the
+   * ones insert(), remove() and put() make to check the key.
+   *
+   * @return Lookups since the map was opened.
+   */
+  public long lookups() {
+    return lookups;
+  }
+
+  /**
+   * Number of runs whose key range held a looked up key, so that their
+   * Bloom filter was asked.
+   *
+   * @return Runs checked since the map was opened.
+   */
+  public long runsChecked() {
+    return runsChecked;
+  }
+
+  /**
+   * Number of times a Bloom filter ruled a key out and saved a block read.
+   *
+   * @return Filter negatives since the map was opened.
+   */
+  public long filterNegatives() {
+    return filterNegatives;
+  }
+
+  /**
+   * Number of run blocks read by lookups.
+   *
+   * @return Block reads since the map was opened.
+   */
+  public long blockReads() {
+    return blockReads;
+  }
+
+  /**
+   * Run blocks read per lookup.
+   *
+   * @return Block reads divided by lookups, 0 if there were no lookups.
+   */
+  public double readAmplification() {
+    return lookups == 0 ? 0 : blockReads / (double) lookups;
+  }
+
+  /**
+   * Bytes of encoded keys and values written by the caller.
+   *
+   * @return User bytes since the map was opened.
+   */
+  public long userBytes() {
+    return userBytes;
+  }
+
+  /**
+   * Bytes written to run files by memtable flushes.
+   *
+   * @return Flushed bytes since the map was opened.
+   */
+  public long flushedBytes() {
+    return flushedBytes;
+  }
+
+  /**
+   * Bytes written to run files by compactions.
+   *
+   * @return Compacted bytes since the map was opened.
+   */
+  public long compactedBytes() {
+    return compactedBytes;
+  }
+
+  /**
+   * Bytes written to run files per user byte.
+   *
+   * @return Flushed and compacted bytes divided by user bytes, 0 if
+   *     nothing was written.
+   */
+  public double writeAmplification() {
+    return userBytes == 0 ? 0 : (flushedBytes + compactedBytes) / (double) userBytes;
+  }
+
+  /**
+   * Number of memtables flushed to runs.
+   *
+   * @return Flushes since the map was opened.
+   */
+  public long flushes() {
+    return flushes;
+  }
+
+  /**
+   * Number of compactions.
+   *
+   * @return Compactions since the map was opened.
+   */
+  public long compactions() {
+    return compactions;
+  }
+
+  /**
+   * Runs in each level.
+   *
+   * @return Entry i is the number of runs in level i.
+   */
+  public int[] runsPerLevel() {
+    return Arrays.copyOf(runsPerLevel, runsPerLevel.length);
+  }
+
+  /**
+   * Size of each level on disk.
+   *
+   * @return Entry i is the number of bytes in the runs of level i.
+   */
+  public long[] bytesPerLevel() {
+    return Arrays.copyOf(bytesPerLevel, bytesPerLevel.length);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("lookups=%d runsChecked=%d filterNegatives=%d blockReads=%d readAmp=%.2f%n"
+            + "userMB=%.1f flushedMB=%.1f compactedMB=%.1f writeAmp=%.2f flushes=%d compactions=%d%n"
+            + "runsPerLevel=%s bytesPerLevel=%s",
+        lookups, runsChecked, filterNegatives, blockReads, readAmplification(),
+        userBytes / 1e6, flushedBytes / 1e6, compactedBytes / 1e6, writeAmplification(), flushes, compactions,
+        Arrays.toString(runsPerLevel), Arrays.toString(bytesPerLevel));
+  }
+}
@@ -0,0 +1,952 @@
+package LSM;
+
+import static LSM.SortedRun.TOMBSTONE;
+
+import BTree.DiskBPlusTreeMap;
+import HashTable.Codec;
+import Map.Cursor;
+import Map.EmptyException;
+import Map.OrderedMap;
+import SelfBalancingBST.AvlTreeMap;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * OrderedMap stored as a log-structured merge tree, for write-heavy
+ * workloads.
+ *
+ * <p>Writes go to an in-memory AvlTreeMap, the memtable. Once it holds
+ * about memtableBytes of encoded keys and values it is frozen, and a
+ * flusher thread writes it out in one sequential pass as an immutable
+ * SortedRun file while a fresh memtable takes new writes. Removing a key
+ * writes a tombstone for it. So a write costs an AVL insert plus its
+ * share of sequential file writes, in whatever order the keys come.</p>
+ *
+ * <p>Runs are kept in levels. Flushed runs go to level 0, where their key
+ * ranges overlap; once there are four, a compactor thread merges them
+ * and level 1 into a new level 1 run. Every deeper level is a single run
+ * that may grow ten times larger than the level above it, and a level
+ * that outgrows its size is merged into the next one. Merging streams the
+ * inputs and writes the output sequentially; tombstones are dropped when
+ * the output is the last level. Flushes go on while a compaction runs, so
+ * writers do not wait for a merge of the deeper levels.</p>
+ *
+ * <p>A lookup checks the memtables, then the runs from newest to oldest,
+ * and stops at the first one that has the key. A run is skipped without
+ * I/O if the key is outside its range or its Bloom filter rules the key
+ * out; otherwise its sparse index points at the one block to read.
+ * Cursors merge the memtables and all runs. stats() reports the blocks
+ * read per lookup and the bytes written per byte of user data.</p>
+ *
+ * <p>The map is thread-safe: every operation holds the map's lock, which
+ * the two background threads only take to swap memtables and runs in and
+ * out, never while they do I/O. A writer waits when the previous memtable
+ * is still being flushed, or when level 0 has fallen far behind. A cursor
+ * that finds the map changed since its last step seeks past its last key
+ * again, so it is never invalidated.</p>
+ *
+ * <p>insert(), remove() and put() look the key up to know whether to
+ * throw; upsert() is the blind write to ingest with. size() has no count
+ * to read and merges everything. There is no write-ahead log: close()
+ * flushes the memtable, but a crash loses the writes since the last
+ * flush. The list of runs is kept in a MANIFEST file that is replaced
+ * atomically, so the runs themselves are always consistent.</p>
+ *
+ * @param <K> Type for keys.
+ * @param <V> Type for values.
+ */
+public class LsmTreeMap<K extends Comparable<K>, V> implements OrderedMap<K, V>, Closeable {
+
+  private static final int MAGIC = 0x4C534D4D; // "LSMM"
+  private static final String MANIFEST = "MANIFEST";
+  private static final int DEFAULT_MEMTABLE_BYTES = 4 << 20;
+  private static final int L0_TRIGGER = 4; // level 0 runs that start a compaction
+  private static final int L0_STOP = 12; // level 0 runs at which writers wait for compaction
+  private static final int LEVEL_RATIO = 10;
+  private static final double FALSE_POSITIVE_RATE = 0.01;
+  private static final int ENTRY_OVERHEAD = 8; // the two lengths stored with an entry
+
+  private final Path dir;
+  private final Codec<K> keyCodec;
+  private final Codec<V> valueCodec;
+  private final int memtableBytes;
+  private AvlTreeMap<K, byte[]> memtable = new AvlTreeMap<>();
+  private long memtableSize; // encoded bytes written to the memtable
+  private AvlTreeMap<K, byte[]> immutable; // frozen memtable the flusher is writing
+  private final List<List<SortedRun<K>>> levels = new ArrayList<>(); // level 0 newest first
+  private long nextRunId;
+  private long modCount; // changes on every write and every swap, so cursors know to seek again
+  private boolean closed;
+  private IOException failure; // what stopped a background thread
+  private final Thread flusher;
+  private final Thread compactor;
+
+  private long lookups;
+  private long runsChecked;
+  private long filterNegatives;
+  private long blockReads;
+  private long userBytes;
+  private long flushedBytes;
+  private long compactedBytes;
+  private long flushes;
+  private long compactions;
+
+  /**
+   * Opens a map with a 4MB memtable, creating the directory if it does
+   * not exist yet.
+   *
+   * @param dir Directory for the run files and the manifest.
+   * @param keyCodec Converts keys to bytes.
+   * @param valueCodec Converts values to bytes.
+   * @throws IOException If the directory or its runs cannot be read.
+   */
+  public LsmTreeMap(Path dir, Codec<K> keyCodec, Codec<V> valueCodec) throws IOException {
+    this(dir, keyCodec, valueCodec, DEFAULT_MEMTABLE_BYTES);
+  }
+
+  /**
+   * Opens a map, creating the directory if it does not exist yet.
+   *
+   * @param dir Directory for the run files and the manifest.
+   * @param keyCodec Converts keys to bytes.
+   * @param valueCodec Converts values to bytes.
+   * @param memtableBytes Bytes of encoded keys and values the memtable
+   *     takes before it is flushed.
+   * @throws IOException If the directory or its runs cannot be read.
+   * @throws IllegalArgumentException If memtableBytes is less than 4096.
+   */
+  public LsmTreeMap(Path dir, Codec<K> keyCodec, Codec<V> valueCodec, int memtableBytes) throws IOException {
+    if (memtableBytes < 4096) {
+      throw new IllegalArgumentException("memtable must take at least 4096 bytes");
+    }
+    this.dir = dir;
+    this.keyCodec = keyCodec;
+    this.valueCodec = valueCodec;
+    this.memtableBytes = memtableBytes;
+    Files.createDirectories(dir);
+    Set<Long> live = new HashSet<>();
+    Path manifest = dir.resolve(MANIFEST);
+    if (Files.exists(manifest)) {
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(manifest)))) {
+        if (in.readInt() != MAGIC) {
+          throw new IOException("not an LsmTreeMap manifest: " + manifest);
+        }
+        nextRunId = in.readLong();
+        for (int l = in.readInt(); l > 0; l--) {
+          List<SortedRun<K>> level = new ArrayList<>();
+          levels.add(level);
+          for (int n = in.readInt(); n > 0; n--) {
+            long id = in.readLong();
+            level.add(SortedRun.open(runFile(id), id, keyCodec));
+            live.add(id);
+          }
+        }
+      } catch (IOException e) {
+        closeRuns();
+        throw e;
+      }
+    }
+    if (levels.isEmpty()) {
+      levels.add(new ArrayList<>());
+    }
+    // runs missing from the manifest were being written when the process died
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.run")) {
+      for (Path f : files) {
+        String name = f.getFileName().toString();
+        try {
+          if (!live.contains(Long.parseLong(name.substring(0, name.length() - 4)))) {
+            Files.delete(f);
+          }
+        } catch (NumberFormatException e) {
+          // not one of ours
+        }
+      }
+    }
+    flusher = start(this::runFlusher, "flusher");
+    compactor = start(this::runCompactor, "compactor");
+  }
+
+  private Thread start(Runnable task, String name) {
+    Thread t = new Thread(task, "LsmTreeMap " + dir.getFileName() + " " + name);
+    t.setDaemon(true);
+    t.start();
+    return t;
+  }
+
+  private Path runFile(long id) {
+    return dir.resolve(String.format("%08d.run", id));
+  }
+
+  private void closeRuns() throws IOException {
+    for (List<SortedRun<K>> level : levels) {
+      for (SortedRun<K> run : level) {
+        run.close();
+      }
+    }
+  }
+
+  // Replace the manifest with one listing the current runs. Called with the lock held.
+  private void writeManifest() throws IOException {
+    Path tmp = dir.resolve(MANIFEST + ".tmp");
+    try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch)));
+      out.writeInt(MAGIC);
+      out.writeLong(nextRunId);
+      out.writeInt(levels.size());
+      for (List<SortedRun<K>> level : levels) {
+        out.writeInt(level.size());
+        for (SortedRun<K> run : level) {
+          out.writeLong(run.id);
+        }
+      }
+      out.flush();
+      ch.force(true);
+    }
+    Files.move(tmp, dir.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  // ---- background flushes and compactions ----
+
+  private void runFlusher() {
+    try {
+      while (true) {
+        AvlTreeMap<K, byte[]> table;
+        synchronized (this) {
+          while (immutable == null && !closed && failure == null) {
+            wait();
+          }
+          if (immutable == null || failure != null) {
+            return;
+          }
+          table = immutable;
+        }
+        flush(table);
+      }
+    } catch (IOException e) {
+      fail(e);
+    } catch (UncheckedIOException e) {
+      fail(e.getCause());
+    } catch (InterruptedException e) {
+      // nothing interrupts this thread; close() stops it through closed
+    }
+  }
+
+  private void runCompactor() {
+    try {
+      while (true) {
+        int level;
+        synchronized (this) {
+          while ((level = compactionLevel()) < 0 && !closed && failure == null) {
+            wait();
+          }
+          if (closed || failure != null) {
+            return; // compactions that are due resume when the map is opened again
+          }
+        }
+        compact(level);
+      }
+    } catch (IOException e) {
+      fail(e);
+    } catch (UncheckedIOException e) {
+      fail(e.getCause());
+    } catch (InterruptedException e) {
+      // nothing interrupts this thread; close() stops it through closed
+    }
+  }
+
+  private synchronized void fail(IOException e) {
+    failure = e;
+    notifyAll();
+  }
+
+  // Level that should be merged into the next one, or -1 if none should.
+  private int compactionLevel() {
+    if (levels.get(0).size() >= L0_TRIGGER) {
+      return 0;
+    }
+    long max = (long) LEVEL_RATIO * memtableBytes;
+    for (int l = 1; l < levels.size(); l++) {
+      if (levelBytes(l) > max) {
+        return l;
+      }
+      max *= LEVEL_RATIO;
+    }
+    return -1;
+  }
+
+  private long levelBytes(int l) {
+    long bytes = 0;
+    for (SortedRun<K> run : levels.get(l)) {
+      bytes += run.bytes();
+    }
+    return bytes;
+  }
+
+  private void flush(AvlTreeMap<K, byte[]> table) throws IOException {
+    long id;
+    synchronized (this) {
+      id = nextRunId++;
+    }
+    SortedRun<K> run = SortedRun.write(runFile(id), id, table.cursor(), table.size(), false,
+        keyCodec, FALSE_POSITIVE_RATE);
+    synchronized (this) {
+      levels.get(0).add(0, run);
+      immutable = null;
+      flushes++;
+      flushedBytes += run.bytes();
+      modCount++;
+      writeManifest();
+      notifyAll();
+    }
+  }
+
+  // Merge level into level + 1. Only the compactor changes the levels below 0,
+  // and the flusher only adds runs to the front of level 0.
+  private void compact(int level) throws IOException {
+    List<SortedRun<K>> inputs;
+    boolean last = true;
+    long id;
+    synchronized (this) {
+      if (levels.size() == level + 1) {
+        levels.add(new ArrayList<>());
+      }
+      inputs = new ArrayList<>(levels.get(level)); // newest first, as the merge wants them
+      inputs.addAll(levels.get(level + 1));
+      for (int l = level + 2; l < levels.size(); l++) {
+        last &= levels.get(l).isEmpty();
+      }
+      id = nextRunId++;
+    }
+    List<Cursor<K, byte[]>> sources = new ArrayList<>();
+    long expected = 0;
+    for (SortedRun<K> run : inputs) {
+      sources.add(run.cursor(null));
+      expected += run.entries();
+    }
+    SortedRun<K> out = SortedRun.write(runFile(id), id, new MergeCursor<>(sources), expected, last,
+        keyCodec, FALSE_POSITIVE_RATE);
+    synchronized (this) {
+      levels.get(level).removeAll(inputs); // level 0 may have gained runs meanwhile, they stay
+      levels.get(level + 1).clear();
+      if (out.entries() > 0) {
+        levels.get(level + 1).add(out);
+      }
+      compactions++;
+      compactedBytes += out.bytes();
+      modCount++;
+      writeManifest();
+      notifyAll();
+    }
+    // no operation can reach the inputs any more: cursors seek again after the swap
+    for (SortedRun<K> run : inputs) {
+      run.delete();
+    }
+    if (out.entries() == 0) {
+      out.delete();
+    }
+  }
+
+  // ---- reads and writes, all with the lock held ----
+
+  private void checkOpen() {
+    if (closed) {
+      throw new IllegalStateException("map is closed");
+    }
+  }
+
+  private void checkFailure() {
+    if (failure != null) {
+      throw new UncheckedIOException("background flush or compaction failed", failure);
+    }
+  }
+
+  private void awaitBackground() {
+    try {
+      wait();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("interrupted while waiting for a flush", e);
+    }
+  }
+
+  // Add an entry to the memtable, and swap the memtable out once it is full.
+  private void write(K k, byte[] value) {
+    checkOpen();
+    long bytes = keyCodec.encode(k).length + value.length + ENTRY_OVERHEAD;
+    memtable.upsert(k, value);
+    memtableSize += bytes;
+    userBytes += bytes;
+    modCount++;
+    if (memtableSize >= memtableBytes) {
+      rotate();
+    }
+  }
+
+  // Freeze the memtable for the flusher, once it is done with the previous one.
+  private void rotate() {
+    while ((immutable != null || levels.get(0).size() >= L0_STOP) && failure == null) {
+      awaitBackground();
+    }
+    checkFailure();
+    immutable = memtable;
+    memtable = new AvlTreeMap<>();
+    memtableSize = 0;
+    modCount++;
+    notifyAll();
+  }
+
+  // Newest entry for k: its encoded value, TOMBSTONE if it was removed,
+  // or null if it was never written. Counted in the stats if counted.
+  private byte[] newest(K k, boolean counted) {
+    byte[] v = memtable.getOrDefault(k, null);
+    if (v != null) {
+      return v;
+    }
+    if (immutable != null && (v = immutable.getOrDefault(k, null)) != null) {
+      return v;
+    }
+    long keyHash = 0;
+    boolean hashed = false; // keys are only encoded once a run covers them
+    for (List<SortedRun<K>> level : levels) {
+      for (SortedRun<K> run : level) {
+        if (!run.covers(k)) {
+          continue;
+        }
+        if (counted) {
+          runsChecked++;
+        }
+        if (!hashed) {
+          keyHash = SortedRun.keyHash(keyCodec.encode(k));
+          hashed = true;
+        }
+        if (!run.mightContain(keyHash)) {
+          if (counted) {
+            filterNegatives++;
+          }
+          continue;
+        }
+        if (counted) {
+          blockReads++;
+        }
+        if ((v = run.find(k)) != null) {
+          return v;
+        }
+      }
+    }
+    return null;
+  }
+
+  // Point lookup for the Map operations.
+  private byte[] lookup(K k) {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    checkOpen();
+    lookups++;
+    return newest(k, true);
+  }
+
+  private static boolean present(byte[] v) {
+    return v != null && v != TOMBSTONE;
+  }
+
+  @Override
+  public synchronized void insert(K k, V v) throws IllegalArgumentException {
+    if (present(lookup(k))) {
+      throw new IllegalArgumentException("duplicate key " + k);
+    }
+    write(k, valueCodec.encode(v));
+  }
+
+  @Override
+  public synchronized V remove(K k) throws IllegalArgumentException {
+    byte[] old = lookup(k);
+    if (!present(old)) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    write(k, TOMBSTONE);
+    return valueCodec.decode(old);
+  }
+
+  @Override
+  public synchronized void put(K k, V v) throws IllegalArgumentException {
+    if (!present(lookup(k))) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    write(k, valueCodec.encode(v));
+  }
+
+  @Override
+  public synchronized V get(K k) throws IllegalArgumentException {
+    byte[] v = lookup(k);
+    if (!present(v)) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    return valueCodec.decode(v);
+  }
+
+  @Override
+  public synchronized boolean has(K k) {
+    return k != null && present(lookup(k));
+  }
+
+  /**
+   * Number of keys. Writes do not know whether their key is new, so
+   * there is no count to read: this merges all memtables and runs.
+   *
+   * @return The number of keys, in O(n).
+   */
+  @Override
+  public synchronized int size() {
+    int n = 0;
+    for (Cursor<K, V> c = cursor(); c.advance(); ) {
+      n++;
+    }
+    return n;
+  }
+
+  @Override
+  public synchronized V getOrDefault(K k, V defaultValue) {
+    if (k == null) {
+      return defaultValue;
+    }
+    byte[] v = lookup(k);
+    return present(v) ? valueCodec.decode(v) : defaultValue;
+  }
+
+  @Override
+  public synchronized V putIfAbsent(K k, V v) throws IllegalArgumentException {
+    byte[] old = lookup(k);
+    if (present(old)) {
+      return valueCodec.decode(old);
+    }
+    write(k, valueCodec.encode(v));
+    return null;
+  }
+
+  /**
+   * Map a key to a value whether or not it was mapped, without looking it
+   * up: the write ingest should use.
+   *
+   * @param k The key.
+   * @param v The value to be associated with k.
+   * @throws IllegalArgumentException If k is null.
+   */
+  @Override
+  public synchronized void upsert(K k, V v) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    write(k, valueCodec.encode(v));
+  }
+
+  @Override
+  public synchronized V compute(K k, BiFunction<? super K, ? super V, ? extends V> remap)
+      throws IllegalArgumentException {
+    byte[] old = lookup(k);
+    V newValue = remap.apply(k, present(old) ? valueCodec.decode(old) : null);
+    if (newValue != null) {
+      write(k, valueCodec.encode(newValue));
+    } else if (present(old)) {
+      write(k, TOMBSTONE);
+    }
+    return newValue;
+  }
+
+  @Override
+  public synchronized V merge(K k, V v, BiFunction<? super V, ? super V, ? extends V> remap)
+      throws IllegalArgumentException {
+    byte[] old = lookup(k);
+    if (!present(old)) {
+      write(k, valueCodec.encode(v));
+      return v;
+    }
+    V newValue = remap.apply(valueCodec.decode(old), v);
+    write(k, newValue == null ? TOMBSTONE : valueCodec.encode(newValue));
+    return newValue;
+  }
+
+  @Override
+  public synchronized K first() throws EmptyException {
+    Cursor<K, V> c = cursor();
+    if (!c.advance()) {
+      throw new EmptyException("map is empty");
+    }
+    return c.key();
+  }
+
+  @Override
+  public synchronized K last() throws EmptyException {
+    K k = floor(null, true);
+    if (k == null) {
+      throw new EmptyException("map is empty");
+    }
+    return k;
+  }
+
+  // Greatest key below k, or equal to it if inclusive, that is not removed;
+  // null k for the greatest key of all.
+  private K floor(K k, boolean inclusive) {
+    checkOpen();
+    while (true) {
+      K best = null;
+      for (AvlTreeMap<K, byte[]> table : List.of(memtable, immutable == null ? memtable : immutable)) {
+        best = max(best, k == null ? (table.size() == 0 ? null : table.last())
+            : inclusive ? table.floorKey(k) : table.lowerKey(k));
+      }
+      for (List<SortedRun<K>> level : levels) {
+        for (SortedRun<K> run : level) {
+          best = max(best, run.floorKey(k, inclusive));
+        }
+      }
+      if (best == null || newest(best, false) != TOMBSTONE) {
+        return best;
+      }
+      k = best; // the newest entry for best removes it, look below it
+      inclusive = false;
+    }
+  }
+
+  private static <K extends Comparable<K>> K max(K a, K b) {
+    return a == null ? b : b == null ? a : a.compareTo(b) >= 0 ? a : b;
+  }
+
+  @Override
+  public synchronized K floorKey(K k) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    return floor(k, true);
+  }
+
+  @Override
+  public synchronized K lowerKey(K k) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    return floor(k, false);
+  }
+
+  @Override
+  public synchronized K ceilingKey(K k) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    Cursor<K, V> c = cursor(k, null);
+    return c.advance() ? c.key() : null;
+  }
+
+  @Override
+  public synchronized K higherKey(K k) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    Cursor<K, V> c = cursor(k, null);
+    while (c.advance()) {
+      if (c.key().compareTo(k) > 0) {
+        return c.key();
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public Cursor<K, V> cursor() {
+    return cursor(null, null);
+  }
+
+  @Override
+  public synchronized Cursor<K, V> cursor(K from, K to) {
+    checkOpen();
+    return new LsmCursor(from, to);
+  }
+
+  // Merge of the memtables and every run from from on, newest first.
+  private MergeCursor<K> merged(K from) {
+    List<Cursor<K, byte[]>> sources = new ArrayList<>();
+    sources.add(memtable.cursor(from, null));
+    if (immutable != null) {
+      sources.add(immutable.cursor(from, null));
+    }
+    for (List<SortedRun<K>> level : levels) {
+      for (SortedRun<K> run : level) {
+        sources.add(run.cursor(from));
+      }
+    }
+    return new MergeCursor<>(sources);
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    for (Cursor<K, V> c = cursor(); c.advance(); ) {
+      action.accept(c.key(), c.value());
+    }
+  }
+
+  @Override
+  public Iterator<K> iterator() {
+    return range(null, null);
+  }
+
+  /**
+   * Counters for read and write amplification, and the current shape
+   * of the levels.
+   *
+   * @return A snapshot of the stats.
+   */
+  public synchronized LsmStats stats() {
+    int[] runs = new int[levels.size()];
+    long[] bytes = new long[levels.size()];
+    for (int l = 0; l < levels.size(); l++) {
+      runs[l] = levels.get(l).size();
+      bytes[l] = levelBytes(l);
+    }
+    return new LsmStats(lookups, runsChecked, filterNegatives, blockReads, userBytes,
+        flushedBytes, compactedBytes, flushes, compactions, runs, bytes);
+  }
+
+  /**
+   * Flush the memtable, wait for the flusher to write it and for the
+   * compactor to finish its current merge, and close the runs. Compactions that are due are left for the
+   * next time the map is opened.
+   *
+   * @throws IOException If a flush or compaction failed.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      if (memtable.size() > 0 && failure == null) {
+        rotate();
+      }
+      closed = true;
+      notifyAll();
+    }
+    try {
+      flusher.join();
+      compactor.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("interrupted while closing", e);
+    }
+    synchronized (this) {
+      modCount++;
+      closeRuns();
+      if (failure != null) {
+        throw failure;
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder s = new StringBuilder();
+    s.append("{");
+    for (Cursor<K, V> c = cursor(); c.advance(); ) {
+      if (s.length() > 1) {
+        s.append(", ");
+      }
+      s.append(c.key()).append(": ").append(c.value());
+    }
+    s.append("}");
+    return s.toString();
+  }
+
+  private class LsmCursor implements Cursor<K, V> {
+    private final K from; // null to start at the first key
+    private final K to; // null to run to the last key
+    private MergeCursor<K> merge;
+    private long seen; // modCount merge was built at
+    private boolean reseeked; // merge starts at key, which was already returned
+    private K key; // current entry, null before the first
+    private byte[] value;
+    private boolean onEntry;
+    private boolean done;
+
+    LsmCursor(K from, K to) {
+      this.from = from;
+      this.to = to;
+      merge = merged(from);
+      seen = modCount;
+    }
+
+    @Override
+    public boolean advance() {
+      synchronized (LsmTreeMap.this) {
+        if (done) {
+          return false;
+        }
+        if (seen != modCount) {
+          checkOpen();
+          merge = merged(key == null ? from : key);
+          seen = modCount;
+          reseeked = key != null;
+        }
+        while (merge.advance()) {
+          K k = merge.key();
+          if (reseeked) {
+            if (k.compareTo(key) <= 0) {
+              continue;
+            }
+            reseeked = false;
+          }
+          if (to != null && k.compareTo(to) >= 0) {
+            break;
+          }
+          byte[] v = merge.value();
+          if (v != TOMBSTONE) {
+            key = k;
+            value = v;
+            onEntry = true;
+            return true;
+          }
+        }
+        done = true;
+        onEntry = false;
+        return false;
+      }
+    }
+
+    private void check() {
+      if (!onEntry) {
+        throw new IllegalStateException("cursor is not on an entry");
+      }
+    }
+
+    @Override
+    public K key() {
+      check();
+      return key;
+    }
+
+    @Override
+    public V value() {
+      check();
+      return valueCodec.decode(value);
+    }
+
+    @Override
+    public void setValue(V v) {
+      check();
+      byte[] encoded = valueCodec.encode(v);
+      synchronized (LsmTreeMap.this) {
+        write(key, encoded);
+      }
+      value = encoded;
+    }
+  }
+
+  /**
+   * Ingests keys in random order into an LsmTreeMap and a DiskBPlusTreeMap,
+   * then reopens the LsmTreeMap and times lookups and range scans,
+   * printing its read and write amplification.
+   *
+   * @param args Number of keys, optional.
+   * @throws IOException If the temporary files cannot be used.
+   */
+  public static void main(String[] args) throws IOException {
+    int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    Random rand = new Random(42);
+    int[] keys = new int[n];
+    for (int i = 0; i < n; i++) {
+      keys[i] = 2 * i; // even keys, so odd ones miss
+    }
+    for (int i = n - 1; i > 0; i--) {
+      int j = rand.nextInt(i + 1);
+      int t = keys[i];
+      keys[i] = keys[j];
+      keys[j] = t;
+    }
+    String pad = "x".repeat(90);
+    long mb = 0;
+    for (int k : keys) {
+      mb += 4 + (k + pad).length();
+    }
+    System.out.printf("ingest %d keys in random order, %d MB of keys and values:%n", n, mb >> 20);
+
+    Path dir = Files.createTempDirectory("lsm");
+    long begin = System.nanoTime();
+    try (LsmTreeMap<Integer, String> lsm = new LsmTreeMap<>(dir, Codec.int32(), Codec.utf8())) {
+      for (int k : keys) {
+        lsm.upsert(k, k + pad);
+      }
+      System.out.println(lsm.stats());
+    }
+    double seconds = (System.nanoTime() - begin) / 1e9;
+    System.out.printf("  LsmTreeMap        %8.1f ms %6.1f MB/s%n", seconds * 1e3, (mb >> 20) / seconds);
+
+    Path file = Files.createTempFile("bplustree", ".db");
+    Files.delete(file);
+    begin = System.nanoTime();
+    try (DiskBPlusTreeMap<Integer, String> tree = new DiskBPlusTreeMap<>(file, Codec.int32(), 4,
+        Codec.utf8(), DiskBPlusTreeMap.VARIABLE)) {
+      for (int k : keys) {
+        tree.upsert(k, k + pad);
+      }
+    }
+    seconds = (System.nanoTime() - begin) / 1e9;
+    System.out.printf("  DiskBPlusTreeMap  %8.1f ms %6.1f MB/s%n", seconds * 1e3, (mb >> 20) / seconds);
+    Files.delete(file);
+
+    begin = System.nanoTime();
+    try (LsmTreeMap<Integer, String> lsm = new LsmTreeMap<>(dir, Codec.int32(), Codec.utf8())) {
+      System.out.printf("reopen: %.1f ms%n", (System.nanoTime() - begin) / 1e6);
+      int[] lookups = new int[200_000];
+      for (int i = 0; i < lookups.length; i++) {
+        lookups[i] = rand.nextInt(2 * n);
+      }
+      for (int round = 0; round < 3; round++) { // the first rounds race the compactions left over
+        begin = System.nanoTime();
+        long found = 0;
+        for (int k : lookups) {
+          if (lsm.getOrDefault(k, null) != null) {
+            found++;
+          }
+        }
+        System.out.printf("random lookups, half of them misses: %.1f ns/lookup (%d found)%n",
+            (System.nanoTime() - begin) / (double) lookups.length, found);
+        begin = System.nanoTime();
+        long sink = 0;
+        int scans = 10_000;
+        for (int i = 0; i < scans; i++) {
+          int from = lookups[i];
+          for (Cursor<Integer, String> c = lsm.cursor(from, from + 200); c.advance(); ) {
+            sink += c.value().length();
+          }
+        }
+        System.out.printf("range scans of 100 keys: %.1f us/scan (%d)%n",
+            (System.nanoTime() - begin) / 1e3 / scans, sink);
+      }
+      System.out.println(lsm.stats());
+    }
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+      for (Path f : files) {
+        Files.delete(f);
+      }
+    }
+    Files.delete(dir);
+  }
+}
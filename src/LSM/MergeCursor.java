@@ -0,0 +1,77 @@
+package LSM;
+
+import Map.Cursor;
+import java.util.List;
+
+/**
+ * Cursor over the union of several sorted cursors, each key once.
+ *
+ * <p>The sources are ordered newest first, and where several hold the
+ * same key the newest one's value wins; tombstones are passed through
+ * like any other value. There are only as many sources as the tree has
+ * memtables and runs, a dozen or so, so each step finds the smallest
+ * current key by scanning them rather than keeping a heap.</p>
+ *
+ * @param <K> Type for keys.
+ */
+final class MergeCursor<K extends Comparable<K>> implements Cursor<K, byte[]> {
+
+  private final List<Cursor<K, byte[]>> sources;
+  private final boolean[] live; // source i is on an entry
+  private K key; // null before the first entry and after the last
+  private byte[] value;
+
+  MergeCursor(List<Cursor<K, byte[]>> sources) {
+    this.sources = sources;
+    live = new boolean[sources.size()];
+    for (int i = 0; i < live.length; i++) {
+      live[i] = sources.get(i).advance();
+    }
+  }
+
+  @Override
+  public boolean advance() {
+    if (key != null) { // move every source off the key just returned
+      for (int i = 0; i < live.length; i++) {
+        if (live[i] && sources.get(i).key().compareTo(key) == 0) {
+          live[i] = sources.get(i).advance();
+        }
+      }
+    }
+    K min = null;
+    int newest = -1;
+    for (int i = 0; i < live.length; i++) {
+      if (live[i]) {
+        K k = sources.get(i).key();
+        if (min == null || k.compareTo(min) < 0) { // strict, so the newest source wins a tie
+          min = k;
+          newest = i;
+        }
+      }
+    }
+    key = min;
+    value = min == null ? null : sources.get(newest).value();
+    return min != null;
+  }
+
+  @Override
+  public K key() {
+    if (key == null) {
+      throw new IllegalStateException("cursor is not on an entry");
+    }
+    return key;
+  }
+
+  @Override
+  public byte[] value() {
+    if (key == null) {
+      throw new IllegalStateException("cursor is not on an entry");
+    }
+    return value;
+  }
+
+  @Override
+  public void setValue(byte[] v) {
+    throw new UnsupportedOperationException("merged runs are read-only");
+  }
+}
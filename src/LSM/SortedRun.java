@@ -0,0 +1,506 @@
+package LSM;
+
+import Filter.BlockedBloomFilter;
+import HashTable.Codec;
+import Map.Cursor;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable sorted run of an LsmTreeMap, in a file of its own.
+ *
+ * <p>Entries are written in key order into blocks of about BLOCK_SIZE
+ * bytes, each entry as key length, key, value length (-1 for a
+ * tombstone) and value. The blocks are followed by the sparse index,
+ * which is the first key and offset of every block and the last key of
+ * the run, then the run's Bloom filter and a fixed-size footer that
+ * locates both. Opening a run reads the index and the filter into
+ * memory, so a lookup that passes the key range and the filter reads
+ * exactly one block. The filter holds hashes of the encoded keys, not
+ * their hashCode(), which may differ from one process to the next.</p>
+ *
+ * <p>Values are handled encoded; a removed key has the value TOMBSTONE.</p>
+ *
+ * @param <K> Type for keys.
+ */
+final class SortedRun<K extends Comparable<K>> implements Closeable {
+
+  /**
+   * Value of a key that was removed, told apart from values by identity.
+   */
+  static final byte[] TOMBSTONE = new byte[0];
+
+  static final int BLOCK_SIZE = 4096;
+  private static final int MAGIC = 0x4C534D52; // "LSMR"
+  private static final int FORMAT = 1; // 0 had a filter over hashCode()
+  private static final int FOOTER = 32;
+
+  final long id;
+  private final Path file;
+  private final FileChannel channel;
+  private final Codec<K> keyCodec;
+  private final Object[] firstKeys; // first key of each block
+  private final long[] offsets; // block i spans offsets[i] to offsets[i + 1]
+  private final K lastKey;
+  private final BlockedBloomFilter<byte[]> filter;
+  private final long entries;
+  private final long bytes;
+
+  private SortedRun(long id, Path file, FileChannel channel, Codec<K> keyCodec, Object[] firstKeys,
+                    long[] offsets, K lastKey, BlockedBloomFilter<byte[]> filter, long entries) throws IOException {
+    this.id = id;
+    this.file = file;
+    this.channel = channel;
+    this.keyCodec = keyCodec;
+    this.firstKeys = firstKeys;
+    this.offsets = offsets;
+    this.lastKey = lastKey;
+    this.filter = filter;
+    this.entries = entries;
+    this.bytes = channel.size();
+  }
+
+  /**
+   * Write a run and open it.
+   *
+   * @param file The file, which must not exist yet.
+   * @param id Number of the run.
+   * @param sorted Entries in increasing key order, values encoded.
+   * @param expected About how many entries there are, to size the filter.
+   * @param dropTombstones Whether to leave out removed keys.
+   * @param keyCodec Converts keys to bytes.
+   * @param falsePositiveRate False positive rate of the Bloom filter.
+   * @param <K> Type for keys.
+   * @return The run.
+   * @throws IOException If writing fails.
+   */
+  static <K extends Comparable<K>> SortedRun<K> write(Path file, long id, Cursor<K, byte[]> sorted,
+      long expected, boolean dropTombstones, Codec<K> keyCodec, double falsePositiveRate) throws IOException {
+    BlockedBloomFilter<byte[]> filter =
+        new BlockedBloomFilter<>((int) Math.min(Integer.MAX_VALUE, Math.max(1, expected)), falsePositiveRate);
+    List<byte[]> firstKeys = new ArrayList<>();
+    List<Long> offsets = new ArrayList<>();
+    try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch), 1 << 16));
+      long position = 0;
+      long blockStart = 0;
+      long n = 0;
+      byte[] last = null;
+      while (sorted.advance()) {
+        byte[] v = sorted.value();
+        if (v == TOMBSTONE && dropTombstones) {
+          continue;
+        }
+        K k = sorted.key();
+        byte[] kb = keyCodec.encode(k);
+        if (n == 0 || position - blockStart >= BLOCK_SIZE) {
+          blockStart = position;
+          firstKeys.add(kb);
+          offsets.add(position);
+        }
+        out.writeInt(kb.length);
+        out.write(kb);
+        if (v == TOMBSTONE) {
+          out.writeInt(-1);
+        } else {
+          out.writeInt(v.length);
+          out.write(v);
+        }
+        position += 8 + kb.length + v.length;
+        filter.addHash(keyHash(kb));
+        last = kb;
+        n++;
+      }
+      long indexOffset = position;
+      out.writeInt(firstKeys.size());
+      for (int i = 0; i < firstKeys.size(); i++) {
+        out.writeInt(firstKeys.get(i).length);
+        out.write(firstKeys.get(i));
+        out.writeLong(offsets.get(i));
+      }
+      if (last == null) {
+        out.writeInt(-1);
+      } else {
+        out.writeInt(last.length);
+        out.write(last);
+      }
+      out.flush();
+      long filterOffset = ch.position();
+      filter.writeTo(out);
+      out.writeLong(indexOffset);
+      out.writeLong(filterOffset);
+      out.writeLong(n);
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT);
+      out.flush();
+      ch.force(true);
+    }
+    return open(file, id, keyCodec);
+  }
+
+  /**
+   * Open a run written by write().
+   *
+   * @param file The file.
+   * @param id Number of the run.
+   * @param keyCodec Converts keys to bytes, as when the run was written.
+   * @param <K> Type for keys.
+   * @return The run.
+   * @throws IOException If reading fails or the file does not hold a run.
+   */
+  static <K extends Comparable<K>> SortedRun<K> open(Path file, long id, Codec<K> keyCodec) throws IOException {
+    FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      long size = ch.size();
+      if (size < FOOTER) {
+        throw new IOException("not a sorted run: " + file);
+      }
+      ByteBuffer footer = read(ch, size - FOOTER, FOOTER);
+      if (footer.getInt(24) != MAGIC) {
+        throw new IOException("not a sorted run: " + file);
+      }
+      if (footer.getInt(28) != FORMAT) {
+        throw new IOException("unsupported sorted run format " + footer.getInt(28) + ": " + file);
+      }
+      long indexOffset = footer.getLong(0);
+      long entries = footer.getLong(16);
+      ByteBuffer meta = read(ch, indexOffset, (int) (size - FOOTER - indexOffset));
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(meta.array()));
+      int blocks = in.readInt();
+      Object[] firstKeys = new Object[blocks];
+      long[] offsets = new long[blocks + 1];
+      for (int i = 0; i < blocks; i++) {
+        firstKeys[i] = keyCodec.decode(readBytes(in, in.readInt()));
+        offsets[i] = in.readLong();
+      }
+      offsets[blocks] = indexOffset;
+      int lastLength = in.readInt();
+      K lastKey = lastLength < 0 ? null : keyCodec.decode(readBytes(in, lastLength));
+      BlockedBloomFilter<byte[]> filter = BlockedBloomFilter.readFrom(in);
+      return new SortedRun<>(id, file, ch, keyCodec, firstKeys, offsets, lastKey, filter, entries);
+    } catch (IOException | RuntimeException e) {
+      ch.close();
+      throw e;
+    }
+  }
+
+  private static byte[] readBytes(DataInputStream in, int length) throws IOException {
+    byte[] b = new byte[length];
+    in.readFully(b);
+    return b;
+  }
+
+  private static ByteBuffer read(FileChannel ch, long position, int length) throws IOException {
+    ByteBuffer b = ByteBuffer.allocate(length);
+    while (b.hasRemaining()) {
+      if (ch.read(b, position + b.position()) < 0) {
+        throw new IOException("unexpected end of file");
+      }
+    }
+    return b;
+  }
+
+  /**
+   * Number of entries, tombstones included.
+   *
+   * @return The entries in the run.
+   */
+  long entries() {
+    return entries;
+  }
+
+  /**
+   * Size of the file.
+   *
+   * @return Bytes in the run's file.
+   */
+  long bytes() {
+    return bytes;
+  }
+
+  @SuppressWarnings("unchecked")
+  private K firstKey(int block) {
+    return (K) firstKeys[block];
+  }
+
+  /**
+   * Whether k lies between the first and last key of the run.
+   *
+   * @param k The key.
+   * @return False if the run cannot hold k.
+   */
+  boolean covers(K k) {
+    return entries > 0 && firstKey(0).compareTo(k) <= 0 && lastKey.compareTo(k) >= 0;
+  }
+
+  /**
+   * Hash of an encoded key, as the Bloom filters of runs hold it.
+   *
+   * @param kb The key, encoded by the run's codec.
+   * @return 64-bit FNV-1a hash of kb.
+   */
+  static long keyHash(byte[] kb) {
+    long h = 0xcbf29ce484222325L;
+    for (byte b : kb) {
+      h = (h ^ (b & 0xFF)) * 0x100000001b3L;
+    }
+    return h;
+  }
+
+  /**
+   * Ask the Bloom filter about a key.
+   *
+   * @param keyHash keyHash() of the encoded key.
+   * @return False if the key is definitely not in the run.
+   */
+  boolean mightContain(long keyHash) {
+    return filter.mightContainHash(keyHash);
+  }
+
+  // Last block whose first key is below k, or equal to it if inclusive; -1 if there is none.
+  private int blockBefore(K k, boolean inclusive) {
+    int low = 0;
+    int high = firstKeys.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = firstKey(mid).compareTo(k);
+      if (cmp < 0 || (cmp == 0 && inclusive)) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return high;
+  }
+
+  private ByteBuffer readRaw(int b) {
+    try {
+      ByteBuffer buf = read(channel, offsets[b], (int) (offsets[b + 1] - offsets[b]));
+      buf.flip();
+      return buf;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private Block readBlock(int b) {
+    return new Block(readRaw(b));
+  }
+
+  /**
+   * Value of a key, reading the one block that would hold it. The block
+   * is scanned rather than parsed, up to k, and only k's value copied.
+   *
+   * @param k The key.
+   * @return The encoded value, TOMBSTONE if k was removed, or null if
+   *     the run has no entry for k.
+   */
+  byte[] find(K k) {
+    int b = blockBefore(k, true);
+    if (b < 0) {
+      return null;
+    }
+    ByteBuffer buf = readRaw(b);
+    while (buf.hasRemaining()) {
+      byte[] kb = new byte[buf.getInt()];
+      buf.get(kb);
+      int cmp = keyCodec.decode(kb).compareTo(k);
+      int length = buf.getInt();
+      if (cmp == 0) {
+        if (length < 0) {
+          return TOMBSTONE;
+        }
+        byte[] v = new byte[length];
+        buf.get(v);
+        return v;
+      }
+      if (cmp > 0) {
+        return null;
+      }
+      if (length > 0) {
+        buf.position(buf.position() + length);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Greatest key of the run below k, or equal to it if inclusive,
+   * tombstones included.
+   *
+   * @param k The key, or null for the last key of the run.
+   * @param inclusive Whether k itself qualifies.
+   * @return The key, or null if there is none.
+   */
+  K floorKey(K k, boolean inclusive) {
+    if (entries == 0) {
+      return null;
+    }
+    if (k == null) {
+      return lastKey;
+    }
+    int cmp = lastKey.compareTo(k);
+    if (cmp < 0 || (cmp == 0 && inclusive)) {
+      return lastKey;
+    }
+    int b = blockBefore(k, inclusive);
+    if (b < 0) {
+      return null;
+    }
+    Block block = readBlock(b); // its first key qualifies, and no key of a later block does
+    int i = block.search(k);
+    return block.key(i >= 0 ? (inclusive ? i : i - 1) : -i - 2);
+  }
+
+  /**
+   * Cursor over the entries, tombstones included, from a given key on.
+   *
+   * @param from Smallest key to visit, or null to start at the first one.
+   * @return A cursor positioned before the first entry.
+   */
+  Cursor<K, byte[]> cursor(K from) {
+    return new RunCursor(from);
+  }
+
+  /**
+   * Close the file and delete it.
+   *
+   * @throws IOException If deleting fails.
+   */
+  void delete() throws IOException {
+    channel.close();
+    Files.deleteIfExists(file);
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("run %d: %d entries, %d blocks, %dKB", id, entries, firstKeys.length, bytes >> 10);
+  }
+
+  // One block, parsed.
+  private final class Block {
+    final Object[] keys;
+    final byte[][] values;
+    final int count;
+
+    Block(ByteBuffer buf) {
+      List<Object> ks = new ArrayList<>();
+      List<byte[]> vs = new ArrayList<>();
+      while (buf.hasRemaining()) {
+        byte[] kb = new byte[buf.getInt()];
+        buf.get(kb);
+        ks.add(keyCodec.decode(kb));
+        int length = buf.getInt();
+        if (length < 0) {
+          vs.add(TOMBSTONE);
+        } else {
+          byte[] vb = new byte[length];
+          buf.get(vb);
+          vs.add(vb);
+        }
+      }
+      keys = ks.toArray();
+      values = vs.toArray(new byte[0][]);
+      count = keys.length;
+    }
+
+    @SuppressWarnings("unchecked")
+    K key(int i) {
+      return (K) keys[i];
+    }
+
+    // Index of k if it is there, otherwise -(insertion point) - 1.
+    int search(K k) {
+      int low = 0;
+      int high = count - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        int cmp = key(mid).compareTo(k);
+        if (cmp < 0) {
+          low = mid + 1;
+        } else if (cmp > 0) {
+          high = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -low - 1;
+    }
+  }
+
+  private class RunCursor implements Cursor<K, byte[]> {
+    private int b; // current block
+    private Block block;
+    private int index;
+
+    RunCursor(K from) {
+      if (entries == 0) {
+        b = firstKeys.length;
+        return;
+      }
+      b = from == null ? 0 : Math.max(0, blockBefore(from, true));
+      block = readBlock(b);
+      int i = from == null ? 0 : block.search(from);
+      index = (i >= 0 ? i : -i - 1) - 1;
+    }
+
+    @Override
+    public boolean advance() {
+      if (block == null) {
+        return false;
+      }
+      index++;
+      while (index >= block.count) {
+        b++;
+        if (b >= firstKeys.length) {
+          block = null;
+          return false;
+        }
+        block = readBlock(b);
+        index = 0;
+      }
+      return true;
+    }
+
+    private void check() {
+      if (block == null || index < 0) {
+        throw new IllegalStateException("cursor is not on an entry");
+      }
+    }
+
+    @Override
+    public K key() {
+      check();
+      return block.key(index);
+    }
+
+    @Override
+    public byte[] value() {
+      check();
+      return block.values[index];
+    }
+
+    @Override
+    public void setValue(byte[] v) {
+      throw new UnsupportedOperationException("sorted runs are immutable");
+    }
+  }
+}
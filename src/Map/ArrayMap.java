@@ -1,78 +1,162 @@
 package Map;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 
-public class ArrayMap<K,V> implements Map<K,V> {
-  private K[] keys;
-  private V[] values;
+/**
+ * Map implemented as an unsorted array of entries, for maps that stay small.
+ *
+ * <p>Keys and values are packed into one array, each key followed by its
+ * value, and found by linear search. Next to it an int array holds the
+ * hash code of each key, so the search scans a few ints and only calls
+ * equals() on a key whose hash matches. For a handful of entries that
+ * beats a hash table: there is no table to size and no node per entry,
+ * just a map object and two arrays, and a search walks a cache line or
+ * two without touching the keys it passes over. All operations take
+ * O(n) time though, so past a few dozen entries a hash map wins;
+ * AdaptiveHashMap switches over on its own.</p>
+ *
+ * <p>A removed entry is replaced by the last one, so iteration order is
+ * insertion order only until the first remove. The array doubles when it
+ * is full; trimToSize() gives back the unused part.</p>
+ *
+ * @param <K> Type for keys.
+ * @param <V> Type for values.
+ */
+public class ArrayMap<K, V> implements Map<K, V> {
+
+  private static final int DEFAULT_CAPACITY = 4;
+
+  private Object[] entries; // key of entry i at 2i, its value at 2i + 1
+  private int[] hashes; // hashCode() of the key of entry i
   private int numElements;
 
-  public ArrayMap(int capacity) {
-    this.keys = (K[]) new Object[capacity];
-    this.values = (V[]) new Object[capacity];
-    this.numElements = 0;
+  /**
+   * Create an empty map.
+   */
+  public ArrayMap() {
+    this(DEFAULT_CAPACITY);
   }
 
-  @Override
-  public void insert(K k, V v) throws IllegalArgumentException {
-    if (k == null) {
-      throw new IllegalArgumentException("can't handle null key");
+  /**
+   * Create an empty map with room for the given number of entries.
+   *
+   * @param capacity Number of entries the map holds before it grows.
+   * @throws IllegalArgumentException If capacity is negative.
+   */
+  public ArrayMap(int capacity) throws IllegalArgumentException {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("capacity must not be negative");
     }
+    this.entries = new Object[2 * capacity];
+    this.hashes = new int[capacity];
+    this.numElements = 0;
+  }
 
-    if (numElements == keys.length) { // map is full
-      throw new IllegalArgumentException("full");
+  // Index of the entry for k, or -1 if k is not mapped.
+  private int indexOf(Object k) {
+    int h = k.hashCode();
+    int[] hs = hashes;
+    for (int i = 0, n = numElements; i < n; i++) {
+      if (hs[i] == h) { // only follow the key pointer when the hashes match
+        Object key = entries[2 * i];
+        if (key == k || k.equals(key)) {
+          return i;
+        }
+      }
     }
+    return -1;
+  }
 
-    for (int i = 0; i < keys.length; i++) {
-      if (keys[i].equals(k)) {
-        throw new IllegalArgumentException("duplicate keys");
-      }
+  // Index of the entry for k, throw exception if k is null or not mapped.
+  private int indexForSure(K k) {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    int i = indexOf(k);
+    if (i == -1) {
+      throw new IllegalArgumentException("cannot find key " + k);
     }
+    return i;
+  }
 
-    keys[numElements] = k;
-    values[numElements] = v;
+  // Append an entry for a key known not to be mapped.
+  private void append(K k, V v) {
+    if (numElements == hashes.length) { // map is full
+      resize(Math.max(DEFAULT_CAPACITY, 2 * numElements));
+    }
+    hashes[numElements] = k.hashCode();
+    entries[2 * numElements] = k;
+    entries[2 * numElements + 1] = v;
     numElements++;
   }
 
+  // Remove entry i by moving the last entry into its place.
+  private void removeAt(int i) {
+    numElements--;
+    hashes[i] = hashes[numElements];
+    entries[2 * i] = entries[2 * numElements];
+    entries[2 * i + 1] = entries[2 * numElements + 1];
+    entries[2 * numElements] = null; // let go of the moved entry for the GC
+    entries[2 * numElements + 1] = null;
+  }
+
+  private void resize(int capacity) {
+    Object[] newEntries = new Object[2 * capacity];
+    System.arraycopy(entries, 0, newEntries, 0, 2 * numElements);
+    entries = newEntries;
+    int[] newHashes = new int[capacity];
+    System.arraycopy(hashes, 0, newHashes, 0, numElements);
+    hashes = newHashes;
+  }
+
+  @SuppressWarnings("unchecked")
+  private K keyAt(int i) {
+    return (K) entries[2 * i];
+  }
+
+  @SuppressWarnings("unchecked")
+  private V valueAt(int i) {
+    return (V) entries[2 * i + 1];
+  }
+
   @Override
-  public V remove(K k) throws IllegalArgumentException {
+  public void insert(K k, V v) throws IllegalArgumentException {
     if (k == null) {
-      throw new IllegalArgumentException("can't handle null key");
-    }
-
-    int index = -1;
-    for (int i = 0; i < keys.length; i++) {
-      if (keys[i].equals(k)) {
-        index = i;
-        break;
-      }
+      throw new IllegalArgumentException("cannot handle null key");
     }
-
-    if (index == -1) {
-      throw new IllegalArgumentException("can't find the key");
+    if (indexOf(k) != -1) {
+      throw new IllegalArgumentException("duplicate key " + k);
     }
+    append(k, v);
+  }
 
-    V v = values[index];
-    // move the last element to the removed position to maintain order
-    keys[index] = keys[numElements - 1];
-    values[index] = values[numElements - 1];
-    numElements--;
+  @Override
+  public V remove(K k) throws IllegalArgumentException {
+    int i = indexForSure(k);
+    V v = valueAt(i);
+    removeAt(i);
     return v;
   }
 
   @Override
   public void put(K k, V v) throws IllegalArgumentException {
-
+    entries[2 * indexForSure(k) + 1] = v;
   }
 
   @Override
   public V get(K k) throws IllegalArgumentException {
-    return null;
+    return valueAt(indexForSure(k));
   }
 
   @Override
   public boolean has(K k) {
-    return false;
+    if (k == null) {
+      return false;
+    }
+    return indexOf(k) != -1;
   }
 
   @Override
@@ -80,8 +164,169 @@ public class ArrayMap<K,V> implements Map<K,V> {
     return numElements;
   }
 
+  /**
+   * Shrink the array to the current number of entries.
+   */
+  public void trimToSize() {
+    if (numElements < hashes.length) {
+      resize(numElements);
+    }
+  }
+
   @Override
-  public Iterator<K> iterator() {
+  public V getOrDefault(K k, V defaultValue) {
+    if (k == null) {
+      return defaultValue;
+    }
+    int i = indexOf(k);
+    return i == -1 ? defaultValue : valueAt(i);
+  }
+
+  @Override
+  public V putIfAbsent(K k, V v) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    int i = indexOf(k);
+    if (i != -1) {
+      return valueAt(i);
+    }
+    append(k, v);
     return null;
   }
+
+  @Override
+  public void upsert(K k, V v) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    int i = indexOf(k);
+    if (i == -1) {
+      append(k, v);
+    } else {
+      entries[2 * i + 1] = v;
+    }
+  }
+
+  @Override
+  public V compute(K k, BiFunction<? super K, ? super V, ? extends V> remap)
+      throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    int i = indexOf(k);
+    V newValue = remap.apply(k, i == -1 ? null : valueAt(i));
+    if (newValue == null) {
+      if (i != -1) {
+        removeAt(i);
+      }
+    } else if (i == -1) {
+      append(k, newValue);
+    } else {
+      entries[2 * i + 1] = newValue;
+    }
+    return newValue;
+  }
+
+  @Override
+  public V merge(K k, V v, BiFunction<? super V, ? super V, ? extends V> remap)
+      throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    int i = indexOf(k);
+    if (i == -1) {
+      append(k, v);
+      return v;
+    }
+    V newValue = remap.apply(valueAt(i), v);
+    if (newValue == null) {
+      removeAt(i);
+    } else {
+      entries[2 * i + 1] = newValue;
+    }
+    return newValue;
+  }
+
+  @Override
+  public Cursor<K, V> cursor() {
+    return new ArrayMapCursor();
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    for (int i = 0; i < numElements; i++) {
+      action.accept(keyAt(i), valueAt(i));
+    }
+  }
+
+  @Override
+  public Iterator<K> iterator() {
+    return new ArrayMapIterator();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder s = new StringBuilder();
+    s.append("{");
+    for (int i = 0; i < numElements; i++) {
+      s.append(keyAt(i)).append(": ").append(valueAt(i));
+      if (i < numElements - 1) {
+        s.append(", ");
+      }
+    }
+    s.append("}");
+    return s.toString();
+  }
+
+  private class ArrayMapIterator implements Iterator<K> {
+    private int next;
+
+    @Override
+    public boolean hasNext() {
+      return next < numElements;
+    }
+
+    @Override
+    public K next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException("No more elements in the map");
+      }
+      return keyAt(next++);
+    }
+  }
+
+  private class ArrayMapCursor implements Cursor<K, V> {
+    private int current = -1;
+
+    @Override
+    public boolean advance() {
+      if (current < numElements) {
+        current++;
+      }
+      return current < numElements;
+    }
+
+    private int current() {
+      if (current < 0 || current >= numElements) {
+        throw new IllegalStateException("cursor is not on an entry");
+      }
+      return current;
+    }
+
+    @Override
+    public K key() {
+      return keyAt(current());
+    }
+
+    @Override
+    public V value() {
+      return valueAt(current());
+    }
+
+    @Override
+    public void setValue(V v) {
+      entries[2 * current() + 1] = v;
+    }
+  }
 }
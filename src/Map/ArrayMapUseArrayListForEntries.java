@@ -3,6 +3,7 @@ package Map;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.BiConsumer;
 
 /**
  * Map implemented using an unsorted ArrayList internally.
@@ -100,6 +101,18 @@ public class ArrayMapUseArrayListForEntries<K, V> implements Map<K, V> {
     return this.data.size();
   }
 
+  @Override
+  public Cursor<K, V> cursor() {
+    return new EntryCursor();
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    for (Entry<K,V> e : this.data) {
+      action.accept(e.key, e.value);
+    }
+  }
+
   @Override
   public Iterator<K> iterator() {
     List<K> keys = new ArrayList<>();
@@ -124,6 +137,40 @@ public class ArrayMapUseArrayListForEntries<K, V> implements Map<K, V> {
     return s.toString();
   }
 
+  private class EntryCursor implements Cursor<K, V> {
+    private int current = -1;
+
+    @Override
+    public boolean advance() {
+      if (current < data.size()) {
+        current++;
+      }
+      return current < data.size();
+    }
+
+    private Entry<K,V> current() {
+      if (current < 0 || current >= data.size()) {
+        throw new IllegalStateException("cursor is not on an entry");
+      }
+      return data.get(current);
+    }
+
+    @Override
+    public K key() {
+      return current().key;
+    }
+
+    @Override
+    public V value() {
+      return current().value;
+    }
+
+    @Override
+    public void setValue(V v) {
+      current().value = v;
+    }
+  }
+
   // Entry to store a key, and a value pair.
   private static class Entry<K,V> {
     K key;
@@ -0,0 +1,46 @@
+package Map;
+
+/**
+ * Cursor over the entries of a Map.
+ *
+ * <p>A cursor starts before the first entry; each call to advance()
+ * moves it to the next one. Unlike iterating over the keys and calling
+ * get(), reading an entry through a cursor costs no lookup, and a
+ * cursor allocates nothing per entry. Values may be updated through the
+ * cursor, but the map must not gain or lose keys while it is in use.</p>
+ *
+ * @param <K> Type for keys.
+ * @param <V> Type for values.
+ */
+public interface Cursor<K, V> {
+  /**
+   * Move to the next entry.
+   *
+   * @return True if the cursor is on an entry, false if there are no more.
+   */
+  boolean advance();
+
+  /**
+   * Key of the current entry.
+   *
+   * @return The key.
+   * @throws IllegalStateException If the cursor is not on an entry.
+   */
+  K key() throws IllegalStateException;
+
+  /**
+   * Value of the current entry.
+   *
+   * @return The value associated with key().
+   * @throws IllegalStateException If the cursor is not on an entry.
+   */
+  V value() throws IllegalStateException;
+
+  /**
+   * Update the value of the current entry.
+   *
+   * @param v The value to be associated with key().
+   * @throws IllegalStateException If the cursor is not on an entry.
+   */
+  void setValue(V v) throws IllegalStateException;
+}
@@ -1,5 +1,9 @@
 package Map;
 
+import java.util.Iterator;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
 /**
  * Map ADT.
  *
@@ -57,4 +61,158 @@ public interface Map<K, V> extends Iterable<K> {
    * @return Number of key/value pairs in the map.
    */
   int size();
+
+  /**
+   * Get the value associated with a key, or a default if it is not mapped.
+   *
+   * @param k The key.
+   * @param defaultValue The value to return if k is not mapped.
+   * @return The value associated with k, or defaultValue if k is null or not mapped.
+   */
+  default V getOrDefault(K k, V defaultValue) {
+    return has(k) ? get(k) : defaultValue;
+  }
+
+  /**
+   * Get the value associated with a key, or null if it is not mapped.
+   *
+   * @param k The key.
+   * @return The value associated with k, or null if k is null or not mapped.
+   */
+  default V getOrNull(K k) {
+    return getOrDefault(k, null);
+  }
+
+  /**
+   * Insert a key/value pair unless the key is already mapped.
+   *
+   * @param k The key.
+   * @param v The value to be associated with k if it is not mapped yet.
+   * @return The value already associated with k, or null if v was inserted.
+   * @throws IllegalArgumentException If k is null.
+   */
+  default V putIfAbsent(K k, V v) throws IllegalArgumentException {
+    if (has(k)) {
+      return get(k);
+    }
+    insert(k, v);
+    return null;
+  }
+
+  /**
+   * Associate a value with a key, whether or not it is mapped already.
+   *
+   * @param k The key.
+   * @param v The value to be associated with k.
+   * @throws IllegalArgumentException If k is null.
+   */
+  default void upsert(K k, V v) throws IllegalArgumentException {
+    if (has(k)) {
+      put(k, v);
+    } else {
+      insert(k, v);
+    }
+  }
+
+  /**
+   * Compute a new value for a key from its current value (null if it is
+   * not mapped). If the new value is null the key ends up not mapped.
+   *
+   * @param k The key.
+   * @param remap Function from k and its current value to its new value.
+   * @return The new value associated with k, or null if it is not mapped.
+   * @throws IllegalArgumentException If k is null.
+   */
+  default V compute(K k, BiFunction<? super K, ? super V, ? extends V> remap)
+      throws IllegalArgumentException {
+    boolean present = has(k);
+    V newValue = remap.apply(k, present ? get(k) : null);
+    if (newValue == null) {
+      if (present) {
+        remove(k);
+      }
+    } else if (present) {
+      put(k, newValue);
+    } else {
+      insert(k, newValue);
+    }
+    return newValue;
+  }
+
+  /**
+   * Insert a value for an unmapped key, or combine it with the current
+   * value of a mapped one. If the combined value is null the key is removed.
+   *
+   * @param k The key.
+   * @param v The value to insert, or to combine with the current value.
+   * @param remap Function from the current value and v to the new value.
+   * @return The new value associated with k, or null if it was removed.
+   * @throws IllegalArgumentException If k is null.
+   */
+  default V merge(K k, V v, BiFunction<? super V, ? super V, ? extends V> remap)
+      throws IllegalArgumentException {
+    if (!has(k)) {
+      insert(k, v);
+      return v;
+    }
+    V newValue = remap.apply(get(k), v);
+    if (newValue == null) {
+      remove(k);
+    } else {
+      put(k, newValue);
+    }
+    return newValue;
+  }
+
+  /**
+   * Cursor over all entries, in the same order as iterator().
+   *
+   * <p>This default walks the keys and calls get() for each one;
+   * implementations override it to read their storage directly.</p>
+   *
+   * @return A cursor positioned before the first entry.
+   */
+  default Cursor<K, V> cursor() {
+    Iterator<K> keys = iterator();
+    return new Cursor<K, V>() {
+      private K current;
+      private boolean onEntry;
+
+      @Override
+      public boolean advance() {
+        onEntry = keys.hasNext();
+        current = onEntry ? keys.next() : null;
+        return onEntry;
+      }
+
+      @Override
+      public K key() {
+        if (!onEntry) {
+          throw new IllegalStateException("cursor is not on an entry");
+        }
+        return current;
+      }
+
+      @Override
+      public V value() {
+        return get(key());
+      }
+
+      @Override
+      public void setValue(V v) {
+        put(key(), v);
+      }
+    };
+  }
+
+  /**
+   * Call an action for every key/value pair, in the same order as iterator().
+   *
+   * @param action Function called with each key and its value.
+   */
+  default void forEach(BiConsumer<? super K, ? super V> action) {
+    for (K k : this) {
+      action.accept(k, get(k));
+    }
+  }
 }
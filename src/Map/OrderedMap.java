@@ -1,11 +1,182 @@
 package Map;
 
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
 /**
  * OrderedMpp ADT.
  *
+ * <p>Iteration is in increasing key order. On top of the Map operations
+ * an ordered map finds the keys next to a given one and walks the keys
+ * in a range: implementations seek to the start of the range in
+ * O(log n) (for balanced trees) and then stream each key in the range
+ * in amortized O(1), without visiting the keys before it.</p>
+ *
+ * <p>Ranges include their lower bound and exclude their upper bound,
+ * and a null bound leaves that side of the range open.</p>
+ *
  * @param <K> Type for keys.
  * @param <V> Type for values.
  */
 public interface OrderedMap<K extends Comparable<K>, V>
     extends Map<K, V> {
-}
\ No newline at end of file
+
+  /**
+   * Smallest key.
+   *
+   * @return The smallest key in the map.
+   * @throws EmptyException If the map is empty.
+   */
+  K first() throws EmptyException;
+
+  /**
+   * Largest key.
+   *
+   * @return The largest key in the map.
+   * @throws EmptyException If the map is empty.
+   */
+  K last() throws EmptyException;
+
+  /**
+   * Greatest key less than or equal to a given key.
+   *
+   * @param k The key.
+   * @return The greatest mapped key &lt;= k, or null if there is none.
+   * @throws IllegalArgumentException If k is null.
+   */
+  K floorKey(K k) throws IllegalArgumentException;
+
+  /**
+   * Smallest key greater than or equal to a given key.
+   *
+   * @param k The key.
+   * @return The smallest mapped key &gt;= k, or null if there is none.
+   * @throws IllegalArgumentException If k is null.
+   */
+  K ceilingKey(K k) throws IllegalArgumentException;
+
+  /**
+   * Greatest key strictly less than a given key.
+   *
+   * @param k The key.
+   * @return The greatest mapped key &lt; k, or null if there is none.
+   * @throws IllegalArgumentException If k is null.
+   */
+  K lowerKey(K k) throws IllegalArgumentException;
+
+  /**
+   * Smallest key strictly greater than a given key.
+   *
+   * @param k The key.
+   * @return The smallest mapped key &gt; k, or null if there is none.
+   * @throws IllegalArgumentException If k is null.
+   */
+  K higherKey(K k) throws IllegalArgumentException;
+
+  /**
+   * Remove the smallest key and its value.
+   *
+   * @return The key that was removed, or null if the map was empty.
+   */
+  default K pollFirst() {
+    Cursor<K, V> c = cursor();
+    if (!c.advance()) {
+      return null;
+    }
+    K k = c.key();
+    remove(k);
+    return k;
+  }
+
+  /**
+   * Cursor over the entries with keys in [from, to), in key order.
+   *
+   * @param from Smallest key to visit, or null to start at the first key.
+   * @param to Key to stop before, or null to run to the last key.
+   * @return A cursor positioned before the first entry in the range.
+   */
+  Cursor<K, V> cursor(K from, K to);
+
+  /**
+   * Iterator over the keys in [from, to), in order.
+   *
+   * @param from Smallest key to return, or null to start at the first key.
+   * @param to Key to stop before, or null to run to the last key.
+   * @return An iterator over the keys in the range.
+   */
+  default Iterator<K> range(K from, K to) {
+    Cursor<K, V> c = cursor(from, to);
+    return new Iterator<K>() {
+      private boolean ready; // c is on the entry next() returns
+      private boolean done;
+
+      @Override
+      public boolean hasNext() {
+        if (!ready && !done) {
+          ready = c.advance();
+          done = !ready;
+        }
+        return ready;
+      }
+
+      @Override
+      public K next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException("No more keys in the range");
+        }
+        ready = false;
+        return c.key();
+      }
+    };
+  }
+
+  /**
+   * View of the part of this map with keys in [from, to).
+   *
+   * <p>The view is backed by this map, so changes to either show in the
+   * other. Inserting a key outside the range through the view is an
+   * error, and size() counts the keys in the range each time.</p>
+   *
+   * @param from Smallest key in the view.
+   * @param to Key the view stops before.
+   * @return The view.
+   * @throws IllegalArgumentException If from or to is null, or from &gt; to.
+   */
+  default OrderedMap<K, V> subMap(K from, K to) throws IllegalArgumentException {
+    if (from == null || to == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    if (from.compareTo(to) > 0) {
+      throw new IllegalArgumentException("range starts after it ends");
+    }
+    return new OrderedSubMap<>(this, from, to);
+  }
+
+  /**
+   * View of the part of this map with keys less than a given key.
+   *
+   * @param to Key the view stops before.
+   * @return The view, as for subMap().
+   * @throws IllegalArgumentException If to is null.
+   */
+  default OrderedMap<K, V> headMap(K to) throws IllegalArgumentException {
+    if (to == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    return new OrderedSubMap<>(this, null, to);
+  }
+
+  /**
+   * View of the part of this map with keys greater than or equal to a given key.
+   *
+   * @param from Smallest key in the view.
+   * @return The view, as for subMap().
+   * @throws IllegalArgumentException If from is null.
+   */
+  default OrderedMap<K, V> tailMap(K from) throws IllegalArgumentException {
+    if (from == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    return new OrderedSubMap<>(this, from, null);
+  }
+}
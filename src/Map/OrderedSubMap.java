@@ -0,0 +1,257 @@
+package Map;
+
+import java.util.Iterator;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * View of the keys of an OrderedMap in a range [from, to), as returned
+ * by subMap(), headMap() and tailMap().
+ *
+ * <p>Every operation checks the key against the range and hands it to
+ * the backing map, so lookups cost what they cost there and iterating
+ * seeks straight to the first key in the range. size() has no count to
+ * read and walks the range instead. Views of a view are views of the
+ * backing map with the two ranges intersected.</p>
+ *
+ * @param <K> Type for keys.
+ * @param <V> Type for values.
+ */
+class OrderedSubMap<K extends Comparable<K>, V> implements OrderedMap<K, V> {
+
+  private final OrderedMap<K, V> base;
+  private final K from; // null for no lower bound
+  private final K to; // null for no upper bound
+
+  OrderedSubMap(OrderedMap<K, V> base, K from, K to) {
+    this.base = base;
+    this.from = from;
+    this.to = to;
+  }
+
+  private boolean aboveFrom(K k) {
+    return from == null || k.compareTo(from) >= 0;
+  }
+
+  private boolean belowTo(K k) {
+    return to == null || k.compareTo(to) < 0;
+  }
+
+  private boolean inRange(K k) {
+    return aboveFrom(k) && belowTo(k);
+  }
+
+  // Throw exception unless k is null (left for the backing map to report) or in range.
+  private void checkFound(K k) {
+    if (k != null && !inRange(k)) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+  }
+
+  // Throw exception unless k is null or may be added to the view.
+  private void checkInsert(K k) {
+    if (k != null && !inRange(k)) {
+      throw new IllegalArgumentException("key out of range " + k);
+    }
+  }
+
+  // The key if it is in range, null otherwise.
+  private K inRangeOrNull(K k) {
+    return k != null && inRange(k) ? k : null;
+  }
+
+  private static <K extends Comparable<K>> K max(K a, K b) {
+    return a == null ? b : b == null ? a : a.compareTo(b) >= 0 ? a : b;
+  }
+
+  private static <K extends Comparable<K>> K min(K a, K b) {
+    return a == null ? b : b == null ? a : a.compareTo(b) <= 0 ? a : b;
+  }
+
+  @Override
+  public void insert(K k, V v) throws IllegalArgumentException {
+    checkInsert(k);
+    base.insert(k, v);
+  }
+
+  @Override
+  public V remove(K k) throws IllegalArgumentException {
+    checkFound(k);
+    return base.remove(k);
+  }
+
+  @Override
+  public void put(K k, V v) throws IllegalArgumentException {
+    checkFound(k);
+    base.put(k, v);
+  }
+
+  @Override
+  public V get(K k) throws IllegalArgumentException {
+    checkFound(k);
+    return base.get(k);
+  }
+
+  @Override
+  public boolean has(K k) {
+    return k != null && inRange(k) && base.has(k);
+  }
+
+  @Override
+  public int size() {
+    int n = 0;
+    for (Cursor<K, V> c = cursor(); c.advance(); ) {
+      n++;
+    }
+    return n;
+  }
+
+  @Override
+  public V getOrDefault(K k, V defaultValue) {
+    return k != null && inRange(k) ? base.getOrDefault(k, defaultValue) : defaultValue;
+  }
+
+  @Override
+  public V putIfAbsent(K k, V v) throws IllegalArgumentException {
+    checkInsert(k);
+    return base.putIfAbsent(k, v);
+  }
+
+  @Override
+  public void upsert(K k, V v) throws IllegalArgumentException {
+    checkInsert(k);
+    base.upsert(k, v);
+  }
+
+  @Override
+  public V compute(K k, BiFunction<? super K, ? super V, ? extends V> remap)
+      throws IllegalArgumentException {
+    checkInsert(k);
+    return base.compute(k, remap);
+  }
+
+  @Override
+  public V merge(K k, V v, BiFunction<? super V, ? super V, ? extends V> remap)
+      throws IllegalArgumentException {
+    checkInsert(k);
+    return base.merge(k, v, remap);
+  }
+
+  @Override
+  public K first() throws EmptyException {
+    K k = from == null ? base.first() : base.ceilingKey(from);
+    if (k == null || !belowTo(k)) {
+      throw new EmptyException("range is empty");
+    }
+    return k;
+  }
+
+  @Override
+  public K last() throws EmptyException {
+    K k = to == null ? base.last() : base.lowerKey(to);
+    if (k == null || !aboveFrom(k)) {
+      throw new EmptyException("range is empty");
+    }
+    return k;
+  }
+
+  @Override
+  public K floorKey(K k) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    return inRangeOrNull(belowTo(k) ? base.floorKey(k) : base.lowerKey(to));
+  }
+
+  @Override
+  public K lowerKey(K k) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    return inRangeOrNull(belowTo(k) ? base.lowerKey(k) : base.lowerKey(to));
+  }
+
+  @Override
+  public K ceilingKey(K k) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    return inRangeOrNull(aboveFrom(k) ? base.ceilingKey(k) : base.ceilingKey(from));
+  }
+
+  @Override
+  public K higherKey(K k) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    return inRangeOrNull(aboveFrom(k) ? base.higherKey(k) : base.ceilingKey(from));
+  }
+
+  @Override
+  public Cursor<K, V> cursor() {
+    return base.cursor(from, to);
+  }
+
+  @Override
+  public Cursor<K, V> cursor(K from, K to) {
+    return base.cursor(max(this.from, from), min(this.to, to));
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    for (Cursor<K, V> c = cursor(); c.advance(); ) {
+      action.accept(c.key(), c.value());
+    }
+  }
+
+  @Override
+  public Iterator<K> iterator() {
+    return base.range(from, to);
+  }
+
+  @Override
+  public Iterator<K> range(K from, K to) {
+    return base.range(max(this.from, from), min(this.to, to));
+  }
+
+  @Override
+  public OrderedMap<K, V> subMap(K from, K to) throws IllegalArgumentException {
+    if (from == null || to == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    if (from.compareTo(to) > 0) {
+      throw new IllegalArgumentException("range starts after it ends");
+    }
+    return new OrderedSubMap<>(base, max(this.from, from), min(this.to, to));
+  }
+
+  @Override
+  public OrderedMap<K, V> headMap(K to) throws IllegalArgumentException {
+    if (to == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    return new OrderedSubMap<>(base, from, min(this.to, to));
+  }
+
+  @Override
+  public OrderedMap<K, V> tailMap(K from) throws IllegalArgumentException {
+    if (from == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    return new OrderedSubMap<>(base, max(this.from, from), to);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder s = new StringBuilder();
+    s.append("{");
+    for (Cursor<K, V> c = cursor(); c.advance(); ) {
+      if (s.length() > 1) {
+        s.append(", ");
+      }
+      s.append(c.key()).append(": ").append(c.value());
+    }
+    s.append("}");
+    return s.toString();
+  }
+}
@@ -0,0 +1,97 @@
+package Map;
+
+import java.util.function.BiFunction;
+
+/**
+ * Base for maps that can find the entry for a key, or add one, in a
+ * single lookup.
+ *
+ * <p>A subclass implements findOrInsert(); putIfAbsent(), upsert(),
+ * compute() and merge() are written against it here, so each of them
+ * costs one lookup instead of the two or three the Map defaults make.
+ * Only dropping a key, when a remapping function returns null, costs a
+ * second one.</p>
+ *
+ * @param <K> Type for keys.
+ * @param <V> Type for values.
+ */
+public abstract class SingleProbeMap<K, V> implements Map<K, V> {
+
+  /**
+   * Entry whose value can be read and updated in place.
+   *
+   * @param <V> Type for values.
+   */
+  protected interface Slot<V> {
+    V getValue();
+
+    void setValue(V v);
+  }
+
+  /**
+   * Find the entry for a key, adding one with a null value if the key is
+   * not mapped. Callers tell the two cases apart by size().
+   *
+   * @param k The key.
+   * @return The entry for k.
+   * @throws IllegalArgumentException If k is null.
+   */
+  protected abstract Slot<V> findOrInsert(K k) throws IllegalArgumentException;
+
+  @Override
+  public V putIfAbsent(K k, V v) throws IllegalArgumentException {
+    int before = size();
+    Slot<V> slot = findOrInsert(k);
+    if (size() == before) {
+      return slot.getValue();
+    }
+    slot.setValue(v);
+    return null;
+  }
+
+  @Override
+  public void upsert(K k, V v) throws IllegalArgumentException {
+    findOrInsert(k).setValue(v);
+  }
+
+  @Override
+  public V compute(K k, BiFunction<? super K, ? super V, ? extends V> remap)
+      throws IllegalArgumentException {
+    int before = size();
+    Slot<V> slot = findOrInsert(k);
+    boolean created = size() != before;
+    V newValue;
+    try {
+      newValue = remap.apply(k, created ? null : slot.getValue());
+    } catch (RuntimeException e) {
+      if (created) {
+        remove(k); // take the placeholder back out
+      }
+      throw e;
+    }
+    if (newValue == null) {
+      remove(k);
+      return null;
+    }
+    slot.setValue(newValue);
+    return newValue;
+  }
+
+  @Override
+  public V merge(K k, V v, BiFunction<? super V, ? super V, ? extends V> remap)
+      throws IllegalArgumentException {
+    int before = size();
+    Slot<V> slot = findOrInsert(k);
+    if (size() != before) {
+      slot.setValue(v);
+      return v;
+    }
+    V newValue = remap.apply(slot.getValue(), v);
+    if (newValue == null) {
+      remove(k);
+      return null;
+    }
+    slot.setValue(newValue);
+    return newValue;
+  }
+}
@@ -0,0 +1,402 @@
+package Map;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * OrderedMap implemented as a sorted array of entries, for maps that stay small.
+ *
+ * <p>Like ArrayMap, keys and values are packed into one array, each key
+ * followed by its value, but the entries are kept in key order and
+ * found by binary search, so iteration is in order as the OrderedMap
+ * contract asks. Inserting or removing shifts the entries after the
+ * position, which is O(n) but only a short array copy while the map is
+ * small; AdaptiveTreeMap switches to an AvlTreeMap before it is not.
+ * Finding a neighbouring key or the start of a range is a binary search
+ * as well.</p>
+ *
+ * @param <K> Type for keys.
+ * @param <V> Type for values.
+ */
+public class SortedArrayMap<K extends Comparable<K>, V> implements OrderedMap<K, V> {
+
+  private static final int DEFAULT_CAPACITY = 4;
+
+  private Object[] entries; // key of entry i at 2i, its value at 2i + 1, by increasing key
+  private int numElements;
+
+  /**
+   * Create an empty map.
+   */
+  public SortedArrayMap() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Create an empty map with room for the given number of entries.
+   *
+   * @param capacity Number of entries the map holds before it grows.
+   * @throws IllegalArgumentException If capacity is negative.
+   */
+  public SortedArrayMap(int capacity) throws IllegalArgumentException {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("capacity must not be negative");
+    }
+    this.entries = new Object[2 * capacity];
+    this.numElements = 0;
+  }
+
+  // Index of the entry for k if it is mapped, otherwise -(insertion point) - 1.
+  @SuppressWarnings("unchecked")
+  private int search(K k) {
+    int low = 0;
+    int high = numElements - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = ((K) entries[2 * mid]).compareTo(k);
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -low - 1;
+  }
+
+  // Index of the entry for k, throw exception if k is null or not mapped.
+  private int indexForSure(K k) {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    int i = search(k);
+    if (i < 0) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    return i;
+  }
+
+  // Insert an entry at index i, shifting the later ones up.
+  private void insertAt(int i, K k, V v) {
+    if (2 * numElements == entries.length) { // map is full
+      Object[] bigger = new Object[Math.max(2 * DEFAULT_CAPACITY, 2 * entries.length)];
+      System.arraycopy(entries, 0, bigger, 0, 2 * i);
+      System.arraycopy(entries, 2 * i, bigger, 2 * i + 2, 2 * (numElements - i));
+      entries = bigger;
+    } else {
+      System.arraycopy(entries, 2 * i, entries, 2 * i + 2, 2 * (numElements - i));
+    }
+    entries[2 * i] = k;
+    entries[2 * i + 1] = v;
+    numElements++;
+  }
+
+  // Remove entry i, shifting the later ones down.
+  private void removeAt(int i) {
+    numElements--;
+    System.arraycopy(entries, 2 * i + 2, entries, 2 * i, 2 * (numElements - i));
+    entries[2 * numElements] = null; // let go of the last slot for the GC
+    entries[2 * numElements + 1] = null;
+  }
+
+  @SuppressWarnings("unchecked")
+  private K keyAt(int i) {
+    return (K) entries[2 * i];
+  }
+
+  @SuppressWarnings("unchecked")
+  private V valueAt(int i) {
+    return (V) entries[2 * i + 1];
+  }
+
+  @Override
+  public void insert(K k, V v) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    int i = search(k);
+    if (i >= 0) {
+      throw new IllegalArgumentException("duplicate key " + k);
+    }
+    insertAt(-i - 1, k, v);
+  }
+
+  @Override
+  public V remove(K k) throws IllegalArgumentException {
+    int i = indexForSure(k);
+    V v = valueAt(i);
+    removeAt(i);
+    return v;
+  }
+
+  @Override
+  public void put(K k, V v) throws IllegalArgumentException {
+    entries[2 * indexForSure(k) + 1] = v;
+  }
+
+  @Override
+  public V get(K k) throws IllegalArgumentException {
+    return valueAt(indexForSure(k));
+  }
+
+  @Override
+  public boolean has(K k) {
+    if (k == null) {
+      return false;
+    }
+    return search(k) >= 0;
+  }
+
+  @Override
+  public int size() {
+    return numElements;
+  }
+
+  /**
+   * Shrink the array to the current number of entries.
+   */
+  public void trimToSize() {
+    if (2 * numElements < entries.length) {
+      Object[] smaller = new Object[2 * numElements];
+      System.arraycopy(entries, 0, smaller, 0, smaller.length);
+      entries = smaller;
+    }
+  }
+
+  @Override
+  public V getOrDefault(K k, V defaultValue) {
+    if (k == null) {
+      return defaultValue;
+    }
+    int i = search(k);
+    return i < 0 ? defaultValue : valueAt(i);
+  }
+
+  @Override
+  public V putIfAbsent(K k, V v) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    int i = search(k);
+    if (i >= 0) {
+      return valueAt(i);
+    }
+    insertAt(-i - 1, k, v);
+    return null;
+  }
+
+  @Override
+  public void upsert(K k, V v) throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    int i = search(k);
+    if (i < 0) {
+      insertAt(-i - 1, k, v);
+    } else {
+      entries[2 * i + 1] = v;
+    }
+  }
+
+  @Override
+  public V compute(K k, BiFunction<? super K, ? super V, ? extends V> remap)
+      throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    int i = search(k);
+    V newValue = remap.apply(k, i < 0 ? null : valueAt(i));
+    if (newValue == null) {
+      if (i >= 0) {
+        removeAt(i);
+      }
+    } else if (i < 0) {
+      insertAt(-i - 1, k, newValue);
+    } else {
+      entries[2 * i + 1] = newValue;
+    }
+    return newValue;
+  }
+
+  @Override
+  public V merge(K k, V v, BiFunction<? super V, ? super V, ? extends V> remap)
+      throws IllegalArgumentException {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    int i = search(k);
+    if (i < 0) {
+      insertAt(-i - 1, k, v);
+      return v;
+    }
+    V newValue = remap.apply(valueAt(i), v);
+    if (newValue == null) {
+      removeAt(i);
+    } else {
+      entries[2 * i + 1] = newValue;
+    }
+    return newValue;
+  }
+
+  // Index of the first entry whose key is above k, or equal to it if inclusive; numElements if none is.
+  private int indexAfter(K k, boolean inclusive) {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    int i = search(k);
+    if (i < 0) {
+      return -i - 1;
+    }
+    return inclusive ? i : i + 1;
+  }
+
+  @Override
+  public K first() throws EmptyException {
+    if (numElements == 0) {
+      throw new EmptyException("map is empty");
+    }
+    return keyAt(0);
+  }
+
+  @Override
+  public K last() throws EmptyException {
+    if (numElements == 0) {
+      throw new EmptyException("map is empty");
+    }
+    return keyAt(numElements - 1);
+  }
+
+  @Override
+  public K floorKey(K k) throws IllegalArgumentException {
+    int i = indexAfter(k, false) - 1; // the last entry not above k
+    return i >= 0 ? keyAt(i) : null;
+  }
+
+  @Override
+  public K ceilingKey(K k) throws IllegalArgumentException {
+    int i = indexAfter(k, true);
+    return i < numElements ? keyAt(i) : null;
+  }
+
+  @Override
+  public K lowerKey(K k) throws IllegalArgumentException {
+    int i = indexAfter(k, true) - 1; // the last entry below k
+    return i >= 0 ? keyAt(i) : null;
+  }
+
+  @Override
+  public K higherKey(K k) throws IllegalArgumentException {
+    int i = indexAfter(k, false);
+    return i < numElements ? keyAt(i) : null;
+  }
+
+  @Override
+  public K pollFirst() {
+    if (numElements == 0) {
+      return null;
+    }
+    K k = keyAt(0);
+    removeAt(0);
+    return k;
+  }
+
+  @Override
+  public Cursor<K, V> cursor() {
+    return new SortedArrayMapCursor(0, numElements);
+  }
+
+  @Override
+  public Cursor<K, V> cursor(K from, K to) {
+    int start = from == null ? 0 : indexAfter(from, true);
+    int end = to == null ? numElements : indexAfter(to, true);
+    return new SortedArrayMapCursor(start, Math.max(start, end));
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    for (int i = 0; i < numElements; i++) {
+      action.accept(keyAt(i), valueAt(i));
+    }
+  }
+
+  @Override
+  public Iterator<K> iterator() {
+    return new SortedArrayMapIterator();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder s = new StringBuilder();
+    s.append("{");
+    for (int i = 0; i < numElements; i++) {
+      s.append(keyAt(i)).append(": ").append(valueAt(i));
+      if (i < numElements - 1) {
+        s.append(", ");
+      }
+    }
+    s.append("}");
+    return s.toString();
+  }
+
+  private class SortedArrayMapIterator implements Iterator<K> {
+    private int next;
+
+    @Override
+    public boolean hasNext() {
+      return next < numElements;
+    }
+
+    @Override
+    public K next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException("No more elements in the map");
+      }
+      return keyAt(next++);
+    }
+  }
+
+  private class SortedArrayMapCursor implements Cursor<K, V> {
+    private final int start;
+    private final int end; // index the cursor stops before
+    private int current;
+
+    SortedArrayMapCursor(int start, int end) {
+      this.start = start;
+      this.end = end;
+      current = start - 1;
+    }
+
+    @Override
+    public boolean advance() {
+      if (current < end) {
+        current++;
+      }
+      return current < end;
+    }
+
+    private int current() {
+      if (current < start || current >= end) {
+        throw new IllegalStateException("cursor is not on an entry");
+      }
+      return current;
+    }
+
+    @Override
+    public K key() {
+      return keyAt(current());
+    }
+
+    @Override
+    public V value() {
+      return valueAt(current());
+    }
+
+    @Override
+    public void setValue(V v) {
+      entries[2 * current() + 1] = v;
+    }
+  }
+}
@@ -0,0 +1,209 @@
+package SelfBalancingBST;
+
+import Map.Cursor;
+import Map.EmptyException;
+import Map.OrderedMap;
+import Map.SortedArrayMap;
+import java.util.Iterator;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * OrderedMap that starts out as a SortedArrayMap and turns into an
+ * AvlTreeMap once it grows past a threshold.
+ *
+ * <p>The ordered counterpart of HashTable.AdaptiveHashMap: a handful of
+ * entries are kept in one sorted array and found by binary search, with
+ * no node per entry, and the first insert that would take the map past
+ * the threshold moves them all into a new AvlTreeMap. The map stays a
+ * tree from then on. Both forms iterate in key order, so promotion is
+ * invisible except in the footprint.</p>
+ *
+ * @param <K> Type for keys.
+ * @param <V> Type for values.
+ */
+public class AdaptiveTreeMap<K extends Comparable<K>, V> implements OrderedMap<K, V> {
+
+  private static final int DEFAULT_THRESHOLD = 16;
+
+  private final int threshold;
+  private SortedArrayMap<K, V> small; // null once promoted
+  private AvlTreeMap<K, V> large; // null until promoted
+
+  /**
+   * Create an empty map that is promoted past 16 entries.
+   */
+  public AdaptiveTreeMap() {
+    this(DEFAULT_THRESHOLD);
+  }
+
+  /**
+   * Create an empty map that is promoted past the given number of entries.
+   *
+   * @param threshold Most entries the map holds as an array.
+   * @throws IllegalArgumentException If threshold is negative.
+   */
+  public AdaptiveTreeMap(int threshold) throws IllegalArgumentException {
+    if (threshold < 0) {
+      throw new IllegalArgumentException("threshold must not be negative");
+    }
+    this.threshold = threshold;
+    small = new SortedArrayMap<>(Math.min(threshold, 4));
+  }
+
+  // Promote before an operation that may add a key to a full array.
+  private void makeRoom() {
+    if (small != null && small.size() >= threshold) {
+      large = new AvlTreeMap<>();
+      small.forEach(large::insert);
+      small = null;
+    }
+  }
+
+  /**
+   * Whether the map has turned into a tree.
+   *
+   * @return True once the map has grown past its threshold.
+   */
+  public boolean promoted() {
+    return small == null;
+  }
+
+  @Override
+  public void insert(K k, V v) throws IllegalArgumentException {
+    makeRoom();
+    if (small != null) {
+      small.insert(k, v);
+    } else {
+      large.insert(k, v);
+    }
+  }
+
+  @Override
+  public V remove(K k) throws IllegalArgumentException {
+    return small != null ? small.remove(k) : large.remove(k);
+  }
+
+  @Override
+  public void put(K k, V v) throws IllegalArgumentException {
+    if (small != null) {
+      small.put(k, v);
+    } else {
+      large.put(k, v);
+    }
+  }
+
+  @Override
+  public V get(K k) throws IllegalArgumentException {
+    return small != null ? small.get(k) : large.get(k);
+  }
+
+  @Override
+  public boolean has(K k) {
+    return small != null ? small.has(k) : large.has(k);
+  }
+
+  @Override
+  public int size() {
+    return small != null ? small.size() : large.size();
+  }
+
+  @Override
+  public V getOrDefault(K k, V defaultValue) {
+    return small != null ? small.getOrDefault(k, defaultValue) : large.getOrDefault(k, defaultValue);
+  }
+
+  @Override
+  public V putIfAbsent(K k, V v) throws IllegalArgumentException {
+    makeRoom();
+    return small != null ? small.putIfAbsent(k, v) : large.putIfAbsent(k, v);
+  }
+
+  @Override
+  public void upsert(K k, V v) throws IllegalArgumentException {
+    makeRoom();
+    if (small != null) {
+      small.upsert(k, v);
+    } else {
+      large.upsert(k, v);
+    }
+  }
+
+  @Override
+  public V compute(K k, BiFunction<? super K, ? super V, ? extends V> remap)
+      throws IllegalArgumentException {
+    makeRoom();
+    return small != null ? small.compute(k, remap) : large.compute(k, remap);
+  }
+
+  @Override
+  public V merge(K k, V v, BiFunction<? super V, ? super V, ? extends V> remap)
+      throws IllegalArgumentException {
+    makeRoom();
+    return small != null ? small.merge(k, v, remap) : large.merge(k, v, remap);
+  }
+
+  @Override
+  public K first() throws EmptyException {
+    return small != null ? small.first() : large.first();
+  }
+
+  @Override
+  public K last() throws EmptyException {
+    return small != null ? small.last() : large.last();
+  }
+
+  @Override
+  public K floorKey(K k) throws IllegalArgumentException {
+    return small != null ? small.floorKey(k) : large.floorKey(k);
+  }
+
+  @Override
+  public K ceilingKey(K k) throws IllegalArgumentException {
+    return small != null ? small.ceilingKey(k) : large.ceilingKey(k);
+  }
+
+  @Override
+  public K lowerKey(K k) throws IllegalArgumentException {
+    return small != null ? small.lowerKey(k) : large.lowerKey(k);
+  }
+
+  @Override
+  public K higherKey(K k) throws IllegalArgumentException {
+    return small != null ? small.higherKey(k) : large.higherKey(k);
+  }
+
+  @Override
+  public K pollFirst() {
+    return small != null ? small.pollFirst() : large.pollFirst();
+  }
+
+  @Override
+  public Cursor<K, V> cursor() {
+    return small != null ? small.cursor() : large.cursor();
+  }
+
+  @Override
+  public Cursor<K, V> cursor(K from, K to) {
+    return small != null ? small.cursor(from, to) : large.cursor(from, to);
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    if (small != null) {
+      small.forEach(action);
+    } else {
+      large.forEach(action);
+    }
+  }
+
+  @Override
+  public Iterator<K> iterator() {
+    return small != null ? small.iterator() : large.iterator();
+  }
+
+  @Override
+  public String toString() {
+    return small != null ? small.toString() : large.toString();
+  }
+}
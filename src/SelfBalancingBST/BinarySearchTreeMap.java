@@ -1,8 +1,12 @@
 package SelfBalancingBST;
 
+import Map.Cursor;
+import Map.EmptyException;
 import Map.OrderedMap;
+import Map.SingleProbeMap;
 import java.util.Iterator;
 import java.util.Stack;
+import java.util.function.BiConsumer;
 
 /**
  * Ordered maps implemented as (basic) binary search trees.
@@ -12,7 +16,7 @@ import java.util.Stack;
  * @param <K> Type for keys.
  * @param <V> Type for values.
  */
-public class BinarySearchTreeMap<K extends Comparable<K>, V> implements OrderedMap<K, V> {
+public class BinarySearchTreeMap<K extends Comparable<K>, V> extends SingleProbeMap<K, V> implements OrderedMap<K, V> {
   private Node<K, V> root;
   private int size;
 
@@ -151,6 +155,153 @@ public class BinarySearchTreeMap<K extends Comparable<K>, V> implements OrderedM
     return null;
   }
 
+  // Return node for given key, attaching a new leaf with a null value
+  // if the key is not in the tree yet; a single descent either way.
+  @Override
+  protected Node<K, V> findOrInsert(K k) {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    Node<K, V> parent = null;
+    Node<K, V> n = root;
+    int cmp = 0;
+    while (n != null) {
+      cmp = k.compareTo(n.key);
+      if (cmp == 0) {
+        return n;
+      }
+      parent = n;
+      n = cmp < 0 ? n.left : n.right;
+    }
+    Node<K, V> created = new Node<>(k, null);
+    if (parent == null) {
+      root = created;
+    } else if (cmp < 0) {
+      parent.left = created;
+    } else {
+      parent.right = created;
+    }
+    size++;
+    return created;
+  }
+
+  @Override
+  public V getOrDefault(K k, V defaultValue) {
+    if (k == null) {
+      return defaultValue;
+    }
+    Node<K, V> n = find(k);
+    return n == null ? defaultValue : n.value;
+  }
+
+  @Override
+  public K first() throws EmptyException {
+    if (root == null) {
+      throw new EmptyException("map is empty");
+    }
+    Node<K, V> n = root;
+    while (n.left != null) {
+      n = n.left;
+    }
+    return n.key;
+  }
+
+  @Override
+  public K last() throws EmptyException {
+    if (root == null) {
+      throw new EmptyException("map is empty");
+    }
+    Node<K, V> n = root;
+    while (n.right != null) {
+      n = n.right;
+    }
+    return n.key;
+  }
+
+  // Node with the greatest key below k, or equal to it if inclusive; null if there is none.
+  private Node<K, V> floor(K k, boolean inclusive) {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    Node<K, V> best = null;
+    Node<K, V> n = root;
+    while (n != null) {
+      int cmp = k.compareTo(n.key);
+      if (cmp == 0 && inclusive) {
+        return n;
+      } else if (cmp > 0) {
+        best = n; // there may be a closer one in the right subtree
+        n = n.right;
+      } else {
+        n = n.left;
+      }
+    }
+    return best;
+  }
+
+  // Node with the smallest key above k, or equal to it if inclusive; null if there is none.
+  private Node<K, V> ceiling(K k, boolean inclusive) {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    Node<K, V> best = null;
+    Node<K, V> n = root;
+    while (n != null) {
+      int cmp = k.compareTo(n.key);
+      if (cmp == 0 && inclusive) {
+        return n;
+      } else if (cmp < 0) {
+        best = n; // there may be a closer one in the left subtree
+        n = n.left;
+      } else {
+        n = n.right;
+      }
+    }
+    return best;
+  }
+
+  @Override
+  public K floorKey(K k) throws IllegalArgumentException {
+    Node<K, V> n = floor(k, true);
+    return n == null ? null : n.key;
+  }
+
+  @Override
+  public K ceilingKey(K k) throws IllegalArgumentException {
+    Node<K, V> n = ceiling(k, true);
+    return n == null ? null : n.key;
+  }
+
+  @Override
+  public K lowerKey(K k) throws IllegalArgumentException {
+    Node<K, V> n = floor(k, false);
+    return n == null ? null : n.key;
+  }
+
+  @Override
+  public K higherKey(K k) throws IllegalArgumentException {
+    Node<K, V> n = ceiling(k, false);
+    return n == null ? null : n.key;
+  }
+
+  @Override
+  public Cursor<K, V> cursor() {
+    return new InorderCursor();
+  }
+
+  @Override
+  public Cursor<K, V> cursor(K from, K to) {
+    return new InorderCursor(from, to);
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    // the tree may be degenerate, so walk it with the cursor's stack instead of recursing
+    for (Cursor<K, V> c = cursor(); c.advance(); ) {
+      action.accept(c.key(), c.value());
+    }
+  }
+
   @Override
   public Iterator<K> iterator() {
     return new InorderIterator();
@@ -160,7 +311,7 @@ public class BinarySearchTreeMap<K extends Comparable<K>, V> implements OrderedM
   // as well as a value.
   // We don't need a parent pointer as long as we use recursive
   // insert/remove helpers.
-  private static class Node<K, V> implements BinaryTreeNode {
+  private static class Node<K, V> implements BinaryTreeNode, Slot<V> {
     Node<K, V> left;
     Node<K, V> right;
     K key;
@@ -187,6 +338,16 @@ public class BinarySearchTreeMap<K extends Comparable<K>, V> implements OrderedM
     public BinaryTreeNode getRightChild() {
       return right;
     }
+
+    @Override
+    public V getValue() {
+      return value;
+    }
+
+    @Override
+    public void setValue(V v) {
+      value = v;
+    }
   }
 
   // Iterative in-order traversal over the keys
@@ -218,6 +379,72 @@ public class BinarySearchTreeMap<K extends Comparable<K>, V> implements OrderedM
     }
   }
 
+  private class InorderCursor implements Cursor<K, V> {
+    private final Stack<Node<K, V>> stack;
+    private final K to; // null to run to the last key
+    private Node<K, V> current;
+
+    InorderCursor() {
+      this(null, null);
+    }
+
+    // Seek to the first key at or after from, leaving on the stack what pushLeft(root) would
+    // have once it got there; only the path down to from is visited.
+    InorderCursor(K from, K to) {
+      stack = new Stack<>();
+      this.to = to;
+      Node<K, V> curr = root;
+      while (curr != null) {
+        if (from != null && curr.key.compareTo(from) < 0) {
+          curr = curr.right; // curr and its left subtree come before the range
+        } else {
+          stack.push(curr);
+          curr = curr.left;
+        }
+      }
+    }
+
+    private void pushLeft(Node<K, V> curr) {
+      while (curr != null) {
+        stack.push(curr);
+        curr = curr.left;
+      }
+    }
+
+    private Node<K, V> current() {
+      if (current == null) {
+        throw new IllegalStateException("cursor is not on an entry");
+      }
+      return current;
+    }
+
+    @Override
+    public boolean advance() {
+      if (stack.isEmpty() || (to != null && stack.peek().key.compareTo(to) >= 0)) {
+        current = null;
+        return false;
+      }
+      current = stack.pop();
+      pushLeft(current.right);
+      return true;
+    }
+
+    @Override
+    public K key() {
+      return current().key;
+    }
+
+    @Override
+    public V value() {
+      return current().value;
+    }
+
+    @Override
+    public void setValue(V v) {
+      current().value = v;
+    }
+  }
+
   @Override
   public String toString() {
     return BinaryTreePrinter.printBinaryTree(root);
@@ -0,0 +1,688 @@
+package SkipList;
+
+import Map.Cursor;
+import Map.EmptyException;
+import Map.OrderedMap;
+import SelfBalancingBST.AvlTreeMap;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+
+/**
+ * Thread-safe ordered map implemented as an optimistic skip list.
+ *
+ * <p>Every node is on level 0, a sorted linked list, and on each level
+ * above with probability 1/2, so a search skips ahead on the upper levels
+ * in O(lgn) expected steps. Unlike a balanced tree nothing is ever
+ * rebalanced: a write changes only the links next to its own key, so
+ * writers to different parts of the map do not touch each other.</p>
+ *
+ * <p>Searches take no lock at all: links and values are volatile and keys
+ * never change. A writer searches without locks too, then locks just the
+ * predecessors it will relink, checks that they are still in place, and
+ * starts over if not (Herlihy, Lev, Luchangco and Shavit's lazy skip
+ * list). A node is removed logically first, by marking it, and only then
+ * unlinked; a node is in the map once it is linked on all its levels and
+ * until it is marked. Locks are always taken in decreasing key order, so
+ * writers cannot deadlock.</p>
+ *
+ * <p>All writes to a key hold that key's node lock, so put, upsert,
+ * compute and merge are atomic with respect to other writers. If the key
+ * is absent, compute and merge call the function and then try to add
+ * the key, calling it again should another thread add it first.</p>
+ *
+ * <p>Iteration, cursors, range scans and forEach are weakly consistent:
+ * they walk level 0 in key order, never throw because of concurrent
+ * updates, and may or may not reflect them.</p>
+ *
+ * @param <K> Type for keys.
+ * @param <V> Type for values.
+ */
+public class ConcurrentSkipListMap<K extends Comparable<K>, V> implements OrderedMap<K, V> {
+
+  private static final int MAX_LEVEL = 32;
+
+  private final Node<K, V> head = new Node<>(null, null, MAX_LEVEL - 1); // key null sorts first
+  private final AtomicInteger height = new AtomicInteger(1); // levels in use, never decreases
+  private final LongAdder count = new LongAdder();
+
+  // Random level for a new node: level i with probability 1/2^(i+1).
+  private static int randomLevel() {
+    return Integer.numberOfTrailingZeros(ThreadLocalRandom.current().nextInt() | 1 << (MAX_LEVEL - 1));
+  }
+
+  private static boolean live(Node<?, ?> node) {
+    return node.fullyLinked && !node.marked;
+  }
+
+  // Live node for k, or null.
+  private Node<K, V> findNode(K k) {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    Node<K, V> pred = head;
+    for (int level = height.get() - 1; level >= 0; level--) {
+      Node<K, V> curr = pred.next(level);
+      while (curr != null) {
+        int cmp = curr.key.compareTo(k);
+        if (cmp > 0) {
+          break;
+        }
+        if (cmp == 0) {
+          return live(curr) ? curr : null;
+        }
+        pred = curr;
+        curr = curr.next(level);
+      }
+    }
+    return null;
+  }
+
+  // Fill preds and succs with the nodes around k on every level; return the
+  // highest level k was found on, or -1.
+  private int find(K k, Node<K, V>[] preds, Node<K, V>[] succs) {
+    int found = -1;
+    int top = height.get();
+    for (int level = MAX_LEVEL - 1; level >= top; level--) {
+      preds[level] = head; // empty when we read height; inserts above it fail validation
+      succs[level] = null;
+    }
+    Node<K, V> pred = head;
+    for (int level = top - 1; level >= 0; level--) {
+      Node<K, V> curr = pred.next(level);
+      int cmp = 1;
+      while (curr != null && (cmp = curr.key.compareTo(k)) < 0) {
+        pred = curr;
+        curr = curr.next(level);
+      }
+      if (found == -1 && curr != null && cmp == 0) {
+        found = level;
+      }
+      preds[level] = pred;
+      succs[level] = curr;
+    }
+    return found;
+  }
+
+  // Lock the distinct predecessors on levels 0 to top, and check that each still
+  // links to its successor and neither is marked, except for the victim being
+  // removed, if any. Predecessors only get smaller going up, so the locks are
+  // taken in decreasing key order.
+  private static <K, V> boolean lockAndValidate(Node<K, V>[] preds, Node<K, V>[] succs, int top,
+      Node<K, V> victim) {
+    boolean valid = true;
+    Node<K, V> prev = null;
+    for (int level = 0; level <= top; level++) {
+      Node<K, V> pred = preds[level];
+      Node<K, V> succ = succs[level];
+      if (pred != prev) {
+        pred.lock.lock();
+        prev = pred;
+      }
+      valid &= !pred.marked && (succ == null || succ == victim || !succ.marked) && pred.next(level) == succ;
+    }
+    return valid;
+  }
+
+  private static <K, V> void unlock(Node<K, V>[] preds, int top) {
+    Node<K, V> prev = null;
+    for (int level = 0; level <= top; level++) {
+      if (preds[level] != prev) {
+        prev = preds[level];
+        prev.lock.unlock();
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K, V> Node<K, V>[] newLevels() {
+    return (Node<K, V>[]) new Node<?, ?>[MAX_LEVEL];
+  }
+
+  // Link a new node for k unless the map has one; return the node it has,
+  // or null if the new one was linked.
+  private Node<K, V> link(K k, V v) {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+    int top = randomLevel();
+    if (top >= height.get()) {
+      height.accumulateAndGet(top + 1, Math::max);
+    }
+    Node<K, V>[] preds = newLevels();
+    Node<K, V>[] succs = newLevels();
+    while (true) {
+      int found = find(k, preds, succs);
+      if (found != -1) {
+        Node<K, V> node = succs[found];
+        if (!node.marked) {
+          while (!node.fullyLinked) {
+            Thread.onSpinWait(); // its inserter is linking the upper levels
+          }
+          return node;
+        }
+        Thread.onSpinWait(); // its remover is unlinking it, then we can add ours
+        continue;
+      }
+      boolean valid = lockAndValidate(preds, succs, top, null);
+      try {
+        if (!valid) {
+          continue; // the neighbourhood changed since find, look again
+        }
+        Node<K, V> node = new Node<>(k, v, top);
+        for (int level = 0; level <= top; level++) {
+          node.setNext(level, succs[level]);
+        }
+        for (int level = 0; level <= top; level++) {
+          preds[level].setNext(level, node);
+        }
+        node.fullyLinked = true;
+        count.increment();
+        return null;
+      } finally {
+        unlock(preds, top);
+      }
+    }
+  }
+
+  // Mark a live node whose lock we hold and unlink it from every level.
+  private void unlinkLocked(Node<K, V> victim) {
+    victim.marked = true;
+    Node<K, V>[] preds = newLevels();
+    Node<K, V>[] succs = newLevels();
+    while (true) {
+      find(victim.key, preds, succs);
+      boolean valid = lockAndValidate(preds, succs, victim.topLevel, victim);
+      try {
+        if (!valid) {
+          continue;
+        }
+        for (int level = victim.topLevel; level >= 0; level--) {
+          // victim keeps its own links, so cursors standing on it can go on
+          preds[level].setNext(level, victim.next(level));
+        }
+        count.decrement();
+        return;
+      } finally {
+        unlock(preds, victim.topLevel);
+      }
+    }
+  }
+
+  // Lock the live node for k and return it, or return null if there is none.
+  private Node<K, V> lockNode(K k) {
+    while (true) {
+      Node<K, V> node = findNode(k);
+      if (node == null) {
+        return null;
+      }
+      node.lock.lock();
+      if (!node.marked) {
+        return node;
+      }
+      node.lock.unlock(); // removed since we found it, look again
+    }
+  }
+
+  @Override
+  public void insert(K k, V v) throws IllegalArgumentException {
+    if (link(k, v) != null) {
+      throw new IllegalArgumentException("duplicate key " + k);
+    }
+  }
+
+  @Override
+  public V remove(K k) throws IllegalArgumentException {
+    Node<K, V> node = lockNode(k);
+    if (node == null) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    try {
+      unlinkLocked(node);
+      return node.value;
+    } finally {
+      node.lock.unlock();
+    }
+  }
+
+  @Override
+  public void put(K k, V v) throws IllegalArgumentException {
+    Node<K, V> node = lockNode(k);
+    if (node == null) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    try {
+      node.value = v;
+    } finally {
+      node.lock.unlock();
+    }
+  }
+
+  @Override
+  public V get(K k) throws IllegalArgumentException {
+    Node<K, V> node = findNode(k);
+    if (node == null) {
+      throw new IllegalArgumentException("cannot find key " + k);
+    }
+    return node.value;
+  }
+
+  @Override
+  public boolean has(K k) {
+    return k != null && findNode(k) != null;
+  }
+
+  @Override
+  public int size() {
+    return (int) count.sum();
+  }
+
+  @Override
+  public V getOrDefault(K k, V defaultValue) {
+    if (k == null) {
+      return defaultValue;
+    }
+    Node<K, V> node = findNode(k);
+    return node == null ? defaultValue : node.value;
+  }
+
+  @Override
+  public V putIfAbsent(K k, V v) throws IllegalArgumentException {
+    Node<K, V> node = link(k, v);
+    return node == null ? null : node.value;
+  }
+
+  @Override
+  public void upsert(K k, V v) throws IllegalArgumentException {
+    while (true) {
+      Node<K, V> node = link(k, v);
+      if (node == null) {
+        return;
+      }
+      node.lock.lock();
+      try {
+        if (!node.marked) {
+          node.value = v;
+          return;
+        }
+      } finally {
+        node.lock.unlock();
+      }
+    }
+  }
+
+  @Override
+  public V compute(K k, BiFunction<? super K, ? super V, ? extends V> remap)
+      throws IllegalArgumentException {
+    while (true) {
+      Node<K, V> node = lockNode(k);
+      if (node == null) {
+        V newValue = remap.apply(k, null);
+        if (newValue == null || link(k, newValue) == null) {
+          return newValue;
+        }
+        continue; // another thread added k first
+      }
+      try {
+        V newValue = remap.apply(k, node.value);
+        if (newValue == null) {
+          unlinkLocked(node);
+        } else {
+          node.value = newValue;
+        }
+        return newValue;
+      } finally {
+        node.lock.unlock();
+      }
+    }
+  }
+
+  @Override
+  public V merge(K k, V v, BiFunction<? super V, ? super V, ? extends V> remap)
+      throws IllegalArgumentException {
+    return compute(k, (key, old) -> old == null ? v : remap.apply(old, v));
+  }
+
+  // First live node with a key at least k, or above it if not inclusive;
+  // the first live node of all if k is null.
+  private Node<K, V> firstFrom(K k, boolean inclusive) {
+    Node<K, V> pred = head;
+    if (k != null) {
+      for (int level = height.get() - 1; level >= 0; level--) {
+        Node<K, V> curr = pred.next(level);
+        while (curr != null) {
+          int cmp = curr.key.compareTo(k);
+          if (cmp > 0 || (cmp == 0 && inclusive)) {
+            break;
+          }
+          pred = curr;
+          curr = curr.next(level);
+        }
+      }
+    }
+    Node<K, V> node = pred.next(0);
+    while (node != null && !live(node)) {
+      node = node.next(0);
+    }
+    return node;
+  }
+
+  // Last live node with a key at most k, or below it if not inclusive;
+  // the last live node of all if k is null.
+  private Node<K, V> lastUpTo(K k, boolean inclusive) {
+    while (true) {
+      Node<K, V> pred = head;
+      for (int level = height.get() - 1; level >= 0; level--) {
+        Node<K, V> curr = pred.next(level);
+        while (curr != null) {
+          if (k != null) {
+            int cmp = curr.key.compareTo(k);
+            if (cmp > 0 || (cmp == 0 && !inclusive)) {
+              break;
+            }
+          }
+          pred = curr;
+          curr = curr.next(level);
+        }
+      }
+      if (pred == head || live(pred)) {
+        return pred == head ? null : pred;
+      }
+      k = pred.key; // being added or removed, look below it
+      inclusive = false;
+    }
+  }
+
+  @Override
+  public K first() throws EmptyException {
+    Node<K, V> node = firstFrom(null, true);
+    if (node == null) {
+      throw new EmptyException("map is empty");
+    }
+    return node.key;
+  }
+
+  @Override
+  public K last() throws EmptyException {
+    Node<K, V> node = lastUpTo(null, true);
+    if (node == null) {
+      throw new EmptyException("map is empty");
+    }
+    return node.key;
+  }
+
+  private static <K> void checkKey(K k) {
+    if (k == null) {
+      throw new IllegalArgumentException("cannot handle null key");
+    }
+  }
+
+  private static <K, V> K keyOf(Node<K, V> node) {
+    return node == null ? null : node.key;
+  }
+
+  @Override
+  public K floorKey(K k) throws IllegalArgumentException {
+    checkKey(k);
+    return keyOf(lastUpTo(k, true));
+  }
+
+  @Override
+  public K ceilingKey(K k) throws IllegalArgumentException {
+    checkKey(k);
+    return keyOf(firstFrom(k, true));
+  }
+
+  @Override
+  public K lowerKey(K k) throws IllegalArgumentException {
+    checkKey(k);
+    return keyOf(lastUpTo(k, false));
+  }
+
+  @Override
+  public K higherKey(K k) throws IllegalArgumentException {
+    checkKey(k);
+    return keyOf(firstFrom(k, false));
+  }
+
+  /**
+   * Remove the smallest key, atomically: of several threads polling at
+   * once, each gets a different key.
+   *
+   * @return The key removed, or null if the map is empty.
+   */
+  @Override
+  public K pollFirst() {
+    while (true) {
+      Node<K, V> node = firstFrom(null, true);
+      if (node == null) {
+        return null;
+      }
+      node.lock.lock();
+      try {
+        if (!node.marked) {
+          unlinkLocked(node);
+          return node.key;
+        }
+      } finally {
+        node.lock.unlock();
+      }
+    }
+  }
+
+  @Override
+  public Cursor<K, V> cursor() {
+    return cursor(null, null);
+  }
+
+  @Override
+  public Cursor<K, V> cursor(K from, K to) {
+    return new SkipListCursor(from, to);
+  }
+
+  @Override
+  public void forEach(BiConsumer<? super K, ? super V> action) {
+    for (Node<K, V> node = head.next(0); node != null; node = node.next(0)) {
+      if (live(node)) {
+        action.accept(node.key, node.value);
+      }
+    }
+  }
+
+  @Override
+  public Iterator<K> iterator() {
+    return range(null, null);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder s = new StringBuilder();
+    s.append("{");
+    forEach((k, v) -> {
+      if (s.length() > 1) {
+        s.append(", ");
+      }
+      s.append(k).append(": ").append(v);
+    });
+    s.append("}");
+    return s.toString();
+  }
+
+  private class SkipListCursor implements Cursor<K, V> {
+    private final K from; // null to start at the first key
+    private final K to; // null to run to the last key
+    private Node<K, V> current; // null before the first entry and after the last
+    private boolean started;
+
+    SkipListCursor(K from, K to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    public boolean advance() {
+      Node<K, V> node;
+      if (!started) {
+        started = true;
+        node = firstFrom(from, true);
+      } else if (current == null) {
+        return false;
+      } else {
+        node = current.next(0); // still valid if current was removed since
+        while (node != null && !live(node)) {
+          node = node.next(0);
+        }
+      }
+      current = node != null && (to == null || node.key.compareTo(to) < 0) ? node : null;
+      return current != null;
+    }
+
+    private Node<K, V> current() {
+      if (current == null) {
+        throw new IllegalStateException("cursor is not on an entry");
+      }
+      return current;
+    }
+
+    @Override
+    public K key() {
+      return current().key;
+    }
+
+    @Override
+    public V value() {
+      return current().value;
+    }
+
+    @Override
+    public void setValue(V v) {
+      Node<K, V> node = current();
+      node.lock.lock();
+      try {
+        if (node.marked) {
+          throw new IllegalArgumentException("cannot find key " + node.key);
+        }
+        node.value = v;
+      } finally {
+        node.lock.unlock();
+      }
+    }
+  }
+
+  // A node's links are a plain array read and written as volatiles through a
+  // VarHandle, rather than an AtomicReferenceArray, which would cost searches
+  // another pointer to follow on every step. Only writers touch its lock.
+  private static final class Node<K, V> {
+    private static final VarHandle LINK = MethodHandles.arrayElementVarHandle(Node[].class);
+
+    final ReentrantLock lock = new ReentrantLock();
+    final K key;
+    volatile V value;
+    private final Node<?, ?>[] links; // one per level, 0 to topLevel
+    final int topLevel;
+    volatile boolean marked; // removed, or being removed
+    volatile boolean fullyLinked; // linked on every level, so in the map unless marked
+
+    Node(K key, V value, int topLevel) {
+      this.key = key;
+      this.value = value;
+      this.topLevel = topLevel;
+      links = new Node<?, ?>[topLevel + 1];
+    }
+
+    @SuppressWarnings("unchecked")
+    Node<K, V> next(int level) {
+      return (Node<K, V>) LINK.getVolatile(links, level);
+    }
+
+    void setNext(int level, Node<K, V> node) {
+      LINK.setVolatile(links, level, node);
+    }
+  }
+
+  // Throughput of a mix of lookups, inserts and removes and short range scans,
+  // against an AvlTreeMap behind one lock, from 1 up to N threads.
+  public static void main(String[] args) throws InterruptedException {
+    int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+    int keyRange = 1 << 20;
+    System.out.println("90% has, 9% insert or remove, 1% scan of 16 keys, over " + keyRange + " keys");
+    for (int threads = 1; threads <= maxThreads; threads *= 2) {
+      ConcurrentSkipListMap<Integer, Integer> skipList = new ConcurrentSkipListMap<>();
+      AvlTreeMap<Integer, Integer> avl = new AvlTreeMap<>();
+      for (int i = 0; i < keyRange; i += 2) {
+        skipList.insert(i, i);
+        avl.insert(i, i);
+      }
+      double skipListOps = run(skipList, skipList, threads, keyRange);
+      double avlOps = run(avl, new Object(), threads, keyRange);
+      System.out.printf("%2d threads: ConcurrentSkipListMap %6.1f Mops/s, synchronized AvlTreeMap %6.1f Mops/s%n",
+          threads, skipListOps, avlOps);
+    }
+  }
+
+  // Ops per second, in millions, of threads working on map. A lock other than
+  // the map itself is held around every operation.
+  private static double run(OrderedMap<Integer, Integer> map, Object lock, int threads, int keyRange)
+      throws InterruptedException {
+    int opsPerThread = 2_000_000;
+    boolean locking = lock != map;
+    CountDownLatch start = new CountDownLatch(1);
+    Thread[] workers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      workers[t] = new Thread(() -> {
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        for (int i = 0; i < opsPerThread; i++) {
+          Integer key = rand.nextInt(keyRange);
+          int op = rand.nextInt(100);
+          if (locking) {
+            synchronized (lock) {
+              step(map, key, op, i);
+            }
+          } else {
+            step(map, key, op, i);
+          }
+        }
+      });
+      workers[t].start();
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    for (Thread w : workers) {
+      w.join();
+    }
+    double seconds = (System.nanoTime() - begin) / 1e9;
+    return threads * (double) opsPerThread / seconds / 1e6;
+  }
+
+  private static void step(OrderedMap<Integer, Integer> map, Integer key, int op, int i) {
+    if (op < 90) {
+      map.has(key);
+    } else if (op < 99) {
+      try {
+        if (map.has(key)) {
+          map.remove(key);
+        } else {
+          map.insert(key, i);
+        }
+      } catch (IllegalArgumentException e) {
+        // another thread got there first
+      }
+    } else {
+      for (Cursor<Integer, Integer> c = map.cursor(key, key + 32); c.advance(); ) {
+        c.value();
+      }
+    }
+  }
+}